@@ -140,5 +140,25 @@ public class HL7Properties implements Serializable {
     public void setHandleSubcomponents(boolean handleSubcomponents) {
         this.handleSubcomponents = handleSubcomponents;
     }
+    /**
+     * Holds value of property useNativeModel.
+     */
+    private boolean useNativeModel = false;
+
+    /**
+     * Getter for property useNativeModel.
+     * @return Value of property useNativeModel.
+     */
+    public boolean isUseNativeModel() {
+        return this.useNativeModel;
+    }
+
+    /**
+     * Setter for property useNativeModel.
+     * @param useNativeModel New value of property useNativeModel.
+     */
+    public void setUseNativeModel(boolean useNativeModel) {
+        this.useNativeModel = useNativeModel;
+    }
 
 }
@@ -33,10 +33,11 @@ public class HL7PropertiesBeanInfo extends SimpleBeanInfo {
     private static final int PROPERTY_useStrictValidation = 3;
     private static final int PROPERTY_stripNamespaces = 4;
     private static final int PROPERTY_convertLFtoCR = 5;
+    private static final int PROPERTY_useNativeModel = 6;
     // Property array 
     /*lazy PropertyDescriptor*/
     private static PropertyDescriptor[] getPdescriptor(){
-        PropertyDescriptor[] properties = new PropertyDescriptor[6];
+        PropertyDescriptor[] properties = new PropertyDescriptor[7];
     
         try {
             properties[PROPERTY_handleRepetitions] = new PropertyDescriptor ( "handleRepetitions", com.mirth.connect.client.ui.beans.HL7Properties.class, "isHandleRepetitions", "setHandleRepetitions" ); // NOI18N
@@ -63,6 +64,10 @@ public class HL7PropertiesBeanInfo extends SimpleBeanInfo {
             properties[PROPERTY_convertLFtoCR].setDisplayName ( "Convert LF to CR" );
             properties[PROPERTY_convertLFtoCR].setShortDescription ( "Convert linefeeds (\\n) to carriage returns (\\r) automatically (applies to Non-Strict Parser only)." );
             properties[PROPERTY_convertLFtoCR].setBound ( true );
+            properties[PROPERTY_useNativeModel] = new PropertyDescriptor ( "useNativeModel", com.mirth.connect.client.ui.beans.HL7Properties.class, "isUseNativeModel", "setUseNativeModel" ); // NOI18N
+            properties[PROPERTY_useNativeModel].setDisplayName ( "Use Native Message Model" );
+            properties[PROPERTY_useNativeModel].setShortDescription ( "Filters and transformers work on the HL7 message directly instead of converting it to XML (applies to Non-Strict Parser only, with an HL7 v2.x outbound data type and no outbound template).  Supports member access like msg['PID']['PID.5']['PID.5.1'], assignments, delete, and the common XML methods, but not the other E4X operators such as \"..\" or filters." );
+            properties[PROPERTY_useNativeModel].setBound ( true );
         }
         catch(IntrospectionException e) {
             e.printStackTrace();
@@ -12,6 +12,7 @@ import java.util.Properties;
 
 import javax.swing.SwingWorker;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 
 import com.mirth.connect.client.core.ClientException;
@@ -34,6 +35,8 @@ public class FileReader extends ConnectorClass {
         initComponents();
         pollingFrequency.setDocument(new MirthFieldConstraints(0, false, false, true));
         fileAge.setDocument(new MirthFieldConstraints(0, false, false, true));
+        batchThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        spoolThresholdField.setDocument(new MirthFieldConstraints(0, false, false, true));
         // ast:encoding activation
         parent.setupCharsetEncodingForConnector(charsetEncodingCombobox);
     }
@@ -146,6 +149,16 @@ public class FileReader extends ConnectorClass {
             properties.put(FileReaderProperties.FILE_PROCESS_BATCH_FILES, UIConstants.NO_OPTION);
         }
 
+        properties.put(FileReaderProperties.FILE_BATCH_THREADS, batchThreadsField.getText());
+
+        if (batchOrderedYesRadio.isSelected()) {
+            properties.put(FileReaderProperties.FILE_BATCH_ORDERED, UIConstants.YES_OPTION);
+        } else {
+            properties.put(FileReaderProperties.FILE_BATCH_ORDERED, UIConstants.NO_OPTION);
+        }
+
+        properties.put(FileReaderProperties.FILE_SPOOL_THRESHOLD, spoolThresholdField.getText());
+
         if (fileTypeBinary.isSelected()) {
             properties.put(FileReaderProperties.FILE_TYPE, UIConstants.YES_OPTION);
         } else {
@@ -360,6 +373,18 @@ public class FileReader extends ConnectorClass {
             processBatchFilesNo.setSelected(true);
         }
 
+        batchThreadsField.setText(props.getProperty(FileReaderProperties.FILE_BATCH_THREADS, "1"));
+
+        if (props.getProperty(FileReaderProperties.FILE_BATCH_ORDERED, UIConstants.YES_OPTION).equals(UIConstants.YES_OPTION)) {
+            batchOrderedYesRadio.setSelected(true);
+        } else {
+            batchOrderedNoRadio.setSelected(true);
+        }
+
+        updateBatchFields();
+
+        spoolThresholdField.setText(props.getProperty(FileReaderProperties.FILE_SPOOL_THRESHOLD, "0"));
+
         if (((String) props.get(FileReaderProperties.FILE_POLLING_TYPE)).equalsIgnoreCase("interval")) {
             pollingIntervalButton.setSelected(true);
             pollingTimeButton.setSelected(false);
@@ -439,6 +464,20 @@ public class FileReader extends ConnectorClass {
             }
         }
 
+        if (((String) props.get(FileReaderProperties.FILE_PROCESS_BATCH_FILES)).equals(UIConstants.YES_OPTION)) {
+            if (NumberUtils.toInt(props.getProperty(FileReaderProperties.FILE_BATCH_THREADS, "1"), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    batchThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        } else if (NumberUtils.toLong(props.getProperty(FileReaderProperties.FILE_SPOOL_THRESHOLD, "0"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                spoolThresholdField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
         return valid;
     }
 
@@ -454,6 +493,21 @@ public class FileReader extends ConnectorClass {
         usernameField.setBackground(null);
         passwordField.setBackground(null);
         timeoutField.setBackground(null);
+        batchThreadsField.setBackground(null);
+        spoolThresholdField.setBackground(null);
+    }
+
+    private void updateBatchFields() {
+        boolean enabled = processBatchFilesYes.isSelected();
+        batchThreadsLabel.setEnabled(enabled);
+        batchThreadsField.setEnabled(enabled);
+        batchOrderedLabel.setEnabled(enabled);
+        batchOrderedYesRadio.setEnabled(enabled);
+        batchOrderedNoRadio.setEnabled(enabled);
+
+        // batch files are read as a stream, so they are never spooled
+        spoolThresholdLabel.setEnabled(!enabled);
+        spoolThresholdField.setEnabled(!enabled);
     }
 
     public String doValidate(Properties props, boolean highlight) {
@@ -485,6 +539,7 @@ public class FileReader extends ConnectorClass {
         buttonGroup8 = new javax.swing.ButtonGroup();
         buttonGroup9 = new javax.swing.ButtonGroup();
         ignoreDotFilesButtonGroup = new javax.swing.ButtonGroup();
+        batchOrderedButtonGroup = new javax.swing.ButtonGroup();
         schemeLabel = new javax.swing.JLabel();
         schemeComboBox = new com.mirth.connect.client.ui.components.MirthComboBox();
         directoryLabel = new javax.swing.JLabel();
@@ -550,6 +605,13 @@ public class FileReader extends ConnectorClass {
         ignoreDotFilesYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
         ignoreDotFilesNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
         ignoreDotFilesLabel = new javax.swing.JLabel();
+        batchThreadsLabel = new javax.swing.JLabel();
+        batchThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        batchOrderedLabel = new javax.swing.JLabel();
+        batchOrderedYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        batchOrderedNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        spoolThresholdLabel = new javax.swing.JLabel();
+        spoolThresholdField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -715,6 +777,11 @@ public class FileReader extends ConnectorClass {
         processBatchFilesYes.setText("Yes");
         processBatchFilesYes.setToolTipText("Select Yes to process all messages in each file.");
         processBatchFilesYes.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        processBatchFilesYes.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                processBatchFilesYesActionPerformed(evt);
+            }
+        });
 
         processBatchFilesNo.setBackground(new java.awt.Color(255, 255, 255));
         processBatchFilesNo.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
@@ -887,6 +954,31 @@ public class FileReader extends ConnectorClass {
 
         ignoreDotFilesLabel.setText("Ignore . files:");
 
+        batchThreadsLabel.setText("Batch Threads:");
+
+        batchThreadsField.setToolTipText("<html>The number of threads that process the messages of a batch file while the file is read.<br>Enter 1 to process the messages one at a time.</html>");
+
+        batchOrderedLabel.setText("Keep Batch Order:");
+
+        batchOrderedYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        batchOrderedYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        batchOrderedButtonGroup.add(batchOrderedYesRadio);
+        batchOrderedYesRadio.setSelected(true);
+        batchOrderedYesRadio.setText("Yes");
+        batchOrderedYesRadio.setToolTipText("<html>Select Yes to send the messages of a batch file to the destinations in the order of the file.<br>The filters and transformers of several messages still run at the same time.<br>If the channel is not synchronous, an ordered batch is processed on one thread.</html>");
+        batchOrderedYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        batchOrderedNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        batchOrderedNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        batchOrderedButtonGroup.add(batchOrderedNoRadio);
+        batchOrderedNoRadio.setText("No");
+        batchOrderedNoRadio.setToolTipText("<html>Select No to send each message of a batch file to the destinations as soon as it is transformed.</html>");
+        batchOrderedNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        spoolThresholdLabel.setText("Spool Threshold (bytes):");
+
+        spoolThresholdField.setToolTipText("<html>Files larger than this number of bytes are copied to a spool file and received as a handle to it,<br>so their contents are never held in memory. Only used by synchronous channels with the XML data type,<br>and not for batch files. Enter 0 to never spool files.</html>");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -911,6 +1003,9 @@ public class FileReader extends ConnectorClass {
                     .addComponent(pollingTimeLabel)
                     .addComponent(passiveModeLabel)
                     .addComponent(deleteAfterReadLabel)
+                    .addComponent(spoolThresholdLabel)
+                    .addComponent(batchOrderedLabel)
+                    .addComponent(batchThreadsLabel)
                     .addComponent(processBatchFilesLabel)
                     .addComponent(checkFileAgeLabel)
                     .addComponent(fileAgeLabel)
@@ -932,6 +1027,12 @@ public class FileReader extends ConnectorClass {
                         .addComponent(fileTypeBinary, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(fileTypeASCII, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(batchThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(batchOrderedYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(batchOrderedNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(spoolThresholdField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(charsetEncodingCombobox, javax.swing.GroupLayout.PREFERRED_SIZE, 125, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(processBatchFilesYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -1110,7 +1211,20 @@ public class FileReader extends ConnectorClass {
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                             .addComponent(processBatchFilesLabel)
                             .addComponent(processBatchFilesYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                            .addComponent(processBatchFilesNo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                            .addComponent(processBatchFilesNo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(batchThreadsLabel)
+                            .addComponent(batchThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(batchOrderedLabel)
+                            .addComponent(batchOrderedYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(batchOrderedNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(spoolThresholdLabel)
+                            .addComponent(spoolThresholdField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
                     .addComponent(mirthVariableList1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
@@ -1291,6 +1405,7 @@ public class FileReader extends ConnectorClass {
         processBatchFilesLabel.setEnabled(true);
         processBatchFilesNo.setEnabled(true);
         processBatchFilesYes.setEnabled(true);
+        updateBatchFields();
     }//GEN-LAST:event_fileTypeASCIIActionPerformed
 
     private void fileTypeBinaryActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_fileTypeBinaryActionPerformed
@@ -1303,6 +1418,7 @@ public class FileReader extends ConnectorClass {
         processBatchFilesNo.setSelected(true);
         processBatchFilesNo.setEnabled(false);
         processBatchFilesYes.setEnabled(false);
+        updateBatchFields();
     }//GEN-LAST:event_fileTypeBinaryActionPerformed
 
 private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_testConnectionActionPerformed
@@ -1352,9 +1468,14 @@ private void secureModeNoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
 
     private void processBatchFilesNoActionPerformed(java.awt.event.ActionEvent evt)// GEN-FIRST:event_processBatchFilesNoActionPerformed
     {// GEN-HEADEREND:event_processBatchFilesNoActionPerformed
-        // TODO add your handling code here:
+        updateBatchFields();
     }// GEN-LAST:event_processBatchFilesNoActionPerformed
 
+    private void processBatchFilesYesActionPerformed(java.awt.event.ActionEvent evt)// GEN-FIRST:event_processBatchFilesYesActionPerformed
+    {// GEN-HEADEREND:event_processBatchFilesYesActionPerformed
+        updateBatchFields();
+    }// GEN-LAST:event_processBatchFilesYesActionPerformed
+
     private void charsetEncodingComboboxActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_charsetEncodingComboboxActionPerformed
         // TODO add your handling code here:
     }// GEN-LAST:event_charsetEncodingComboboxActionPerformed
@@ -1374,6 +1495,12 @@ private void secureModeNoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
     private javax.swing.JLabel anonymousLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton anonymousNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton anonymousYes;
+    private javax.swing.ButtonGroup batchOrderedButtonGroup;
+    private javax.swing.JLabel batchOrderedLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton batchOrderedNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton batchOrderedYesRadio;
+    private com.mirth.connect.client.ui.components.MirthTextField batchThreadsField;
+    private javax.swing.JLabel batchThreadsLabel;
     private javax.swing.ButtonGroup buttonGroup1;
     private javax.swing.ButtonGroup buttonGroup2;
     private javax.swing.ButtonGroup buttonGroup3;
@@ -1438,6 +1565,8 @@ private void secureModeNoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
     private com.mirth.connect.client.ui.components.MirthRadioButton secureModeYes;
     private com.mirth.connect.client.ui.components.MirthComboBox sortBy;
     private javax.swing.JLabel sortFilesByLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField spoolThresholdField;
+    private javax.swing.JLabel spoolThresholdLabel;
     private javax.swing.JButton testConnection;
     private com.mirth.connect.client.ui.components.MirthTextField timeoutField;
     private javax.swing.JLabel timeoutLabel;
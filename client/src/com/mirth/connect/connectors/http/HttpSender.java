@@ -22,6 +22,7 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableModel;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.jdesktop.swingx.decorator.Highlighter;
 import org.jdesktop.swingx.decorator.HighlighterFactory;
 
@@ -57,6 +58,10 @@ public class HttpSender extends ConnectorClass {
 
         reconnectIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
         queuePollIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        queueThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        maxConnectionsPerHostField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        maxConnectionsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        idleTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
 
         parent.setupCharsetEncodingForConnector(charsetEncodingCombobox);
 
@@ -98,6 +103,21 @@ public class HttpSender extends ConnectorClass {
         }
 
         properties.put(HttpSenderProperties.HTTP_SOCKET_TIMEOUT, sendTimeoutField.getText());
+        properties.put(HttpSenderProperties.HTTP_MAX_CONNECTIONS_PER_HOST, maxConnectionsPerHostField.getText());
+        properties.put(HttpSenderProperties.HTTP_MAX_CONNECTIONS, maxConnectionsField.getText());
+        properties.put(HttpSenderProperties.HTTP_IDLE_TIMEOUT, idleTimeoutField.getText());
+
+        if (compressRequestYesRadio.isSelected()) {
+            properties.put(HttpSenderProperties.HTTP_COMPRESS_REQUEST, UIConstants.YES_OPTION);
+        } else {
+            properties.put(HttpSenderProperties.HTTP_COMPRESS_REQUEST, UIConstants.NO_OPTION);
+        }
+
+        if (acceptCompressedYesRadio.isSelected()) {
+            properties.put(HttpSenderProperties.HTTP_ACCEPT_COMPRESSED, UIConstants.YES_OPTION);
+        } else {
+            properties.put(HttpSenderProperties.HTTP_ACCEPT_COMPRESSED, UIConstants.NO_OPTION);
+        }
 
         if (authenticationYesRadio.isSelected()) {
             properties.put(HttpSenderProperties.HTTP_USE_AUTHENTICATION, UIConstants.YES_OPTION);
@@ -123,6 +143,8 @@ public class HttpSender extends ConnectorClass {
         properties.put(HttpSenderProperties.HTTP_REPLY_CHANNEL_ID, channelList.get((String) channelNames.getSelectedItem()));
 
         properties.put(QueuedSenderProperties.QUEUE_POLL_INTERVAL, queuePollIntervalField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_THREADS, queueThreadsField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_PARTITION_KEY, queuePartitionKeyField.getText());
         properties.put(QueuedSenderProperties.RECONNECT_INTERVAL, reconnectIntervalField.getText());
 
         if (usePersistentQueuesYesRadio.isSelected()) {
@@ -179,6 +201,21 @@ public class HttpSender extends ConnectorClass {
         checkMultipartEnabled();
 
         sendTimeoutField.setText(props.getProperty(HttpSenderProperties.HTTP_SOCKET_TIMEOUT));
+        maxConnectionsPerHostField.setText(props.getProperty(HttpSenderProperties.HTTP_MAX_CONNECTIONS_PER_HOST, "20"));
+        maxConnectionsField.setText(props.getProperty(HttpSenderProperties.HTTP_MAX_CONNECTIONS, "100"));
+        idleTimeoutField.setText(props.getProperty(HttpSenderProperties.HTTP_IDLE_TIMEOUT, "60000"));
+
+        if (props.getProperty(HttpSenderProperties.HTTP_COMPRESS_REQUEST, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            compressRequestYesRadio.setSelected(true);
+        } else {
+            compressRequestNoRadio.setSelected(true);
+        }
+
+        if (props.getProperty(HttpSenderProperties.HTTP_ACCEPT_COMPRESSED, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            acceptCompressedYesRadio.setSelected(true);
+        } else {
+            acceptCompressedNoRadio.setSelected(true);
+        }
 
         if (((String) props.get(HttpSenderProperties.HTTP_USE_AUTHENTICATION)).equals(UIConstants.YES_OPTION)) {
             authenticationYesRadio.setSelected(true);
@@ -222,6 +259,8 @@ public class HttpSender extends ConnectorClass {
         contentTextArea.setText((String) props.get(HttpSenderProperties.HTTP_CONTENT));
 
         queuePollIntervalField.setText((String) props.get(QueuedSenderProperties.QUEUE_POLL_INTERVAL));
+        queueThreadsField.setText(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"));
+        queuePartitionKeyField.setText(props.getProperty(QueuedSenderProperties.QUEUE_PARTITION_KEY, ""));
         reconnectIntervalField.setText((String) props.get(QueuedSenderProperties.RECONNECT_INTERVAL));
 
         if (((String) props.get(QueuedSenderProperties.USE_PERSISTENT_QUEUES)).equals(UIConstants.YES_OPTION)) {
@@ -541,6 +580,27 @@ public class HttpSender extends ConnectorClass {
             }
         }
 
+        if (NumberUtils.toInt(props.getProperty(HttpSenderProperties.HTTP_MAX_CONNECTIONS_PER_HOST, "20"), 0) <= 0) {
+            valid = false;
+            if (highlight) {
+                maxConnectionsPerHostField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
+        if (NumberUtils.toInt(props.getProperty(HttpSenderProperties.HTTP_MAX_CONNECTIONS, "100"), 0) <= 0) {
+            valid = false;
+            if (highlight) {
+                maxConnectionsField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
+        if (NumberUtils.toInt(props.getProperty(HttpSenderProperties.HTTP_IDLE_TIMEOUT, "60000"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                idleTimeoutField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
         if (((String) props.get(QueuedSenderProperties.USE_PERSISTENT_QUEUES)).equals(UIConstants.YES_OPTION)) {
 
             if (((String) props.get(QueuedSenderProperties.RECONNECT_INTERVAL)).length() == 0) {
@@ -556,6 +616,13 @@ public class HttpSender extends ConnectorClass {
                     queuePollIntervalField.setBackground(UIConstants.INVALID_COLOR);
                 }
             }
+
+            if (NumberUtils.toInt(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    queueThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
         }
 
         if (((String) props.getProperty(HttpSenderProperties.HTTP_METHOD)).equalsIgnoreCase("post") || ((String) props.getProperty(HttpSenderProperties.HTTP_METHOD)).equalsIgnoreCase("put")) {
@@ -580,7 +647,11 @@ public class HttpSender extends ConnectorClass {
     private void resetInvalidProperties() {
         urlField.setBackground(null);
         sendTimeoutField.setBackground(null);
+        maxConnectionsPerHostField.setBackground(null);
+        maxConnectionsField.setBackground(null);
+        idleTimeoutField.setBackground(null);
         queuePollIntervalField.setBackground(null);
+        queueThreadsField.setBackground(null);
         reconnectIntervalField.setBackground(null);
         contentTypeField.setBackground(null);
         contentTextArea.setBackground(null);
@@ -660,6 +731,8 @@ public class HttpSender extends ConnectorClass {
         multipartButtonGroup = new javax.swing.ButtonGroup();
         authenticationButtonGroup = new javax.swing.ButtonGroup();
         authenticationTypeButtonGroup = new javax.swing.ButtonGroup();
+        compressRequestButtonGroup = new javax.swing.ButtonGroup();
+        acceptCompressedButtonGroup = new javax.swing.ButtonGroup();
         urlLabel = new javax.swing.JLabel();
         urlField = new com.mirth.connect.client.ui.components.MirthTextField();
         queryParametersNewButton = new javax.swing.JButton();
@@ -712,6 +785,22 @@ public class HttpSender extends ConnectorClass {
         sendTimeoutLabel = new javax.swing.JLabel();
         queuePollIntervalField = new com.mirth.connect.client.ui.components.MirthTextField();
         queuePollIntervalLabel = new javax.swing.JLabel();
+        queueThreadsLabel = new javax.swing.JLabel();
+        queueThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        queuePartitionKeyLabel = new javax.swing.JLabel();
+        queuePartitionKeyField = new com.mirth.connect.client.ui.components.MirthTextField();
+        maxConnectionsPerHostLabel = new javax.swing.JLabel();
+        maxConnectionsPerHostField = new com.mirth.connect.client.ui.components.MirthTextField();
+        maxConnectionsLabel = new javax.swing.JLabel();
+        maxConnectionsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        idleTimeoutLabel = new javax.swing.JLabel();
+        idleTimeoutField = new com.mirth.connect.client.ui.components.MirthTextField();
+        compressRequestLabel = new javax.swing.JLabel();
+        compressRequestYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        compressRequestNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        acceptCompressedLabel = new javax.swing.JLabel();
+        acceptCompressedYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        acceptCompressedNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -974,6 +1063,60 @@ public class HttpSender extends ConnectorClass {
 
         queuePollIntervalLabel.setText("Queue Poll Interval (ms):");
 
+        queueThreadsLabel.setText("Queue Threads:");
+
+        queueThreadsField.setToolTipText("<html>The number of threads that send the queued messages.<br>With more than one thread, messages are sent in parallel and are only kept in order within a partition.</html>");
+
+        queuePartitionKeyLabel.setText("Queue Partition Key:");
+
+        queuePartitionKeyField.setToolTipText("<html>Groups the queued messages into partitions, for example ${pid}.<br>Messages in the same partition are sent one at a time in queue order, while different partitions are sent in parallel.<br>Leave blank to send the messages in any order.</html>");
+
+        maxConnectionsPerHostLabel.setText("Max Connections Per Host:");
+
+        maxConnectionsPerHostField.setToolTipText("<html>The maximum number of connections that are kept open to the same server.<br>The queue threads wait for a connection when all of them are in use.</html>");
+
+        maxConnectionsLabel.setText("Max Connections:");
+
+        maxConnectionsField.setToolTipText("The maximum number of connections that are kept open to all servers.");
+
+        idleTimeoutLabel.setText("Idle Timeout (ms):");
+
+        idleTimeoutField.setToolTipText("<html>The number of milliseconds after which a connection that is not used is closed.<br>Enter 0 to keep the connections open until the connector is stopped.</html>");
+
+        compressRequestLabel.setText("Compress Request:");
+
+        compressRequestYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        compressRequestYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        compressRequestButtonGroup.add(compressRequestYesRadio);
+        compressRequestYesRadio.setText("Yes");
+        compressRequestYesRadio.setToolTipText("Compresses the content of POST and PUT requests with gzip.");
+        compressRequestYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        compressRequestNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        compressRequestNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        compressRequestButtonGroup.add(compressRequestNoRadio);
+        compressRequestNoRadio.setSelected(true);
+        compressRequestNoRadio.setText("No");
+        compressRequestNoRadio.setToolTipText("Sends the content of the requests as is.");
+        compressRequestNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        acceptCompressedLabel.setText("Accept Compressed:");
+
+        acceptCompressedYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        acceptCompressedYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        acceptCompressedButtonGroup.add(acceptCompressedYesRadio);
+        acceptCompressedYesRadio.setText("Yes");
+        acceptCompressedYesRadio.setToolTipText("Asks the server to compress the response with gzip, and decompresses it.");
+        acceptCompressedYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        acceptCompressedNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        acceptCompressedNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        acceptCompressedButtonGroup.add(acceptCompressedNoRadio);
+        acceptCompressedNoRadio.setSelected(true);
+        acceptCompressedNoRadio.setText("No");
+        acceptCompressedNoRadio.setToolTipText("Does not ask the server to compress the response.");
+        acceptCompressedNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -993,14 +1136,23 @@ public class HttpSender extends ConnectorClass {
                     .addComponent(charsetEncodingLabel)
                     .addComponent(responseContentLabel)
                     .addComponent(sendTimeoutLabel)
+                    .addComponent(maxConnectionsPerHostLabel)
+                    .addComponent(maxConnectionsLabel)
+                    .addComponent(idleTimeoutLabel)
+                    .addComponent(compressRequestLabel)
+                    .addComponent(acceptCompressedLabel)
                     .addComponent(authenticationLabel)
                     .addComponent(authenticationTypeLabel)
                     .addComponent(usernameLabel)
                     .addComponent(jLabel36)
                     .addComponent(passwordLabel)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queueThreadsLabel)
                     .addComponent(queuePollIntervalLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, 200, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addContainerGap())
@@ -1060,6 +1212,17 @@ public class HttpSender extends ConnectorClass {
                                                             .addComponent(putButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                                                             .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                                                             .addComponent(deleteButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                                        .addComponent(maxConnectionsPerHostField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                        .addComponent(maxConnectionsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                        .addComponent(idleTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                        .addGroup(layout.createSequentialGroup()
+                                                            .addComponent(compressRequestYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                            .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                                            .addComponent(compressRequestNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                                        .addGroup(layout.createSequentialGroup()
+                                                            .addComponent(acceptCompressedYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                            .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                                            .addComponent(acceptCompressedNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                                                         .addComponent(channelNames, javax.swing.GroupLayout.PREFERRED_SIZE, 250, javax.swing.GroupLayout.PREFERRED_SIZE)
                                                         .addComponent(reconnectIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE))
                                                     .addGap(14, 14, 14))
@@ -1112,6 +1275,28 @@ public class HttpSender extends ConnectorClass {
                     .addComponent(sendTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(sendTimeoutLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(maxConnectionsPerHostLabel)
+                    .addComponent(maxConnectionsPerHostField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(maxConnectionsLabel)
+                    .addComponent(maxConnectionsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(idleTimeoutLabel)
+                    .addComponent(idleTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(compressRequestLabel)
+                    .addComponent(compressRequestYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(compressRequestNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(acceptCompressedLabel)
+                    .addComponent(acceptCompressedYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(acceptCompressedNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(URL1)
                     .addComponent(channelNames, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
@@ -1149,6 +1334,14 @@ public class HttpSender extends ConnectorClass {
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queueThreadsLabel)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(reconnectIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(reconnectIntervalLabel))
@@ -1216,6 +1409,10 @@ private void usePersistentQueuesNoRadioActionPerformed(java.awt.event.ActionEven
     rotateMessagesCheckBox.setEnabled(false);
     queuePollIntervalLabel.setEnabled(false);
     queuePollIntervalField.setEnabled(false);
+    queueThreadsLabel.setEnabled(false);
+    queueThreadsField.setEnabled(false);
+    queuePartitionKeyLabel.setEnabled(false);
+    queuePartitionKeyField.setEnabled(false);
     reconnectIntervalField.setEnabled(false);
     reconnectIntervalLabel.setEnabled(false);
 }//GEN-LAST:event_usePersistentQueuesNoRadioActionPerformed
@@ -1224,6 +1421,10 @@ private void usePersistentQueuesYesRadioActionPerformed(java.awt.event.ActionEve
     rotateMessagesCheckBox.setEnabled(true);
     queuePollIntervalLabel.setEnabled(true);
     queuePollIntervalField.setEnabled(true);
+    queueThreadsLabel.setEnabled(true);
+    queueThreadsField.setEnabled(true);
+    queuePartitionKeyLabel.setEnabled(true);
+    queuePartitionKeyField.setEnabled(true);
     reconnectIntervalField.setEnabled(true);
     reconnectIntervalLabel.setEnabled(true);
 }//GEN-LAST:event_usePersistentQueuesYesRadioActionPerformed
@@ -1318,6 +1519,10 @@ private void authenticationNoRadioActionPerformed(java.awt.event.ActionEvent evt
 }//GEN-LAST:event_authenticationNoRadioActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel URL1;
+    private javax.swing.ButtonGroup acceptCompressedButtonGroup;
+    private javax.swing.JLabel acceptCompressedLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton acceptCompressedNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton acceptCompressedYesRadio;
     private javax.swing.ButtonGroup authenticationButtonGroup;
     private javax.swing.JLabel authenticationLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton authenticationNoRadio;
@@ -1329,6 +1534,10 @@ private void authenticationNoRadioActionPerformed(java.awt.event.ActionEvent evt
     private com.mirth.connect.client.ui.components.MirthComboBox channelNames;
     private com.mirth.connect.client.ui.components.MirthComboBox charsetEncodingCombobox;
     private javax.swing.JLabel charsetEncodingLabel;
+    private javax.swing.ButtonGroup compressRequestButtonGroup;
+    private javax.swing.JLabel compressRequestLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton compressRequestNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton compressRequestYesRadio;
     private javax.swing.JLabel contentLabel;
     private com.mirth.connect.client.ui.components.MirthSyntaxTextArea contentTextArea;
     private com.mirth.connect.client.ui.components.MirthTextField contentTypeField;
@@ -1340,7 +1549,13 @@ private void authenticationNoRadioActionPerformed(java.awt.event.ActionEvent evt
     private javax.swing.JButton headersNewButton;
     private javax.swing.JScrollPane headersPane;
     private com.mirth.connect.client.ui.components.MirthTable headersTable;
+    private com.mirth.connect.client.ui.components.MirthTextField idleTimeoutField;
+    private javax.swing.JLabel idleTimeoutLabel;
     private javax.swing.JLabel jLabel36;
+    private com.mirth.connect.client.ui.components.MirthTextField maxConnectionsField;
+    private javax.swing.JLabel maxConnectionsLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField maxConnectionsPerHostField;
+    private javax.swing.JLabel maxConnectionsPerHostLabel;
     private javax.swing.ButtonGroup methodButtonGroup;
     private javax.swing.JLabel methodLabel;
     private javax.swing.ButtonGroup multipartButtonGroup;
@@ -1356,8 +1571,12 @@ private void authenticationNoRadioActionPerformed(java.awt.event.ActionEvent evt
     private javax.swing.JButton queryParametersNewButton;
     private javax.swing.JScrollPane queryParametersPane;
     private com.mirth.connect.client.ui.components.MirthTable queryParametersTable;
+    private com.mirth.connect.client.ui.components.MirthTextField queuePartitionKeyField;
+    private javax.swing.JLabel queuePartitionKeyLabel;
     private com.mirth.connect.client.ui.components.MirthTextField queuePollIntervalField;
     private javax.swing.JLabel queuePollIntervalLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField queueThreadsField;
+    private javax.swing.JLabel queueThreadsLabel;
     private com.mirth.connect.client.ui.components.MirthTextField reconnectIntervalField;
     private javax.swing.JLabel reconnectIntervalLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton responseContentBodyOnlyButton;
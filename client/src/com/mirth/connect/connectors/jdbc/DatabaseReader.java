@@ -19,6 +19,7 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.xml.parsers.DocumentBuilderFactory;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.EvaluatorException;
 import org.syntax.jedit.SyntaxDocument;
@@ -114,6 +115,8 @@ public class DatabaseReader extends ConnectorClass {
         });
 
         pollingFrequency.setDocument(new MirthFieldConstraints(0, false, false, true));
+        fetchSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        ackBatchSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
     }
 
     public Properties getProperties() {
@@ -166,6 +169,15 @@ public class DatabaseReader extends ConnectorClass {
             properties.put(DatabaseReaderProperties.DATABASE_POLLING_TIME, pollingTime.getDate());
         }
 
+        if (streamResultsYesButton.isSelected()) {
+            properties.put(DatabaseReaderProperties.DATABASE_STREAM_RESULTS, UIConstants.YES_OPTION);
+        } else {
+            properties.put(DatabaseReaderProperties.DATABASE_STREAM_RESULTS, UIConstants.NO_OPTION);
+        }
+
+        properties.put(DatabaseReaderProperties.DATABASE_FETCH_SIZE, fetchSizeField.getText());
+        properties.put(DatabaseReaderProperties.DATABASE_ACK_BATCH_SIZE, ackBatchSizeField.getText());
+
         return properties;
     }
 
@@ -222,6 +234,16 @@ public class DatabaseReader extends ConnectorClass {
             pollingTimeButtonActionPerformed(null);
             pollingTime.setDate((String) props.get(DatabaseReaderProperties.DATABASE_POLLING_TIME));
         }
+
+        if (props.getProperty(DatabaseReaderProperties.DATABASE_STREAM_RESULTS, UIConstants.NO_OPTION).equalsIgnoreCase(UIConstants.YES_OPTION)) {
+            streamResultsYesButton.setSelected(true);
+        } else {
+            streamResultsNoButton.setSelected(true);
+        }
+
+        fetchSizeField.setText(props.getProperty(DatabaseReaderProperties.DATABASE_FETCH_SIZE, "1000"));
+        ackBatchSizeField.setText(props.getProperty(DatabaseReaderProperties.DATABASE_ACK_BATCH_SIZE, "100"));
+        updateStreamResultsFields();
     }
 
     public Properties getDefaults() {
@@ -265,6 +287,20 @@ public class DatabaseReader extends ConnectorClass {
                 }
             }
         }
+        if (props.getProperty(DatabaseReaderProperties.DATABASE_STREAM_RESULTS, UIConstants.NO_OPTION).equalsIgnoreCase(UIConstants.YES_OPTION) && props.getProperty(DatabaseReaderProperties.DATABASE_USE_JS, UIConstants.NO_OPTION).equalsIgnoreCase(UIConstants.NO_OPTION)) {
+            if (NumberUtils.toInt(props.getProperty(DatabaseReaderProperties.DATABASE_FETCH_SIZE), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    fetchSizeField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+            if (NumberUtils.toInt(props.getProperty(DatabaseReaderProperties.DATABASE_ACK_BATCH_SIZE), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    ackBatchSizeField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        }
         if ((((String) props.get(DatabaseReaderProperties.DATABASE_DRIVER)).equals("Please Select One"))) {
             valid = false;
             if (highlight) {
@@ -281,6 +317,8 @@ public class DatabaseReader extends ConnectorClass {
         pollingTime.setBackground(null);
         databaseSQLTextPane.setBackground(null);
         databaseUpdateSQLTextPane.setBackground(null);
+        fetchSizeField.setBackground(null);
+        ackBatchSizeField.setBackground(null);
         databaseDriverCombobox.setBackground(UIConstants.COMBO_BOX_BACKGROUND);
     }
 
@@ -414,6 +452,7 @@ public class DatabaseReader extends ConnectorClass {
         buttonGroup2 = new javax.swing.ButtonGroup();
         buttonGroup3 = new javax.swing.ButtonGroup();
         buttonGroup4 = new javax.swing.ButtonGroup();
+        buttonGroup5 = new javax.swing.ButtonGroup();
         jLabel1 = new javax.swing.JLabel();
         jLabel2 = new javax.swing.JLabel();
         jLabel3 = new javax.swing.JLabel();
@@ -451,6 +490,13 @@ public class DatabaseReader extends ConnectorClass {
         processResultsInOrderYesButton = new com.mirth.connect.client.ui.components.MirthRadioButton();
         jLabel10 = new javax.swing.JLabel();
         insertURLTemplateButton = new javax.swing.JButton();
+        streamResultsLabel = new javax.swing.JLabel();
+        streamResultsYesButton = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        streamResultsNoButton = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        fetchSizeLabel = new javax.swing.JLabel();
+        fetchSizeField = new com.mirth.connect.client.ui.components.MirthTextField();
+        ackBatchSizeLabel = new javax.swing.JLabel();
+        ackBatchSizeField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -627,6 +673,40 @@ public class DatabaseReader extends ConnectorClass {
             }
         });
 
+        streamResultsLabel.setText("Stream Results:");
+
+        streamResultsYesButton.setBackground(new java.awt.Color(255, 255, 255));
+        streamResultsYesButton.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        buttonGroup5.add(streamResultsYesButton);
+        streamResultsYesButton.setText("Yes");
+        streamResultsYesButton.setToolTipText("Read the rows with a cursor and process each row as it is read, instead of loading the whole result first. Not used with JavaScript.");
+        streamResultsYesButton.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        streamResultsYesButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                streamResultsYesButtonActionPerformed(evt);
+            }
+        });
+
+        streamResultsNoButton.setBackground(new java.awt.Color(255, 255, 255));
+        streamResultsNoButton.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        buttonGroup5.add(streamResultsNoButton);
+        streamResultsNoButton.setText("No");
+        streamResultsNoButton.setToolTipText("Load the whole result of the query before processing the rows.");
+        streamResultsNoButton.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        streamResultsNoButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                streamResultsNoButtonActionPerformed(evt);
+            }
+        });
+
+        fetchSizeLabel.setText("Fetch Size:");
+
+        fetchSizeField.setToolTipText("The number of rows that the driver reads from the database at a time when the results are streamed.");
+
+        ackBatchSizeLabel.setText("Ack Batch Size:");
+
+        ackBatchSizeField.setToolTipText("The number of On-Update statements that are run together in one batch when the results are streamed.");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -645,7 +725,9 @@ public class DatabaseReader extends ConnectorClass {
                     .addComponent(jLabel6)
                     .addComponent(pollingTimeLabel)
                     .addComponent(jLabel5)
-                    .addComponent(jLabel10))
+                    .addComponent(jLabel10)
+                    .addComponent(streamResultsLabel)
+                    .addComponent(fetchSizeLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
@@ -685,11 +767,21 @@ public class DatabaseReader extends ConnectorClass {
                                     .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                         .addComponent(pollingTime, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
-                                            .addGroup(layout.createSequentialGroup()
+                                            .addGroup(javax.swing.GroupLayout.Alignment.LEADING, layout.createSequentialGroup()
                                                 .addComponent(processResultsInOrderYesButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                                                 .addComponent(processResultsInOrderNoButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                                                 .addGap(75, 75, 75))
+                                            .addGroup(javax.swing.GroupLayout.Alignment.LEADING, layout.createSequentialGroup()
+                                                .addComponent(streamResultsYesButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                                .addComponent(streamResultsNoButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                            .addGroup(javax.swing.GroupLayout.Alignment.LEADING, layout.createSequentialGroup()
+                                                .addComponent(fetchSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                                                .addComponent(ackBatchSizeLabel)
+                                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                                .addComponent(ackBatchSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE))
                                             .addGroup(javax.swing.GroupLayout.Alignment.LEADING, layout.createSequentialGroup()
                                                 .addComponent(useJavaScriptYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -748,6 +840,17 @@ public class DatabaseReader extends ConnectorClass {
                             .addComponent(processResultsInOrderYesButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addComponent(processResultsInOrderNoButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(streamResultsLabel)
+                            .addComponent(streamResultsYesButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(streamResultsNoButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(fetchSizeLabel)
+                            .addComponent(fetchSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(ackBatchSizeLabel)
+                            .addComponent(ackBatchSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                             .addComponent(jLabel6)
                             .addComponent(useJavaScriptYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -926,6 +1029,7 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
 
         generateUpdateConnection.setEnabled(false);
         dbVarList.setPrefixAndSuffix("${", "}");
+        updateStreamResultsFields();
     }// GEN-LAST:event_useJavaScriptNoActionPerformed
 
     private void useJavaScriptYesActionPerformed(java.awt.event.ActionEvent evt)// GEN-FIRST:event_useJavaScriptYesActionPerformed
@@ -946,6 +1050,7 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
             generateUpdateConnection.setEnabled(true);
         }
         dbVarList.setPrefixAndSuffix("$('", "')");
+        updateStreamResultsFields();
     }// GEN-LAST:event_useJavaScriptYesActionPerformed
 
     private void readOnUpdateNoActionPerformed(java.awt.event.ActionEvent evt)// GEN-FIRST:event_readOnUpdateNoActionPerformed
@@ -964,11 +1069,41 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
             generateUpdateConnection.setEnabled(true);
         }
     }// GEN-LAST:event_readOnUpdateYesActionPerformed
+
+    private void streamResultsYesButtonActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_streamResultsYesButtonActionPerformed
+    {//GEN-HEADEREND:event_streamResultsYesButtonActionPerformed
+        updateStreamResultsFields();
+    }//GEN-LAST:event_streamResultsYesButtonActionPerformed
+
+    private void streamResultsNoButtonActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_streamResultsNoButtonActionPerformed
+    {//GEN-HEADEREND:event_streamResultsNoButtonActionPerformed
+        updateStreamResultsFields();
+    }//GEN-LAST:event_streamResultsNoButtonActionPerformed
+
+    /*
+     * The results are only streamed when the query is SQL, so the streaming
+     * settings are disabled for JavaScript.
+     */
+    private void updateStreamResultsFields() {
+        boolean sql = !useJavaScriptYes.isSelected();
+        boolean streaming = sql && streamResultsYesButton.isSelected();
+
+        streamResultsLabel.setEnabled(sql);
+        streamResultsYesButton.setEnabled(sql);
+        streamResultsNoButton.setEnabled(sql);
+        fetchSizeLabel.setEnabled(streaming);
+        fetchSizeField.setEnabled(streaming);
+        ackBatchSizeLabel.setEnabled(streaming);
+        ackBatchSizeField.setEnabled(streaming);
+    }
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private com.mirth.connect.client.ui.components.MirthTextField ackBatchSizeField;
+    private javax.swing.JLabel ackBatchSizeLabel;
     private javax.swing.ButtonGroup buttonGroup1;
     private javax.swing.ButtonGroup buttonGroup2;
     private javax.swing.ButtonGroup buttonGroup3;
     private javax.swing.ButtonGroup buttonGroup4;
+    private javax.swing.ButtonGroup buttonGroup5;
     private com.mirth.connect.client.ui.components.MirthComboBox databaseDriverCombobox;
     private com.mirth.connect.client.ui.components.MirthPasswordField databasePasswordField;
     private com.mirth.connect.client.ui.components.MirthSyntaxTextArea databaseSQLTextPane;
@@ -976,6 +1111,8 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
     private com.mirth.connect.client.ui.components.MirthSyntaxTextArea databaseUpdateSQLTextPane;
     private com.mirth.connect.client.ui.components.MirthTextField databaseUsernameField;
     private com.mirth.connect.client.ui.components.MirthVariableList dbVarList;
+    private com.mirth.connect.client.ui.components.MirthTextField fetchSizeField;
+    private javax.swing.JLabel fetchSizeLabel;
     private javax.swing.JButton generateConnection;
     private javax.swing.JButton generateSelect;
     private javax.swing.JButton generateUpdateConnection;
@@ -1004,6 +1141,9 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
     private com.mirth.connect.client.ui.components.MirthRadioButton readOnUpdateNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton readOnUpdateYes;
     private javax.swing.JLabel sqlLabel;
+    private javax.swing.JLabel streamResultsLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton streamResultsNoButton;
+    private com.mirth.connect.client.ui.components.MirthRadioButton streamResultsYesButton;
     private com.mirth.connect.client.ui.components.MirthRadioButton useJavaScriptNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton useJavaScriptYes;
     // End of variables declaration//GEN-END:variables
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.EvaluatorException;
 import org.syntax.jedit.SyntaxDocument;
@@ -21,6 +22,7 @@ import org.syntax.jedit.tokenmarker.TSQLTokenMarker;
 
 import com.mirth.connect.client.core.ClientException;
 import com.mirth.connect.client.ui.UIConstants;
+import com.mirth.connect.client.ui.components.MirthFieldConstraints;
 import com.mirth.connect.connectors.ConnectorClass;
 import com.mirth.connect.connectors.jdbc.DatabaseMetadataDialog.STATEMENT_TYPE;
 import com.mirth.connect.model.DriverInfo;
@@ -60,6 +62,9 @@ public class DatabaseWriter extends ConnectorClass {
         sqlMappingDoc.setTokenMarker(new TSQLTokenMarker());
         jsMappingDoc = new SyntaxDocument();
         jsMappingDoc.setTokenMarker(new JavaScriptTokenMarker());
+
+        batchSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        batchIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
     }
 
     public Properties getProperties() {
@@ -88,6 +93,9 @@ public class DatabaseWriter extends ConnectorClass {
             properties.put(DatabaseWriterProperties.DATABASE_JS_SQL_STATEMENT, "");
         }
 
+        properties.put(DatabaseWriterProperties.DATABASE_BATCH_SIZE, batchSizeField.getText());
+        properties.put(DatabaseWriterProperties.DATABASE_BATCH_INTERVAL, batchIntervalField.getText());
+
         return properties;
     }
 
@@ -117,6 +125,9 @@ public class DatabaseWriter extends ConnectorClass {
             databaseSQLTextPane.setText((String) props.get(DatabaseWriterProperties.DATABASE_SQL_STATEMENT));
         }
 
+        batchSizeField.setText(props.getProperty(DatabaseWriterProperties.DATABASE_BATCH_SIZE, "1"));
+        batchIntervalField.setText(props.getProperty(DatabaseWriterProperties.DATABASE_BATCH_INTERVAL, "100"));
+        updateBatchFields();
     }
 
     public Properties getDefaults() {
@@ -139,6 +150,20 @@ public class DatabaseWriter extends ConnectorClass {
                 databaseSQLTextPane.setBackground(UIConstants.INVALID_COLOR);
             }
         }
+        if (props.getProperty(DatabaseWriterProperties.DATABASE_USE_JS, UIConstants.NO_OPTION).equalsIgnoreCase(UIConstants.NO_OPTION)) {
+            if (NumberUtils.toInt(props.getProperty(DatabaseWriterProperties.DATABASE_BATCH_SIZE), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    batchSizeField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+            if (NumberUtils.toInt(props.getProperty(DatabaseWriterProperties.DATABASE_BATCH_INTERVAL), -1) < 0) {
+                valid = false;
+                if (highlight) {
+                    batchIntervalField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        }
         if ((((String) props.get(DatabaseWriterProperties.DATABASE_DRIVER)).equals("Please Select One"))) {
             valid = false;
             if (highlight) {
@@ -161,6 +186,8 @@ public class DatabaseWriter extends ConnectorClass {
         databaseURLField.setBackground(null);
         databaseSQLTextPane.setBackground(null);
         databaseDriverCombobox.setBackground(UIConstants.COMBO_BOX_BACKGROUND);
+        batchSizeField.setBackground(null);
+        batchIntervalField.setBackground(null);
     }
 
     public String doValidate(Properties props, boolean highlight) {
@@ -221,6 +248,10 @@ public class DatabaseWriter extends ConnectorClass {
         jLabel7 = new javax.swing.JLabel();
         generateInsert = new javax.swing.JButton();
         insertURLTemplateButton = new javax.swing.JButton();
+        batchSizeLabel = new javax.swing.JLabel();
+        batchSizeField = new com.mirth.connect.client.ui.components.MirthTextField();
+        batchIntervalLabel = new javax.swing.JLabel();
+        batchIntervalField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -296,6 +327,14 @@ public class DatabaseWriter extends ConnectorClass {
             }
         });
 
+        batchSizeLabel.setText("Batch Size:");
+
+        batchSizeField.setToolTipText("<html>The maximum number of messages that are written together in one batch.<br>Messages that are sent at the same time by the queue threads are batched. Not used with JavaScript.</html>");
+
+        batchIntervalLabel.setText("Batch Interval (ms):");
+
+        batchIntervalField.setToolTipText("The longest time in milliseconds that a message waits for other messages to join its batch.");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -308,6 +347,7 @@ public class DatabaseWriter extends ConnectorClass {
                     .addComponent(jLabel3)
                     .addComponent(jLabel4)
                     .addComponent(jLabel6)
+                    .addComponent(batchSizeLabel)
                     .addComponent(sqlLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -332,6 +372,12 @@ public class DatabaseWriter extends ConnectorClass {
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(generateInsert)
                         .addContainerGap())
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(batchSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(batchIntervalLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(batchIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE))
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(databaseSQLTextPane, javax.swing.GroupLayout.DEFAULT_SIZE, 371, Short.MAX_VALUE)
                         .addContainerGap())))
@@ -370,6 +416,12 @@ public class DatabaseWriter extends ConnectorClass {
                         .addComponent(jLabel7)
                         .addComponent(generateInsert)))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(batchSizeLabel)
+                    .addComponent(batchSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(batchIntervalLabel)
+                    .addComponent(batchIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(sqlLabel)
                     .addComponent(databaseSQLTextPane, javax.swing.GroupLayout.DEFAULT_SIZE, 205, Short.MAX_VALUE))
@@ -474,6 +526,7 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
         databaseSQLTextPane.setDocument(jsMappingDoc);
         databaseSQLTextPane.setText(generateConnectionString());
         generateConnection.setEnabled(true);
+        updateBatchFields();
         parent.channelEditPanel.destinationVariableList.setPrefixAndSuffix("$('", "')");
     }// GEN-LAST:event_useJavaScriptYesActionPerformed
 
@@ -483,9 +536,24 @@ private void insertURLTemplateButtonActionPerformed(java.awt.event.ActionEvent e
         databaseSQLTextPane.setDocument(sqlMappingDoc);
         databaseSQLTextPane.setText("");
         generateConnection.setEnabled(false);
+        updateBatchFields();
         parent.channelEditPanel.destinationVariableList.setPrefixAndSuffix("${", "}");
     }// GEN-LAST:event_useJavaScriptNoActionPerformed
+
+    // statements are only batched when they are not written by JavaScript
+    private void updateBatchFields() {
+        boolean sql = !useJavaScriptYes.isSelected();
+
+        batchSizeLabel.setEnabled(sql);
+        batchSizeField.setEnabled(sql);
+        batchIntervalLabel.setEnabled(sql);
+        batchIntervalField.setEnabled(sql);
+    }
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private com.mirth.connect.client.ui.components.MirthTextField batchIntervalField;
+    private javax.swing.JLabel batchIntervalLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField batchSizeField;
+    private javax.swing.JLabel batchSizeLabel;
     private javax.swing.ButtonGroup buttonGroup1;
     private com.mirth.connect.client.ui.components.MirthComboBox databaseDriverCombobox;
     private com.mirth.connect.client.ui.components.MirthPasswordField databasePasswordField;
@@ -22,6 +22,8 @@ import java.util.regex.Pattern;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.SwingWorker;
 
+import org.apache.commons.lang.math.NumberUtils;
+
 import com.mirth.connect.client.core.ClientException;
 import com.mirth.connect.client.ui.UIConstants;
 import com.mirth.connect.client.ui.components.MirthFieldConstraints;
@@ -45,6 +47,8 @@ public class LLPListener extends ConnectorClass {
         reconnectIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
         receiveTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
         bufferSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        selectorThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        workerThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
         parent.setupCharsetEncodingForConnector(charsetEncodingCombobox);
     }
 
@@ -99,6 +103,15 @@ public class LLPListener extends ConnectorClass {
         }
 
         properties.put(LLPListenerProperties.CONNECTOR_CHARSET_ENCODING, parent.getSelectedEncodingForConnector(charsetEncodingCombobox));
+
+        if (useNioYesRadio.isSelected()) {
+            properties.put(LLPListenerProperties.LLP_USE_NIO, UIConstants.YES_OPTION);
+        } else {
+            properties.put(LLPListenerProperties.LLP_USE_NIO, UIConstants.NO_OPTION);
+        }
+
+        properties.put(LLPListenerProperties.LLP_SELECTOR_THREADS, selectorThreadsField.getText());
+        properties.put(LLPListenerProperties.LLP_WORKER_THREADS, workerThreadsField.getText());
         properties.put(LLPListenerProperties.LLP_ACKCODE_SUCCESSFUL, successACKCode.getText());
         properties.put(LLPListenerProperties.LLP_ACKMSG_SUCCESSFUL, successACKMessage.getText());
         properties.put(LLPListenerProperties.LLP_ACKCODE_ERROR, errorACKCode.getText());
@@ -193,6 +206,16 @@ public class LLPListener extends ConnectorClass {
 
         parent.setPreviousSelectedEncodingForConnector(charsetEncodingCombobox, (String) props.get(LLPListenerProperties.CONNECTOR_CHARSET_ENCODING));
 
+        if (props.getProperty(LLPListenerProperties.LLP_USE_NIO, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            useNioYesRadio.setSelected(true);
+        } else {
+            useNioNoRadio.setSelected(true);
+        }
+
+        selectorThreadsField.setText(props.getProperty(LLPListenerProperties.LLP_SELECTOR_THREADS, "2"));
+        workerThreadsField.setText(props.getProperty(LLPListenerProperties.LLP_WORKER_THREADS, "16"));
+        updateNioFields();
+
         successACKCode.setText((String) props.get(LLPListenerProperties.LLP_ACKCODE_SUCCESSFUL));
         successACKMessage.setText((String) props.get(LLPListenerProperties.LLP_ACKMSG_SUCCESSFUL));
         errorACKCode.setText((String) props.get(LLPListenerProperties.LLP_ACKCODE_ERROR));
@@ -333,6 +356,20 @@ public class LLPListener extends ConnectorClass {
                 }
             }
         }
+        if (((String) props.get(LLPListenerProperties.LLP_SERVER_MODE)).equals(UIConstants.YES_OPTION) && props.getProperty(LLPListenerProperties.LLP_USE_NIO, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            if (NumberUtils.toInt(props.getProperty(LLPListenerProperties.LLP_SELECTOR_THREADS), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    selectorThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+            if (NumberUtils.toInt(props.getProperty(LLPListenerProperties.LLP_WORKER_THREADS), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    workerThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        }
 
         return valid;
     }
@@ -343,6 +380,8 @@ public class LLPListener extends ConnectorClass {
         reconnectIntervalField.setBackground(null);
         receiveTimeoutField.setBackground(null);
         bufferSizeField.setBackground(null);
+        selectorThreadsField.setBackground(null);
+        workerThreadsField.setBackground(null);
         endOfMessageCharacterField.setBackground(null);
         startOfMessageCharacterField.setBackground(null);
         recordSeparatorField.setBackground(null);
@@ -354,6 +393,20 @@ public class LLPListener extends ConnectorClass {
         ackPortField.setBackground(null);
     }
 
+    private void updateNioFields() {
+        // the NIO listener is only used in server mode
+        boolean serverMode = serverRadioButton.isSelected();
+        useNioLabel.setEnabled(serverMode);
+        useNioYesRadio.setEnabled(serverMode);
+        useNioNoRadio.setEnabled(serverMode);
+
+        boolean enabled = serverMode && useNioYesRadio.isSelected();
+        selectorThreadsLabel.setEnabled(enabled);
+        selectorThreadsField.setEnabled(enabled);
+        workerThreadsLabel.setEnabled(enabled);
+        workerThreadsField.setEnabled(enabled);
+    }
+
     @Override
     public String doValidate(Properties props, boolean highlight) {
         String error = null;
@@ -476,6 +529,7 @@ public class LLPListener extends ConnectorClass {
         buttonGroup6 = new javax.swing.ButtonGroup();
         serverClientButtonGroup = new javax.swing.ButtonGroup();
         processBatchGroup = new javax.swing.ButtonGroup();
+        useNioButtonGroup = new javax.swing.ButtonGroup();
         addressLabel = new javax.swing.JLabel();
         portLabel = new javax.swing.JLabel();
         jLabel3 = new javax.swing.JLabel();
@@ -539,6 +593,13 @@ public class LLPListener extends ConnectorClass {
         processBatchNo = new com.mirth.connect.client.ui.components.MirthRadioButton();
         jLabel1 = new javax.swing.JLabel();
         testConnection = new javax.swing.JButton();
+        useNioLabel = new javax.swing.JLabel();
+        useNioYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        useNioNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        selectorThreadsLabel = new javax.swing.JLabel();
+        selectorThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        workerThreadsLabel = new javax.swing.JLabel();
+        workerThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -796,6 +857,41 @@ public class LLPListener extends ConnectorClass {
             }
         });
 
+        useNioLabel.setText("Use NIO:");
+
+        useNioYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        useNioYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        useNioButtonGroup.add(useNioYesRadio);
+        useNioYesRadio.setText("Yes");
+        useNioYesRadio.setToolTipText("<html>Select Yes to serve all connections with a few selector threads instead of a thread per connection,<br>so that many mostly idle connections can be kept open.<br>Only used in server mode.</html>");
+        useNioYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        useNioYesRadio.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                useNioYesRadioActionPerformed(evt);
+            }
+        });
+
+        useNioNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        useNioNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        useNioButtonGroup.add(useNioNoRadio);
+        useNioNoRadio.setSelected(true);
+        useNioNoRadio.setText("No");
+        useNioNoRadio.setToolTipText("<html>Select Yes to serve all connections with a few selector threads instead of a thread per connection,<br>so that many mostly idle connections can be kept open.<br>Only used in server mode.</html>");
+        useNioNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        useNioNoRadio.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                useNioNoRadioActionPerformed(evt);
+            }
+        });
+
+        selectorThreadsLabel.setText("Selector Threads:");
+
+        selectorThreadsField.setToolTipText("The number of threads that accept the connections and read and write their data.");
+
+        workerThreadsLabel.setText("Worker Threads:");
+
+        workerThreadsField.setToolTipText("<html>The number of threads that process the received messages.<br>The messages of one connection are processed one at a time.</html>");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -803,6 +899,9 @@ public class LLPListener extends ConnectorClass {
             .addGroup(layout.createSequentialGroup()
                 .addGap(10, 10, 10)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(workerThreadsLabel)
+                    .addComponent(selectorThreadsLabel)
+                    .addComponent(useNioLabel)
                     .addComponent(jLabel4)
                     .addComponent(jLabel6)
                     .addComponent(jLabel34)
@@ -833,6 +932,12 @@ public class LLPListener extends ConnectorClass {
                         .addComponent(clientRadioButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                     .addComponent(listenerPortField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(receiveTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 100, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(useNioYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(useNioNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(selectorThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(workerThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(bufferSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 100, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(listenerAddressField, javax.swing.GroupLayout.PREFERRED_SIZE, 200, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -934,6 +1039,19 @@ public class LLPListener extends ConnectorClass {
                     .addComponent(jLabel4)
                     .addComponent(bufferSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(useNioLabel)
+                    .addComponent(useNioYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(useNioNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(selectorThreadsLabel)
+                    .addComponent(selectorThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(workerThreadsLabel)
+                    .addComponent(workerThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(processBatchYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(processBatchNo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -1055,6 +1173,7 @@ private void clientRadioButtonActionPerformed(java.awt.event.ActionEvent evt) {/
     reconnectIntervalField.setEnabled(true);
     reconnectIntervalLabel.setEnabled(true);
     testConnection.setEnabled(true);
+    updateNioFields();
 }//GEN-LAST:event_clientRadioButtonActionPerformed
 
 private void serverRadioButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_serverRadioButtonActionPerformed
@@ -1063,6 +1182,7 @@ private void serverRadioButtonActionPerformed(java.awt.event.ActionEvent evt) {/
     reconnectIntervalField.setEnabled(false);
     reconnectIntervalLabel.setEnabled(false);
     testConnection.setEnabled(false);
+    updateNioFields();
 }//GEN-LAST:event_serverRadioButtonActionPerformed
 
 private void useStrictLLPNoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_useStrictLLPNoActionPerformed
@@ -1201,6 +1321,14 @@ private void ackOnNewConnectionNoActionPerformed(java.awt.event.ActionEvent evt)
     ackIPLabel.setEnabled(false);
     ackPortLabel.setEnabled(false);
 }//GEN-LAST:event_ackOnNewConnectionNoActionPerformed
+
+private void useNioYesRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_useNioYesRadioActionPerformed
+    updateNioFields();
+}//GEN-LAST:event_useNioYesRadioActionPerformed
+
+private void useNioNoRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_useNioNoRadioActionPerformed
+    updateNioFields();
+}//GEN-LAST:event_useNioNoRadioActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private com.mirth.connect.client.ui.components.MirthTextField ackAddressField;
     private javax.swing.JLabel ackIPLabel;
@@ -1257,6 +1385,8 @@ private void ackOnNewConnectionNoActionPerformed(java.awt.event.ActionEvent evt)
     private javax.swing.JLabel rejectedACKMessageLabel;
     private com.mirth.connect.client.ui.components.MirthComboBox responseFromTransformer;
     private com.mirth.connect.client.ui.components.MirthTextField segmentEnd;
+    private com.mirth.connect.client.ui.components.MirthTextField selectorThreadsField;
+    private javax.swing.JLabel selectorThreadsLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton sendACKNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton sendACKTransformer;
     private com.mirth.connect.client.ui.components.MirthRadioButton sendACKYes;
@@ -1268,10 +1398,16 @@ private void ackOnNewConnectionNoActionPerformed(java.awt.event.ActionEvent evt)
     private com.mirth.connect.client.ui.components.MirthTextField successACKMessage;
     private javax.swing.JLabel successACKMessageLabel;
     private javax.swing.JButton testConnection;
+    private javax.swing.ButtonGroup useNioButtonGroup;
+    private javax.swing.JLabel useNioLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton useNioNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton useNioYesRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton useStrictLLPNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton useStrictLLPYes;
     private javax.swing.JLabel waitForEndOfMessageCharLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton waitForEndOfMessageCharNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton waitForEndOfMessageCharYes;
+    private com.mirth.connect.client.ui.components.MirthTextField workerThreadsField;
+    private javax.swing.JLabel workerThreadsLabel;
     // End of variables declaration//GEN-END:variables
 }
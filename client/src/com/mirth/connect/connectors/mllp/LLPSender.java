@@ -15,6 +15,8 @@ import java.util.Properties;
 
 import javax.swing.SwingWorker;
 
+import org.apache.commons.lang.math.NumberUtils;
+
 import com.mirth.connect.client.core.ClientException;
 import com.mirth.connect.client.ui.UIConstants;
 import com.mirth.connect.client.ui.components.MirthFieldConstraints;
@@ -38,6 +40,10 @@ public class LLPSender extends ConnectorClass {
         serverTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
         reconnectIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
         queuePollIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        queueThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        connectionPoolSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        connectionIdleTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        pipelineDepthField.setDocument(new MirthFieldConstraints(0, false, false, true));
         bufferSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
         maximumRetryCountField.setDocument(new MirthFieldConstraints(2, false, false, true));
         // ast: Acktimeout constrain
@@ -84,6 +90,18 @@ public class LLPSender extends ConnectorClass {
         }
 
         properties.put(QueuedSenderProperties.QUEUE_POLL_INTERVAL, queuePollIntervalField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_THREADS, queueThreadsField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_PARTITION_KEY, queuePartitionKeyField.getText());
+        properties.put(LLPSenderProperties.LLP_CONNECTION_POOL_SIZE, connectionPoolSizeField.getText());
+        properties.put(LLPSenderProperties.LLP_CONNECTION_IDLE_TIMEOUT, connectionIdleTimeoutField.getText());
+
+        if (pipeliningYesRadio.isSelected()) {
+            properties.put(LLPSenderProperties.LLP_PIPELINING, UIConstants.YES_OPTION);
+        } else {
+            properties.put(LLPSenderProperties.LLP_PIPELINING, UIConstants.NO_OPTION);
+        }
+
+        properties.put(LLPSenderProperties.LLP_PIPELINE_DEPTH, pipelineDepthField.getText());
 
         if (queueOnAckTimeoutYesRadio.isSelected()) {
             properties.put(LLPSenderProperties.LLP_QUEUE_ACK_TIMEOUT, UIConstants.YES_OPTION);
@@ -150,6 +168,20 @@ public class LLPSender extends ConnectorClass {
         }
 
         queuePollIntervalField.setText((String) props.get(QueuedSenderProperties.QUEUE_POLL_INTERVAL));
+        queueThreadsField.setText(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"));
+        queuePartitionKeyField.setText(props.getProperty(QueuedSenderProperties.QUEUE_PARTITION_KEY, ""));
+        connectionPoolSizeField.setText(props.getProperty(LLPSenderProperties.LLP_CONNECTION_POOL_SIZE, "0"));
+        connectionIdleTimeoutField.setText(props.getProperty(LLPSenderProperties.LLP_CONNECTION_IDLE_TIMEOUT, "60000"));
+
+        if (props.getProperty(LLPSenderProperties.LLP_PIPELINING, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            pipeliningYesRadio.setSelected(true);
+            pipeliningYesRadioActionPerformed(null);
+        } else {
+            pipeliningNoRadio.setSelected(true);
+            pipeliningNoRadioActionPerformed(null);
+        }
+
+        pipelineDepthField.setText(props.getProperty(LLPSenderProperties.LLP_PIPELINE_DEPTH, "10"));
 
         if (((String) props.get(LLPSenderProperties.LLP_QUEUE_ACK_TIMEOUT)).equals(UIConstants.YES_OPTION)) {
             queueOnAckTimeoutYesRadio.setSelected(true);
@@ -295,6 +327,32 @@ public class LLPSender extends ConnectorClass {
                     queuePollIntervalField.setBackground(UIConstants.INVALID_COLOR);
                 }
             }
+
+            if (NumberUtils.toInt(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    queueThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        }
+
+        if (NumberUtils.toInt(props.getProperty(LLPSenderProperties.LLP_CONNECTION_POOL_SIZE, "0"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                connectionPoolSizeField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+        if (NumberUtils.toInt(props.getProperty(LLPSenderProperties.LLP_CONNECTION_IDLE_TIMEOUT, "60000"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                connectionIdleTimeoutField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+        if (props.getProperty(LLPSenderProperties.LLP_PIPELINING, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION) && NumberUtils.toInt(props.getProperty(LLPSenderProperties.LLP_PIPELINE_DEPTH, "10"), 0) <= 0) {
+            valid = false;
+            if (highlight) {
+                pipelineDepthField.setBackground(UIConstants.INVALID_COLOR);
+            }
         }
 
         return valid;
@@ -314,6 +372,10 @@ public class LLPSender extends ConnectorClass {
         segmentEnd.setBackground(null);
         reconnectIntervalField.setBackground(null);
         queuePollIntervalField.setBackground(null);
+        queueThreadsField.setBackground(null);
+        connectionPoolSizeField.setBackground(null);
+        connectionIdleTimeoutField.setBackground(null);
+        pipelineDepthField.setBackground(null);
     }
 
     public String doValidate(Properties props, boolean highlight) {
@@ -340,6 +402,7 @@ public class LLPSender extends ConnectorClass {
         usePersistenceQueuesGroup = new javax.swing.ButtonGroup();
         processHL7AckGroup = new javax.swing.ButtonGroup();
         queueOnAckTimeoutGroup = new javax.swing.ButtonGroup();
+        pipeliningGroup = new javax.swing.ButtonGroup();
         jLabel13 = new javax.swing.JLabel();
         jLabel15 = new javax.swing.JLabel();
         jLabel16 = new javax.swing.JLabel();
@@ -388,6 +451,19 @@ public class LLPSender extends ConnectorClass {
         queueOnAckTimeoutNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
         queuePollIntervalField = new com.mirth.connect.client.ui.components.MirthTextField();
         queuePollIntervalLabel = new javax.swing.JLabel();
+        queueThreadsLabel = new javax.swing.JLabel();
+        queueThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        queuePartitionKeyLabel = new javax.swing.JLabel();
+        queuePartitionKeyField = new com.mirth.connect.client.ui.components.MirthTextField();
+        connectionPoolSizeLabel = new javax.swing.JLabel();
+        connectionPoolSizeField = new com.mirth.connect.client.ui.components.MirthTextField();
+        connectionIdleTimeoutLabel = new javax.swing.JLabel();
+        connectionIdleTimeoutField = new com.mirth.connect.client.ui.components.MirthTextField();
+        pipeliningLabel = new javax.swing.JLabel();
+        pipeliningYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        pipeliningNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        pipelineDepthLabel = new javax.swing.JLabel();
+        pipelineDepthField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -571,6 +647,53 @@ public class LLPSender extends ConnectorClass {
 
         queuePollIntervalLabel.setText("Queue Poll Interval (ms):");
 
+        queueThreadsLabel.setText("Queue Threads:");
+
+        queueThreadsField.setToolTipText("<html>The number of threads that send the queued messages.<br>With more than one thread, messages are sent in parallel and are only kept in order within a partition.</html>");
+
+        queuePartitionKeyLabel.setText("Queue Partition Key:");
+
+        queuePartitionKeyField.setToolTipText("<html>Groups the queued messages into partitions, for example ${pid}.<br>Messages in the same partition are sent one at a time in queue order, while different partitions are sent in parallel.<br>Leave blank to send the messages in any order.</html>");
+
+        connectionPoolSizeLabel.setText("Connection Pool Size:");
+
+        connectionPoolSizeField.setToolTipText("<html>The number of connections that are kept open to the remote host and shared by the queue threads.<br>Enter 0 to open a connection for each message, as set by Keep Connection Open.</html>");
+
+        connectionIdleTimeoutLabel.setText("Pool Idle Timeout (ms):");
+
+        connectionIdleTimeoutField.setToolTipText("<html>The number of milliseconds after which an unused pooled connection is closed.<br>Enter 0 to keep the pooled connections open.</html>");
+
+        pipeliningLabel.setText("Pipelining:");
+
+        pipeliningYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        pipeliningYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        pipeliningGroup.add(pipeliningYesRadio);
+        pipeliningYesRadio.setText("Yes");
+        pipeliningYesRadio.setToolTipText("<html>Select Yes to send the next message on a pooled connection before the ACK of the previous one has arrived.<br>The ACKs are matched to the messages by control ID. Each queue thread still waits for its own ACK,<br>so messages only overlap when several queue threads share a connection.</html>");
+        pipeliningYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        pipeliningYesRadio.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                pipeliningYesRadioActionPerformed(evt);
+            }
+        });
+
+        pipeliningNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        pipeliningNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        pipeliningGroup.add(pipeliningNoRadio);
+        pipeliningNoRadio.setSelected(true);
+        pipeliningNoRadio.setText("No");
+        pipeliningNoRadio.setToolTipText("<html>Select Yes to send the next message on a pooled connection before the ACK of the previous one has arrived.<br>The ACKs are matched to the messages by control ID. Each queue thread still waits for its own ACK,<br>so messages only overlap when several queue threads share a connection.</html>");
+        pipeliningNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        pipeliningNoRadio.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                pipeliningNoRadioActionPerformed(evt);
+            }
+        });
+
+        pipelineDepthLabel.setText("Pipeline Depth:");
+
+        pipelineDepthField.setToolTipText("The most messages that may wait for their ACK on one connection.");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -589,6 +712,12 @@ public class LLPSender extends ConnectorClass {
                     .addComponent(jLabel8)
                     .addComponent(reconnectIntervalLabel)
                     .addComponent(jLabel36)
+                    .addComponent(pipelineDepthLabel)
+                    .addComponent(pipeliningLabel)
+                    .addComponent(connectionIdleTimeoutLabel)
+                    .addComponent(connectionPoolSizeLabel)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queueThreadsLabel)
                     .addComponent(queuePollIntervalLabel)
                     .addComponent(queueOnAckTimeoutLabel)
                     .addComponent(jLabel19)
@@ -633,6 +762,15 @@ public class LLPSender extends ConnectorClass {
                         .addComponent(usePersistentQueuesNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(rotateMessagesCheckBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(connectionPoolSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(connectionIdleTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(pipeliningYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(pipeliningNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(pipelineDepthField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, 200, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(queueOnAckTimeoutYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -711,6 +849,31 @@ public class LLPSender extends ConnectorClass {
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queueThreadsLabel)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(connectionPoolSizeLabel)
+                    .addComponent(connectionPoolSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(connectionIdleTimeoutLabel)
+                    .addComponent(connectionIdleTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(pipeliningLabel)
+                    .addComponent(pipeliningYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(pipeliningNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(pipelineDepthLabel)
+                    .addComponent(pipelineDepthField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(queueOnAckTimeoutYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queueOnAckTimeoutNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -755,6 +918,10 @@ private void usePersistentQueuesYesRadioActionPerformed(java.awt.event.ActionEve
     rotateMessagesCheckBox.setEnabled(true);
     queuePollIntervalLabel.setEnabled(true);
     queuePollIntervalField.setEnabled(true);
+    queueThreadsLabel.setEnabled(true);
+    queueThreadsField.setEnabled(true);
+    queuePartitionKeyLabel.setEnabled(true);
+    queuePartitionKeyField.setEnabled(true);
     queueOnAckTimeoutLabel.setEnabled(true);
     queueOnAckTimeoutYesRadio.setEnabled(true);
     queueOnAckTimeoutNoRadio.setEnabled(true);
@@ -764,6 +931,10 @@ private void usePersistentQueuesNoRadioActionPerformed(java.awt.event.ActionEven
     rotateMessagesCheckBox.setEnabled(false);
     queuePollIntervalLabel.setEnabled(false);
     queuePollIntervalField.setEnabled(false);
+    queueThreadsLabel.setEnabled(false);
+    queueThreadsField.setEnabled(false);
+    queuePartitionKeyLabel.setEnabled(false);
+    queuePartitionKeyField.setEnabled(false);
     queueOnAckTimeoutLabel.setEnabled(false);
     queueOnAckTimeoutYesRadio.setEnabled(false);
     queueOnAckTimeoutNoRadio.setEnabled(false);
@@ -805,6 +976,16 @@ private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private void charsetEncodingComboboxActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_charsetEncodingComboboxActionPerformed
         // TODO add your handling code here:
     }// GEN-LAST:event_charsetEncodingComboboxActionPerformed
+
+private void pipeliningYesRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_pipeliningYesRadioActionPerformed
+    pipelineDepthLabel.setEnabled(true);
+    pipelineDepthField.setEnabled(true);
+}//GEN-LAST:event_pipeliningYesRadioActionPerformed
+
+private void pipeliningNoRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_pipeliningNoRadioActionPerformed
+    pipelineDepthLabel.setEnabled(false);
+    pipelineDepthField.setEnabled(false);
+}//GEN-LAST:event_pipeliningNoRadioActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel URL;
     private com.mirth.connect.client.ui.components.MirthTextField ackTimeoutField;
@@ -812,6 +993,10 @@ private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private com.mirth.connect.client.ui.components.MirthTextField bufferSizeField;
     private com.mirth.connect.client.ui.components.MirthComboBox channelNames;
     private com.mirth.connect.client.ui.components.MirthComboBox charsetEncodingCombobox;
+    private com.mirth.connect.client.ui.components.MirthTextField connectionIdleTimeoutField;
+    private javax.swing.JLabel connectionIdleTimeoutLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField connectionPoolSizeField;
+    private javax.swing.JLabel connectionPoolSizeLabel;
     private com.mirth.connect.client.ui.components.MirthTextField endOfMessageCharacterField;
     private com.mirth.connect.client.ui.components.MirthRadioButton hex;
     private com.mirth.connect.client.ui.components.MirthTextField hostAddressField;
@@ -838,6 +1023,12 @@ private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private com.mirth.connect.client.ui.components.MirthRadioButton keepConnectionOpenYesRadio;
     private javax.swing.ButtonGroup llpFrameEncodingGroup;
     private com.mirth.connect.client.ui.components.MirthTextField maximumRetryCountField;
+    private com.mirth.connect.client.ui.components.MirthTextField pipelineDepthField;
+    private javax.swing.JLabel pipelineDepthLabel;
+    private javax.swing.ButtonGroup pipeliningGroup;
+    private javax.swing.JLabel pipeliningLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton pipeliningNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton pipeliningYesRadio;
     private javax.swing.ButtonGroup processHL7AckGroup;
     private com.mirth.connect.client.ui.components.MirthRadioButton processHL7AckNoRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton processHL7AckYesRadio;
@@ -845,8 +1036,12 @@ private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private javax.swing.JLabel queueOnAckTimeoutLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton queueOnAckTimeoutNoRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton queueOnAckTimeoutYesRadio;
+    private com.mirth.connect.client.ui.components.MirthTextField queuePartitionKeyField;
+    private javax.swing.JLabel queuePartitionKeyLabel;
     private com.mirth.connect.client.ui.components.MirthTextField queuePollIntervalField;
     private javax.swing.JLabel queuePollIntervalLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField queueThreadsField;
+    private javax.swing.JLabel queueThreadsLabel;
     private com.mirth.connect.client.ui.components.MirthTextField reconnectIntervalField;
     private javax.swing.JLabel reconnectIntervalLabel;
     private com.mirth.connect.client.ui.components.MirthTextField recordSeparatorField;
@@ -21,6 +21,8 @@ import java.util.regex.Pattern;
 
 import javax.swing.DefaultComboBoxModel;
 
+import org.apache.commons.lang.math.NumberUtils;
+
 import com.mirth.connect.client.ui.PlatformUI;
 import com.mirth.connect.client.ui.UIConstants;
 import com.mirth.connect.client.ui.components.MirthFieldConstraints;
@@ -43,6 +45,8 @@ public class TCPListener extends ConnectorClass {
         initComponents();
         receiveTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
         bufferSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        selectorThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        workerThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
         // ast:encoding activation
         parent.setupCharsetEncodingForConnector(charsetEncodingCombobox);
     }
@@ -66,6 +70,15 @@ public class TCPListener extends ConnectorClass {
         // ast:encoding
         properties.put(TCPListenerProperties.CONNECTOR_CHARSET_ENCODING, parent.getSelectedEncodingForConnector(charsetEncodingCombobox));
 
+        if (useNioYesRadio.isSelected()) {
+            properties.put(TCPListenerProperties.TCP_USE_NIO, UIConstants.YES_OPTION);
+        } else {
+            properties.put(TCPListenerProperties.TCP_USE_NIO, UIConstants.NO_OPTION);
+        }
+
+        properties.put(TCPListenerProperties.TCP_SELECTOR_THREADS, selectorThreadsField.getText());
+        properties.put(TCPListenerProperties.TCP_WORKER_THREADS, workerThreadsField.getText());
+
         if (dataTypeBinary.isSelected()) {
             properties.put(TCPListenerProperties.TCP_TYPE, UIConstants.YES_OPTION);
         } else {
@@ -107,6 +120,16 @@ public class TCPListener extends ConnectorClass {
 
         parent.setPreviousSelectedEncodingForConnector(charsetEncodingCombobox, (String) props.get(TCPListenerProperties.CONNECTOR_CHARSET_ENCODING));
 
+        if (props.getProperty(TCPListenerProperties.TCP_USE_NIO, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            useNioYesRadio.setSelected(true);
+        } else {
+            useNioNoRadio.setSelected(true);
+        }
+
+        selectorThreadsField.setText(props.getProperty(TCPListenerProperties.TCP_SELECTOR_THREADS, "2"));
+        workerThreadsField.setText(props.getProperty(TCPListenerProperties.TCP_WORKER_THREADS, "16"));
+        updateNioFields();
+
         if (((String) props.get(TCPListenerProperties.TCP_TYPE)).equalsIgnoreCase(UIConstants.YES_OPTION)) {
             dataTypeBinary.setSelected(true);
             dataTypeBinaryActionPerformed(null);
@@ -175,6 +198,20 @@ public class TCPListener extends ConnectorClass {
                 }
             }
         }
+        if (props.getProperty(TCPListenerProperties.TCP_USE_NIO, UIConstants.NO_OPTION).equals(UIConstants.YES_OPTION)) {
+            if (NumberUtils.toInt(props.getProperty(TCPListenerProperties.TCP_SELECTOR_THREADS), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    selectorThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+            if (NumberUtils.toInt(props.getProperty(TCPListenerProperties.TCP_WORKER_THREADS), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    workerThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        }
 
         return valid;
     }
@@ -184,10 +221,20 @@ public class TCPListener extends ConnectorClass {
         listenerPortField.setBackground(null);
         receiveTimeoutField.setBackground(null);
         bufferSizeField.setBackground(null);
+        selectorThreadsField.setBackground(null);
+        workerThreadsField.setBackground(null);
         ackAddressField.setBackground(null);
         ackPortField.setBackground(null);
     }
 
+    private void updateNioFields() {
+        boolean enabled = useNioYesRadio.isSelected();
+        selectorThreadsLabel.setEnabled(enabled);
+        selectorThreadsField.setEnabled(enabled);
+        workerThreadsLabel.setEnabled(enabled);
+        workerThreadsField.setEnabled(enabled);
+    }
+
     public String doValidate(Properties props, boolean highlight) {
         String error = null;
 
@@ -210,6 +257,7 @@ public class TCPListener extends ConnectorClass {
         keepConnectionOpenGroup = new javax.swing.ButtonGroup();
         dataTypeButtonGroup = new javax.swing.ButtonGroup();
         ackOnNewConnectionButtonGroup = new javax.swing.ButtonGroup();
+        useNioButtonGroup = new javax.swing.ButtonGroup();
         jLabel1 = new javax.swing.JLabel();
         jLabel2 = new javax.swing.JLabel();
         jLabel3 = new javax.swing.JLabel();
@@ -235,6 +283,13 @@ public class TCPListener extends ConnectorClass {
         keepConnectionOpenLabel = new javax.swing.JLabel();
         keepConnectionOpenYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
         keepConnectionOpenNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        useNioLabel = new javax.swing.JLabel();
+        useNioYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        useNioNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        selectorThreadsLabel = new javax.swing.JLabel();
+        selectorThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        workerThreadsLabel = new javax.swing.JLabel();
+        workerThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -342,6 +397,41 @@ public class TCPListener extends ConnectorClass {
         keepConnectionOpenNoRadio.setToolTipText("<html>Select No to close the listening socket after each message is received and the response (if selected) is sent. <br>Select Yes to always keep the socket open unless the sending system closes it.  If Yes is selected, messages <br>will only be processed if data is received and either the receive timeout is reached or the sending system closes <br>the socket. The sending system will also need to use a timeout or delimiter method of processing responses.</html>");
         keepConnectionOpenNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
 
+        useNioLabel.setText("Use NIO:");
+
+        useNioYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        useNioYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        useNioButtonGroup.add(useNioYesRadio);
+        useNioYesRadio.setText("Yes");
+        useNioYesRadio.setToolTipText("<html>Select Yes to serve all connections with a few selector threads instead of a thread per connection,<br>so that many mostly idle connections can be kept open.</html>");
+        useNioYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        useNioYesRadio.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                useNioYesRadioActionPerformed(evt);
+            }
+        });
+
+        useNioNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        useNioNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        useNioButtonGroup.add(useNioNoRadio);
+        useNioNoRadio.setSelected(true);
+        useNioNoRadio.setText("No");
+        useNioNoRadio.setToolTipText("<html>Select Yes to serve all connections with a few selector threads instead of a thread per connection,<br>so that many mostly idle connections can be kept open.</html>");
+        useNioNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+        useNioNoRadio.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                useNioNoRadioActionPerformed(evt);
+            }
+        });
+
+        selectorThreadsLabel.setText("Selector Threads:");
+
+        selectorThreadsField.setToolTipText("The number of threads that accept the connections and read and write their data.");
+
+        workerThreadsLabel.setText("Worker Threads:");
+
+        workerThreadsField.setToolTipText("<html>The number of threads that process the received messages.<br>The messages of one connection are processed one at a time.</html>");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -359,6 +449,9 @@ public class TCPListener extends ConnectorClass {
                     .addComponent(ackOnNewConnectionLabel)
                     .addComponent(ackIPLabel)
                     .addComponent(ackPortLabel)
+                    .addComponent(workerThreadsLabel)
+                    .addComponent(selectorThreadsLabel)
+                    .addComponent(useNioLabel)
                     .addComponent(keepConnectionOpenLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -369,6 +462,12 @@ public class TCPListener extends ConnectorClass {
                     .addComponent(listenerAddressField, javax.swing.GroupLayout.PREFERRED_SIZE, 200, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(listenerPortField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(receiveTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(useNioYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(useNioNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(selectorThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(workerThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(bufferSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(charsetEncodingCombobox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(responseFromTransformer, javax.swing.GroupLayout.PREFERRED_SIZE, 150, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -408,6 +507,19 @@ public class TCPListener extends ConnectorClass {
                     .addComponent(keepConnectionOpenNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(keepConnectionOpenLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(useNioLabel)
+                    .addComponent(useNioYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(useNioNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(selectorThreadsLabel)
+                    .addComponent(selectorThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(workerThreadsLabel)
+                    .addComponent(workerThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(encodingLabel)
                     .addComponent(charsetEncodingCombobox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
@@ -551,6 +663,14 @@ public class TCPListener extends ConnectorClass {
         ackIPLabel.setEnabled(true);
         ackPortLabel.setEnabled(true);
     }// GEN-LAST:event_ackOnNewConnectionYesActionPerformed
+
+    private void useNioYesRadioActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_useNioYesRadioActionPerformed
+        updateNioFields();
+    }// GEN-LAST:event_useNioYesRadioActionPerformed
+
+    private void useNioNoRadioActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_useNioNoRadioActionPerformed
+        updateNioFields();
+    }// GEN-LAST:event_useNioNoRadioActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private com.mirth.connect.client.ui.components.MirthTextField ackAddressField;
     private javax.swing.JLabel ackIPLabel;
@@ -580,5 +700,13 @@ public class TCPListener extends ConnectorClass {
     private com.mirth.connect.client.ui.components.MirthTextField receiveTimeoutField;
     private javax.swing.JLabel responseFromLabel;
     private com.mirth.connect.client.ui.components.MirthComboBox responseFromTransformer;
+    private com.mirth.connect.client.ui.components.MirthTextField selectorThreadsField;
+    private javax.swing.JLabel selectorThreadsLabel;
+    private javax.swing.ButtonGroup useNioButtonGroup;
+    private javax.swing.JLabel useNioLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton useNioNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton useNioYesRadio;
+    private com.mirth.connect.client.ui.components.MirthTextField workerThreadsField;
+    private javax.swing.JLabel workerThreadsLabel;
     // End of variables declaration//GEN-END:variables
 }
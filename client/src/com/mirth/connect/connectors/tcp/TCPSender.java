@@ -15,6 +15,8 @@ import java.util.Properties;
 
 import javax.swing.SwingWorker;
 
+import org.apache.commons.lang.math.NumberUtils;
+
 import com.mirth.connect.client.core.ClientException;
 import com.mirth.connect.client.ui.UIConstants;
 import com.mirth.connect.client.ui.components.MirthFieldConstraints;
@@ -37,6 +39,9 @@ public class TCPSender extends ConnectorClass {
         serverTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
         reconnectIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
         queuePollIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        queueThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        connectionPoolSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        connectionIdleTimeoutField.setDocument(new MirthFieldConstraints(0, false, false, true));
         bufferSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
         maximumRetryCountField.setDocument(new MirthFieldConstraints(2, false, false, true));
         // ast: Acktimeout constrain
@@ -70,6 +75,10 @@ public class TCPSender extends ConnectorClass {
         }
 
         properties.put(QueuedSenderProperties.QUEUE_POLL_INTERVAL, queuePollIntervalField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_THREADS, queueThreadsField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_PARTITION_KEY, queuePartitionKeyField.getText());
+        properties.put(TCPSenderProperties.TCP_CONNECTION_POOL_SIZE, connectionPoolSizeField.getText());
+        properties.put(TCPSenderProperties.TCP_CONNECTION_IDLE_TIMEOUT, connectionIdleTimeoutField.getText());
 
         if (rotateMessagesCheckBox.isSelected()) {
             properties.put(QueuedSenderProperties.ROTATE_QUEUE, UIConstants.YES_OPTION);
@@ -119,6 +128,10 @@ public class TCPSender extends ConnectorClass {
         }
 
         queuePollIntervalField.setText((String) props.get(QueuedSenderProperties.QUEUE_POLL_INTERVAL));
+        queueThreadsField.setText(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"));
+        queuePartitionKeyField.setText(props.getProperty(QueuedSenderProperties.QUEUE_PARTITION_KEY, ""));
+        connectionPoolSizeField.setText(props.getProperty(TCPSenderProperties.TCP_CONNECTION_POOL_SIZE, "0"));
+        connectionIdleTimeoutField.setText(props.getProperty(TCPSenderProperties.TCP_CONNECTION_IDLE_TIMEOUT, "60000"));
 
         if (((String) props.get(QueuedSenderProperties.ROTATE_QUEUE)).equals(UIConstants.YES_OPTION)) {
             rotateMessagesCheckBox.setSelected(true);
@@ -236,6 +249,26 @@ public class TCPSender extends ConnectorClass {
                     queuePollIntervalField.setBackground(UIConstants.INVALID_COLOR);
                 }
             }
+
+            if (NumberUtils.toInt(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    queueThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
+        }
+
+        if (NumberUtils.toInt(props.getProperty(TCPSenderProperties.TCP_CONNECTION_POOL_SIZE, "0"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                connectionPoolSizeField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+        if (NumberUtils.toInt(props.getProperty(TCPSenderProperties.TCP_CONNECTION_IDLE_TIMEOUT, "60000"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                connectionIdleTimeoutField.setBackground(UIConstants.INVALID_COLOR);
+            }
         }
 
         return valid;
@@ -251,6 +284,9 @@ public class TCPSender extends ConnectorClass {
         ackTimeoutField.setBackground(null);
         reconnectIntervalField.setBackground(null);
         queuePollIntervalField.setBackground(null);
+        queueThreadsField.setBackground(null);
+        connectionPoolSizeField.setBackground(null);
+        connectionIdleTimeoutField.setBackground(null);
     }
 
     public String doValidate(Properties props, boolean highlight) {
@@ -309,6 +345,14 @@ public class TCPSender extends ConnectorClass {
         testConnection = new javax.swing.JButton();
         queuePollIntervalField = new com.mirth.connect.client.ui.components.MirthTextField();
         queuePollIntervalLabel = new javax.swing.JLabel();
+        queueThreadsLabel = new javax.swing.JLabel();
+        queueThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        queuePartitionKeyLabel = new javax.swing.JLabel();
+        queuePartitionKeyField = new com.mirth.connect.client.ui.components.MirthTextField();
+        connectionPoolSizeLabel = new javax.swing.JLabel();
+        connectionPoolSizeField = new com.mirth.connect.client.ui.components.MirthTextField();
+        connectionIdleTimeoutLabel = new javax.swing.JLabel();
+        connectionIdleTimeoutField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -455,6 +499,22 @@ public class TCPSender extends ConnectorClass {
 
         queuePollIntervalLabel.setText("Queue Poll Interval (ms):");
 
+        queueThreadsLabel.setText("Queue Threads:");
+
+        queueThreadsField.setToolTipText("<html>The number of threads that send the queued messages.<br>With more than one thread, messages are sent in parallel and are only kept in order within a partition.</html>");
+
+        queuePartitionKeyLabel.setText("Queue Partition Key:");
+
+        queuePartitionKeyField.setToolTipText("<html>Groups the queued messages into partitions, for example ${pid}.<br>Messages in the same partition are sent one at a time in queue order, while different partitions are sent in parallel.<br>Leave blank to send the messages in any order.</html>");
+
+        connectionPoolSizeLabel.setText("Connection Pool Size:");
+
+        connectionPoolSizeField.setToolTipText("<html>The number of connections that are kept open to the remote host and shared by the queue threads.<br>Enter 0 to open a connection for each message, as set by Keep Connection Open.</html>");
+
+        connectionIdleTimeoutLabel.setText("Pool Idle Timeout (ms):");
+
+        connectionIdleTimeoutField.setToolTipText("<html>The number of milliseconds after which an unused pooled connection is closed.<br>Enter 0 to keep the pooled connections open.</html>");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -466,6 +526,10 @@ public class TCPSender extends ConnectorClass {
                     .addComponent(dataTypeLabel)
                     .addComponent(encodingLabel)
                     .addComponent(jLabel19)
+                    .addComponent(connectionIdleTimeoutLabel)
+                    .addComponent(connectionPoolSizeLabel)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queueThreadsLabel)
                     .addComponent(queuePollIntervalLabel)
                     .addComponent(jLabel36)
                     .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -502,6 +566,10 @@ public class TCPSender extends ConnectorClass {
                         .addComponent(usePersistentQueuesNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addGap(5, 5, 5)
                         .addComponent(rotateMessagesCheckBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(connectionPoolSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(connectionIdleTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, 200, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(ackTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 71, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -558,6 +626,22 @@ public class TCPSender extends ConnectorClass {
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queueThreadsLabel)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(connectionPoolSizeLabel)
+                    .addComponent(connectionPoolSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(connectionIdleTimeoutLabel)
+                    .addComponent(connectionIdleTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(ackTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(ignoreACKCheckBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -610,12 +694,20 @@ private void usePersistentQueuesNoRadioActionPerformed(java.awt.event.ActionEven
     rotateMessagesCheckBox.setEnabled(false);
     queuePollIntervalLabel.setEnabled(false);
     queuePollIntervalField.setEnabled(false);
+    queueThreadsLabel.setEnabled(false);
+    queueThreadsField.setEnabled(false);
+    queuePartitionKeyLabel.setEnabled(false);
+    queuePartitionKeyField.setEnabled(false);
 }//GEN-LAST:event_usePersistentQueuesNoRadioActionPerformed
 
 private void usePersistentQueuesYesRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_usePersistentQueuesYesRadioActionPerformed
     rotateMessagesCheckBox.setEnabled(true);
     queuePollIntervalLabel.setEnabled(true);
     queuePollIntervalField.setEnabled(true);
+    queueThreadsLabel.setEnabled(true);
+    queueThreadsField.setEnabled(true);
+    queuePartitionKeyLabel.setEnabled(true);
+    queuePartitionKeyField.setEnabled(true);
 }//GEN-LAST:event_usePersistentQueuesYesRadioActionPerformed
 
 private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_testConnectionActionPerformed
@@ -660,6 +752,10 @@ private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private com.mirth.connect.client.ui.components.MirthTextField bufferSizeField;
     private com.mirth.connect.client.ui.components.MirthComboBox channelNames;
     private com.mirth.connect.client.ui.components.MirthComboBox charsetEncodingCombobox;
+    private com.mirth.connect.client.ui.components.MirthTextField connectionIdleTimeoutField;
+    private javax.swing.JLabel connectionIdleTimeoutLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField connectionPoolSizeField;
+    private javax.swing.JLabel connectionPoolSizeLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton dataTypeASCII;
     private com.mirth.connect.client.ui.components.MirthRadioButton dataTypeBinary;
     private javax.swing.ButtonGroup dataTypeButtonGroup;
@@ -681,8 +777,12 @@ private void testConnectionActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private com.mirth.connect.client.ui.components.MirthRadioButton keepConnectionOpenNoRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton keepConnectionOpenYesRadio;
     private com.mirth.connect.client.ui.components.MirthTextField maximumRetryCountField;
+    private com.mirth.connect.client.ui.components.MirthTextField queuePartitionKeyField;
+    private javax.swing.JLabel queuePartitionKeyLabel;
     private com.mirth.connect.client.ui.components.MirthTextField queuePollIntervalField;
     private javax.swing.JLabel queuePollIntervalLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField queueThreadsField;
+    private javax.swing.JLabel queueThreadsLabel;
     private com.mirth.connect.client.ui.components.MirthTextField reconnectIntervalField;
     private javax.swing.JLabel reconnectIntervalLabel;
     private com.mirth.connect.client.ui.components.MirthCheckBox rotateMessagesCheckBox;
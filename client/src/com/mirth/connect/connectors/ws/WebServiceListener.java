@@ -28,6 +28,7 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableModel;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.jdesktop.swingx.decorator.Highlighter;
 import org.jdesktop.swingx.decorator.HighlighterFactory;
 
@@ -35,6 +36,7 @@ import com.mirth.connect.client.ui.Mirth;
 import com.mirth.connect.client.ui.PlatformUI;
 import com.mirth.connect.client.ui.TextFieldCellEditor;
 import com.mirth.connect.client.ui.UIConstants;
+import com.mirth.connect.client.ui.components.MirthFieldConstraints;
 import com.mirth.connect.client.ui.components.MirthTable;
 import com.mirth.connect.client.ui.editors.transformer.TransformerPane;
 import com.mirth.connect.connectors.ConnectorClass;
@@ -57,6 +59,9 @@ public class WebServiceListener extends ConnectorClass {
     public WebServiceListener() {
         name = WebServiceListenerProperties.name;
         initComponents();
+        threadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        backlogField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        queueSizeField.setDocument(new MirthFieldConstraints(0, false, false, true));
         wsdlURLField.setEditable(false);
         methodField.setEditable(false);
     }
@@ -75,6 +80,10 @@ public class WebServiceListener extends ConnectorClass {
         properties.put(WebServiceListenerProperties.WEBSERVICE_USERNAMES, serializer.toXML(credentials.get(0)));
         properties.put(WebServiceListenerProperties.WEBSERVICE_PASSWORDS, serializer.toXML(credentials.get(1)));
 
+        properties.put(WebServiceListenerProperties.WEBSERVICE_THREADS, threadsField.getText());
+        properties.put(WebServiceListenerProperties.WEBSERVICE_BACKLOG, backlogField.getText());
+        properties.put(WebServiceListenerProperties.WEBSERVICE_QUEUE_SIZE, queueSizeField.getText());
+
         return properties;
     }
 
@@ -103,6 +112,10 @@ public class WebServiceListener extends ConnectorClass {
         credentials.add((ArrayList<String>) serializer.fromXML((String) props.get(WebServiceListenerProperties.WEBSERVICE_USERNAMES)));
         credentials.add((ArrayList<String>) serializer.fromXML((String) props.get(WebServiceListenerProperties.WEBSERVICE_PASSWORDS)));
         setCredentials(credentials);
+
+        threadsField.setText(props.getProperty(WebServiceListenerProperties.WEBSERVICE_THREADS, "10"));
+        backlogField.setText(props.getProperty(WebServiceListenerProperties.WEBSERVICE_BACKLOG, "50"));
+        queueSizeField.setText(props.getProperty(WebServiceListenerProperties.WEBSERVICE_QUEUE_SIZE, "100"));
     }
 
     public Properties getDefaults() {
@@ -172,6 +185,27 @@ public class WebServiceListener extends ConnectorClass {
             }
         }
 
+        if (NumberUtils.toInt(props.getProperty(WebServiceListenerProperties.WEBSERVICE_THREADS, "10"), 0) <= 0) {
+            valid = false;
+            if (highlight) {
+                threadsField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
+        if (NumberUtils.toInt(props.getProperty(WebServiceListenerProperties.WEBSERVICE_BACKLOG, "50"), 0) <= 0) {
+            valid = false;
+            if (highlight) {
+                backlogField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
+        if (NumberUtils.toInt(props.getProperty(WebServiceListenerProperties.WEBSERVICE_QUEUE_SIZE, "100"), -1) < 0) {
+            valid = false;
+            if (highlight) {
+                queueSizeField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
         return valid;
     }
 
@@ -180,6 +214,9 @@ public class WebServiceListener extends ConnectorClass {
         portField.setBackground(null);
         classNameField.setBackground(null);
         serviceNameField.setBackground(null);
+        threadsField.setBackground(null);
+        backlogField.setBackground(null);
+        queueSizeField.setBackground(null);
     }
 
     public String doValidate(Properties props, boolean highlight) {
@@ -459,6 +496,12 @@ public class WebServiceListener extends ConnectorClass {
         deleteButton = new javax.swing.JButton();
         credentialsLabel = new javax.swing.JLabel();
         classNameLabel = new javax.swing.JLabel();
+        threadsLabel = new javax.swing.JLabel();
+        threadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        backlogLabel = new javax.swing.JLabel();
+        backlogField = new com.mirth.connect.client.ui.components.MirthTextField();
+        queueSizeLabel = new javax.swing.JLabel();
+        queueSizeField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -589,6 +632,18 @@ public class WebServiceListener extends ConnectorClass {
 
         classNameLabel.setText("Service Class Name:");
 
+        threadsLabel.setText("Listener Threads:");
+
+        threadsField.setToolTipText("The maximum number of requests that are processed at the same time.");
+
+        backlogLabel.setText("Backlog:");
+
+        backlogField.setToolTipText("The maximum number of connections that wait to be accepted by the listener.");
+
+        queueSizeLabel.setText("Queue Size:");
+
+        queueSizeField.setToolTipText("<html>The maximum number of requests that wait while all listener threads are busy.<br>Requests that arrive when the queue is full are answered with 503 Service Unavailable.<br>Enter 0 to answer them with 503 as soon as all threads are busy.</html>");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -596,6 +651,9 @@ public class WebServiceListener extends ConnectorClass {
             .addGroup(layout.createSequentialGroup()
                 .addContainerGap()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(threadsLabel)
+                    .addComponent(backlogLabel)
+                    .addComponent(queueSizeLabel)
                     .addComponent(portLabel)
                     .addComponent(listenerAddressLabel)
                     .addComponent(URL)
@@ -615,6 +673,9 @@ public class WebServiceListener extends ConnectorClass {
                             .addComponent(deleteButton)))
                     .addComponent(respondFromComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, 150, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(serviceNameField, javax.swing.GroupLayout.PREFERRED_SIZE, 150, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(threadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(backlogField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queueSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(portField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING, false)
                         .addComponent(wsdlURLField, javax.swing.GroupLayout.Alignment.LEADING)
@@ -645,6 +706,18 @@ public class WebServiceListener extends ConnectorClass {
                     .addComponent(portLabel)
                     .addComponent(portField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(threadsLabel)
+                    .addComponent(threadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(backlogLabel)
+                    .addComponent(backlogField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queueSizeLabel)
+                    .addComponent(queueSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(classNameDefaultRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(classNameCustomRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -746,6 +819,8 @@ public class WebServiceListener extends ConnectorClass {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel URL;
     private javax.swing.JLabel URL1;
+    private com.mirth.connect.client.ui.components.MirthTextField backlogField;
+    private javax.swing.JLabel backlogLabel;
     private javax.swing.ButtonGroup classNameButtonGroup;
     private com.mirth.connect.client.ui.components.MirthRadioButton classNameCustomRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton classNameDefaultRadio;
@@ -765,9 +840,13 @@ public class WebServiceListener extends ConnectorClass {
     private javax.swing.JButton newButton;
     private com.mirth.connect.client.ui.components.MirthTextField portField;
     private javax.swing.JLabel portLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField queueSizeField;
+    private javax.swing.JLabel queueSizeLabel;
     private com.mirth.connect.client.ui.components.MirthComboBox respondFromComboBox;
     private javax.swing.JLabel responseFromLabel;
     private com.mirth.connect.client.ui.components.MirthTextField serviceNameField;
+    private com.mirth.connect.client.ui.components.MirthTextField threadsField;
+    private javax.swing.JLabel threadsLabel;
     private javax.swing.JLabel webServiceLabel;
     private javax.swing.JTextField wsdlURLField;
     // End of variables declaration//GEN-END:variables
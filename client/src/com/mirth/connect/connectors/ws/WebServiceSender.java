@@ -27,6 +27,7 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableModel;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.jdesktop.swingx.decorator.Highlighter;
 import org.jdesktop.swingx.decorator.HighlighterFactory;
 import org.syntax.jedit.SyntaxDocument;
@@ -64,6 +65,7 @@ public class WebServiceSender extends ConnectorClass {
 
         reconnectIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
         queuePollIntervalField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        queueThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
 
         SyntaxDocument document = new SyntaxDocument();
         document.setTokenMarker(new XMLTokenMarker());
@@ -77,6 +79,8 @@ public class WebServiceSender extends ConnectorClass {
 
         // Queue properties
         properties.put(QueuedSenderProperties.QUEUE_POLL_INTERVAL, queuePollIntervalField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_THREADS, queueThreadsField.getText());
+        properties.put(QueuedSenderProperties.QUEUE_PARTITION_KEY, queuePartitionKeyField.getText());
         properties.put(QueuedSenderProperties.RECONNECT_INTERVAL, reconnectIntervalField.getText());
 
         if (usePersistentQueuesYesRadio.isSelected()) {
@@ -166,6 +170,8 @@ public class WebServiceSender extends ConnectorClass {
 
         // Queue properties
         queuePollIntervalField.setText((String) props.get(QueuedSenderProperties.QUEUE_POLL_INTERVAL));
+        queueThreadsField.setText(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"));
+        queuePartitionKeyField.setText(props.getProperty(QueuedSenderProperties.QUEUE_PARTITION_KEY, ""));
         reconnectIntervalField.setText((String) props.get(QueuedSenderProperties.RECONNECT_INTERVAL));
 
         if (((String) props.get(QueuedSenderProperties.USE_PERSISTENT_QUEUES)).equals(UIConstants.YES_OPTION)) {
@@ -299,6 +305,13 @@ public class WebServiceSender extends ConnectorClass {
                     queuePollIntervalField.setBackground(UIConstants.INVALID_COLOR);
                 }
             }
+
+            if (NumberUtils.toInt(props.getProperty(QueuedSenderProperties.QUEUE_THREADS, "1"), 0) <= 0) {
+                valid = false;
+                if (highlight) {
+                    queueThreadsField.setBackground(UIConstants.INVALID_COLOR);
+                }
+            }
         }
 
         return valid;
@@ -310,6 +323,7 @@ public class WebServiceSender extends ConnectorClass {
         portField.setBackground(new java.awt.Color(222, 222, 222));
         soapEnvelope.setBackground(null);
         queuePollIntervalField.setBackground(null);
+        queueThreadsField.setBackground(null);
         reconnectIntervalField.setBackground(null);
     }
 
@@ -649,6 +663,10 @@ public class WebServiceSender extends ConnectorClass {
         queuePollIntervalField = new com.mirth.connect.client.ui.components.MirthTextField();
         soapActionField = new com.mirth.connect.client.ui.components.MirthTextField();
         soapActionLabel = new javax.swing.JLabel();
+        queueThreadsLabel = new javax.swing.JLabel();
+        queueThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        queuePartitionKeyLabel = new javax.swing.JLabel();
+        queuePartitionKeyField = new com.mirth.connect.client.ui.components.MirthTextField();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -852,6 +870,14 @@ public class WebServiceSender extends ConnectorClass {
 
         soapActionLabel.setText("SOAP Action:");
 
+        queueThreadsLabel.setText("Queue Threads:");
+
+        queueThreadsField.setToolTipText("<html>The number of threads that send the queued messages.<br>With more than one thread, messages are sent in parallel and are only kept in order within a partition.</html>");
+
+        queuePartitionKeyLabel.setText("Queue Partition Key:");
+
+        queuePartitionKeyField.setToolTipText("<html>Groups the queued messages into partitions, for example ${pid}.<br>Messages in the same partition are sent one at a time in queue order, while different partitions are sent in parallel.<br>Leave blank to send the messages in any order.</html>");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -868,6 +894,8 @@ public class WebServiceSender extends ConnectorClass {
                     .addComponent(jLabel4, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(soapActionLabel, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(portLabel, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(queuePartitionKeyLabel, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(queueThreadsLabel, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(queuePollIntervalLabel, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(invocationTypeLabel, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(serviceLabel, javax.swing.GroupLayout.Alignment.TRAILING)
@@ -885,6 +913,8 @@ public class WebServiceSender extends ConnectorClass {
                     .addComponent(portField, javax.swing.GroupLayout.DEFAULT_SIZE, 402, Short.MAX_VALUE)
                     .addComponent(soapEnvelope, javax.swing.GroupLayout.DEFAULT_SIZE, 402, Short.MAX_VALUE)
                     .addComponent(soapActionField, javax.swing.GroupLayout.DEFAULT_SIZE, 402, Short.MAX_VALUE)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, 200, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(authenticationYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -966,6 +996,14 @@ public class WebServiceSender extends ConnectorClass {
                     .addComponent(queuePollIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(queuePollIntervalLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queueThreadsLabel)
+                    .addComponent(queueThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(queuePartitionKeyLabel)
+                    .addComponent(queuePartitionKeyField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(reconnectIntervalLabel)
                     .addComponent(reconnectIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
@@ -1008,6 +1046,10 @@ private void usePersistentQueuesNoRadioActionPerformed(java.awt.event.ActionEven
     rotateMessagesCheckBox.setEnabled(false);
     queuePollIntervalLabel.setEnabled(false);
     queuePollIntervalField.setEnabled(false);
+    queueThreadsLabel.setEnabled(false);
+    queueThreadsField.setEnabled(false);
+    queuePartitionKeyLabel.setEnabled(false);
+    queuePartitionKeyField.setEnabled(false);
     reconnectIntervalField.setEnabled(false);
     reconnectIntervalLabel.setEnabled(false);
 }//GEN-LAST:event_usePersistentQueuesNoRadioActionPerformed
@@ -1016,6 +1058,10 @@ private void usePersistentQueuesYesRadioActionPerformed(java.awt.event.ActionEve
     rotateMessagesCheckBox.setEnabled(true);
     queuePollIntervalLabel.setEnabled(true);
     queuePollIntervalField.setEnabled(true);
+    queueThreadsLabel.setEnabled(true);
+    queueThreadsField.setEnabled(true);
+    queuePartitionKeyLabel.setEnabled(true);
+    queuePartitionKeyField.setEnabled(true);
     reconnectIntervalField.setEnabled(true);
     reconnectIntervalLabel.setEnabled(true);
 }//GEN-LAST:event_usePersistentQueuesYesRadioActionPerformed
@@ -1227,8 +1273,12 @@ private void generateEnvelopeActionPerformed(java.awt.event.ActionEvent evt) {//
     private javax.swing.JLabel passwordLabel;
     private com.mirth.connect.client.ui.components.MirthTextField portField;
     private javax.swing.JLabel portLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField queuePartitionKeyField;
+    private javax.swing.JLabel queuePartitionKeyLabel;
     private com.mirth.connect.client.ui.components.MirthTextField queuePollIntervalField;
     private javax.swing.JLabel queuePollIntervalLabel;
+    private com.mirth.connect.client.ui.components.MirthTextField queueThreadsField;
+    private javax.swing.JLabel queueThreadsLabel;
     private com.mirth.connect.client.ui.components.MirthTextField reconnectIntervalField;
     private javax.swing.JLabel reconnectIntervalLabel;
     private com.mirth.connect.client.ui.components.MirthCheckBox rotateMessagesCheckBox;
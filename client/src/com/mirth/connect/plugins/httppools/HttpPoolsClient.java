@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.plugins.httppools;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.swing.JComponent;
+
+import com.mirth.connect.client.core.ClientException;
+import com.mirth.connect.client.core.UnauthorizedException;
+import com.mirth.connect.client.ui.PlatformUI;
+import com.mirth.connect.model.ChannelStatus;
+import com.mirth.connect.plugins.DashboardPanelPlugin;
+
+public class HttpPoolsClient extends DashboardPanelPlugin {
+    private static final String HTTP_POOLS_SERVICE_PLUGINPOINT = "HTTP Pools";
+    private static final String GET_POOL_STATISTICS = "getPoolStatistics";
+    private HttpPoolsPanel httpPoolsPanel;
+
+    public HttpPoolsClient(String name) {
+        super(name);
+        httpPoolsPanel = new HttpPoolsPanel();
+    }
+
+    // used for setting actions to be called for updating when there is no status selected
+    public void update() {
+        LinkedList<String[]> poolStatistics = null;
+
+        try {
+            poolStatistics = (LinkedList<String[]>) PlatformUI.MIRTH_FRAME.mirthClient.invokePluginMethod(HTTP_POOLS_SERVICE_PLUGINPOINT, GET_POOL_STATISTICS, null);
+        } catch (ClientException e) {
+            if (!(e.getCause() instanceof UnauthorizedException)) {
+                parent.alertException(parent, e.getStackTrace(), e.getMessage());
+            }
+        }
+
+        httpPoolsPanel.updateTable(poolStatistics);
+    }
+
+    // used for setting actions to be called for updating when there is a status selected
+    public void update(List<ChannelStatus> statuses) {
+        // the pools of all channels are shown
+        update();
+    }
+
+    @Override
+    public JComponent getComponent() {
+        return httpPoolsPanel;
+    }
+
+    // used for starting processes in the plugin when the program is started
+    @Override
+    public void start() {
+    }
+
+    // used for stopping processes in the plugin when the program is exited
+    @Override
+    public void stop() {
+        reset();
+    }
+
+    // Called when establishing a new session for the user.
+    @Override
+    public void reset() {
+        httpPoolsPanel.updateTable(null);
+    }
+
+    @Override
+    public String getPluginPointName() {
+        return "HTTP Pools";
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.plugins.httppools;
+
+import java.awt.BorderLayout;
+import java.util.List;
+import java.util.prefs.Preferences;
+
+import javax.swing.JScrollPane;
+
+import org.jdesktop.swingx.decorator.Highlighter;
+import org.jdesktop.swingx.decorator.HighlighterFactory;
+
+import com.mirth.connect.client.ui.Mirth;
+import com.mirth.connect.client.ui.RefreshTableModel;
+import com.mirth.connect.client.ui.UIConstants;
+import com.mirth.connect.client.ui.components.MirthTable;
+
+/**
+ * Shows a row for each HTTP connection pool on the server, with the time
+ * that its requests waited for a connection.
+ */
+public class HttpPoolsPanel extends javax.swing.JPanel {
+    private static final String[] COLUMN_HEADERS = new String[] { "Connector", "Per Host", "Maximum", "Open", "Requests", "Waits", "Average Wait (ms)", "Max Wait (ms)", "Timeouts" };
+
+    private MirthTable poolTable;
+    private JScrollPane scrollPane;
+
+    public HttpPoolsPanel() {
+        poolTable = new MirthTable();
+        poolTable.setModel(new RefreshTableModel(new Object[0][COLUMN_HEADERS.length], COLUMN_HEADERS) {
+            public boolean isCellEditable(int rowIndex, int columnIndex) {
+                return false;
+            }
+        });
+
+        poolTable.setDoubleBuffered(true);
+        poolTable.setSelectionMode(0);
+        poolTable.packTable(UIConstants.COL_MARGIN);
+        poolTable.setRowHeight(UIConstants.ROW_HEIGHT);
+        poolTable.setOpaque(true);
+        poolTable.setRowSelectionAllowed(false);
+        poolTable.setSortable(true);
+        poolTable.setFocusable(false);
+        poolTable.setHorizontalScrollEnabled(true);
+        poolTable.setAutoResizeMode(javax.swing.JTable.AUTO_RESIZE_ALL_COLUMNS);
+
+        if (Preferences.userNodeForPackage(Mirth.class).getBoolean("highlightRows", true)) {
+            Highlighter highlighter = HighlighterFactory.createAlternateStriping(UIConstants.HIGHLIGHTER_COLOR, UIConstants.BACKGROUND_COLOR);
+            poolTable.setHighlighters(highlighter);
+        }
+
+        scrollPane = new JScrollPane(poolTable);
+        setLayout(new BorderLayout());
+        add(scrollPane, BorderLayout.CENTER);
+    }
+
+    public synchronized void updateTable(List<String[]> poolStatistics) {
+        Object[][] tableData = null;
+
+        if (poolStatistics != null) {
+            tableData = new Object[poolStatistics.size()][COLUMN_HEADERS.length];
+
+            for (int i = 0; i < poolStatistics.size(); i++) {
+                String[] statistics = poolStatistics.get(i);
+
+                for (int j = 0; j < COLUMN_HEADERS.length; j++) {
+                    tableData[i][j] = statistics[j];
+                }
+            }
+        } else {
+            tableData = new Object[0][COLUMN_HEADERS.length];
+        }
+
+        RefreshTableModel model = (RefreshTableModel) poolTable.getModel();
+        model.refreshDataVector(tableData);
+    }
+}
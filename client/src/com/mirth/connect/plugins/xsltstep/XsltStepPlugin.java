@@ -94,9 +94,8 @@ public class XsltStepPlugin extends TransformerStepPlugin {
 
         StringBuilder script = new StringBuilder();
 
-        script.append("tFactory = Packages.javax.xml.transform.TransformerFactory.newInstance();");
-        script.append("xsltTemplate = new Packages.java.io.StringReader(" + data.get("XsltTemplate") + ");");
-        script.append("transformer = tFactory.newTransformer(new Packages.javax.xml.transform.stream.StreamSource(xsltTemplate));");
+        // the compiled stylesheet is cached on the server
+        script.append("transformer = Packages.com.mirth.connect.server.util.XsltTemplateCache.getInstance().newTransformer(" + data.get("XsltTemplate") + ");");
         script.append("sourceVar = new Packages.java.io.StringReader(" + data.get("Source") + ");");
         script.append("resultVar = new Packages.java.io.StringWriter();");
         script.append("transformer.transform(new Packages.javax.xml.transform.stream.StreamSource(sourceVar), new Packages.javax.xml.transform.stream.StreamResult(resultVar));");
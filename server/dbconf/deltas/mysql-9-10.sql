@@ -0,0 +1 @@
+CREATE INDEX MESSAGE_INDEX9 ON MESSAGE(DATE_CREATED, ID)
\ No newline at end of file
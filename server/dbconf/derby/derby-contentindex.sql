@@ -0,0 +1,6 @@
+CREATE TABLE MESSAGE_TERM
+	(MESSAGE_ID VARCHAR(36) NOT NULL,
+	TERM VARCHAR(64) NOT NULL,
+	CONSTRAINT MESSAGE_ID_TERM_FK FOREIGN KEY(MESSAGE_ID) REFERENCES MESSAGE(ID) ON DELETE CASCADE);
+
+CREATE INDEX MESSAGE_TERM_INDEX1 ON MESSAGE_TERM(TERM, MESSAGE_ID);
@@ -0,0 +1,7 @@
+CREATE FULLTEXT INDEX MESSAGE_CONTENT_INDEX1 ON MESSAGE(RAW_DATA);
+
+CREATE FULLTEXT INDEX MESSAGE_CONTENT_INDEX2 ON MESSAGE(TRANSFORMED_DATA);
+
+CREATE FULLTEXT INDEX MESSAGE_CONTENT_INDEX3 ON MESSAGE(ENCODED_DATA);
+
+CREATE FULLTEXT INDEX MESSAGE_CONTENT_INDEX4 ON MESSAGE(ERRORS);
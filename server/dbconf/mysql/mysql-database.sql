@@ -91,6 +91,8 @@ CREATE INDEX MESSAGE_INDEX7 ON MESSAGE(CORRELATION_ID, CONNECTOR_NAME);
 
 CREATE INDEX MESSAGE_INDEX8 ON MESSAGE(ATTACHMENT);
 
+CREATE INDEX MESSAGE_INDEX9 ON MESSAGE(DATE_CREATED, ID);
+
 CREATE TABLE SCRIPT
 	(GROUP_ID VARCHAR(40) NOT NULL,
 	ID VARCHAR(40) NOT NULL,
@@ -157,7 +159,7 @@ INSERT INTO PERSON (USERNAME, LOGGED_IN) VALUES('admin', 0);
 
 INSERT INTO PERSON_PASSWORD (PERSON_ID, PASSWORD) VALUES(1, 'YzKZIAnbQ5m+3llggrZvNtf5fg69yX7pAplfYg0Dngn/fESH93OktQ==');
 
-INSERT INTO SCHEMA_INFO (VERSION) VALUES ('9');
+INSERT INTO SCHEMA_INFO (VERSION) VALUES ('10');
 
 INSERT INTO CONFIGURATION (CATEGORY, NAME, VALUE) VALUES ('core', 'update.url', 'http://updates.mirthcorp.com');
 
@@ -0,0 +1,7 @@
+CREATE INDEX MESSAGE_CONTENT_INDEX1 ON MESSAGE USING GIN (to_tsvector('simple', SUBSTR(RAW_DATA, 1, 262144)));
+
+CREATE INDEX MESSAGE_CONTENT_INDEX2 ON MESSAGE USING GIN (to_tsvector('simple', SUBSTR(TRANSFORMED_DATA, 1, 262144)));
+
+CREATE INDEX MESSAGE_CONTENT_INDEX3 ON MESSAGE USING GIN (to_tsvector('simple', SUBSTR(ENCODED_DATA, 1, 262144)));
+
+CREATE INDEX MESSAGE_CONTENT_INDEX4 ON MESSAGE USING GIN (to_tsvector('simple', SUBSTR(ERRORS, 1, 262144)));
@@ -0,0 +1,7 @@
+CREATE UNIQUE INDEX MESSAGE_CONTENT_KEY ON MESSAGE(SEQUENCE_ID);
+
+CREATE FULLTEXT CATALOG MESSAGE_CONTENT_CATALOG;
+
+CREATE FULLTEXT INDEX ON MESSAGE(RAW_DATA, TRANSFORMED_DATA, ENCODED_DATA, ERRORS)
+	KEY INDEX MESSAGE_CONTENT_KEY ON MESSAGE_CONTENT_CATALOG
+	WITH CHANGE_TRACKING AUTO;
@@ -768,11 +768,10 @@ public class Client {
     }
     
     public int exportMessages(int exportMode, int plainTextMode, MessageObjectFilter filter, int pageSize, File file, String charset) throws ClientException {
-        MessageListHandler messageListHandler = null;
         int messageCount = 0;
 
         try {
-            messageListHandler = getMessageListHandler(filter, pageSize, true);
+            MessageListHandler messageListHandler = getMessageListHandler(filter, pageSize, true);
             List<MessageObject> messageObjectList = messageListHandler.getFirstPage();
             StringBuilder output = new StringBuilder();
 
@@ -834,14 +833,6 @@ public class Client {
             return messageCount;
         } catch (Exception e) {
             throw new ClientException("Message export file could not be written.", e);
-        } finally {
-            if (messageListHandler != null) {
-                try {
-                    messageListHandler.removeFilterTables();
-                } catch (ClientException e) {
-                    throw new ClientException(e);
-                }
-            }
         }
     }
 
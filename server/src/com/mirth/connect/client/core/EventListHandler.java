@@ -9,6 +9,7 @@
 
 package com.mirth.connect.client.core;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.httpclient.NameValuePair;
@@ -18,6 +19,12 @@ import com.mirth.connect.model.Event;
 import com.mirth.connect.model.converters.ObjectXMLSerializer;
 import com.mirth.connect.model.filters.EventFilter;
 
+/**
+ * Pages through the events that match a filter, newest first. Each page is
+ * read after the last event of the previous page, so no temp tables are
+ * created on the server. The total count is computed by the server in the
+ * background, and getSize returns -1 until it is known.
+ */
 public class EventListHandler implements ListHandler {
 	private Logger logger = Logger.getLogger(this.getClass());
 	private ServerConnection connection;
@@ -25,26 +32,18 @@ public class EventListHandler implements ListHandler {
 	private EventFilter filter;
 	private int pageSize;
 	private int currentPage;
-	private int size = 0;
-	private boolean tempEnabled = true;
+	private int size = -1;
+	private boolean countStarted = false;
 	private String uid;
+	// the last event before each page, null for the first page
+	private List<Event> pageKeys = new ArrayList<Event>();
 	
 	public EventListHandler(EventFilter filter, int pageSize, String uid, ServerConnection connection) throws ClientException {
 		this.filter = filter;
 		this.pageSize = pageSize;
 		this.connection = connection;
 		this.uid = uid;
-
-		try {
-			size = createEventTempTable();
-			
-			if (size == -1) {
-				tempEnabled = false;
-			}
-		} catch (Exception e) {
-			logger.error(e);
-			throw new ClientException (e);
-		}
+		pageKeys.add(null);
 	}
 	
 	public EventFilter getFilter() {
@@ -59,7 +58,11 @@ public class EventListHandler implements ListHandler {
 		return currentPage;
 	}
 	
-	public int getSize() {
+	public int getSize() throws ListHandlerException {
+		if (size == -1) {
+			size = getEventCount();
+		}
+		
 		return size;
 	}
 	
@@ -69,7 +72,7 @@ public class EventListHandler implements ListHandler {
 	
 	public List<Event> getAllPages() throws ListHandlerException {
 		logger.debug("retrieving all pages");
-		return getEventsByPage(-1);
+		return getEventsByKey(null, 0);
 	}
 	
 	public List<Event> getFirstPage() throws ListHandlerException {
@@ -83,7 +86,7 @@ public class EventListHandler implements ListHandler {
 		logger.debug("retrieving next page of " + pageSize + " results");
 		
 		currentPage++;
-		return getEventsByPage(currentPage);		
+		return getEventsByPage(currentPage);
 	}
 
 	public List<Event> getPreviousPage() throws ListHandlerException  {
@@ -97,28 +100,46 @@ public class EventListHandler implements ListHandler {
 		}
 	}
 	
-	public void removeEventFilterTables() throws ClientException {
-		NameValuePair[] params = { new NameValuePair("op", Operations.EVENT_REMOVE_FILTER_TABLES.getName()), new NameValuePair("uid", uid) };
-		connection.executePostMethod(Client.EVENT_SERVLET, params);
-	}
-	
-	private int createEventTempTable() throws ListHandlerException {
-		NameValuePair[] params = { new NameValuePair("op", Operations.EVENT_CREATE_TEMP_TABLE.getName()), new NameValuePair("filter", serializer.toXML(filter)), new NameValuePair("uid", uid) };
+	/*
+	 * The first call starts the count on the server, later calls return it
+	 * once it is done.
+	 */
+	private int getEventCount() throws ListHandlerException {
+		NameValuePair[] params = { new NameValuePair("op", Operations.EVENT_GET_COUNT.getName()), new NameValuePair("filter", (countStarted ? "" : serializer.toXML(filter))), new NameValuePair("uid", uid) };
 		
 		try {
-			return Integer.parseInt(connection.executePostMethod(Client.EVENT_SERVLET, params));	
+			countStarted = true;
+			return Integer.parseInt(connection.executePostMethod(Client.EVENT_SERVLET, params).trim());
 		} catch (ClientException e) {
 			throw new ListHandlerException(e);
 		}
 	}
 	
-	private List<Event> getEventsByPage(int page) throws ListHandlerException {	
-		NameValuePair[] params = { (tempEnabled ? new NameValuePair("op", Operations.EVENT_GET_BY_PAGE.getName()) : new NameValuePair("op", Operations.EVENT_GET_BY_PAGE_LIMIT.getName())), 
-				new NameValuePair("page", String.valueOf(page)), 
-				new NameValuePair("pageSize", String.valueOf(pageSize)), 
-				new NameValuePair("maxEvents", String.valueOf(size)), 
-				new NameValuePair("uid", uid), 
-				(tempEnabled ? new NameValuePair("filter", "") : new NameValuePair("filter", serializer.toXML(filter)))};
+	private List<Event> getEventsByPage(int page) throws ListHandlerException {
+		if (page >= pageKeys.size()) {
+			// the previous page was empty
+			return new ArrayList<Event>();
+		}
+		
+		List<Event> events = getEventsByKey(pageKeys.get(page), pageSize);
+		
+		while (pageKeys.size() > page + 1) {
+			pageKeys.remove(pageKeys.size() - 1);
+		}
+		
+		if (!events.isEmpty()) {
+			pageKeys.add(events.get(events.size() - 1));
+		}
+		
+		return events;
+	}
+	
+	private List<Event> getEventsByKey(Event key, int limit) throws ListHandlerException {
+		NameValuePair[] params = { new NameValuePair("op", Operations.EVENT_GET_BY_KEY.getName()), 
+				new NameValuePair("filter", serializer.toXML(filter)), 
+				new NameValuePair("pageSize", String.valueOf(limit)), 
+				new NameValuePair("keyId", (key != null ? String.valueOf(key.getId()) : "")), 
+				new NameValuePair("uid", uid) };
 
 		try {
 			return (List<Event>) serializer.fromXML(connection.executePostMethod(Client.EVENT_SERVLET, params));	
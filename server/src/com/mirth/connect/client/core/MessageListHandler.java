@@ -9,6 +9,7 @@
 
 package com.mirth.connect.client.core;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.httpclient.NameValuePair;
@@ -18,6 +19,12 @@ import com.mirth.connect.model.MessageObject;
 import com.mirth.connect.model.converters.ObjectXMLSerializer;
 import com.mirth.connect.model.filters.MessageObjectFilter;
 
+/**
+ * Pages through the messages that match a filter, newest first. Each page is
+ * read after the last message of the previous page, so no temp tables are
+ * created on the server. The total count is computed by the server in the
+ * background, and getSize returns -1 until it is known.
+ */
 public class MessageListHandler implements ListHandler {
 	private Logger logger = Logger.getLogger(this.getClass());
 	private ServerConnection connection;
@@ -25,26 +32,18 @@ public class MessageListHandler implements ListHandler {
 	private MessageObjectFilter filter;
 	private int pageSize;
 	private int currentPage;
-	private int size = 0;
-	private boolean tempEnabled = true;
+	private int size = -1;
+	private boolean countStarted = false;
 	private String uid;
+	// the last message before each page, null for the first page
+	private List<MessageObject> pageKeys = new ArrayList<MessageObject>();
 	
 	public MessageListHandler(MessageObjectFilter filter, int pageSize, String uid, ServerConnection connection) throws ClientException {
 		this.filter = filter;
 		this.pageSize = pageSize;
 		this.connection = connection;
 		this.uid = uid;
-
-		try {
-			size = createMessagesTempTable();
-			
-			if (size == -1) {
-				tempEnabled = false;
-			}
-		} catch (Exception e) {
-			logger.error(e);
-			throw new ClientException (e);
-		}
+		pageKeys.add(null);
 	}
 	
 	public MessageObjectFilter getFilter() {
@@ -59,7 +58,11 @@ public class MessageListHandler implements ListHandler {
 		return currentPage;
 	}
 	
-	public int getSize() {
+	public int getSize() throws ListHandlerException {
+		if (size == -1) {
+			size = getMessageCount();
+		}
+		
 		return size;
 	}
 	
@@ -69,7 +72,7 @@ public class MessageListHandler implements ListHandler {
 	
 	public List<MessageObject> getAllPages() throws ListHandlerException {
 		logger.debug("retrieving all pages");
-		return getMessagesByPage(-1);
+		return getMessagesByKey(null, 0);
 	}
 	
 	public List<MessageObject> getFirstPage() throws ListHandlerException {
@@ -83,7 +86,7 @@ public class MessageListHandler implements ListHandler {
 		logger.debug("retrieving next page of " + pageSize + " results");
 		
 		currentPage++;
-		return getMessagesByPage(currentPage);		
+		return getMessagesByPage(currentPage);
 	}
 
 	public List<MessageObject> getPreviousPage() throws ListHandlerException  {
@@ -97,28 +100,47 @@ public class MessageListHandler implements ListHandler {
 		}
 	}
 	
-	public void removeFilterTables() throws ClientException {
-		NameValuePair[] params = { new NameValuePair("op", Operations.MESSAGE_FILTER_TABLES_REMOVE.getName()), new NameValuePair("uid", uid) };
-		connection.executePostMethod(Client.MESSAGE_SERVLET, params);
-	}
-	
-	private int createMessagesTempTable() throws ListHandlerException {
-		NameValuePair[] params = { new NameValuePair("op", Operations.MESSAGE_CREATE_TEMP_TABLE.getName()), new NameValuePair("filter", serializer.toXML(filter)), new NameValuePair("uid", uid) };
+	/*
+	 * The first call starts the count on the server, later calls return it
+	 * once it is done.
+	 */
+	private int getMessageCount() throws ListHandlerException {
+		NameValuePair[] params = { new NameValuePair("op", Operations.MESSAGE_GET_COUNT.getName()), new NameValuePair("filter", (countStarted ? "" : serializer.toXML(filter))), new NameValuePair("uid", uid) };
 		
 		try {
-			return Integer.parseInt(connection.executePostMethod(Client.MESSAGE_SERVLET, params));	
+			countStarted = true;
+			return Integer.parseInt(connection.executePostMethod(Client.MESSAGE_SERVLET, params).trim());
 		} catch (ClientException e) {
 			throw new ListHandlerException(e);
 		}
 	}
 	
-	private List<MessageObject> getMessagesByPage(int page) throws ListHandlerException {	
-		NameValuePair[] params = { (tempEnabled ? new NameValuePair("op", Operations.MESSAGE_GET_BY_PAGE.getName()) : new NameValuePair("op", Operations.MESSAGE_GET_BY_PAGE_LIMIT.getName())), 
-				new NameValuePair("page", String.valueOf(page)), 
-				new NameValuePair("pageSize", String.valueOf(pageSize)), 
-				new NameValuePair("maxMessages", String.valueOf(size)), 
-				new NameValuePair("uid", uid), 
-				(tempEnabled ? new NameValuePair("filter", "") : new NameValuePair("filter", serializer.toXML(filter)))};
+	private List<MessageObject> getMessagesByPage(int page) throws ListHandlerException {
+		if (page >= pageKeys.size()) {
+			// the previous page was empty
+			return new ArrayList<MessageObject>();
+		}
+		
+		List<MessageObject> messages = getMessagesByKey(pageKeys.get(page), pageSize);
+		
+		while (pageKeys.size() > page + 1) {
+			pageKeys.remove(pageKeys.size() - 1);
+		}
+		
+		if (!messages.isEmpty()) {
+			pageKeys.add(messages.get(messages.size() - 1));
+		}
+		
+		return messages;
+	}
+	
+	private List<MessageObject> getMessagesByKey(MessageObject key, int limit) throws ListHandlerException {
+		NameValuePair[] params = { new NameValuePair("op", Operations.MESSAGE_GET_BY_KEY.getName()), 
+				new NameValuePair("filter", serializer.toXML(filter)), 
+				new NameValuePair("pageSize", String.valueOf(limit)), 
+				new NameValuePair("keyDateCreated", (key != null ? String.valueOf(key.getDateCreated().getTimeInMillis()) : "")), 
+				new NameValuePair("keyId", (key != null ? String.valueOf(key.getId()) : "")), 
+				new NameValuePair("uid", uid) };
 
 		try {
 			return (List<MessageObject>) serializer.fromXML(connection.executePostMethod(Client.MESSAGE_SERVLET, params));	
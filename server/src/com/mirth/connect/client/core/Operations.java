@@ -91,12 +91,16 @@ public class Operations {
     public static final Operation MESSAGE_DICOM_MESSAGE_GET = new Operation("getDICOMMessage", "Get DICOM message", false);
     public static final Operation MESSAGE_CREATE_TEMP_TABLE = new Operation("createMessagesTempTable", "Create message temp table", false);
     public static final Operation MESSAGE_FILTER_TABLES_REMOVE = new Operation("removeFilterTables", "Remove filter tables", false);
+    public static final Operation MESSAGE_GET_BY_KEY = new Operation("getMessagesByKey", "Get messages by key", false);
+    public static final Operation MESSAGE_GET_COUNT = new Operation("getMessageCount", "Get message count", false);
 
     // Events
     public static final Operation EVENT_CREATE_TEMP_TABLE = new Operation("createEventTempTable", "Create event temp tables", false);
     public static final Operation EVENT_REMOVE_FILTER_TABLES = new Operation("removeEventFilterTables", "Remove event filter tables", false);
     public static final Operation EVENT_GET_BY_PAGE = new Operation("getEventsByPage", "Get events by page", false);
     public static final Operation EVENT_GET_BY_PAGE_LIMIT = new Operation("getEventsByPageLimit", "Get events by page limit", false);
+    public static final Operation EVENT_GET_BY_KEY = new Operation("getEventsByKey", "Get events by key", false);
+    public static final Operation EVENT_GET_COUNT = new Operation("getEventCount", "Get event count", false);
     public static final Operation EVENT_EXPORT_ALL = new Operation("exportAllEvents", "Export all events", true);
     public static final Operation EVENT_REMOVE_ALL = new Operation("removeAllEvents", "Remove all events", true);
     public static final Operation EVENT_EXPORT_AND_REMOVE_ALL = new Operation("exportAndRemoveAllEvents", "Export and remove all events", true);
@@ -177,10 +181,14 @@ public class Operations {
         operationMap.put(MESSAGE_DICOM_MESSAGE_GET.getName(), MESSAGE_DICOM_MESSAGE_GET);
         operationMap.put(MESSAGE_CREATE_TEMP_TABLE.getName(), MESSAGE_CREATE_TEMP_TABLE);
         operationMap.put(MESSAGE_FILTER_TABLES_REMOVE.getName(), MESSAGE_FILTER_TABLES_REMOVE);
+        operationMap.put(MESSAGE_GET_BY_KEY.getName(), MESSAGE_GET_BY_KEY);
+        operationMap.put(MESSAGE_GET_COUNT.getName(), MESSAGE_GET_COUNT);
         operationMap.put(EVENT_CREATE_TEMP_TABLE.getName(), EVENT_CREATE_TEMP_TABLE);
         operationMap.put(EVENT_REMOVE_FILTER_TABLES.getName(), EVENT_REMOVE_FILTER_TABLES);
         operationMap.put(EVENT_GET_BY_PAGE.getName(), EVENT_GET_BY_PAGE);
         operationMap.put(EVENT_GET_BY_PAGE_LIMIT.getName(), EVENT_GET_BY_PAGE_LIMIT);
+        operationMap.put(EVENT_GET_BY_KEY.getName(), EVENT_GET_BY_KEY);
+        operationMap.put(EVENT_GET_COUNT.getName(), EVENT_GET_COUNT);
         operationMap.put(EVENT_EXPORT_ALL.getName(), EVENT_EXPORT_ALL);
         operationMap.put(EVENT_REMOVE_ALL.getName(), EVENT_REMOVE_ALL);
         operationMap.put(EVENT_EXPORT_AND_REMOVE_ALL.getName(), EVENT_EXPORT_AND_REMOVE_ALL);
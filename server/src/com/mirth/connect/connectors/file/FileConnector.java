@@ -65,6 +65,7 @@ public class FileConnector extends AbstractServiceEnabledConnector {
     public static final String PROPERTY_DIRECTORY = "directory";
     public static final String PROPERTY_SORT_ATTRIBUTE = "sortAttribute";
     public static final String PROPERTY_BATCH_PROCESS = "processBatchFiles";
+    public static final String PROPERTY_SPOOLED_FILE = "spooledFile";
     public static final String PROPERTY_CHANNEL_ID = "channelId";
     public static final String PROPERTY_SCHEME = "scheme";
     public static final String PROPERTY_PASSIVE_MODE = "passive";
@@ -114,6 +115,9 @@ public class FileConnector extends AbstractServiceEnabledConnector {
     private boolean serialiseObjects = false;
     private UMOMessageReceiver receiver = null;
     private boolean processBatchFiles = true;
+    private int batchThreads = 1;
+    private boolean batchOrdered = true;
+    private long spoolThreshold = 0;
     private boolean validateConnections = true;
     private String charsetEncoding;
     private String channelId;
@@ -592,6 +596,52 @@ public class FileConnector extends AbstractServiceEnabledConnector {
         this.processBatchFiles = processBatchFiles;
     }
 
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    /**
+     * Sets the number of threads that process the messages of a batch file.
+     * With more than one thread, the messages are transformed in parallel
+     * while the file is read.
+     *
+     * @param batchThreads
+     */
+    public void setBatchThreads(int batchThreads) {
+        this.batchThreads = batchThreads;
+    }
+
+    public boolean isBatchOrdered() {
+        return batchOrdered;
+    }
+
+    /**
+     * Sets whether the messages of a batch file are sent to the destinations
+     * in the order of the file when several batch threads are used.
+     *
+     * @param batchOrdered
+     */
+    public void setBatchOrdered(boolean batchOrdered) {
+        this.batchOrdered = batchOrdered;
+    }
+
+    public long getSpoolThreshold() {
+        return spoolThreshold;
+    }
+
+    /**
+     * Sets the size in bytes above which a file is copied to a spool file
+     * and received as a handle to it, instead of being read into the
+     * message, or 0 to always read files into the message. Files are only
+     * spooled for the XML data type on synchronous channels, and the spool
+     * file is deleted once the message has been routed.
+     *
+     * @param spoolThreshold
+     */
+    public void setSpoolThreshold(long spoolThreshold) {
+        this.spoolThreshold = spoolThreshold;
+    }
+
     public boolean isBinary() {
         return binary;
     }
@@ -9,15 +9,20 @@
 
 package com.mirth.connect.connectors.file;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.mule.MuleException;
 import org.mule.config.i18n.Message;
@@ -26,6 +31,8 @@ import org.mule.impl.MuleMessage;
 import org.mule.providers.PollingMessageReceiver;
 import org.mule.providers.TemplateValueReplacer;
 import org.mule.providers.VariableFilenameParser;
+import org.mule.routing.outbound.FilteringMulticastingRouter;
+import org.mule.routing.outbound.FilteringMulticastingRouter.RoutingTurn;
 import org.mule.umo.MessagingException;
 import org.mule.umo.UMOComponent;
 import org.mule.umo.UMOException;
@@ -40,6 +47,8 @@ import org.mule.umo.routing.RoutingException;
 import com.mirth.connect.connectors.file.filesystems.FileInfo;
 import com.mirth.connect.connectors.file.filesystems.FileSystemConnection;
 import com.mirth.connect.model.MessageObject.Protocol;
+import com.mirth.connect.model.SpooledFile;
+import com.mirth.connect.model.converters.ObjectXMLSerializer;
 import com.mirth.connect.server.Constants;
 import com.mirth.connect.server.controllers.AlertController;
 import com.mirth.connect.server.controllers.ControllerFactory;
@@ -49,10 +58,13 @@ import com.mirth.connect.server.controllers.MonitoringController.Event;
 import com.mirth.connect.server.mule.adaptors.Adaptor;
 import com.mirth.connect.server.mule.adaptors.AdaptorFactory;
 import com.mirth.connect.server.mule.adaptors.BatchAdaptor;
+import com.mirth.connect.server.mule.adaptors.BatchMessagePipeline;
 import com.mirth.connect.server.mule.adaptors.BatchMessageProcessor;
 import com.mirth.connect.server.mule.transformers.JavaScriptPostprocessor;
 
-public class FileMessageReceiver extends PollingMessageReceiver implements BatchMessageProcessor {
+public class FileMessageReceiver extends PollingMessageReceiver implements BatchMessageProcessor, BatchMessagePipeline.Processor {
+    private static final int SPOOL_BUFFER_SIZE = 65536;
+
     private String readDir = null;
     private String moveDir = null;
     private String errorDir = null;
@@ -68,6 +80,9 @@ public class FileMessageReceiver extends PollingMessageReceiver implements Batch
     private FileConnector fileConnector = null;
 
     private String originalFilename = null;
+    private boolean spoolFiles = false;
+    private int batchThreads = 1;
+    private ObjectXMLSerializer serializer = new ObjectXMLSerializer();
 
     public FileMessageReceiver(UMOConnector connector, UMOComponent component, UMOEndpoint endpoint, String readDir, String moveDir, String moveToPattern, String errorDir, Long frequency) throws InitialisationException {
         super(connector, component, endpoint, frequency);
@@ -86,6 +101,40 @@ public class FileMessageReceiver extends PollingMessageReceiver implements Batch
         }
 
         filenamePattern = replacer.replaceValues(fileConnector.getFileFilter(), fileConnector.getChannelId());
+
+        /*
+         * A spooled file is received as an XML handle, so only the XML data
+         * type can read it. The spool file is deleted once the message has
+         * been routed, which is only when the channel is synchronous. Batch
+         * files are never spooled: the batch adaptor reads them as a stream
+         * and splits them into messages, so a large batch file is never held
+         * in memory, while a handle to the whole file couldn't be split.
+         */
+        if (fileConnector.getSpoolThreshold() > 0) {
+            if (fileConnector.isProcessBatchFiles()) {
+                logger.warn("Large files are not spooled, since batch files are read as a stream and each of their messages is routed on its own.");
+            } else if (!Protocol.XML.name().equals(fileConnector.getInboundProtocol())) {
+                logger.warn("Large files are not spooled, since the " + fileConnector.getInboundProtocol() + " data type can't receive a spooled file.");
+            } else if (!endpoint.isSynchronous()) {
+                logger.warn("Large files are not spooled, since the channel is not synchronous.");
+            } else {
+                spoolFiles = true;
+            }
+        }
+
+        /*
+         * The workers keep the order of a batch by waiting for their turn
+         * before the message is routed, which only happens on the worker
+         * thread when the channel is synchronous. Otherwise an ordered batch
+         * is processed on the polling thread, like without workers.
+         */
+        batchThreads = fileConnector.getBatchThreads();
+
+        if ((batchThreads > 1) && fileConnector.isBatchOrdered() && !endpoint.isSynchronous()) {
+            logger.warn("The messages of batch files are processed on one thread, since they must be ordered and the channel is not synchronous.");
+            batchThreads = 1;
+        }
+
         monitoringController.updateStatus(connector, connectorType, Event.INITIALIZED);
     }
 
@@ -160,8 +209,17 @@ public class FileMessageReceiver extends PollingMessageReceiver implements Batch
      *             , UMOException
      */
     public void processBatchMessage(String message) throws MessagingException, UMOException {
+        processBatchMessage(message, null);
+    }
+
+    public void processBatchMessage(String message, RoutingTurn turn) throws MessagingException, UMOException {
         UMOMessageAdapter messageAdapter = connector.getMessageAdapter(message);
         messageAdapter.setProperty(FileConnector.PROPERTY_ORIGINAL_FILENAME, originalFilename);
+
+        if (turn != null) {
+            messageAdapter.setProperty(FilteringMulticastingRouter.ROUTING_TURN_PROPERTY, turn);
+        }
+
         UMOMessage umoMessage = routeMessage(new MuleMessage(messageAdapter), endpoint.isSynchronous());
         if (umoMessage != null) {
             postProcessor.doPostProcess(umoMessage.getPayload());
@@ -216,6 +274,8 @@ public class FileMessageReceiver extends PollingMessageReceiver implements Batch
                     // ast: use the user-selected encoding
                     if (fileConnector.isProcessBatchFiles()) {
                         processBatch(file);
+                    } else if (spoolFiles && file.getSize() > fileConnector.getSpoolThreshold()) {
+                        processSpooledFile(file);
                     } else {
                         String message = "";
                         if (fileConnector.isBinary()) {
@@ -306,7 +366,31 @@ public class FileMessageReceiver extends PollingMessageReceiver implements Batch
                 in = new InputStreamReader(con.readFile(file.getName(), readDir), fileConnector.getCharsetEncoding());
                 Map<String, String> protocolProperties = fileConnector.getProtocolProperties();
                 protocolProperties.put("batchScriptId", fileConnector.getChannelId());
-                batchAdaptor.processBatch(in, fileConnector.getProtocolProperties(), this, endpoint);
+
+                if (batchThreads > 1) {
+                    // the file is read on this thread while the workers
+                    // process the messages
+                    BatchMessagePipeline pipeline = new BatchMessagePipeline(fileConnector.getName(), this, batchThreads, fileConnector.isBatchOrdered());
+
+                    try {
+                        batchAdaptor.processBatch(in, fileConnector.getProtocolProperties(), pipeline, endpoint);
+                    } catch (Exception e) {
+                        // wait for the queued messages, even if the file
+                        // could not be read to the end, and report the read
+                        // error rather than the errors of the messages
+                        try {
+                            pipeline.finish(endpoint);
+                        } catch (Exception finishException) {
+                            logger.error("Error processing messages of batch file " + file.getName(), finishException);
+                        }
+
+                        throw e;
+                    }
+
+                    pipeline.finish(endpoint);
+                } else {
+                    batchAdaptor.processBatch(in, fileConnector.getProtocolProperties(), this, endpoint);
+                }
             } finally {
                 if (in != null) {
                     in.close();
@@ -319,6 +403,76 @@ public class FileMessageReceiver extends PollingMessageReceiver implements Batch
         }
     }
 
+    /**
+     * Routes a large file as a handle to a spooled copy, so its contents are
+     * never held in memory or stored with the message. The message is the
+     * handle serialized as XML.
+     */
+    private void processSpooledFile(FileInfo file) throws Exception {
+        SpooledFile spooledFile = spoolFile(file);
+
+        try {
+            UMOMessageAdapter adapter = connector.getMessageAdapter(serializer.toXML(spooledFile));
+            adapter.setProperty(FileConnector.PROPERTY_ORIGINAL_FILENAME, originalFilename);
+            adapter.setProperty(FileConnector.PROPERTY_SPOOLED_FILE, spooledFile);
+            UMOMessage umoMessage = routeMessage(new MuleMessage(adapter), endpoint.isSynchronous());
+            if (umoMessage != null) {
+                postProcessor.doPostProcess(umoMessage.getPayload());
+            }
+        } finally {
+            if (!spooledFile.delete()) {
+                logger.warn("Could not delete spool file " + spooledFile.getPath());
+            }
+        }
+    }
+
+    /** Copy a file to the spool directory of the channel in chunks */
+    private SpooledFile spoolFile(FileInfo file) throws Exception {
+        File spoolDir = new File(System.getProperty("java.io.tmpdir"), "spool" + File.separator + fileConnector.getChannelId());
+        spoolDir.mkdirs();
+        File spool = File.createTempFile("file", ".spool", spoolDir);
+
+        UMOEndpointURI uri = endpoint.getEndpointURI();
+        FileSystemConnection con = fileConnector.getConnection(uri, null);
+        InputStream is = null;
+        OutputStream os = null;
+        long size = 0;
+        boolean spooled = false;
+
+        try {
+            try {
+                is = con.readFile(file.getName(), readDir);
+                os = new BufferedOutputStream(new FileOutputStream(spool), SPOOL_BUFFER_SIZE);
+                byte[] buffer = new byte[SPOOL_BUFFER_SIZE];
+                int read = 0;
+
+                while ((read = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, read);
+                    size += read;
+                }
+
+                // closed here, so that an error writing the last chunk fails
+                // the copy
+                os.close();
+                os = null;
+            } finally {
+                IOUtils.closeQuietly(os);
+                IOUtils.closeQuietly(is);
+                con.closeReadFile();
+            }
+
+            spooled = true;
+        } finally {
+            fileConnector.releaseConnection(uri, con, null);
+
+            if (!spooled) {
+                spool.delete();
+            }
+        }
+
+        return new SpooledFile(file.getName(), spool.getAbsolutePath(), size, fileConnector.getCharsetEncoding());
+    }
+
     /** Delete a file */
     private boolean deleteFile(String name, String dir, boolean mayNotExist) throws Exception {
         UMOEndpointURI uri = endpoint.getEndpointURI();
@@ -39,6 +39,9 @@ public class FileReaderProperties implements ComponentProperties {
     public static final String FILE_FILE_AGE = "fileAge";
     public static final String FILE_SORT_BY = "sortAttribute";
     public static final String FILE_PROCESS_BATCH_FILES = "processBatchFiles";
+    public static final String FILE_BATCH_THREADS = "batchThreads";
+    public static final String FILE_BATCH_ORDERED = "batchOrdered";
+    public static final String FILE_SPOOL_THRESHOLD = "spoolThreshold";
     public static final String SORT_BY_NAME = "name";
     public static final String SORT_BY_SIZE = "size";
     public static final String SORT_BY_DATE = "date";
@@ -83,6 +86,9 @@ public class FileReaderProperties implements ComponentProperties {
         properties.put(CONNECTOR_CHARSET_ENCODING, CharsetUtils.DEFAULT_ENCODING);
         properties.put(FILE_FILTER, "*");
         properties.put(FILE_PROCESS_BATCH_FILES, "0");
+        properties.put(FILE_BATCH_THREADS, "1");
+        properties.put(FILE_BATCH_ORDERED, "1");
+        properties.put(FILE_SPOOL_THRESHOLD, "0");
         return properties;
     }
 }
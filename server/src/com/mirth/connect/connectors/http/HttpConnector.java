@@ -9,14 +9,23 @@
 
 package com.mirth.connect.connectors.http;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.httpclient.Cookie;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.auth.AuthPolicy;
 import org.mule.providers.QueueEnabledConnector;
+import org.mule.providers.QueueEnabledMessageDispatcher;
 import org.mule.umo.lifecycle.InitialisationException;
 
 import com.mirth.connect.server.Constants;
 import com.mirth.connect.server.controllers.ConfigurationController;
 import com.mirth.connect.server.controllers.ControllerFactory;
+import com.mirth.connect.server.util.HttpConnectionPool;
 import com.mirth.connect.util.CharsetUtils;
 
 public class HttpConnector extends QueueEnabledConnector {
@@ -38,6 +47,13 @@ public class HttpConnector extends QueueEnabledConnector {
     private String dispatcherReplyChannelId;
     private boolean dispatcherIncludeHeadersInResponse;
     private String dispatcherSocketTimeout;
+    private int dispatcherMaxConnectionsPerHost = 20;
+    private int dispatcherMaxConnections = 100;
+    private int dispatcherIdleTimeout = 60000;
+    private boolean dispatcherCompressRequest;
+    private boolean dispatcherAcceptCompressed;
+    private HttpConnectionPool connectionPool = null;
+    private HttpState cookieState = new HttpState();
     
     private String receiverResponseContentType;
     private boolean receiverBodyOnly;
@@ -71,6 +87,11 @@ public class HttpConnector extends QueueEnabledConnector {
 
         configuration.configureConnector(this);
     }
+
+    @Override
+    protected QueueEnabledMessageDispatcher createQueueDispatcher() {
+        return new HttpMessageDispatcher(this);
+    }
     
     public HttpConfiguration getConfiguration() {
         return configuration;
@@ -227,6 +248,94 @@ public class HttpConnector extends QueueEnabledConnector {
     public void setDispatcherSocketTimeout(String dispatcherSocketTimeout) {
         this.dispatcherSocketTimeout = dispatcherSocketTimeout;
     }
+
+    public int getDispatcherMaxConnectionsPerHost() {
+        return dispatcherMaxConnectionsPerHost;
+    }
+
+    public void setDispatcherMaxConnectionsPerHost(int dispatcherMaxConnectionsPerHost) {
+        this.dispatcherMaxConnectionsPerHost = dispatcherMaxConnectionsPerHost;
+    }
+
+    public int getDispatcherMaxConnections() {
+        return dispatcherMaxConnections;
+    }
+
+    public void setDispatcherMaxConnections(int dispatcherMaxConnections) {
+        this.dispatcherMaxConnections = dispatcherMaxConnections;
+    }
+
+    public int getDispatcherIdleTimeout() {
+        return dispatcherIdleTimeout;
+    }
+
+    public void setDispatcherIdleTimeout(int dispatcherIdleTimeout) {
+        this.dispatcherIdleTimeout = dispatcherIdleTimeout;
+    }
+
+    public boolean isDispatcherCompressRequest() {
+        return dispatcherCompressRequest;
+    }
+
+    public void setDispatcherCompressRequest(boolean dispatcherCompressRequest) {
+        this.dispatcherCompressRequest = dispatcherCompressRequest;
+    }
+
+    public boolean isDispatcherAcceptCompressed() {
+        return dispatcherAcceptCompressed;
+    }
+
+    public void setDispatcherAcceptCompressed(boolean dispatcherAcceptCompressed) {
+        this.dispatcherAcceptCompressed = dispatcherAcceptCompressed;
+    }
+
+    /**
+     * Returns the client used by the dispatchers of this connector. Its
+     * connections are kept open and shared by the queue threads until the
+     * connector is disconnected.
+     * 
+     * @return
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (connectionPool == null) {
+            connectionPool = new HttpConnectionPool(getName(), dispatcherMaxConnectionsPerHost, dispatcherMaxConnections, dispatcherIdleTimeout);
+            HttpClient client = connectionPool.getClient();
+
+            // the credentials are set for each request since they can be replaced
+            if (dispatcherUseAuthentication) {
+                List<String> authenticationPreferences = new ArrayList<String>();
+
+                if ("Digest".equalsIgnoreCase(dispatcherAuthenticationType)) {
+                    authenticationPreferences.add(AuthPolicy.DIGEST);
+                    logger.debug("using Digest authentication");
+                } else {
+                    authenticationPreferences.add(AuthPolicy.BASIC);
+                    logger.debug("using Basic authentication");
+                }
+
+                client.getParams().setAuthenticationPreemptive(true);
+                client.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY, authenticationPreferences);
+            }
+        }
+
+        return connectionPool.getClient();
+    }
+
+    public synchronized HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Returns a new state for a request of the dispatchers. Its cookies are
+     * shared by all requests of the connector, so that cookies like session
+     * ids are sent with the next messages, while the credentials are only set
+     * on the state of the request since they can depend on the message.
+     * 
+     * @return
+     */
+    public HttpState createHttpState() {
+        return new SharedCookieState(cookieState);
+    }
     
     public String getReceiverContextPath() {
         return receiverContextPath;
@@ -260,8 +369,68 @@ public class HttpConnector extends QueueEnabledConnector {
         this.receiverTimeout = receiverTimeout;
     }
 
+    @Override
+    public void doDisconnect() throws Exception {
+        super.doDisconnect();
+
+        synchronized (this) {
+            if (connectionPool != null) {
+                connectionPool.shutdown();
+                connectionPool = null;
+            }
+        }
+
+        cookieState.clearCookies();
+    }
+
     @Override
     public String getProtocol() {
         return "HTTP";
     }
+
+    /*
+     * A state that keeps its cookies in another state.
+     */
+    private static class SharedCookieState extends HttpState {
+        private HttpState cookieState;
+
+        public SharedCookieState(HttpState cookieState) {
+            this.cookieState = cookieState;
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            cookieState.addCookie(cookie);
+        }
+
+        @Override
+        public void addCookies(Cookie[] cookies) {
+            cookieState.addCookies(cookies);
+        }
+
+        @Override
+        public Cookie[] getCookies() {
+            return cookieState.getCookies();
+        }
+
+        @Override
+        public Cookie[] getCookies(String domain, int port, String path, boolean secure) {
+            return cookieState.getCookies(domain, port, path, secure);
+        }
+
+        @Override
+        public boolean purgeExpiredCookies() {
+            return cookieState.purgeExpiredCookies();
+        }
+
+        @Override
+        public boolean purgeExpiredCookies(Date date) {
+            return cookieState.purgeExpiredCookies(date);
+        }
+
+        @Override
+        public void clearCookies() {
+            cookieState.clearCookies();
+        }
+    }
 }
\ No newline at end of file
@@ -9,25 +9,29 @@
 
 package com.mirth.connect.connectors.http;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.net.ConnectException;
 import java.net.URLDecoder;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthPolicy;
 import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
@@ -36,6 +40,7 @@ import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
@@ -70,8 +75,6 @@ public class HttpMessageDispatcher extends AbstractMessageDispatcher implements
     private TemplateValueReplacer replacer = new TemplateValueReplacer();
     private ConnectorType connectorType = ConnectorType.WRITER;
 
-    private HttpClient client = new HttpClient();
-
     public HttpMessageDispatcher(HttpConnector connector) {
         super(connector);
         this.connector = connector;
@@ -120,40 +123,33 @@ public class HttpMessageDispatcher extends AbstractMessageDispatcher implements
         try {
             httpMethod = buildHttpRequest(replacer.replaceValues(address, mo), mo);
 
-            // authentication
+            /*
+             * The client is shared by the queue threads, so the credentials
+             * and timeout are set on the request instead of the client. The
+             * cookies of the state are shared by the requests.
+             */
+            HttpState state = connector.createHttpState();
 
             if (connector.isDispatcherUseAuthentication()) {
-                List<String> authenticationPreferences = new ArrayList<String>();
-
-                if ("Digest".equalsIgnoreCase(connector.getDispatcherAuthenticationType())) {
-                    authenticationPreferences.add(AuthPolicy.DIGEST);
-                    logger.debug("using Digest authentication");
-                } else {
-                    authenticationPreferences.add(AuthPolicy.BASIC);
-                    logger.debug("using Basic authentication");
-                }
-
-                client.getParams().setAuthenticationPreemptive(true);
-                client.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY, authenticationPreferences);
                 Credentials credentials = new UsernamePasswordCredentials(replacer.replaceValues(connector.getDispatcherUsername(), mo), replacer.replaceValues(connector.getDispatcherPassword(), mo));
-                client.getState().setCredentials(new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT, AuthScope.ANY_REALM), credentials);
+                state.setCredentials(new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT, AuthScope.ANY_REALM), credentials);
                 logger.debug("using authentication with credentials: " + credentials);
             }
 
-            client.getParams().setSoTimeout(NumberUtils.toInt(replacer.replaceValues(connector.getDispatcherSocketTimeout()), 30000));
+            httpMethod.getParams().setSoTimeout(NumberUtils.toInt(replacer.replaceValues(connector.getDispatcherSocketTimeout()), 30000));
 
             // execute the method
             logger.debug("executing method: type=" + httpMethod.getName() + ", uri=" + httpMethod.getURI().toString());
-            int statusCode = client.executeMethod(httpMethod);
+            int statusCode = connector.getHttpClient().executeMethod(null, httpMethod, state);
             logger.debug("received status code: " + statusCode);
 
             String response = null;
 
             if (connector.isDispatcherIncludeHeadersInResponse()) {
                 HttpMessageConverter converter = new HttpMessageConverter();
-                response = converter.httpResponseToXml(httpMethod.getStatusLine().toString(), httpMethod.getResponseHeaders(), httpMethod.getResponseBodyAsString());
+                response = converter.httpResponseToXml(httpMethod.getStatusLine().toString(), httpMethod.getResponseHeaders(), getResponseBody(httpMethod));
             } else {
-                response = httpMethod.getResponseBodyAsString();
+                response = getResponseBody(httpMethod);
             }
 
             if (statusCode < HttpStatus.SC_BAD_REQUEST) {
@@ -266,13 +262,13 @@ public class HttpMessageDispatcher extends AbstractMessageDispatcher implements
                 postMethod.setRequestBody(queryParameters);
             } else {
                 postMethod.setQueryString(queryParameters);
-                postMethod.setRequestEntity(new StringRequestEntity(content, contentType, charset));
+                setRequestEntity(postMethod, content, contentType, charset);
             }
                 
             httpMethod = postMethod;
         } else if ("PUT".equalsIgnoreCase(method)) {
             PutMethod putMethod = new PutMethod(address);
-            putMethod.setRequestEntity(new StringRequestEntity(content, contentType, charset));
+            setRequestEntity(putMethod, content, contentType, charset);
             putMethod.setQueryString(queryParameters);
             httpMethod = putMethod;
         } else if ("DELETE".equalsIgnoreCase(method)) {
@@ -286,6 +282,48 @@ public class HttpMessageDispatcher extends AbstractMessageDispatcher implements
             logger.debug("setting method header: [" + headerEntry.getKey() + ", " + headerEntry.getValue() + "]");
         }
 
+        if (connector.isDispatcherAcceptCompressed() && (httpMethod.getRequestHeader("Accept-Encoding") == null)) {
+            httpMethod.setRequestHeader(new Header("Accept-Encoding", "gzip"));
+        }
+
         return httpMethod;
     }
+
+    private void setRequestEntity(EntityEnclosingMethod method, String content, String contentType, String charset) throws Exception {
+        if (connector.isDispatcherCompressRequest()) {
+            logger.debug("compressing request content");
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write((charset != null) ? content.getBytes(charset) : content.getBytes());
+            gzip.close();
+
+            String contentTypeHeader = contentType;
+
+            if ((contentType != null) && (charset != null) && (contentType.toLowerCase().indexOf("charset=") == -1)) {
+                contentTypeHeader = contentType + "; charset=" + charset;
+            }
+
+            method.setRequestEntity(new ByteArrayRequestEntity(compressed.toByteArray(), contentTypeHeader));
+            method.setRequestHeader(new Header("Content-Encoding", "gzip"));
+        } else {
+            method.setRequestEntity(new StringRequestEntity(content, contentType, charset));
+        }
+    }
+
+    private String getResponseBody(HttpMethod httpMethod) throws Exception {
+        Header contentEncoding = httpMethod.getResponseHeader("Content-Encoding");
+
+        if ((contentEncoding != null) && (contentEncoding.getValue().toLowerCase().indexOf("gzip") != -1)) {
+            InputStream responseStream = httpMethod.getResponseBodyAsStream();
+
+            if (responseStream == null) {
+                return null;
+            }
+
+            logger.debug("decompressing response content");
+            return IOUtils.toString(new GZIPInputStream(responseStream), ((HttpMethodBase) httpMethod).getResponseCharSet());
+        }
+
+        return httpMethod.getResponseBodyAsString();
+    }
 }
\ No newline at end of file
@@ -32,6 +32,11 @@ public class HttpSenderProperties extends QueuedSenderProperties {
     public static final String HTTP_CONTENT_TYPE = "dispatcherContentType";
     public static final String HTTP_CHARSET = "dispatcherCharset";
     public static final String HTTP_SOCKET_TIMEOUT = "dispatcherSocketTimeout";
+    public static final String HTTP_MAX_CONNECTIONS_PER_HOST = "dispatcherMaxConnectionsPerHost";
+    public static final String HTTP_MAX_CONNECTIONS = "dispatcherMaxConnections";
+    public static final String HTTP_IDLE_TIMEOUT = "dispatcherIdleTimeout";
+    public static final String HTTP_COMPRESS_REQUEST = "dispatcherCompressRequest";
+    public static final String HTTP_ACCEPT_COMPRESSED = "dispatcherAcceptCompressed";
 
     public Properties getDefaults() {
         Properties properties = super.getDefaults();
@@ -55,6 +60,11 @@ public class HttpSenderProperties extends QueuedSenderProperties {
         properties.put(HTTP_CONTENT_TYPE, "text/plain");
         properties.put(HTTP_CHARSET, "UTF-8");
         properties.put(HTTP_SOCKET_TIMEOUT, "30000");
+        properties.put(HTTP_MAX_CONNECTIONS_PER_HOST, "20");
+        properties.put(HTTP_MAX_CONNECTIONS, "100");
+        properties.put(HTTP_IDLE_TIMEOUT, "60000");
+        properties.put(HTTP_COMPRESS_REQUEST, "0");
+        properties.put(HTTP_ACCEPT_COMPRESSED, "0");
 
         return properties;
     }
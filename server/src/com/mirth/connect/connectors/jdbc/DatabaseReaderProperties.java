@@ -33,6 +33,9 @@ public class DatabaseReaderProperties implements ComponentProperties {
     public static final String DATABASE_USE_ACK = "useAck";
     public static final String DATABASE_ACK = "ack";
     public static final String DATABASE_JS_ACK = "ackScript";
+    public static final String DATABASE_STREAM_RESULTS = "streamResults";
+    public static final String DATABASE_FETCH_SIZE = "fetchSize";
+    public static final String DATABASE_ACK_BATCH_SIZE = "ackBatchSize";
     
     // Although these properties are not persisted, they used by the JdbcConnectorService
     public static final String DATABASE_TABLE_NAME_PATTERN_EXPRESSION = "tableNamePatternExpression";
@@ -56,6 +59,9 @@ public class DatabaseReaderProperties implements ComponentProperties {
         properties.put(DATABASE_USE_ACK, "0");
         properties.put(DATABASE_ACK, "");
         properties.put(DATABASE_JS_ACK, "");
+        properties.put(DATABASE_STREAM_RESULTS, "0");
+        properties.put(DATABASE_FETCH_SIZE, "1000");
+        properties.put(DATABASE_ACK_BATCH_SIZE, "100");
         return properties;
     }
 }
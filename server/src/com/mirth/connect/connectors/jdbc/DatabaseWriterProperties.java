@@ -26,6 +26,8 @@ public class DatabaseWriterProperties implements ComponentProperties {
     public static final String DATABASE_SQL_STATEMENT = "query";
     public static final String DATABASE_JS_SQL_STATEMENT = "script";
     public static final String DATABASE_USE_JS = "useScript";
+    public static final String DATABASE_BATCH_SIZE = "batchSize";
+    public static final String DATABASE_BATCH_INTERVAL = "batchInterval";
     
     // Although this property is not persisted, it is used by the JdbcConnectorService
     public static final String DATABASE_SELECT_LIMIT = "selectLimit";
@@ -41,6 +43,8 @@ public class DatabaseWriterProperties implements ComponentProperties {
         properties.put(DATABASE_SQL_STATEMENT, "");
         properties.put(DATABASE_USE_JS, "0");
         properties.put(DATABASE_JS_SQL_STATEMENT, "");
+        properties.put(DATABASE_BATCH_SIZE, "1");
+        properties.put(DATABASE_BATCH_INTERVAL, "100");
         return properties;
     }
 
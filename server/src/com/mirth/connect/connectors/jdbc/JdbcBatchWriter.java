@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.log4j.Logger;
+
+/**
+ * Groups the statements of messages that are written at the same time by a
+ * database writer into JDBC batches. A message waits until the batch holding
+ * its statement is committed, so it can still be marked as sent or errored
+ * from its own result.
+ *
+ * A batch is written when it has batchSize statements, when every message
+ * being written by the connector has joined it, or when its first statement
+ * has waited for batchInterval milliseconds. A single thread therefore never
+ * waits, and batches grow with the number of queue threads writing to the
+ * connector. The batch is written by the thread that completes it.
+ *
+ * If a batch fails, its statements are run again one at a time, so that one
+ * bad row only fails its own message.
+ */
+public class JdbcBatchWriter {
+    private Logger logger = Logger.getLogger(this.getClass());
+    private JdbcConnector connector;
+    private int batchSize;
+    private int batchInterval;
+    private List<PendingRow> pending = new ArrayList<PendingRow>();
+    private int writing = 0;
+
+    private class PendingRow {
+        private String statement;
+        private Object[] params;
+        private boolean taken = false;
+        private boolean done = false;
+        private int numRows = -1;
+        private Exception error = null;
+
+        public PendingRow(String statement, Object[] params) {
+            this.statement = statement;
+            this.params = params;
+        }
+    }
+
+    public JdbcBatchWriter(JdbcConnector connector, int batchSize, int batchInterval) {
+        this.connector = connector;
+        this.batchSize = batchSize;
+        this.batchInterval = batchInterval;
+    }
+
+    /**
+     * Called before a message starts to build its statement, so that a batch
+     * is not written before the statement has been added.
+     */
+    public synchronized void begin() {
+        writing++;
+    }
+
+    /**
+     * Called when the message has been written or has failed.
+     */
+    public synchronized void end() {
+        writing--;
+
+        // the others may now be the only ones left
+        notifyAll();
+    }
+
+    /**
+     * Adds the statement to the current batch and waits until it has been
+     * written.
+     *
+     * @param statement
+     * @param params
+     * @return the number of rows updated, or a negative number if the driver
+     *         did not return it
+     * @throws InterruptedException
+     *             if the thread was interrupted before the statement was
+     *             taken into a batch, in which case it is never written. Once
+     *             another thread is writing it, its result is still waited
+     *             for, and the interrupt is restored when it is returned.
+     * @throws Exception
+     *             if the statement failed
+     */
+    public int write(String statement, Object[] params) throws Exception {
+        PendingRow row = new PendingRow(statement, params);
+        long deadline = System.currentTimeMillis() + batchInterval;
+
+        synchronized (this) {
+            pending.add(row);
+        }
+
+        while (true) {
+            List<PendingRow> batch = null;
+
+            synchronized (this) {
+                try {
+                    while (!row.done && (batch == null)) {
+                        if (row.taken) {
+                            wait();
+                        } else {
+                            long remaining = deadline - System.currentTimeMillis();
+
+                            if ((pending.size() >= batchSize) || (pending.size() >= writing) || (remaining <= 0)) {
+                                batch = takeBatch();
+                            } else {
+                                wait(remaining);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // a row that was not taken yet is never written
+                    if (!row.taken) {
+                        pending.remove(row);
+                        throw e;
+                    }
+
+                    // another thread is writing the row, so wait for its result
+                    while (!row.done) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ie) {
+                            // the interrupt is restored below
+                        }
+                    }
+
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (batch == null) {
+                break;
+            }
+
+            // the batch may not hold this row if others were waiting longer
+            try {
+                writeBatch(batch);
+            } finally {
+                synchronized (this) {
+                    for (PendingRow batchRow : batch) {
+                        batchRow.done = true;
+                    }
+
+                    notifyAll();
+                }
+            }
+        }
+
+        if (row.error != null) {
+            throw row.error;
+        }
+
+        return row.numRows;
+    }
+
+    private List<PendingRow> takeBatch() {
+        int size = Math.min(batchSize, pending.size());
+        List<PendingRow> batch = new ArrayList<PendingRow>(pending.subList(0, size));
+        pending.subList(0, size).clear();
+
+        for (PendingRow row : batch) {
+            row.taken = true;
+        }
+
+        return batch;
+    }
+
+    private void writeBatch(List<PendingRow> batch) {
+        // statements can only be batched with the same statement
+        Map<String, List<PendingRow>> statements = new LinkedHashMap<String, List<PendingRow>>();
+
+        for (PendingRow row : batch) {
+            List<PendingRow> rows = statements.get(row.statement);
+
+            if (rows == null) {
+                rows = new ArrayList<PendingRow>();
+                statements.put(row.statement, rows);
+            }
+
+            rows.add(row);
+        }
+
+        Connection connection = null;
+        boolean committed = false;
+
+        try {
+            connection = connector.getConnection(null);
+            connection.setAutoCommit(false);
+
+            for (Map.Entry<String, List<PendingRow>> entry : statements.entrySet()) {
+                List<PendingRow> rows = entry.getValue();
+                Object[][] params = new Object[rows.size()][];
+
+                for (int i = 0; i < rows.size(); i++) {
+                    params[i] = rows.get(i).params;
+                }
+
+                int[] numRows = new QueryRunner().batch(connection, entry.getKey(), params);
+
+                for (int i = 0; i < rows.size(); i++) {
+                    rows.get(i).numRows = (i < numRows.length) ? numRows[i] : -1;
+                }
+            }
+
+            connection.commit();
+            committed = true;
+            logger.debug("wrote batch of " + batch.size() + " statements");
+        } catch (Exception e) {
+            logger.warn("Could not write batch of " + batch.size() + " statements, writing them individually", e);
+        }
+
+        try {
+            if (committed) {
+                connection.setAutoCommit(true);
+                JdbcUtils.close(connection);
+            } else {
+                JdbcUtils.rollbackAndClose(connection);
+            }
+        } catch (SQLException e) {
+            logger.debug("Could not close connection", e);
+        }
+
+        if (!committed) {
+            for (PendingRow row : batch) {
+                writeRow(row);
+            }
+        }
+    }
+
+    private void writeRow(PendingRow row) {
+        Connection connection = null;
+
+        try {
+            connection = connector.getConnection(null);
+            connection.setAutoCommit(true);
+            row.numRows = new QueryRunner().update(connection, row.statement, row.params);
+        } catch (Exception e) {
+            row.error = e;
+        } finally {
+            DbUtils.closeQuietly(connection);
+        }
+    }
+}
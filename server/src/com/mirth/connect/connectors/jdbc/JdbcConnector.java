@@ -55,6 +55,12 @@ public class JdbcConnector extends AbstractServiceEnabledConnector {
     private String password;
     private boolean processResultsInOrder = true;
     private boolean useAck;
+    private boolean streamResults = false;
+    private int fetchSize = 1000;
+    private int ackBatchSize = 100;
+    private int batchSize = 1;
+    private int batchInterval = 100;
+    private JdbcBatchWriter batchWriter = null;
     private Map queries;
     private boolean useScript;
     private String scriptId;
@@ -161,6 +167,59 @@ public class JdbcConnector extends AbstractServiceEnabledConnector {
         this.useAck = useAck;
     }
 
+    public boolean isStreamResults() {
+        return streamResults;
+    }
+
+    public void setStreamResults(boolean streamResults) {
+        this.streamResults = streamResults;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public void setAckBatchSize(int ackBatchSize) {
+        this.ackBatchSize = ackBatchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchInterval() {
+        return batchInterval;
+    }
+
+    public void setBatchInterval(int batchInterval) {
+        this.batchInterval = batchInterval;
+    }
+
+    /**
+     * Returns the writer that batches the statements of the database writer,
+     * or null if they are not batched. Statements are not batched when the
+     * connection depends on the message.
+     */
+    public synchronized JdbcBatchWriter getBatchWriter() {
+        if ((batchWriter == null) && (batchSize > 1) && !TemplateValueReplacer.hasReplaceableValues(URL) && !TemplateValueReplacer.hasReplaceableValues(username) && !TemplateValueReplacer.hasReplaceableValues(password)) {
+            batchWriter = new JdbcBatchWriter(this, batchSize, batchInterval);
+        }
+
+        return batchWriter;
+    }
+
     public String getAckScriptId() {
         return ackScriptId;
     }
@@ -25,6 +25,7 @@ import org.mule.config.i18n.Message;
 import org.mule.config.i18n.Messages;
 import org.mule.impl.MuleMessage;
 import org.mule.providers.AbstractMessageDispatcher;
+import org.mule.transaction.TransactionCoordination;
 import org.mule.umo.UMOEvent;
 import org.mule.umo.UMOException;
 import org.mule.umo.UMOMessage;
@@ -77,6 +78,13 @@ public class JdbcMessageDispatcher extends AbstractMessageDispatcher {
             return;
         }
 
+        // statements are only batched outside of transactions
+        JdbcBatchWriter batchWriter = (connector.isUseScript() || (TransactionCoordination.getInstance().getTransaction() != null)) ? null : connector.getBatchWriter();
+
+        if (batchWriter != null) {
+            batchWriter.begin();
+        }
+
         try {
             // execute the database script if selected
             if (connector.isUseScript()) {
@@ -127,6 +135,15 @@ public class JdbcMessageDispatcher extends AbstractMessageDispatcher {
                 List<String> paramNames = new ArrayList<String>();
                 writeStmt = JdbcUtils.parseStatement(writeStmt, paramNames);
                 Object[] paramValues = JdbcUtils.getParams(endpointURI, paramNames, messageObject);
+
+                // write the statement in a batch with other messages
+                if (batchWriter != null) {
+                    int numRows = batchWriter.write(writeStmt, paramValues);
+                    messageObjectController.setSuccess(messageObject, "Database write success" + (numRows >= 0 ? ", " + numRows + " rows updated" : ""), null);
+                    logger.debug("Event dispatched succesfuly");
+                    return;
+                }
+
                 connection = connector.getConnection(messageObject);
 
                 int numRows = -1;
@@ -154,6 +171,10 @@ public class JdbcMessageDispatcher extends AbstractMessageDispatcher {
             messageObjectController.setError(messageObject, Constants.ERROR_406, "Error writing to database: ", e, null);
             connector.handleException(e);
         } finally {
+            if (batchWriter != null) {
+                batchWriter.end();
+            }
+
             monitoringController.updateStatus(connector, connectorType, Event.DONE);
         }
     }
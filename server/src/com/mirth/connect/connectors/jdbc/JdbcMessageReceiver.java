@@ -67,6 +67,7 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver {
     private JavaScriptPostprocessor postprocessor = new JavaScriptPostprocessor();
     private ConnectorType connectorType = ConnectorType.READER;
     private Connection connection = null;
+    private JdbcStreamingReader streamingReader = null;
 
     public JdbcMessageReceiver(UMOConnector connector, UMOComponent component, UMOEndpoint endpoint) throws InitialisationException {
         super(connector, component, endpoint, new Long(((JdbcConnector) connector).getPollingFrequency()));
@@ -99,6 +100,7 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver {
         this.readStmt = JdbcUtils.parseStatement(readStmt, this.readParams);
         this.ackParams = new ArrayList();
         this.ackStmt = JdbcUtils.parseStatement(ackStmt, this.ackParams);
+        this.streamingReader = new JdbcStreamingReader(this.connector, this.ackStmt);
 
         monitoringController.updateStatus(connector, connectorType, Event.INITIALIZED);
     }
@@ -117,6 +119,7 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver {
     public void doDisconnect() throws ConnectException {
         if (!connector.isUseScript()) {
             try {
+                streamingReader.close();
                 JdbcUtils.close(connection);
             } catch (SQLException e) {
                 throw new ConnectException(e, this);
@@ -163,7 +166,10 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver {
 
                 try {
                     try {
-                        if (connector.isUseAck() && ackStmt != null) {
+                        if (connector.isUseAck() && ackStmt != null && streamingReader.isReading()) {
+                            // the acks of streamed rows are run in batches
+                            streamingReader.addAck(JdbcUtils.getParams(getEndpointURI(), ackParams, message));
+                        } else if (connector.isUseAck() && ackStmt != null) {
                             int numRows = new QueryRunner().update(connection, ackStmt, JdbcUtils.getParams(getEndpointURI(), ackParams, message));
 
                             if (numRows != 1) {
@@ -199,6 +205,73 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver {
         }
     }
 
+    @Override
+    public void poll() throws Exception {
+        if (!connector.isUseScript() && connector.isStreamResults()) {
+            pollStreaming();
+        } else {
+            super.poll();
+        }
+    }
+
+    /*
+     * Streams the rows instead of loading the whole result first. Each batch
+     * of acks is committed as it runs, see JdbcStreamingReader.
+     */
+    private void pollStreaming() throws Exception {
+        monitoringController.updateStatus(connector, connectorType, Event.CONNECTED);
+
+        try {
+            if (connection.isClosed()) {
+                try {
+                    connection = connector.getConnection(null);
+                } catch (Exception e) {
+                    logger.error("Error trying to establish a connection to the datatabase receiver in channel: " + connector.getChannelId(), e);
+                    return;
+                }
+            }
+
+            try {
+                streamingReader.read(connection, readStmt, JdbcUtils.getParams(getEndpointURI(), readParams, null), new JdbcStreamingReader.RowHandler() {
+                    public void processRow(Map row) throws Exception {
+                        processMessage(row);
+                    }
+
+                    public boolean isStopped() {
+                        return stopped.get();
+                    }
+
+                    public void ackFailed(Exception e) {
+                        alertController.sendAlerts(connector.getChannelId(), Constants.ERROR_406, null, e);
+                    }
+                });
+            } catch (SQLException e) {
+                /*
+                 * If the connection is not valid, get a new connection for
+                 * the next poll.
+                 */
+                boolean validConnection = true;
+                try {
+                    validConnection = connection.isValid(10000);
+                } catch (Throwable t) {
+                    validConnection = false;
+                }
+
+                if (!validConnection) {
+                    DbUtils.closeQuietly(connection);
+                    connection = connector.getConnection(null);
+                }
+
+                throw e;
+            }
+        } catch (Exception e) {
+            alertController.sendAlerts(connector.getChannelId(), Constants.ERROR_406, null, e);
+            throw e;
+        } finally {
+            monitoringController.updateStatus(connector, connectorType, Event.DONE);
+        }
+    }
+
     public List getMessages() throws Exception {
         monitoringController.updateStatus(connector, connectorType, Event.CONNECTED);
 
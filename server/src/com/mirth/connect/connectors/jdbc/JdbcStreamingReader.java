@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.dbutils.BasicRowProcessor;
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.RowProcessor;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the rows of a database reader with a forward-only cursor and hands
+ * them to a handler in order as they arrive, instead of loading the whole
+ * result first. The acks that are added for the rows are run in batches, and
+ * each batch is committed as soon as it has run, so the rows that were acked
+ * before a read fails are not read again by the next poll.
+ *
+ * The acks are run on the read connection, with a cursor that is held over
+ * the commits, so they don't wait on the locks that the read holds on the
+ * rows it has read. MySQL can't run other statements on a connection while
+ * it is streaming a result, and Postgres loads the whole result of a cursor
+ * that is held over commits, so their acks are run on a second connection
+ * instead. That is safe because their reads don't lock rows. A second
+ * connection is also used for drivers that can't hold a cursor over commits.
+ *
+ * If an ack batch fails, it is rolled back and the earlier batches stay
+ * committed. The rows of the failed batch are read again by the next poll.
+ * Rolling back the read connection may close the cursor, in which case the
+ * rest of the rows are also read by the next poll.
+ */
+public class JdbcStreamingReader {
+    public interface RowHandler {
+        /**
+         * Processes a row, and adds its ack to the reader if it has one.
+         */
+        public void processRow(Map row) throws Exception;
+
+        /**
+         * Returns true if the rest of the rows should be left for the next
+         * poll.
+         */
+        public boolean isStopped();
+
+        /**
+         * Called when a batch of acks fails. The messages of its rows were
+         * processed anyway.
+         */
+        public void ackFailed(Exception e);
+    }
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private JdbcConnector connector;
+    private String ackStmt;
+    private Connection ackConnection = null;
+    private List<Object[]> pendingAcks = new ArrayList<Object[]>();
+    private volatile boolean reading = false;
+
+    public JdbcStreamingReader(JdbcConnector connector, String ackStmt) {
+        this.connector = connector;
+        this.ackStmt = ackStmt;
+    }
+
+    /**
+     * Reads the rows of the statement and hands each one to the handler.
+     *
+     * @param connection
+     *            the read connection, which is left open
+     * @param readStmt
+     * @param readParams
+     * @param handler
+     * @throws Exception
+     *             if the read failed, or the handler failed to process a row
+     */
+    public void read(Connection connection, String readStmt, Object[] readParams, RowHandler handler) throws Exception {
+        boolean separateAcks = isAckConnectionNeeded(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        pendingAcks.clear();
+        reading = true;
+
+        try {
+            // some drivers (i.e. postgres) only use a cursor in a transaction
+            connection.setAutoCommit(false);
+
+            int holdability = separateAcks ? ResultSet.CLOSE_CURSORS_AT_COMMIT : ResultSet.HOLD_CURSORS_OVER_COMMIT;
+            statement = connection.prepareStatement(readStmt, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, holdability);
+            statement.setFetchSize(connector.getFetchSize());
+            new QueryRunner().fillStatement(statement, readParams);
+            resultSet = statement.executeQuery();
+            RowProcessor rowProcessor = new BasicRowProcessor();
+
+            // the remaining rows are read again by the next poll
+            while (!handler.isStopped() && resultSet.next()) {
+                handler.processRow(rowProcessor.toMap(resultSet));
+
+                if (pendingAcks.size() >= connector.getAckBatchSize()) {
+                    runAcks(connection, separateAcks, handler);
+                }
+            }
+        } finally {
+            reading = false;
+            DbUtils.closeQuietly(resultSet);
+            DbUtils.closeQuietly(statement);
+
+            // commit like auto commit would have, in case the read has side effects
+            try {
+                if (!connection.isClosed()) {
+                    connection.commit();
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                logger.warn("Could not end the read transaction of the JDBC connection: " + e);
+            }
+
+            // the acks of the rows that were processed before the read ended
+            runAcks(connection, separateAcks, handler);
+        }
+    }
+
+    /**
+     * Returns true while the rows of a read are being processed.
+     */
+    public boolean isReading() {
+        return reading;
+    }
+
+    public void addAck(Object[] params) {
+        pendingAcks.add(params);
+    }
+
+    /**
+     * Closes the second connection that the acks are run on, if there is one.
+     */
+    public void close() throws SQLException {
+        try {
+            JdbcUtils.close(ackConnection);
+        } finally {
+            ackConnection = null;
+        }
+    }
+
+    /*
+     * Runs the pending acks as one batch and commits it. If the batch fails,
+     * it is rolled back, and the rows are read again by the next poll.
+     */
+    private void runAcks(Connection connection, boolean separateConnection, RowHandler handler) {
+        if (pendingAcks.isEmpty()) {
+            return;
+        }
+
+        Connection ackTarget = null;
+
+        try {
+            if (separateConnection) {
+                if ((ackConnection == null) || ackConnection.isClosed()) {
+                    ackConnection = connector.getConnection(null);
+                }
+
+                ackTarget = ackConnection;
+            } else {
+                ackTarget = connection;
+            }
+
+            int[] numRows = new QueryRunner().batch(ackTarget, ackStmt, pendingAcks.toArray(new Object[pendingAcks.size()][]));
+
+            for (int i = 0; i < numRows.length; i++) {
+                // drivers may not return the count of each statement
+                if ((numRows[i] >= 0) && (numRows[i] != 1)) {
+                    logger.warn("Row count for ack should be 1 and not " + numRows[i]);
+                }
+            }
+
+            if (!ackTarget.getAutoCommit()) {
+                ackTarget.commit();
+            }
+        } catch (Exception e) {
+            logger.error("Error in the ACK sentence of the JDBC connection, but the messages were sent anyway" + e);
+
+            try {
+                if ((ackTarget != null) && !ackTarget.isClosed() && !ackTarget.getAutoCommit()) {
+                    ackTarget.rollback();
+                }
+            } catch (SQLException se) {
+                logger.warn("Could not roll back the ACK sentence of the JDBC connection: " + se);
+            }
+
+            if (separateConnection) {
+                DbUtils.closeQuietly(ackConnection);
+                ackConnection = null;
+            }
+
+            handler.ackFailed(e);
+        } finally {
+            pendingAcks.clear();
+        }
+    }
+
+    private boolean isAckConnectionNeeded(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String productName = StringUtils.lowerCase(metaData.getDatabaseProductName());
+
+        if (StringUtils.contains(productName, "mysql") || StringUtils.contains(productName, "mariadb") || StringUtils.contains(productName, "postgres")) {
+            return true;
+        }
+
+        return !metaData.supportsResultSetHoldability(ResultSet.HOLD_CURSORS_OVER_COMMIT);
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.jdbc.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mirth.connect.connectors.jdbc.JdbcBatchWriter;
+import com.mirth.connect.connectors.jdbc.JdbcConnector;
+import com.mirth.connect.model.MessageObject;
+
+public class JdbcBatchWriterTest {
+    private static final String INSERT = "INSERT INTO TEST (VALUE) VALUES (?)";
+    private static final String BAD_VALUE = "bad";
+
+    // the rows that were committed, and the size of each batch that was run
+    private List<Object> rows = Collections.synchronizedList(new ArrayList<Object>());
+    private List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+
+    // when set, the batches wait here before they get their connection
+    private CountDownLatch connecting = null;
+    private CountDownLatch release = null;
+
+    private JdbcConnector connector = new JdbcConnector() {
+        @Override
+        public Connection getConnection(MessageObject messageObject) throws Exception {
+            if (release != null) {
+                connecting.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+
+            return createConnection();
+        }
+    };
+
+    @Test
+    public void testSingleWriter() throws Exception {
+        JdbcBatchWriter batchWriter = new JdbcBatchWriter(connector, 10, 60000);
+        long start = System.currentTimeMillis();
+
+        batchWriter.begin();
+
+        try {
+            Assert.assertEquals(1, batchWriter.write(INSERT, new Object[] { "a" }));
+        } finally {
+            batchWriter.end();
+        }
+
+        // the only message being written does not wait for the interval
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        Assert.assertEquals(Arrays.asList(new Object[] { "a" }), rows);
+        Assert.assertEquals(Arrays.asList(new Integer[] { 1 }), batches);
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        JdbcBatchWriter batchWriter = new JdbcBatchWriter(connector, 10, 60000);
+        Object[] results = write(batchWriter, new String[] { "a", "b", "c", "d", "e" });
+
+        for (Object result : results) {
+            Assert.assertEquals(Integer.valueOf(1), result);
+        }
+
+        Assert.assertEquals(5, rows.size());
+        Assert.assertTrue(rows.containsAll(Arrays.asList(new Object[] { "a", "b", "c", "d", "e" })));
+        Assert.assertEquals(Arrays.asList(new Integer[] { 5 }), batches);
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        JdbcBatchWriter batchWriter = new JdbcBatchWriter(connector, 10, 60000);
+        Object[] results = write(batchWriter, new String[] { "a", BAD_VALUE, "c" });
+
+        // only the message with the bad row fails
+        Assert.assertEquals(Integer.valueOf(1), results[0]);
+        Assert.assertTrue(results[1] instanceof SQLException);
+        Assert.assertEquals(Integer.valueOf(1), results[2]);
+
+        Assert.assertEquals(2, rows.size());
+        Assert.assertTrue(rows.containsAll(Arrays.asList(new Object[] { "a", "c" })));
+        Assert.assertEquals(Arrays.asList(new Integer[] { 3 }), batches);
+    }
+
+    @Test
+    public void testInterruptedWriter() throws Exception {
+        final JdbcBatchWriter batchWriter = new JdbcBatchWriter(connector, 10, 60000);
+        final Object[] result = new Object[1];
+
+        // another message is still building its statement, so the row waits
+        batchWriter.begin();
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                batchWriter.begin();
+
+                try {
+                    result[0] = batchWriter.write(INSERT, new Object[] { "a" });
+                } catch (Exception e) {
+                    result[0] = e;
+                } finally {
+                    batchWriter.end();
+                }
+            }
+        };
+
+        thread.start();
+
+        while ((thread.getState() != Thread.State.TIMED_WAITING) && thread.isAlive()) {
+            Thread.sleep(10);
+        }
+
+        thread.interrupt();
+        thread.join(10000);
+        Assert.assertTrue(result[0] instanceof InterruptedException);
+
+        try {
+            Assert.assertEquals(1, batchWriter.write(INSERT, new Object[] { "b" }));
+        } finally {
+            batchWriter.end();
+        }
+
+        Assert.assertEquals(Arrays.asList(new Object[] { "b" }), rows);
+        Assert.assertEquals(Arrays.asList(new Integer[] { 1 }), batches);
+    }
+
+    @Test
+    public void testInterruptedWhileWritten() throws Exception {
+        final JdbcBatchWriter batchWriter = new JdbcBatchWriter(connector, 10, 60000);
+        final Object[] result = new Object[1];
+        final boolean[] interrupted = new boolean[1];
+        connecting = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+
+        batchWriter.begin();
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                batchWriter.begin();
+
+                try {
+                    result[0] = batchWriter.write(INSERT, new Object[] { "a" });
+                } catch (Exception e) {
+                    result[0] = e;
+                } finally {
+                    interrupted[0] = Thread.currentThread().isInterrupted();
+                    batchWriter.end();
+                }
+            }
+        };
+
+        thread.start();
+
+        while ((thread.getState() != Thread.State.TIMED_WAITING) && thread.isAlive()) {
+            Thread.sleep(10);
+        }
+
+        // this thread takes both rows into a batch and is writing it
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    batchWriter.write(INSERT, new Object[] { "b" });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    batchWriter.end();
+                }
+            }
+        };
+
+        writer.start();
+        Assert.assertTrue(connecting.await(10, TimeUnit.SECONDS));
+
+        // the row is still written, and its result is returned
+        thread.interrupt();
+        thread.join(200);
+        Assert.assertTrue(thread.isAlive());
+
+        release.countDown();
+        thread.join(10000);
+        writer.join(10000);
+
+        Assert.assertEquals(Integer.valueOf(1), result[0]);
+        Assert.assertTrue(interrupted[0]);
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(Arrays.asList(new Integer[] { 2 }), batches);
+    }
+
+    /*
+     * Writes each value from its own thread. All threads begin before any of
+     * them writes, like queue threads that are sending at the same time. The
+     * result of each thread is the row count or the exception it threw.
+     */
+    private Object[] write(final JdbcBatchWriter batchWriter, final String[] values) throws Exception {
+        final Object[] results = new Object[values.length];
+        final CountDownLatch begun = new CountDownLatch(values.length);
+        Thread[] threads = new Thread[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            final int index = i;
+
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    batchWriter.begin();
+
+                    try {
+                        begun.countDown();
+                        begun.await();
+                        results[index] = batchWriter.write(INSERT, new Object[] { values[index] });
+                    } catch (Exception e) {
+                        results[index] = e;
+                    } finally {
+                        batchWriter.end();
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(10000);
+            Assert.assertFalse(thread.isAlive());
+        }
+
+        return results;
+    }
+
+    /*
+     * A connection that keeps the rows of its transaction until they are
+     * committed. A statement with the bad value fails, and so does a batch
+     * that holds it.
+     */
+    private Connection createConnection() {
+        final List<Object> transaction = new ArrayList<Object>();
+        final boolean[] autoCommit = new boolean[] { true };
+
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("prepareStatement")) {
+                    return createStatement(transaction, autoCommit);
+                } else if (name.equals("setAutoCommit")) {
+                    autoCommit[0] = (Boolean) args[0];
+                } else if (name.equals("getAutoCommit")) {
+                    return autoCommit[0];
+                } else if (name.equals("commit")) {
+                    rows.addAll(transaction);
+                    transaction.clear();
+                } else if (name.equals("rollback")) {
+                    transaction.clear();
+                } else if (name.equals("isClosed")) {
+                    return false;
+                } else if (!name.equals("close")) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private PreparedStatement createStatement(final List<Object> transaction, final boolean[] autoCommit) {
+        final List<Object> batch = new ArrayList<Object>();
+        final Object[] value = new Object[1];
+
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { PreparedStatement.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("getParameterMetaData")) {
+                    return createParameterMetaData();
+                } else if (name.equals("setObject") || name.equals("setString")) {
+                    value[0] = args[1];
+                } else if (name.equals("addBatch")) {
+                    batch.add(value[0]);
+                } else if (name.equals("executeBatch")) {
+                    batches.add(batch.size());
+
+                    if (batch.contains(BAD_VALUE)) {
+                        throw new SQLException("bad row in batch");
+                    }
+
+                    transaction.addAll(batch);
+                    int[] numRows = new int[batch.size()];
+                    Arrays.fill(numRows, 1);
+                    return numRows;
+                } else if (name.equals("executeUpdate")) {
+                    if (BAD_VALUE.equals(value[0])) {
+                        throw new SQLException("bad row");
+                    }
+
+                    if (autoCommit[0]) {
+                        rows.add(value[0]);
+                    } else {
+                        transaction.add(value[0]);
+                    }
+
+                    return 1;
+                } else if (!name.equals("close")) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private ParameterMetaData createParameterMetaData() {
+        return (ParameterMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ParameterMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getParameterCount")) {
+                    return 1;
+                } else if (method.getName().equals("getParameterType")) {
+                    return Types.VARCHAR;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
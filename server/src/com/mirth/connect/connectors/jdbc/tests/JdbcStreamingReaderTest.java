@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.jdbc.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.jdbc.JdbcConnector;
+import com.mirth.connect.connectors.jdbc.JdbcStreamingReader;
+import com.mirth.connect.model.MessageObject;
+
+public class JdbcStreamingReaderTest {
+    private static final String READ = "SELECT ID FROM TEST WHERE PROCESSED = 0";
+    private static final String ACK = "UPDATE TEST SET PROCESSED = 1 WHERE ID = ?";
+    private static final String BAD_ID = "bad";
+    private static final String READ_CONNECTION = "read";
+    private static final String ACK_CONNECTION = "ack";
+
+    // the ids whose acks were committed, and the connection of each ack batch
+    private List<Object> acked = Collections.synchronizedList(new ArrayList<Object>());
+    private List<String> ackBatchConnections = new ArrayList<String>();
+
+    // the number of committed acks when each row was processed
+    private List<Integer> ackedWhenProcessed = new ArrayList<Integer>();
+    private List<Exception> ackFailures = new ArrayList<Exception>();
+
+    // the database that the connections are to
+    private String productName = "Apache Derby";
+    private boolean holdableCursors = true;
+    private int readHoldability = -1;
+
+    // the read fails when this row is fetched, and its connection is lost
+    private int failedRow = -1;
+
+    // the rows after this many are left for the next poll
+    private int stopAfter = -1;
+
+    private JdbcConnector connector = new JdbcConnector() {
+        @Override
+        public Connection getConnection(MessageObject messageObject) throws Exception {
+            return createConnection(ACK_CONNECTION, null);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        connector.setAckBatchSize(2);
+        connector.setFetchSize(100);
+    }
+
+    @Test
+    public void testAcksCommittedInBatches() throws Exception {
+        read(new Object[] { "1", "2", "3", "4", "5" });
+
+        // each batch is committed before the next rows are processed
+        Assert.assertEquals(Arrays.asList(new Object[] { "1", "2", "3", "4", "5" }), acked);
+        Assert.assertEquals(Arrays.asList(new Integer[] { 0, 0, 2, 2, 4 }), ackedWhenProcessed);
+        Assert.assertEquals(ResultSet.HOLD_CURSORS_OVER_COMMIT, readHoldability);
+        Assert.assertEquals(Arrays.asList(new String[] { READ_CONNECTION, READ_CONNECTION, READ_CONNECTION }), ackBatchConnections);
+        Assert.assertTrue(ackFailures.isEmpty());
+    }
+
+    @Test
+    public void testReadFailsPartway() throws Exception {
+        failedRow = 4;
+
+        try {
+            read(new Object[] { "1", "2", "3", "4", "5" });
+            Assert.fail("the read did not fail");
+        } catch (SQLException e) {
+        }
+
+        // the first batch stays acked, the ack of the third row was lost with
+        // the connection, so that row is read again by the next poll
+        Assert.assertEquals(Arrays.asList(new Object[] { "1", "2" }), acked);
+        Assert.assertEquals(Arrays.asList(new Integer[] { 0, 0, 2 }), ackedWhenProcessed);
+        Assert.assertEquals(1, ackFailures.size());
+    }
+
+    @Test
+    public void testFailedAckBatch() throws Exception {
+        read(new Object[] { "1", "2", "3", BAD_ID, "5" });
+
+        // only the batch with the bad row is rolled back
+        Assert.assertEquals(Arrays.asList(new Object[] { "1", "2", "5" }), acked);
+        Assert.assertEquals(1, ackFailures.size());
+    }
+
+    @Test
+    public void testSeparateAckConnection() throws Exception {
+        productName = "PostgreSQL";
+        failedRow = 4;
+
+        try {
+            read(new Object[] { "1", "2", "3", "4", "5" });
+            Assert.fail("the read did not fail");
+        } catch (SQLException e) {
+        }
+
+        // the acks are committed on their own connection, so the ack of the
+        // third row is not lost with the read connection
+        Assert.assertEquals(Arrays.asList(new Object[] { "1", "2", "3" }), acked);
+        Assert.assertEquals(Arrays.asList(new Integer[] { 0, 0, 2 }), ackedWhenProcessed);
+        Assert.assertEquals(ResultSet.CLOSE_CURSORS_AT_COMMIT, readHoldability);
+        Assert.assertEquals(Arrays.asList(new String[] { ACK_CONNECTION, ACK_CONNECTION }), ackBatchConnections);
+        Assert.assertTrue(ackFailures.isEmpty());
+    }
+
+    @Test
+    public void testCursorsNotHoldable() throws Exception {
+        holdableCursors = false;
+        read(new Object[] { "1", "2", "3" });
+
+        Assert.assertEquals(Arrays.asList(new Object[] { "1", "2", "3" }), acked);
+        Assert.assertEquals(Arrays.asList(new String[] { ACK_CONNECTION, ACK_CONNECTION }), ackBatchConnections);
+    }
+
+    @Test
+    public void testStopped() throws Exception {
+        stopAfter = 3;
+        read(new Object[] { "1", "2", "3", "4", "5" });
+
+        // the acks of the processed rows are still run
+        Assert.assertEquals(Arrays.asList(new Object[] { "1", "2", "3" }), acked);
+        Assert.assertEquals(3, ackedWhenProcessed.size());
+    }
+
+    /*
+     * Reads the rows, and adds an ack with the id of each row that is
+     * processed.
+     */
+    private void read(Object[] rows) throws Exception {
+        final JdbcStreamingReader reader = new JdbcStreamingReader(connector, ACK);
+
+        try {
+            reader.read(createConnection(READ_CONNECTION, rows), READ, new Object[0], new JdbcStreamingReader.RowHandler() {
+                public void processRow(Map row) throws Exception {
+                    Assert.assertTrue(reader.isReading());
+                    ackedWhenProcessed.add(acked.size());
+                    reader.addAck(new Object[] { row.get("ID") });
+                }
+
+                public boolean isStopped() {
+                    return ackedWhenProcessed.size() == stopAfter;
+                }
+
+                public void ackFailed(Exception e) {
+                    ackFailures.add(e);
+                }
+            });
+        } finally {
+            Assert.assertFalse(reader.isReading());
+            reader.close();
+        }
+    }
+
+    /*
+     * A connection that keeps the acks of its transaction until they are
+     * committed. A batch with the bad id fails. The read connection returns
+     * the rows, and is lost if the read fails.
+     */
+    private Connection createConnection(final String name, final Object[] rows) {
+        final List<Object> transaction = new ArrayList<Object>();
+        final boolean[] autoCommit = new boolean[] { true };
+        final boolean[] closed = new boolean[] { false };
+
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+
+                if (methodName.equals("isClosed")) {
+                    return closed[0];
+                } else if (methodName.equals("close")) {
+                    closed[0] = true;
+                    return null;
+                } else if (closed[0]) {
+                    throw new SQLException("The connection is closed");
+                } else if (methodName.equals("getMetaData")) {
+                    return createDatabaseMetaData();
+                } else if (methodName.equals("prepareStatement") && args[0].equals(READ)) {
+                    readHoldability = (Integer) args[3];
+                    return createReadStatement(rows, transaction, closed);
+                } else if (methodName.equals("prepareStatement") && args[0].equals(ACK)) {
+                    return createAckStatement(name, transaction, autoCommit);
+                } else if (methodName.equals("setAutoCommit")) {
+                    autoCommit[0] = (Boolean) args[0];
+                } else if (methodName.equals("getAutoCommit")) {
+                    return autoCommit[0];
+                } else if (methodName.equals("commit")) {
+                    acked.addAll(transaction);
+                    transaction.clear();
+                } else if (methodName.equals("rollback")) {
+                    transaction.clear();
+                } else {
+                    throw new UnsupportedOperationException(methodName);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private PreparedStatement createReadStatement(final Object[] rows, final List<Object> transaction, final boolean[] closed) {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { PreparedStatement.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("getParameterMetaData")) {
+                    return createParameterMetaData(0);
+                } else if (name.equals("executeQuery")) {
+                    return createResultSet(rows, transaction, closed);
+                } else if (!name.equals("setFetchSize") && !name.equals("close")) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private PreparedStatement createAckStatement(final String connectionName, final List<Object> transaction, final boolean[] autoCommit) {
+        final List<Object> batch = new ArrayList<Object>();
+        final Object[] value = new Object[1];
+
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { PreparedStatement.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("getParameterMetaData")) {
+                    return createParameterMetaData(1);
+                } else if (name.equals("setObject") || name.equals("setString")) {
+                    value[0] = args[1];
+                } else if (name.equals("addBatch")) {
+                    batch.add(value[0]);
+                } else if (name.equals("executeBatch")) {
+                    ackBatchConnections.add(connectionName);
+
+                    if (batch.contains(BAD_ID)) {
+                        // the rows before the bad one were updated
+                        transaction.addAll(batch.subList(0, batch.indexOf(BAD_ID)));
+                        throw new SQLException("bad id in batch");
+                    }
+
+                    if (autoCommit[0]) {
+                        acked.addAll(batch);
+                    } else {
+                        transaction.addAll(batch);
+                    }
+
+                    int[] numRows = new int[batch.size()];
+                    Arrays.fill(numRows, 1);
+                    return numRows;
+                } else if (!name.equals("close")) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private ResultSet createResultSet(final Object[] rows, final List<Object> transaction, final boolean[] closed) {
+        final int[] row = new int[] { 0 };
+
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultSet.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("next")) {
+                    row[0]++;
+
+                    if (row[0] == failedRow) {
+                        // the uncommitted acks are lost with the connection
+                        transaction.clear();
+                        closed[0] = true;
+                        throw new SQLException("The connection was reset");
+                    }
+
+                    return row[0] <= rows.length;
+                } else if (name.equals("getMetaData")) {
+                    return createResultSetMetaData();
+                } else if (name.equals("getObject")) {
+                    return rows[row[0] - 1];
+                } else if (!name.equals("close")) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private DatabaseMetaData createDatabaseMetaData() {
+        return (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { DatabaseMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getDatabaseProductName")) {
+                    return productName;
+                } else if (method.getName().equals("supportsResultSetHoldability")) {
+                    return holdableCursors;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private ResultSetMetaData createResultSetMetaData() {
+        return (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultSetMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getColumnCount")) {
+                    return 1;
+                } else if (method.getName().equals("getTableName")) {
+                    return "TEST";
+                } else if (method.getName().equals("getColumnName") || method.getName().equals("getColumnLabel")) {
+                    return "ID";
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private ParameterMetaData createParameterMetaData(final int count) {
+        return (ParameterMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ParameterMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getParameterCount")) {
+                    return count;
+                } else if (method.getName().equals("getParameterType")) {
+                    return Types.VARCHAR;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -49,6 +49,9 @@ public class LLPListenerProperties implements ComponentProperties {
     public static final String LLP_USE_STRICT_LLP = "useStrictLLP";
     public static final String LLP_PROCESS_BATCH_FILES = "processBatchFiles";
     public static final String CONNECTOR_CHARSET_ENCODING = "charsetEncoding";
+    public static final String LLP_USE_NIO = "useNio";
+    public static final String LLP_SELECTOR_THREADS = "selectorThreads";
+    public static final String LLP_WORKER_THREADS = "workerThreads";
 
     public Properties getDefaults() {
         Properties properties = new Properties();
@@ -83,6 +86,9 @@ public class LLPListenerProperties implements ComponentProperties {
         properties.put(LLP_USE_STRICT_LLP, "1");
         properties.put(LLP_PROCESS_BATCH_FILES, "0");
         properties.put(CONNECTOR_CHARSET_ENCODING, CharsetUtils.DEFAULT_ENCODING);
+        properties.put(LLP_USE_NIO, "0");
+        properties.put(LLP_SELECTOR_THREADS, "2");
+        properties.put(LLP_WORKER_THREADS, "16");
         return properties;
     }
 }
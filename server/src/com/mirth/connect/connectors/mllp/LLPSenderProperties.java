@@ -37,6 +37,10 @@ public class LLPSenderProperties extends QueuedSenderProperties {
     public static final String LLP_HL7_ACK_RESPONSE = "processHl7AckResponse";
     public static final String CONNECTOR_CHARSET_ENCODING = "charsetEncoding";
     public static final String CHANNEL_ID = "replyChannelId";
+    public static final String LLP_CONNECTION_POOL_SIZE = "connectionPoolSize";
+    public static final String LLP_CONNECTION_IDLE_TIMEOUT = "connectionIdleTimeout";
+    public static final String LLP_PIPELINING = "pipelining";
+    public static final String LLP_PIPELINE_DEPTH = "pipelineDepth";
 
     public Properties getDefaults() {
         Properties properties = super.getDefaults();
@@ -59,6 +63,10 @@ public class LLPSenderProperties extends QueuedSenderProperties {
         properties.put(CONNECTOR_CHARSET_ENCODING, CharsetUtils.DEFAULT_ENCODING);
         properties.put(LLP_TEMPLATE, "${message.encodedData}");
         properties.put(CHANNEL_ID, "sink");
+        properties.put(LLP_CONNECTION_POOL_SIZE, "0");
+        properties.put(LLP_CONNECTION_IDLE_TIMEOUT, "60000");
+        properties.put(LLP_PIPELINING, "0");
+        properties.put(LLP_PIPELINE_DEPTH, "10");
         return properties;
     }
 }
@@ -9,21 +9,36 @@
 
 package com.mirth.connect.connectors.mllp;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+
 import org.mule.config.i18n.Message;
 import org.mule.impl.model.AbstractComponent;
 import org.mule.management.stats.ComponentStatistics;
 import org.mule.providers.QueueEnabledConnector;
+import org.mule.providers.QueueEnabledMessageDispatcher;
+import org.mule.providers.TemplateValueReplacer;
 import org.mule.umo.UMOComponent;
+import org.mule.umo.UMOException;
 import org.mule.umo.endpoint.UMOEndpoint;
 import org.mule.umo.lifecycle.InitialisationException;
 import org.mule.umo.provider.ConnectorException;
 import org.mule.umo.provider.UMOMessageReceiver;
 
 import com.mirth.connect.connectors.mllp.protocols.LlpProtocol;
+import com.mirth.connect.connectors.tcp.SenderConnectionPool;
+import com.mirth.connect.connectors.tcp.StateAwareSocket;
 import com.mirth.connect.server.Constants;
+import com.mirth.connect.server.controllers.ControllerFactory;
+import com.mirth.connect.server.controllers.MonitoringController;
+import com.mirth.connect.server.controllers.MonitoringController.ConnectorType;
+import com.mirth.connect.server.controllers.MonitoringController.Event;
 import com.mirth.connect.util.CharsetUtils;
 
-public class MllpConnector extends QueueEnabledConnector {
+public class MllpConnector extends QueueEnabledConnector implements SenderConnectionPool.ConnectionFactory {
     // custom properties
     public static final String PROPERTY_CHAR_ENCODING = "charEncoding";
     public static final String PROPERTY_START_OF_MESSAGE = "messageStart";
@@ -90,6 +105,24 @@ public class MllpConnector extends QueueEnabledConnector {
     private boolean sendACK = false;
     private LlpProtocol llpProtocol;
 
+    // listen with selector threads instead of a thread per connection
+    public static final int DEFAULT_SELECTOR_THREADS = 2;
+    public static final int DEFAULT_WORKER_THREADS = 16;
+    private boolean useNio = false;
+    private int selectorThreads = DEFAULT_SELECTOR_THREADS;
+    private int workerThreads = DEFAULT_WORKER_THREADS;
+
+    // keep the sender connections in a pool, and optionally write the next
+    // message on a pooled connection before the previous ACK has arrived
+    public static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 60000;
+    public static final int DEFAULT_PIPELINE_DEPTH = 10;
+    private int connectionPoolSize = 0;
+    private int connectionIdleTimeout = DEFAULT_CONNECTION_IDLE_TIMEOUT;
+    private boolean pipelining = false;
+    private int pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+    private SenderConnectionPool connectionPool = null;
+    private MonitoringController monitoringController = ControllerFactory.getFactory().createMonitoringController();
+
     public static final long DEFAULT_POLL_FREQUENCY = 1000;
     public static final long STARTUP_DELAY = 1000;
     private long frequency = DEFAULT_POLL_FREQUENCY;
@@ -173,6 +206,96 @@ public class MllpConnector extends QueueEnabledConnector {
         return "MLLP";
     }
 
+    @Override
+    protected QueueEnabledMessageDispatcher createQueueDispatcher() {
+        return new MllpMessageDispatcher(this);
+    }
+
+    @Override
+    public void startDispatchers(UMOComponent component, UMOEndpoint endpoint) throws UMOException {
+        super.startDispatchers(component, endpoint);
+
+        // open the pooled connections in advance, unless the address depends
+        // on the message
+        final SenderConnectionPool pool = getConnectionPool();
+        String address = endpoint.getEndpointURI().toString();
+
+        if (pool != null && !TemplateValueReplacer.hasReplaceableValues(address)) {
+            final String host = new TemplateValueReplacer().replaceURLValues(address, null);
+
+            Thread thread = new Thread() {
+                public void run() {
+                    pool.warmUp(host);
+                }
+            };
+
+            thread.setName(getName() + "_connection_warm_up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void stopDispatchers(UMOComponent component, UMOEndpoint endpoint) throws UMOException {
+        super.stopDispatchers(component, endpoint);
+
+        synchronized (this) {
+            if (connectionPool != null) {
+                connectionPool.close();
+                connectionPool = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the pool of sender connections, or null if the connections are
+     * not pooled. Pipelining always uses the pool.
+     * 
+     * @return
+     */
+    public synchronized SenderConnectionPool getConnectionPool() {
+        if (connectionPool == null && (connectionPoolSize > 0 || pipelining)) {
+            connectionPool = new SenderConnectionPool(getName(), this, connectionPoolSize, pipelining ? pipelineDepth : 1, connectionIdleTimeout);
+        }
+
+        return connectionPool;
+    }
+
+    /**
+     * Opens a sender connection with the connector's socket settings.
+     */
+    public StateAwareSocket createConnection(String endpoint) throws IOException, URISyntaxException {
+        URI uri = new URI(endpoint);
+        int port = uri.getPort();
+        InetAddress inetAddress = InetAddress.getByName(uri.getHost());
+        InetSocketAddress inetSocketAddress = new InetSocketAddress(inetAddress, port);
+        StateAwareSocket socket = null;
+
+        if (pipelining) {
+            socket = new MllpPipelinedSocket(llpProtocol, getCharsetEncoding(), bufferSize);
+        } else {
+            socket = new StateAwareSocket();
+        }
+
+        socket.connect(inetSocketAddress, getReconnectMillisecs());
+        socket.setReuseAddress(true);
+        socket.setReceiveBufferSize(bufferSize);
+        socket.setSendBufferSize(bufferSize);
+        socket.setSoTimeout(sendTimeout);
+        socket.setKeepAlive(keepAlive);
+
+        if (pipelining) {
+            ((MllpPipelinedSocket) socket).startReading(getName() + "_ack_reader");
+        }
+
+        monitoringController.updateStatus(this, ConnectorType.SENDER, Event.CONNECTED, socket);
+        return socket;
+    }
+
+    public void connectionClosed(StateAwareSocket socket) {
+        monitoringController.updateStatus(this, ConnectorType.SENDER, Event.DISCONNECTED, socket);
+    }
+
     // a shorthand property setting timeout for both SEND and RECEIVE sockets.
     public void setTimeout(int timeout) {
         setSendTimeout(timeout);
@@ -576,4 +699,60 @@ public class MllpConnector extends QueueEnabledConnector {
     public void setFrequency(long frequency) {
         this.frequency = frequency;
     }
+
+    public boolean isUseNio() {
+        return useNio;
+    }
+
+    public void setUseNio(boolean useNio) {
+        this.useNio = useNio;
+    }
+
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    public void setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public int getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public void setConnectionIdleTimeout(int connectionIdleTimeout) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
 }
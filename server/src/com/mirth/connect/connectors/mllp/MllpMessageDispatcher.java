@@ -13,11 +13,8 @@ import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -36,6 +33,7 @@ import org.mule.umo.endpoint.UMOEndpointURI;
 import org.mule.umo.provider.UMOConnector;
 
 import com.mirth.connect.connectors.mllp.protocols.LlpProtocol;
+import com.mirth.connect.connectors.tcp.SenderConnectionPool;
 import com.mirth.connect.connectors.tcp.StateAwareSocket;
 import com.mirth.connect.connectors.tcp.TcpConnector;
 import com.mirth.connect.model.MessageObject;
@@ -82,19 +80,8 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
         if (connectedSockets.get(endpoint) != null) {
             monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED, connectedSockets.get(endpoint));
         }
-        URI uri = new URI(endpoint);
-        int port = uri.getPort();
-        InetAddress inetAddress = InetAddress.getByName(uri.getHost());
-        InetSocketAddress inetSocketAddress = new InetSocketAddress(inetAddress, port);
-        StateAwareSocket socket = new StateAwareSocket();
-        createSocket(socket, inetSocketAddress);
-        socket.setReuseAddress(true);
-        socket.setReceiveBufferSize(connector.getBufferSize());
-        socket.setSendBufferSize(connector.getBufferSize());
-        socket.setSoTimeout(connector.getSendTimeout());
-        socket.setKeepAlive(connector.isKeepAlive());
+        StateAwareSocket socket = connector.createConnection(endpoint);
         connectedSockets.put(endpoint, socket);
-        monitoringController.updateStatus(connector, connectorType, Event.CONNECTED, socket);
         return socket;
     }
 
@@ -116,6 +103,7 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
         }
 
         String host = replacer.replaceURLValues(endpointUri, messageObject);
+        SenderConnectionPool pool = connector.getConnectionPool();
 
         try {
             if (connector.isUsePersistentQueues()) {
@@ -132,7 +120,10 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
                         retryCount++;
                     }
                     try {
-                        if (!connector.isKeepSendSocketOpen()) {
+                        if (pool != null) {
+                            sendPooled(pool, host, messageObject);
+                            success = true;
+                        } else if (!connector.isKeepSendSocketOpen()) {
                             socket = initSocket(host);
 
                             writeTemplatedData(socket, messageObject);
@@ -199,7 +190,8 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
             messageObjectController.setError(messageObject, Constants.ERROR_408, exceptionMessage, exceptionWriting, null);
             alertController.sendAlerts(((MllpConnector) connector).getChannelId(), Constants.ERROR_408, exceptionMessage, exceptionWriting);
         }
-        if (success && (exceptionWriting == null)) {
+        // pooled connections handle the ACK before they are released
+        if (success && (exceptionWriting == null) && (pool == null)) {
             manageResponseAck(socket, host, messageObject);
             if (!connector.isKeepSendSocketOpen()) {
                 monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED, socket);
@@ -208,10 +200,6 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
         }
     }
 
-    protected void createSocket(Socket socket, InetSocketAddress inetAddress) throws IOException {
-        socket.connect(inetAddress, connector.getReconnectMillisecs());
-    }
-
     protected void write(Socket socket, byte[] data) throws IOException {
         LlpProtocol protocol = connector.getLlpProtocol();
         BufferedOutputStream bos = new BufferedOutputStream(socket.getOutputStream(), connector.getBufferSize());
@@ -244,6 +232,19 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
         Exception sendException = null;
         StateAwareSocket socket = null;
         String host = replacer.replaceURLValues(thePayload.getEndpointUri().toString(), thePayload.getMessageObject());
+        SenderConnectionPool pool = connector.getConnectionPool();
+
+        if (pool != null) {
+            try {
+                return sendPooled(pool, host, thePayload.getMessageObject());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.warn("Can't send to the queued endpoint: " + channelController.getDeployedChannelById(connector.getChannelId()).getName() + " - " + channelController.getDeployedDestinationName(connector.getName()) + " \r\n'" + e.getMessage() + "'");
+                messageObjectController.setError(thePayload.getMessageObject(), Constants.ERROR_408, "Socket write exception", e, null);
+                throw e;
+            }
+        }
 
         try {
             if (!connector.isKeepSendSocketOpen()) {
@@ -310,15 +311,53 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
         return result;
     }
 
+    /*
+     * Sends the message on a connection from the pool and handles its ACK,
+     * before the connection is given back. A connection that failed is closed.
+     * Returns the result of manageResponseAck.
+     */
+    private boolean sendPooled(SenderConnectionPool pool, String host, MessageObject messageObject) throws Exception {
+        StateAwareSocket socket = pool.borrow(host);
+        boolean result = false;
+
+        try {
+            if (socket instanceof MllpPipelinedSocket) {
+                monitoringController.updateStatus(connector, connectorType, Event.BUSY, socket);
+                byte[] data = getTemplatedData(messageObject).getBytes(connector.getCharsetEncoding());
+                byte[] theAck = ((MllpPipelinedSocket) socket).send(data, connector.getAckTimeout());
+                monitoringController.updateStatus(connector, connectorType, Event.DONE, socket);
+
+                if (connector.getAckTimeout() <= 0) {
+                    messageObjectController.setSuccess(messageObject, "Message successfully sent", null);
+                    result = true;
+                } else {
+                    result = manageResponseAck(theAck, messageObject);
+                }
+            } else {
+                writeTemplatedData(socket, messageObject);
+                result = manageResponseAck(socket, host, messageObject);
+            }
+        } catch (Exception e) {
+            pool.invalidate(socket);
+            throw e;
+        }
+
+        pool.release(socket);
+        return result;
+    }
+
     private void writeTemplatedData(Socket socket, MessageObject data) throws Exception {
         monitoringController.updateStatus(connector, connectorType, Event.BUSY, socket);
+        write(socket, getTemplatedData(data));
+        monitoringController.updateStatus(connector, connectorType, Event.DONE, socket);
+    }
+
+    private String getTemplatedData(MessageObject data) {
         if (!connector.getTemplate().equals("")) {
-            String template = replacer.replaceValues(connector.getTemplate(), data);
-            write(socket, template);
+            return replacer.replaceValues(connector.getTemplate(), data);
         } else {
-            write(socket, data.getEncodedData());
+            return data.getEncodedData();
         }
-        monitoringController.updateStatus(connector, connectorType, Event.DONE, socket);
     }
 
     public boolean manageResponseAck(StateAwareSocket socket, String endpointUri, MessageObject messageObject) {
@@ -328,8 +367,11 @@ public class MllpMessageDispatcher extends AbstractMessageDispatcher implements
 
             return true;
         }
-        byte[] theAck = getAck(socket, endpointUri);
 
+        return manageResponseAck(getAck(socket, endpointUri), messageObject);
+    }
+
+    private boolean manageResponseAck(byte[] theAck, MessageObject messageObject) {
         if (theAck == null) {
             // NACK
             messageObjectController.setError(messageObject, Constants.ERROR_408, "Timeout waiting for ACK", null, null);
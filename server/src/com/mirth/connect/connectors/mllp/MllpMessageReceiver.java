@@ -19,6 +19,7 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
@@ -26,7 +27,10 @@ import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -61,6 +65,9 @@ import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
 import com.mirth.connect.connectors.mllp.protocols.LlpProtocol;
+import com.mirth.connect.connectors.mllp.protocols.MllpFrameDecoder;
+import com.mirth.connect.connectors.tcp.NioFrameHandler;
+import com.mirth.connect.connectors.tcp.NioSocketListener;
 import com.mirth.connect.model.MessageObject;
 import com.mirth.connect.model.MessageObject.Protocol;
 import com.mirth.connect.model.Response;
@@ -85,9 +92,9 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
     private char START_MESSAGE = 0x0B; // first character of a new message
     private char END_OF_RECORD = 0x0D; // character sent between messages
     private char END_OF_SEGMENT = 0x0D; // character sent between hl7 segments
-    private StringBuffer buffer = new StringBuffer();
     // (usually same as end of record)
     private MllpConnector connector;
+    private NioSocketListener nioListener = null;
     private AlertController alertController = ControllerFactory.getFactory().createAlertController();
     private TcpWorker work;
     private MonitoringController monitoringController = ControllerFactory.getFactory().createMonitoringController();
@@ -118,7 +125,15 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
     public void doConnect() throws ConnectException {
         disposing.set(false);
 
-        if (connector.isServerMode()) {
+        if (connector.isServerMode() && connector.isUseNio()) {
+            URI uri = endpoint.getEndpointURI().getUri();
+            try {
+                startNioListener(uri);
+                monitoringController.updateStatus(connector, connectorType, Event.INITIALIZED);
+            } catch (Exception e) {
+                throw new org.mule.providers.ConnectException(new Message("tcp", 1, uri), e, this);
+            }
+        } else if (connector.isServerMode()) {
             URI uri = endpoint.getEndpointURI().getUri();
             try {
                 serverSocket = createServerSocket(uri);
@@ -146,6 +161,11 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
         // this will cause the server thread to quit
         disposing.set(true);
         try {
+            if (nioListener != null) {
+                nioListener.stop();
+                nioListener = null;
+            }
+
             if (connector.isServerMode()) {
                 if (serverSocket != null) {
                     serverSocket.close();
@@ -176,6 +196,34 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
         }
     }
 
+    /*
+     * Starts the NIO listener on the same address that createServerSocket
+     * would bind to. As with the blocking listener, an idle connection is
+     * only closed at the receive timeout if keep alive is off.
+     */
+    protected void startNioListener(URI uri) throws IOException {
+        String host = uri.getHost();
+        if (host == null || host.length() == 0) {
+            host = "localhost";
+        }
+        InetAddress inetAddress = InetAddress.getByName(host);
+        InetSocketAddress address = null;
+        if (inetAddress.equals(InetAddress.getLocalHost()) || inetAddress.isLoopbackAddress() || host.trim().equals("localhost")) {
+            address = new InetSocketAddress(uri.getPort());
+        } else {
+            address = new InetSocketAddress(inetAddress, uri.getPort());
+        }
+
+        nioListener = new NioSocketListener(connector.getName(), new NioSocketListener.HandlerFactory() {
+            public NioFrameHandler createHandler(Socket socket) throws Exception {
+                socket.setKeepAlive(connector.isKeepAlive());
+                monitoringController.updateStatus(connector, connectorType, Event.CONNECTED, socket);
+                return new NioTcpWorker(socket);
+            }
+        }, connector.getSelectorThreads(), connector.getWorkerThreads(), connector.getBufferSize(), connector.getReceiveTimeout(), !connector.isKeepAlive());
+        nioListener.start(address, connector.getBacklog());
+    }
+
     protected Socket createClientSocket(URI uri) throws IOException {
         String host = uri.getHost();
         InetAddress inetAddress = InetAddress.getByName(host);
@@ -247,6 +295,10 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
     public void doDispose() {
         try {
             monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED);
+            if (nioListener != null) {
+                nioListener.stop();
+                nioListener = null;
+            }
             if (connector.isServerMode()) {
                 if (serverSocket != null && !serverSocket.isClosed()) {
                     serverSocket.close();
@@ -285,14 +337,20 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
         protected AtomicBoolean closed = new AtomicBoolean(false);
 
         protected LlpProtocol protocol;
+
+        protected MllpFrameDecoder decoder;
         
         protected Protocol inboundProtocol;
 
+        // data received while waiting for the end of message character
+        protected StringBuilder buffer = new StringBuilder();
+
         public TcpWorker(Socket socket) {
             this.socket = socket;
 
             final MllpConnector tcpConnector = connector;
             this.protocol = tcpConnector.getLlpProtocol();
+            this.decoder = protocol.createDecoder(true);
             tcpConnector.updateReceiveSocketsCount(true);
             try {
                 socket.setReceiveBufferSize(tcpConnector.getBufferSize());
@@ -347,18 +405,19 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
                 dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 
                 while (!socket.isClosed() && !disposing.get()) {
-                    byte[] b;
+                    ByteBuffer frame;
                     try {
-                        b = protocol.read(dataIn);
+                        frame = decoder.readFrame(dataIn);
                         // end of stream
-                        if (b == null) {
+                        if (frame == null) {
                             break;
                         } else {
                             monitoringController.updateStatus(connector, connectorType, Event.BUSY, socket);
+                            String data = new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), connector.getCharsetEncoding());
                             if (connector.isWaitForEndOfMessageCharacter()) {
-                                preprocessData(b);
+                                preprocessData(data);
                             } else {
-                                processData(b);
+                                processData(data);
                             }
                             dataOut.flush();
                         }
@@ -387,49 +446,50 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
          * If the option is set to wait for end charactor, the LLP listener will
          * continue accepting data until it finds one.
          */
-        protected byte[] preprocessData(byte[] data) throws Exception {
+        protected byte[] preprocessData(String data) throws Exception {
             byte[] processedData = null;
 
             if (connector.isWaitForEndOfMessageCharacter()) {
-                synchronized (buffer) {
-                    String charset = connector.getCharsetEncoding();
-                    String str_data = new String(data, charset);
-                    buffer.append(str_data);
+                // each connection has its own buffer, so it isn't locked
+                buffer.append(data);
 
-                    int startCharLocation = buffer.toString().indexOf(START_MESSAGE);
-                    int endCharLocation = buffer.toString().indexOf(END_MESSAGE + "" + END_OF_RECORD);
+                String startMessage = String.valueOf(START_MESSAGE);
+                String endMessage = END_MESSAGE + "" + END_OF_RECORD;
+                int startCharLocation = buffer.indexOf(startMessage);
+                int endCharLocation = buffer.indexOf(endMessage);
 
-                    while (startCharLocation >= 0 && endCharLocation >= 0 && startCharLocation < endCharLocation) {
-                        String message = buffer.toString().substring(startCharLocation, endCharLocation);
+                while (startCharLocation >= 0 && endCharLocation >= 0 && startCharLocation < endCharLocation) {
+                    String message = buffer.substring(startCharLocation, endCharLocation);
 
-                        try {
-                            processedData = processData(message.getBytes());
-                        } catch (Exception e) {
-                            throw e;
-                        } finally {
-                            // clear the buffer up to the next message, if there
-                            // is one
-                            buffer.delete(startCharLocation, endCharLocation + ((String) (END_MESSAGE + "" + END_OF_RECORD)).length());
-
-                            startCharLocation = buffer.toString().indexOf(START_MESSAGE);
-                            endCharLocation = buffer.toString().indexOf(END_MESSAGE + "" + END_OF_RECORD);
-                        }
-                    }
+                    try {
+                        processedData = processData(message);
+                    } catch (Exception e) {
+                        throw e;
+                    } finally {
+                        // clear the buffer up to the next message, if there
+                        // is one
+                        buffer.delete(startCharLocation, endCharLocation + endMessage.length());
 
-                    if (buffer.length() > 0 && startCharLocation == -1 || endCharLocation > startCharLocation) {
-                        // clear junk data that cannot be processed
-                        buffer.delete(0, buffer.length());
+                        startCharLocation = buffer.indexOf(startMessage);
+                        endCharLocation = buffer.indexOf(endMessage);
                     }
                 }
+
+                if (buffer.length() > 0 && startCharLocation == -1 || endCharLocation > startCharLocation) {
+                    // clear junk data that cannot be processed
+                    buffer.delete(0, buffer.length());
+                }
             } else {
                 processedData = processData(data);
             }
             return processedData;
         }
 
-        protected byte[] processData(byte[] data) throws Exception {
-            String charset = connector.getCharsetEncoding();
-            String str_data = new String(data, charset);
+        /*
+         * The data is decoded with the connector's charset once, when the
+         * frame is received.
+         */
+        protected byte[] processData(String str_data) throws Exception {
             UMOMessage returnMessage = null;
             if (connector.isProcessBatchFiles()) {
                 BatchMessageProcessor batchProcessor = new BatchMessageProcessor();
@@ -479,7 +539,7 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
                 return null;
             }
             adapter.setProperty("receiverSocket", socket);
-            os = new ResponseOutputStream(socket.getOutputStream(), socket);
+            os = new ResponseOutputStream(getResponseOutputStream(), socket);
             try {
                 returnMessage = routeMessage(new MuleMessage(adapter), endpoint.isSynchronous(), os);
                 // We need to check the message status
@@ -528,6 +588,13 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
             return returnMessage;
         }
 
+        /*
+         * Returns the stream that responses on this connection are written to.
+         */
+        protected OutputStream getResponseOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
         protected Socket initSocket(String endpoint) throws IOException, URISyntaxException {
             URI uri = new URI(endpoint);
             int port = uri.getPort();
@@ -652,4 +719,73 @@ public class MllpMessageReceiver extends AbstractMessageReceiver implements Work
             }
         }
     }
+
+    /*
+     * A connection of the NIO listener. Frames are split by the connection's
+     * decoder from the data the listener reads, and responses are buffered and
+     * sent by the listener once the frame has been processed.
+     */
+    protected class NioTcpWorker extends TcpWorker implements NioFrameHandler {
+        private OutputStream responseStream = null;
+
+        public NioTcpWorker(Socket socket) {
+            super(socket);
+        }
+
+        public List<byte[]> decode(ByteBuffer data) {
+            List<byte[]> frames = new ArrayList<byte[]>();
+            decoder.append(data);
+            ByteBuffer frame = null;
+
+            while ((frame = decoder.nextFrame()) != null) {
+                frames.add(toBytes(frame));
+            }
+
+            return frames;
+        }
+
+        public byte[] flush() {
+            ByteBuffer frame = decoder.flush();
+            return (frame == null) ? null : toBytes(frame);
+        }
+
+        // frames are copied, since they are processed on another thread
+        private byte[] toBytes(ByteBuffer frame) {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            return bytes;
+        }
+
+        public boolean processFrame(byte[] data, OutputStream out) throws Exception {
+            responseStream = out;
+
+            try {
+                monitoringController.updateStatus(connector, connectorType, Event.BUSY, socket);
+
+                String str_data = new String(data, connector.getCharsetEncoding());
+
+                if (connector.isWaitForEndOfMessageCharacter()) {
+                    preprocessData(str_data);
+                } else {
+                    processData(str_data);
+                }
+            } catch (Exception e) {
+                handleException(e);
+            } finally {
+                responseStream = null;
+                monitoringController.updateStatus(connector, connectorType, Event.DONE, socket);
+            }
+
+            return !disposing.get();
+        }
+
+        protected OutputStream getResponseOutputStream() throws IOException {
+            return responseStream;
+        }
+
+        public void closed() {
+            monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED, socket);
+            dispose();
+        }
+    }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.mllp;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.mirth.connect.connectors.mllp.protocols.LlpProtocol;
+import com.mirth.connect.connectors.mllp.protocols.MllpFrameDecoder;
+import com.mirth.connect.connectors.tcp.StateAwareSocket;
+
+/**
+ * A sender connection on which the next message is written before the ACK of
+ * the previous one has arrived. Several senders can use the connection at the
+ * same time. A reader thread reads the ACKs and hands each one to the sender
+ * of the message whose control ID (MSH-10) matches the ACK's MSA-2, so the
+ * receiver may send the ACKs in any order.
+ *
+ * Each sender still waits for the ACK of its own message before it sends the
+ * next one, so messages only overlap when several senders share the
+ * connection, e.g. the queue threads of a queued destination. With a single
+ * sender thread, a pipelined connection works like a pooled one.
+ *
+ * Only one message with the same control ID is sent at a time. Messages
+ * without a control ID are matched with ACKs without an MSA-2, so they are
+ * sent one after the other.
+ */
+public class MllpPipelinedSocket extends StateAwareSocket {
+    private static final Log logger = LogFactory.getLog(MllpPipelinedSocket.class);
+
+    private LlpProtocol protocol;
+    private String charsetEncoding;
+    private int bufferSize;
+
+    // the messages waiting for an ACK by control ID
+    private Map<String, PendingAck> pendingAcks = new HashMap<String, PendingAck>();
+    private Object writeLock = new Object();
+    private volatile boolean reading = false;
+
+    public MllpPipelinedSocket(LlpProtocol protocol, String charsetEncoding, int bufferSize) {
+        super();
+        this.protocol = protocol;
+        this.charsetEncoding = charsetEncoding;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Starts the thread that reads the ACKs, once the socket is connected.
+     * The read timeout is turned off, since the connection may be idle while
+     * it is in the pool.
+     *
+     * @param name
+     *            the name of the reader thread
+     * @throws IOException
+     */
+    public void startReading(String name) throws IOException {
+        setSoTimeout(0);
+        reading = true;
+
+        Thread reader = new Thread(new AckReader());
+        reader.setName(name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Writes the message and waits for its ACK.
+     *
+     * @param data
+     *            the message, without the LLP frame
+     * @param ackTimeout
+     *            the milliseconds to wait for the ACK, or 0 to not wait
+     * @return the ACK frame, or null if no ACK was received in time
+     * @throws IOException
+     *             if the message could not be written, or the connection was
+     *             closed before the ACK was received
+     * @throws InterruptedException
+     */
+    public byte[] send(byte[] data, int ackTimeout) throws IOException, InterruptedException {
+        if (ackTimeout <= 0) {
+            write(data);
+            return null;
+        }
+
+        String controlId = getControlId(new String(data, charsetEncoding), "MSH", 10);
+        PendingAck pendingAck = new PendingAck();
+
+        synchronized (pendingAcks) {
+            while (pendingAcks.containsKey(controlId)) {
+                checkReading();
+                pendingAcks.wait();
+            }
+
+            pendingAcks.put(controlId, pendingAck);
+        }
+
+        try {
+            write(data);
+
+            long timeout = System.currentTimeMillis() + ackTimeout;
+
+            synchronized (pendingAcks) {
+                while (pendingAck.ack == null) {
+                    checkReading();
+                    long remaining = timeout - System.currentTimeMillis();
+
+                    if (remaining <= 0) {
+                        break;
+                    }
+
+                    pendingAcks.wait(remaining);
+                }
+
+                return pendingAck.ack;
+            }
+        } finally {
+            synchronized (pendingAcks) {
+                pendingAcks.remove(controlId);
+                pendingAcks.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The connection is broken once its reader has stopped. The stream is
+     * not peeked at like for other sockets, since the reader is reading it.
+     */
+    public boolean remoteSideHasClosed() {
+        return !reading;
+    }
+
+    private void write(byte[] data) throws IOException {
+        synchronized (writeLock) {
+            BufferedOutputStream bos = new BufferedOutputStream(getOutputStream(), bufferSize);
+            protocol.write(bos, data);
+            bos.flush();
+        }
+    }
+
+    private void checkReading() throws IOException {
+        if (!reading) {
+            throw new IOException("The connection was closed before the ACK was received");
+        }
+    }
+
+    /*
+     * Returns the value of a field in the first segment with the name, or an
+     * empty string if there is none. MSH-1 is the field separator, like in
+     * HL7.
+     */
+    static String getControlId(String message, String segmentName, int field) {
+        String[] segments = message.split("[\r\n]");
+
+        for (String segment : segments) {
+            int start = 0;
+
+            // skip the start of message character
+            while (start < segment.length() && segment.charAt(start) < ' ') {
+                start++;
+            }
+
+            if (!segment.startsWith(segmentName, start) || segment.length() <= start + 3) {
+                continue;
+            }
+
+            char fieldSeparator = segment.charAt(start + 3);
+            int index = segmentName.equals("MSH") ? field - 2 : field - 1;
+            int fieldStart = start + 3;
+
+            for (int i = 0; i < index; i++) {
+                fieldStart = segment.indexOf(fieldSeparator, fieldStart + 1);
+
+                if (fieldStart < 0) {
+                    return "";
+                }
+            }
+
+            int fieldEnd = fieldStart + 1;
+
+            while (fieldEnd < segment.length() && segment.charAt(fieldEnd) != fieldSeparator && segment.charAt(fieldEnd) >= ' ') {
+                fieldEnd++;
+            }
+
+            return segment.substring(fieldStart + 1, fieldEnd);
+        }
+
+        return "";
+    }
+
+    private class PendingAck {
+        private byte[] ack = null;
+    }
+
+    private class AckReader implements Runnable {
+        public void run() {
+            try {
+                MllpFrameDecoder decoder = protocol.createDecoder(true);
+                InputStream is = getBufferedInputStream();
+                ByteBuffer frame = null;
+
+                while ((frame = decoder.readFrame(is)) != null) {
+                    byte[] ack = new byte[frame.remaining()];
+                    frame.get(ack);
+                    String controlId = getControlId(new String(ack, charsetEncoding), "MSA", 2);
+
+                    synchronized (pendingAcks) {
+                        PendingAck pendingAck = pendingAcks.get(controlId);
+
+                        if (pendingAck != null && pendingAck.ack == null) {
+                            pendingAck.ack = ack;
+                            pendingAcks.notifyAll();
+                        } else {
+                            logger.warn("Received an ACK for a message that is not waiting for one: " + controlId);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.debug("Stopped reading ACKs: " + e.getMessage());
+            } finally {
+                reading = false;
+
+                try {
+                    close();
+                } catch (IOException e) {
+                    logger.debug("Could not close the connection: " + e.getMessage());
+                }
+
+                synchronized (pendingAcks) {
+                    pendingAcks.notifyAll();
+                }
+            }
+        }
+    }
+}
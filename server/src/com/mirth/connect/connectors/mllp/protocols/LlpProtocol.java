@@ -9,13 +9,12 @@
 
 package com.mirth.connect.connectors.mllp.protocols;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,7 +31,7 @@ import com.mirth.connect.connectors.mllp.TcpProtocol;
 public class LlpProtocol implements TcpProtocol {
 	private static final Log logger = LogFactory.getLog(LlpProtocol.class);
 
-	// ast: buffer size for byte read
+	// the initial buffer size of a decoder
 	private static final int BUFFER_SIZE = 8192;
 
 	private char END_MESSAGE = 0x1C; // character indicating end of message
@@ -64,127 +63,32 @@ public class LlpProtocol implements TcpProtocol {
 		}
 	}
 
-	private byte[] readTCP(InputStream is) throws IOException {
-		String charset = _mllpConnector.getCharsetEncoding();
-		UtilReader myReader = new UtilReader(is, charset);
-
-		int c = 0;
-		try {
-			c = myReader.read();
-		} catch (SocketException e) {
-			logger.info("SocketException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
-			return null;
-		} catch (SocketTimeoutException ste) {
-			logger.info("SocketTimeoutException on read() attempt.  Socket appears to have been closed: " + ste.getMessage());
-			return null;
-		}
-
-		// trying to read when there is no data (stream may have been closed at
-		// other end)
-		if (c == -1) {
-			logger.info("End of input stream reached.");
-			return null;
-		}
-
-		while (c != -1) {
-			myReader.append((char) c);
-			try {
-				c = myReader.read();
-			} catch (Exception e) {
-				c = -1;
-			}
-		}
-
-		return myReader.getBytes();
+	/**
+	 * Creates a decoder for the frames of one connection.
+	 * 
+	 * @param readAhead
+	 *            whether the decoder may read past the end of a frame. This
+	 *            is only safe if the stream is always read with the same
+	 *            decoder.
+	 */
+	public MllpFrameDecoder createDecoder(boolean readAhead) {
+		return new MllpFrameDecoder(START_MESSAGE, END_MESSAGE, END_OF_RECORD, useLLP, readAhead, BUFFER_SIZE);
 	}
 
 	/*
-	 * Reads an inputstream and parses messages based on HL7 delimiters @param
-	 * is The InputStream to read from @return <code>byte[]</code> containing
-	 * one HL7 message. <code>null</code> if the incoming message does not
-	 * contain HL7 message delimiters
+	 * Reads one message from the stream. Nothing after the message is read,
+	 * because the stream may be read again by something else.
 	 */
-	private byte[] readLLP(InputStream is) throws IOException {
-
-		// ast: new function to process the MLLP protocol
-		// ast: wrapper for the reader
-		String charset = _mllpConnector.getCharsetEncoding();
-		UtilReader myReader = new UtilReader(is, charset);
-
-		boolean end_of_message = false;
-
-		int c = 0;
-		try {
-			c = myReader.read();
-		} catch (SocketException e) {
-			logger.info("SocketException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
-			return null;
-		} catch (SocketTimeoutException ste) {
-			logger.info("SocketTimeoutException on read() attempt.  Socket appears to have been closed: " + ste.getMessage());
-			return null;
-		}
-
-		// trying to read when there is no data (stream may have been closed at
-		// other end)
-		if (c == -1) {
-			logger.info("End of input stream reached.");
-			return null;
-		}
+	public byte[] read(InputStream is) throws IOException {
+		ByteBuffer frame = createDecoder(false).readFrame(is);
 
-		while ((c != START_MESSAGE) && (c != -1)) {
-			try {
-				c = myReader.read();
-			} catch (Exception e) {
-				c = -1;
-			}
-		}
-		
-		if (c == -1) {  // End of stream reached without start of message character.
-			String message = myReader.toString();
-			logger.error("Bytes received violate the MLLP: no start of message indicator received.\r\n" + message);
+		if (frame == null) {
 			return null;
 		}
-		
-		myReader.append((char) c);
-		
-		while (!end_of_message) {
-			c = myReader.read();
 
-			if (c == -1) {
-				logger.error("Message violates the " + "minimal lower protocol: message terminated without " + "a terminating character.");
-				return null;
-			}
-			myReader.append((char) c);
-			if (c == END_MESSAGE) {
-
-				if (END_OF_RECORD != 0) {
-					// subsequent character should be a carriage return
-					try {
-						c = myReader.read();
-						if (END_OF_RECORD != 0 && c != END_OF_RECORD) {
-							logger.error("Message terminator was: " + c + "  Expected terminator: " + END_OF_RECORD);
-							return null;
-						}
-						myReader.append((char) c);
-					} catch (SocketException e) {
-						logger.info("SocketException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
-					} catch (SocketTimeoutException ste) {
-						logger.info("SocketTimeoutException on read() attempt.  Socket appears to have been closed: " + ste.getMessage());
-					}
-				}
-				end_of_message = true;
-			}
-		} // end while
-
-		return myReader.getBytes();
-	}
-
-	public byte[] read(InputStream is) throws IOException {
-		if (useLLP) {
-			return readLLP(is);
-		} else {
-			return readTCP(is);
-		}
+		byte[] data = new byte[frame.remaining()];
+		frame.get(data);
+		return data;
 	}
 
 	public void write(OutputStream os, byte[] data) throws IOException {
@@ -210,63 +114,6 @@ public class LlpProtocol implements TcpProtocol {
 		}
 	}
 
-	// ast: a class to read both types of stream; bytes ( char limits ) and
-	// chars (byte limits)
-	protected class UtilReader {
-		InputStream byteReader = null;
-		ByteArrayOutputStream baos = null;
-		String charset = "";
-
-		public UtilReader(InputStream is, String charset) {
-			this.charset = charset;
-			this.byteReader = is;
-			baos = new ByteArrayOutputStream();
-		}
-
-		public int read() throws java.io.IOException {
-			if (byteReader != null)
-				return byteReader.read();
-			else
-				return -1;
-		}
-
-		public void close() throws java.io.IOException {
-			if (byteReader != null)
-				byteReader.close();
-
-		}
-
-		public void append(int c) throws java.io.IOException {
-			baos.write(c);
-		}
-
-		public String toString() {
-			try {
-				baos.flush();
-				baos.close();
-			} catch (Throwable t) {
-				logger.error("Error closing the auxiliar buffer " + t);
-			}
-			try {
-				return new String(baos.toByteArray(), this.charset);
-			} catch (java.io.UnsupportedEncodingException e) {
-				logger.error("Error: " + charset + " is unsupported, changing to default encoding");
-				return new String(baos.toByteArray());
-			}
-		}
-
-		public byte[] getBytes() throws java.io.IOException {
-			baos.flush();
-			baos.close();
-			return baos.toByteArray();
-		}
-
-		public void reset() {
-			baos.reset();
-		}
-
-	}
-
 	public boolean isUseLLP() {
 		return useLLP;
 	}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.mllp.protocols;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Splits the data of one connection into MLLP frames. Data is read in blocks
+ * into a buffer that is reused for the whole connection, and only the bytes
+ * that weren't scanned yet are searched for the frame characters.
+ *
+ * Frames are returned as slices of the buffer, including the start of
+ * message, end of message and record separator characters, the same as
+ * LlpProtocol.read. A frame is only valid until the next call to the decoder.
+ *
+ * Without LLP, everything received until the end of the stream (or a read
+ * timeout) is one frame.
+ *
+ * As with LlpProtocol.read, a frame whose end of message is followed by the
+ * end of the stream or a read timeout instead of the record separator is
+ * still accepted, since some senders leave out the separator.
+ */
+public class MllpFrameDecoder {
+    private static final Log logger = LogFactory.getLog(MllpFrameDecoder.class);
+
+    private byte startOfMessage;
+    private byte endOfMessage;
+    private byte endOfRecord;
+    private boolean useEndOfRecord;
+    private boolean useLLP;
+    private boolean readAhead;
+
+    private byte[] buffer;
+    // the first byte that wasn't returned in a frame or dropped
+    private int start = 0;
+    // the end of the data in the buffer
+    private int end = 0;
+    // the first byte that wasn't searched yet
+    private int scanned = 0;
+    // the start of the current frame, or -1 if no frame has started
+    private int frameStart = -1;
+
+    /**
+     * @param startOfMessage
+     * @param endOfMessage
+     * @param endOfRecord
+     *            the character after the end of message, or 0 if there is none
+     * @param useLLP
+     * @param readAhead
+     *            whether more than the current frame may be read from the
+     *            stream. If the stream is read by anything else than this
+     *            decoder, it is read one byte at a time instead.
+     * @param bufferSize
+     *            the initial size of the buffer
+     */
+    public MllpFrameDecoder(char startOfMessage, char endOfMessage, char endOfRecord, boolean useLLP, boolean readAhead, int bufferSize) {
+        this.startOfMessage = (byte) startOfMessage;
+        this.endOfMessage = (byte) endOfMessage;
+        this.endOfRecord = (byte) endOfRecord;
+        this.useEndOfRecord = (endOfRecord != 0);
+        this.useLLP = useLLP;
+        this.readAhead = readAhead;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Reads the next frame from the stream.
+     *
+     * @param is
+     * @return the frame, or null if the stream ended or the first read timed
+     *         out before a frame was received
+     * @throws IOException
+     *             if a read failed while a frame was being received
+     */
+    public ByteBuffer readFrame(InputStream is) throws IOException {
+        if (!useLLP) {
+            return readStream(is);
+        }
+
+        ByteBuffer frame = null;
+
+        while ((frame = nextFrame()) == null) {
+            boolean receiving = (frameStart >= 0);
+            int count = 0;
+
+            try {
+                count = fill(is);
+            } catch (SocketException e) {
+                if ((frame = unterminatedFrame()) != null) {
+                    return frame;
+                } else if (receiving) {
+                    throw e;
+                }
+
+                logger.info("SocketException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
+                return null;
+            } catch (SocketTimeoutException e) {
+                if ((frame = unterminatedFrame()) != null) {
+                    return frame;
+                } else if (receiving) {
+                    throw e;
+                }
+
+                logger.info("SocketTimeoutException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
+                return null;
+            }
+
+            if (count < 0) {
+                if ((frame = unterminatedFrame()) != null) {
+                    return frame;
+                } else if (receiving) {
+                    logger.error("Message violates the minimal lower protocol: message terminated without a terminating character.");
+                } else {
+                    logger.info("End of input stream reached.");
+                }
+
+                clear();
+                return null;
+            }
+        }
+
+        return frame;
+    }
+
+    /**
+     * Adds data that was read without the decoder, such as from a
+     * non-blocking channel. Frames returned before are no longer valid.
+     *
+     * @param data
+     */
+    public void append(ByteBuffer data) {
+        int length = data.remaining();
+        makeRoom(length);
+        data.get(buffer, end, length);
+        end += length;
+    }
+
+    /**
+     * Returns the next complete frame in the data that was added, or null if
+     * there is none. Without LLP, this always returns null.
+     *
+     * @return
+     */
+    public ByteBuffer nextFrame() {
+        if (!useLLP) {
+            return null;
+        }
+
+        while (true) {
+            if (frameStart < 0) {
+                int index = indexOf(startOfMessage, scanned);
+
+                if (index < 0) {
+                    // anything before the start of a message is dropped
+                    start = scanned = end;
+                    return null;
+                }
+
+                frameStart = start = index;
+                scanned = index + 1;
+            }
+
+            int index = indexOf(endOfMessage, scanned);
+
+            if (index < 0) {
+                scanned = end;
+                return null;
+            }
+
+            int frameEnd = index + 1;
+
+            if (useEndOfRecord) {
+                if (frameEnd == end) {
+                    // search from the end of message again once the next
+                    // byte is here
+                    scanned = index;
+                    return null;
+                }
+
+                if (buffer[frameEnd] != endOfRecord) {
+                    logger.error("Message terminator was: " + (char) (buffer[frameEnd] & 0xFF) + "  Expected terminator: " + (char) (endOfRecord & 0xFF));
+                    frameStart = -1;
+                    start = scanned = frameEnd + 1;
+                    continue;
+                }
+
+                frameEnd++;
+            }
+
+            ByteBuffer frame = ByteBuffer.wrap(buffer, frameStart, frameEnd - frameStart).slice();
+            frameStart = -1;
+            start = scanned = frameEnd;
+            return frame;
+        }
+    }
+
+    /**
+     * Returns all data that was added and not returned yet as a frame if LLP
+     * is not used. With LLP, returns the current frame if only its record
+     * separator is missing, or null otherwise. This is called when no more
+     * data arrived for the receive timeout.
+     *
+     * @return
+     */
+    public ByteBuffer flush() {
+        if (useLLP) {
+            return unterminatedFrame();
+        } else if (start == end) {
+            return null;
+        }
+
+        ByteBuffer frame = ByteBuffer.wrap(buffer, start, end - start).slice();
+        start = scanned = end;
+        return frame;
+    }
+
+    /*
+     * Returns the current frame if it ends with the end of message and only
+     * the record separator after it is missing.
+     */
+    private ByteBuffer unterminatedFrame() {
+        // nextFrame leaves the end of message unscanned while it waits for
+        // the next byte
+        if (!useEndOfRecord || (frameStart < 0) || (scanned != end - 1) || (buffer[scanned] != endOfMessage)) {
+            return null;
+        }
+
+        logger.warn("Message was not followed by the expected terminator " + (char) (endOfRecord & 0xFF) + " before the end of the stream or a timeout.");
+        ByteBuffer frame = ByteBuffer.wrap(buffer, frameStart, end - frameStart).slice();
+        frameStart = -1;
+        start = scanned = end;
+        return frame;
+    }
+
+    /*
+     * Without LLP, the whole stream is read as one frame. Read errors after
+     * the first byte end the frame.
+     */
+    private ByteBuffer readStream(InputStream is) throws IOException {
+        int count = 0;
+
+        if (start == end) {
+            try {
+                count = fill(is);
+            } catch (SocketException e) {
+                logger.info("SocketException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
+                return null;
+            } catch (SocketTimeoutException e) {
+                logger.info("SocketTimeoutException on read() attempt.  Socket appears to have been closed: " + e.getMessage());
+                return null;
+            }
+
+            if (count < 0) {
+                logger.info("End of input stream reached.");
+                return null;
+            }
+        }
+
+        while (count >= 0) {
+            try {
+                count = fill(is);
+            } catch (IOException e) {
+                count = -1;
+            }
+        }
+
+        return flush();
+    }
+
+    /*
+     * Reads more data into the buffer.
+     */
+    private int fill(InputStream is) throws IOException {
+        makeRoom(readAhead ? 1024 : 1);
+
+        if (readAhead) {
+            int count = is.read(buffer, end, buffer.length - end);
+
+            if (count > 0) {
+                end += count;
+            }
+
+            return count;
+        }
+
+        int b = is.read();
+
+        if (b < 0) {
+            return -1;
+        }
+
+        buffer[end++] = (byte) b;
+        return 1;
+    }
+
+    /*
+     * Moves the data that is still needed to the start of the buffer, and
+     * grows the buffer if that doesn't leave enough room.
+     */
+    private void makeRoom(int length) {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+
+            if (frameStart >= 0) {
+                frameStart -= start;
+            }
+
+            start = 0;
+        }
+
+        if ((buffer.length - end) < length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2, end + length)];
+            System.arraycopy(buffer, 0, newBuffer, 0, end);
+            buffer = newBuffer;
+        }
+    }
+
+    private int indexOf(byte value, int from) {
+        for (int i = from; i < end; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void clear() {
+        start = end = scanned = 0;
+        frameStart = -1;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.mllp.tests;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.mirth.connect.connectors.mllp.protocols.MllpFrameDecoder;
+
+/**
+ * Compares reading MLLP frames with MllpFrameDecoder and with the byte at a
+ * time reader that LlpProtocol used before, for 1 KB, 64 KB and 5 MB (an
+ * embedded PDF) messages. Both read from the same buffered stream as the LLP
+ * listener, and decode each frame to a string.
+ *
+ * Run with: java MllpFrameDecoderBenchmark [megabytes per run]
+ */
+public class MllpFrameDecoderBenchmark {
+    private static final String CHARSET = "UTF-8";
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+        int[] sizes = new int[] { 1024, 64 * 1024, 5 * 1024 * 1024 };
+
+        for (int size : sizes) {
+            byte[] frame = createFrame(size);
+            int frames = Math.max(1, (megabytes * 1024 * 1024) / frame.length);
+            byte[] data = new byte[frame.length * frames];
+
+            for (int i = 0; i < frames; i++) {
+                System.arraycopy(frame, 0, data, i * frame.length, frame.length);
+            }
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                runLegacy(data, frames);
+                runDecoder(data, frames);
+            }
+
+            long legacyTime = 0;
+            long decoderTime = 0;
+
+            for (int i = 0; i < RUNS; i++) {
+                legacyTime += runLegacy(data, frames);
+                decoderTime += runDecoder(data, frames);
+            }
+
+            System.out.println(size / 1024 + " KB messages (" + frames + " per run):");
+            System.out.println("  byte at a time reader: " + format(legacyTime, data.length));
+            System.out.println("  MllpFrameDecoder:      " + format(decoderTime, data.length));
+        }
+    }
+
+    private static long runLegacy(byte[] data, int frames) throws IOException {
+        InputStream is = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(data), 65536));
+        long start = System.nanoTime();
+
+        for (int i = 0; i < frames; i++) {
+            check(new String(readLegacy(is), CHARSET));
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long runDecoder(byte[] data, int frames) throws IOException {
+        InputStream is = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(data), 65536));
+        MllpFrameDecoder decoder = new MllpFrameDecoder((char) 0x0B, (char) 0x1C, (char) 0x0D, true, true, 8192);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < frames; i++) {
+            ByteBuffer frame = decoder.readFrame(is);
+            check(new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), CHARSET));
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /*
+     * The LlpProtocol read before MllpFrameDecoder: one read() call and one
+     * ByteArrayOutputStream write for every byte.
+     */
+    private static byte[] readLegacy(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int c = is.read();
+
+        while ((c != 0x0B) && (c != -1)) {
+            c = is.read();
+        }
+
+        baos.write(c);
+
+        while (true) {
+            c = is.read();
+
+            if (c == -1) {
+                return null;
+            }
+
+            baos.write(c);
+
+            if (c == 0x1C) {
+                baos.write(is.read());
+                return baos.toByteArray();
+            }
+        }
+    }
+
+    private static void check(String message) {
+        if (!message.startsWith("\u000BMSH")) {
+            throw new IllegalStateException("Invalid frame");
+        }
+    }
+
+    /*
+     * Builds an MDM message that is padded to the size with a base64 OBX
+     * segment, like a message with an embedded document.
+     */
+    private static byte[] createFrame(int size) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("MSH|^~\\&|SENDER|FACILITY|RECEIVER|FACILITY|20100101120000||MDM^T02|1|P|2.3\r");
+        builder.append("PID|1||123456^^^MRN||DOE^JOHN||19700101|M\r");
+        builder.append("TXA|1|CN|AP|20100101120000\r");
+        builder.append("OBX|1|ED|PDF^Report||^application^pdf^Base64^");
+
+        String base64 = "JVBERi0xLjQKJcfsj6IKNSAwIG9iago8PC9MZW5ndGggNiAwIFIvRmlsdGVyIC9GbGF0ZURlY29kZT4+";
+
+        while (builder.length() < (size - 3)) {
+            builder.append(base64.charAt(builder.length() % base64.length()));
+        }
+
+        builder.append("\r");
+        return ("\u000B" + builder.toString() + "\u001C\r").getBytes(CHARSET);
+    }
+
+    private static String format(long nanos, int bytes) {
+        double millis = nanos / 1000000.0 / RUNS;
+        return Math.round(millis) + " ms per run, " + Math.round(bytes / 1024.0 / 1024.0 / (millis / 1000.0)) + " MB/s";
+    }
+}
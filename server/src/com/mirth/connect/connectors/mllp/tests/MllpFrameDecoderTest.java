@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.mllp.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mirth.connect.connectors.mllp.protocols.MllpFrameDecoder;
+
+public class MllpFrameDecoderTest {
+    private static final String MESSAGE_1 = "MSH|^~\\&|A|B|C|D|20100101||ADT^A01|1|P|2.3\rPID|1||123\r";
+    private static final String MESSAGE_2 = "MSH|^~\\&|A|B|C|D|20100101||ADT^A08|2|P|2.3\rPID|1||456\r";
+
+    @Test
+    public void testReadFrames() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        InputStream is = new ByteArrayInputStream(bytes(frame(MESSAGE_1) + frame(MESSAGE_2)));
+
+        Assert.assertEquals(frame(MESSAGE_1), string(decoder.readFrame(is)));
+        Assert.assertEquals(frame(MESSAGE_2), string(decoder.readFrame(is)));
+        Assert.assertNull(decoder.readFrame(is));
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        InputStream is = new TrickleInputStream(bytes("junk" + frame(MESSAGE_1) + frame(MESSAGE_2)), 3);
+
+        Assert.assertEquals(frame(MESSAGE_1), string(decoder.readFrame(is)));
+        Assert.assertEquals(frame(MESSAGE_2), string(decoder.readFrame(is)));
+        Assert.assertNull(decoder.readFrame(is));
+    }
+
+    @Test
+    public void testReadWithoutReadAhead() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(false);
+        InputStream is = new ByteArrayInputStream(bytes(frame(MESSAGE_1) + "rest"));
+
+        Assert.assertEquals(frame(MESSAGE_1), string(decoder.readFrame(is)));
+        Assert.assertEquals('r', is.read());
+    }
+
+    @Test
+    public void testAppendedData() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        String data = frame(MESSAGE_1) + frame(MESSAGE_2);
+        int split = frame(MESSAGE_1).length() - 1;
+
+        // the first frame is only complete once its record separator is here
+        decoder.append(ByteBuffer.wrap(bytes(data.substring(0, split))));
+        Assert.assertNull(decoder.nextFrame());
+
+        decoder.append(ByteBuffer.wrap(bytes(data.substring(split))));
+        Assert.assertEquals(frame(MESSAGE_1), string(decoder.nextFrame()));
+        Assert.assertEquals(frame(MESSAGE_2), string(decoder.nextFrame()));
+        Assert.assertNull(decoder.nextFrame());
+    }
+
+    @Test
+    public void testInvalidTerminatorIsDropped() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        decoder.append(ByteBuffer.wrap(bytes("\u000B" + MESSAGE_1 + "\u001Cx" + frame(MESSAGE_2))));
+
+        Assert.assertEquals(frame(MESSAGE_2), string(decoder.nextFrame()));
+        Assert.assertNull(decoder.nextFrame());
+    }
+
+    @Test
+    public void testEndOfStreamAfterEndOfMessage() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        InputStream is = new ByteArrayInputStream(bytes(frame(MESSAGE_1) + "\u000B" + MESSAGE_2 + "\u001C"));
+
+        Assert.assertEquals(frame(MESSAGE_1), string(decoder.readFrame(is)));
+        Assert.assertEquals("\u000B" + MESSAGE_2 + "\u001C", string(decoder.readFrame(is)));
+        Assert.assertNull(decoder.readFrame(is));
+    }
+
+    @Test
+    public void testTimeoutAfterEndOfMessage() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        InputStream is = new TimeoutInputStream(bytes("\u000B" + MESSAGE_1 + "\u001C"));
+
+        Assert.assertEquals("\u000B" + MESSAGE_1 + "\u001C", string(decoder.readFrame(is)));
+    }
+
+    @Test
+    public void testTimeoutWithinFrame() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        InputStream is = new TimeoutInputStream(bytes("\u000B" + MESSAGE_1));
+
+        try {
+            decoder.readFrame(is);
+            Assert.fail("A frame without an end of message was returned");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFlushAfterEndOfMessage() throws Exception {
+        MllpFrameDecoder decoder = createDecoder(true);
+        decoder.append(ByteBuffer.wrap(bytes("\u000B" + MESSAGE_1)));
+        Assert.assertNull(decoder.nextFrame());
+        Assert.assertNull(decoder.flush());
+
+        decoder.append(ByteBuffer.wrap(bytes("\u001C")));
+        Assert.assertNull(decoder.nextFrame());
+        Assert.assertEquals("\u000B" + MESSAGE_1 + "\u001C", string(decoder.flush()));
+        Assert.assertNull(decoder.flush());
+
+        decoder.append(ByteBuffer.wrap(bytes(frame(MESSAGE_2))));
+        Assert.assertEquals(frame(MESSAGE_2), string(decoder.nextFrame()));
+    }
+
+    @Test
+    public void testLargeFrame() throws Exception {
+        StringBuilder builder = new StringBuilder(MESSAGE_1).append("OBX|1|ED|PDF||");
+
+        for (int i = 0; i < 100000; i++) {
+            builder.append("QUJDREVGR0g=");
+        }
+
+        String message = builder.append("\r").toString();
+        MllpFrameDecoder decoder = createDecoder(true);
+        InputStream is = new ByteArrayInputStream(bytes(frame(message)));
+
+        Assert.assertEquals(frame(message), string(decoder.readFrame(is)));
+    }
+
+    @Test
+    public void testWithoutLLP() throws Exception {
+        MllpFrameDecoder decoder = new MllpFrameDecoder((char) 0x0B, (char) 0x1C, (char) 0x0D, false, true, 16);
+        InputStream is = new TrickleInputStream(bytes(MESSAGE_1 + MESSAGE_2), 5);
+
+        Assert.assertEquals(MESSAGE_1 + MESSAGE_2, string(decoder.readFrame(is)));
+        Assert.assertNull(decoder.readFrame(is));
+    }
+
+    private MllpFrameDecoder createDecoder(boolean readAhead) {
+        return new MllpFrameDecoder((char) 0x0B, (char) 0x1C, (char) 0x0D, true, readAhead, 16);
+    }
+
+    private String frame(String message) {
+        return "\u000B" + message + "\u001C\r";
+    }
+
+    private byte[] bytes(String data) throws IOException {
+        return data.getBytes("ISO-8859-1");
+    }
+
+    private String string(ByteBuffer frame) throws IOException {
+        return new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), "ISO-8859-1");
+    }
+
+    /*
+     * Times out once all data was read, like a connection that stays open.
+     */
+    private class TimeoutInputStream extends InputStream {
+        private InputStream data;
+
+        public TimeoutInputStream(byte[] data) {
+            this.data = new ByteArrayInputStream(data);
+        }
+
+        public int read() throws IOException {
+            if (data.available() == 0) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+
+            return data.read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (data.available() == 0) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+
+            return data.read(b, off, len);
+        }
+    }
+
+    /*
+     * Returns at most a few bytes for each read, like a slow connection.
+     */
+    private class TrickleInputStream extends ByteArrayInputStream {
+        private int maxRead;
+
+        public TrickleInputStream(byte[] data, int maxRead) {
+            super(data);
+            this.maxRead = maxRead;
+        }
+
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, maxRead));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.mllp.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.mllp.MllpPipelinedSocket;
+import com.mirth.connect.connectors.mllp.protocols.LlpProtocol;
+
+public class MllpPipelinedSocketTest {
+    private static final int START_MESSAGE = 0x0B;
+    private static final int END_MESSAGE = 0x1C;
+
+    private ServerSocket serverSocket;
+    private MllpPipelinedSocket socket;
+
+    // the receiving end of the connection
+    private Socket receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        socket = new MllpPipelinedSocket(new LlpProtocol(), "UTF-8", 1024);
+        socket.connect(new InetSocketAddress("localhost", serverSocket.getLocalPort()));
+        receiver = serverSocket.accept();
+        receiver.setSoTimeout(10000);
+        socket.startReading("test_ack_reader");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        socket.close();
+        receiver.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testAcksMatchedByControlId() throws Exception {
+        SendThread thread1 = send("1", 10000);
+        SendThread thread2 = send("2", 10000);
+
+        // both messages are written before either ACK was sent
+        String first = readMessage();
+        String second = readMessage();
+        Assert.assertFalse(getControlId(first).equals(getControlId(second)));
+
+        // the ACKs are sent in the reverse order
+        writeAck(getControlId(second));
+        writeAck(getControlId(first));
+
+        assertAck("1", thread1);
+        assertAck("2", thread2);
+    }
+
+    @Test
+    public void testUnmatchedAckIgnored() throws Exception {
+        SendThread thread = send("1", 10000);
+        Assert.assertEquals("1", getControlId(readMessage()));
+
+        writeAck("9");
+        writeAck("1");
+        assertAck("1", thread);
+    }
+
+    @Test
+    public void testSameControlIdWaits() throws Exception {
+        SendThread thread1 = send("1", 10000);
+        Assert.assertEquals("1", getControlId(readMessage()));
+        SendThread thread2 = send("1", 10000);
+
+        // the second message is not written until the first one was ACKed
+        receiver.setSoTimeout(300);
+
+        try {
+            readMessage();
+            Assert.fail("a message with a control ID that is waiting for an ACK was written");
+        } catch (SocketTimeoutException e) {
+        }
+
+        receiver.setSoTimeout(10000);
+        writeAck("1");
+        assertAck("1", thread1);
+
+        Assert.assertEquals("1", getControlId(readMessage()));
+        writeAck("1");
+        assertAck("1", thread2);
+    }
+
+    @Test
+    public void testAckTimeout() throws Exception {
+        long start = System.currentTimeMillis();
+        Assert.assertNull(socket.send(message("1").getBytes("UTF-8"), 200));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+        Assert.assertEquals("1", getControlId(readMessage()));
+
+        // the connection can still be used
+        SendThread thread = send("2", 10000);
+        Assert.assertEquals("2", getControlId(readMessage()));
+        writeAck("2");
+        assertAck("2", thread);
+    }
+
+    @Test
+    public void testNoAckExpected() throws Exception {
+        Assert.assertNull(socket.send(message("1").getBytes("UTF-8"), 0));
+        Assert.assertEquals("1", getControlId(readMessage()));
+    }
+
+    @Test
+    public void testConnectionClosed() throws Exception {
+        SendThread thread = send("1", 10000);
+        Assert.assertEquals("1", getControlId(readMessage()));
+
+        // the sender waiting for an ACK fails, and the connection is broken
+        receiver.close();
+        thread.join(10000);
+        Assert.assertNull(thread.ack);
+        Assert.assertTrue(thread.exception instanceof IOException);
+        Assert.assertTrue(socket.remoteSideHasClosed());
+    }
+
+    private SendThread send(String controlId, int ackTimeout) {
+        SendThread thread = new SendThread(message(controlId), ackTimeout);
+        thread.start();
+        return thread;
+    }
+
+    private void assertAck(String controlId, SendThread thread) throws Exception {
+        thread.join(10000);
+        Assert.assertNull(thread.exception);
+        Assert.assertNotNull(thread.ack);
+        Assert.assertTrue(new String(thread.ack, "UTF-8").contains("MSA|AA|" + controlId + "\r"));
+    }
+
+    private String message(String controlId) {
+        return "MSH|^~\\&|A|B|C|D|20100101||ADT^A01|" + controlId + "|P|2.3\rPID|1||123\r";
+    }
+
+    private String getControlId(String message) {
+        return message.split("\r")[0].split("\\|")[9];
+    }
+
+    /*
+     * Reads the next message from the connection, without its frame.
+     */
+    private String readMessage() throws IOException {
+        InputStream is = receiver.getInputStream();
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int b = is.read();
+
+        if (b != START_MESSAGE) {
+            throw new IOException("Expected the start of a message, but read " + b);
+        }
+
+        while ((b = is.read()) != END_MESSAGE) {
+            if (b == -1) {
+                throw new IOException("The connection was closed in a message");
+            }
+
+            message.write(b);
+        }
+
+        // the record separator
+        is.read();
+        return new String(message.toByteArray(), "UTF-8");
+    }
+
+    private void writeAck(String controlId) throws IOException {
+        String ack = "MSH|^~\\&|C|D|A|B|20100101||ACK|" + controlId + "|P|2.3\rMSA|AA|" + controlId + "\r";
+        OutputStream os = receiver.getOutputStream();
+        os.write(START_MESSAGE);
+        os.write(ack.getBytes("UTF-8"));
+        os.write(END_MESSAGE);
+        os.write('\r');
+        os.flush();
+    }
+
+    private class SendThread extends Thread {
+        private String message;
+        private int ackTimeout;
+        private volatile byte[] ack;
+        private volatile Exception exception;
+
+        public SendThread(String message, int ackTimeout) {
+            this.message = message;
+            this.ackTimeout = ackTimeout;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ack = socket.send(message.getBytes("UTF-8"), ackTimeout);
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+    }
+}
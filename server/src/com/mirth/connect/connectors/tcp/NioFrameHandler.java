@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Frames and processes the data of one connection of a NioSocketListener.
+ * The decode, flush and closed methods are called on the selector thread of
+ * the connection, and processFrame on a worker thread. A connection never has
+ * more than one frame being processed at a time.
+ */
+public interface NioFrameHandler {
+    /**
+     * Adds data read from the connection to the current frame. The buffer is
+     * reused after this returns, so its bytes must be copied.
+     *
+     * @param data
+     * @return the frames that were completed by the data
+     */
+    public List<byte[]> decode(ByteBuffer data);
+
+    /**
+     * Called when nothing was read for the idle timeout, or when the client
+     * closed the connection.
+     *
+     * @return the data of the current frame as a complete frame, or null if
+     *         it should not be processed
+     */
+    public byte[] flush();
+
+    /**
+     * Processes a frame. Whatever is written to the output stream is sent to
+     * the client once this returns.
+     *
+     * @param frame
+     * @param out
+     * @return false to close the connection after the response is sent
+     * @throws Exception
+     */
+    public boolean processFrame(byte[] frame, OutputStream out) throws Exception;
+
+    /**
+     * Called once the connection has been closed.
+     */
+    public void closed();
+}
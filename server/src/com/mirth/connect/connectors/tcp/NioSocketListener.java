@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Listens for TCP connections with a few selector threads instead of a thread
+ * per connection, so a listener can keep hundreds of mostly idle connections
+ * open.
+ *
+ * Each connection has its own NioFrameHandler that splits the data read into
+ * frames. Complete frames are processed by a fixed pool of worker threads, one
+ * frame of a connection at a time and in the order they were received. While
+ * a frame is being processed and its response is being sent, nothing more is
+ * read from the connection, so a client that sends faster than its messages
+ * are processed is held back by TCP flow control.
+ */
+public class NioSocketListener {
+    // the longest time between idle checks
+    private static final int MAX_IDLE_CHECK_INTERVAL = 1000;
+
+    public interface HandlerFactory {
+        /**
+         * Creates the handler for a new connection.
+         *
+         * @param socket
+         * @return
+         * @throws Exception
+         *             if the connection should be closed
+         */
+        public NioFrameHandler createHandler(Socket socket) throws Exception;
+    }
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private String name;
+    private HandlerFactory handlerFactory;
+    private int selectorThreads;
+    private int workerThreads;
+    private int bufferSize;
+    private int idleTimeout;
+    private boolean closeOnIdle;
+
+    private ServerSocketChannel serverChannel;
+    private List<SelectorThread> selectors = new ArrayList<SelectorThread>();
+    private AtomicInteger nextSelector = new AtomicInteger();
+    private ExecutorService workers;
+    private volatile boolean running = false;
+
+    /**
+     * @param name
+     *            the name of the listener threads
+     * @param handlerFactory
+     * @param selectorThreads
+     *            the number of threads that accept, read and write
+     * @param workerThreads
+     *            the number of threads that process frames
+     * @param bufferSize
+     *            the size of the socket buffers and of the read buffer of each
+     *            selector thread
+     * @param idleTimeout
+     *            the milliseconds without data after which the current frame
+     *            is flushed, or 0 to never flush it
+     * @param closeOnIdle
+     *            whether a connection is closed after it was idle for the idle
+     *            timeout without a frame to flush
+     */
+    public NioSocketListener(String name, HandlerFactory handlerFactory, int selectorThreads, int workerThreads, int bufferSize, int idleTimeout, boolean closeOnIdle) {
+        this.name = name;
+        this.handlerFactory = handlerFactory;
+        this.selectorThreads = Math.max(1, selectorThreads);
+        this.workerThreads = Math.max(1, workerThreads);
+        this.bufferSize = bufferSize;
+        this.idleTimeout = idleTimeout;
+        this.closeOnIdle = closeOnIdle;
+    }
+
+    /**
+     * Binds the listener and starts its threads.
+     *
+     * @param address
+     * @param backlog
+     * @throws IOException
+     */
+    public synchronized void start(InetSocketAddress address, int backlog) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+
+        try {
+            serverChannel.socket().bind(address, backlog);
+            serverChannel.configureBlocking(false);
+
+            for (int i = 0; i < selectorThreads; i++) {
+                selectors.add(new SelectorThread(name + "_selector_" + (i + 1)));
+            }
+        } catch (IOException e) {
+            closeSelectors();
+            serverChannel.close();
+            throw e;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "_worker_" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        running = true;
+        selectors.get(0).execute(new Runnable() {
+            public void run() {
+                try {
+                    serverChannel.register(selectors.get(0).selector, SelectionKey.OP_ACCEPT);
+                } catch (IOException e) {
+                    logger.error("Could not listen for connections on " + name, e);
+                }
+            }
+        });
+
+        for (SelectorThread selector : selectors) {
+            selector.start();
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes the open connections and waits for
+     * the selector threads to end.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.debug("Could not close server socket of " + name, e);
+        }
+
+        for (SelectorThread selector : selectors) {
+            selector.selector.wakeup();
+        }
+
+        for (SelectorThread selector : selectors) {
+            try {
+                selector.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        selectors.clear();
+        workers.shutdownNow();
+    }
+
+    private void closeSelectors() {
+        for (SelectorThread selector : selectors) {
+            try {
+                selector.selector.close();
+            } catch (IOException e) {
+                logger.debug("Could not close selector of " + name, e);
+            }
+        }
+
+        selectors.clear();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = null;
+
+        while ((channel = serverChannel.accept()) != null) {
+            final SocketChannel acceptedChannel = channel;
+            final SelectorThread selector = selectors.get((nextSelector.getAndIncrement() & Integer.MAX_VALUE) % selectors.size());
+
+            selector.execute(new Runnable() {
+                public void run() {
+                    selector.register(acceptedChannel);
+                }
+            });
+        }
+    }
+
+    private class SelectorThread extends Thread {
+        private Selector selector;
+        private ByteBuffer readBuffer;
+        private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        public SelectorThread(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+            readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        /*
+         * Runs a task on this selector thread.
+         */
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        public void run() {
+            long selectTimeout = (idleTimeout > 0) ? Math.min(idleTimeout, MAX_IDLE_CHECK_INTERVAL) : 0;
+
+            try {
+                while (running) {
+                    selector.select(selectTimeout);
+
+                    Runnable task = null;
+
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext();) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+
+                        if (key.isValid()) {
+                            if (key.isAcceptable()) {
+                                try {
+                                    accept();
+                                } catch (IOException e) {
+                                    if (running) {
+                                        logger.warn("Accept failed on " + name, e);
+                                    }
+                                }
+                            } else {
+                                Connection connection = (Connection) key.attachment();
+
+                                try {
+                                    if (key.isReadable()) {
+                                        connection.read();
+                                    }
+
+                                    if (key.isValid() && key.isWritable()) {
+                                        connection.write();
+                                    }
+                                } catch (IOException e) {
+                                    logger.debug("Connection failed on " + name + ": " + e.getMessage());
+                                    connection.close();
+                                }
+                            }
+                        }
+                    }
+
+                    if (idleTimeout > 0) {
+                        checkIdleConnections();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+            } catch (Throwable t) {
+                logger.error("Selector thread failed on " + name, t);
+            } finally {
+                closeConnections();
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            Connection connection = null;
+
+            try {
+                channel.configureBlocking(false);
+                Socket socket = channel.socket();
+                socket.setReceiveBufferSize(bufferSize);
+                socket.setSendBufferSize(bufferSize);
+                socket.setTcpNoDelay(true);
+
+                connection = new Connection(this, channel);
+                connection.handler = handlerFactory.createHandler(socket);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (Exception e) {
+                logger.error("Could not open connection on " + name, e);
+
+                if ((connection != null) && (connection.handler != null)) {
+                    connection.close();
+                } else {
+                    try {
+                        channel.close();
+                    } catch (IOException ioe) {
+                        logger.debug("Could not close connection on " + name, ioe);
+                    }
+                }
+            }
+        }
+
+        private void checkIdleConnections() {
+            long now = System.currentTimeMillis();
+
+            for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                if (key.isValid() && (key.attachment() instanceof Connection)) {
+                    Connection connection = (Connection) key.attachment();
+
+                    if (connection.isIdle() && ((now - connection.lastActivityTime) >= idleTimeout)) {
+                        connection.idle();
+                    }
+                }
+            }
+        }
+
+        private void closeConnections() {
+            for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("Could not close selector of " + name, e);
+            }
+        }
+    }
+
+    /*
+     * The state of a connection, which is only changed on its selector thread.
+     */
+    private class Connection {
+        private SelectorThread selectorThread;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private NioFrameHandler handler;
+
+        private LinkedList<byte[]> frames = new LinkedList<byte[]>();
+        private ByteBuffer output = null;
+        private boolean processing = false;
+        private boolean closeRequested = false;
+        private boolean closed = false;
+        private long lastActivityTime = System.currentTimeMillis();
+
+        public Connection(SelectorThread selectorThread, SocketChannel channel) {
+            this.selectorThread = selectorThread;
+            this.channel = channel;
+        }
+
+        public void read() throws IOException {
+            ByteBuffer buffer = selectorThread.readBuffer;
+            buffer.clear();
+            int count = channel.read(buffer);
+
+            if (count < 0) {
+                // the client closed its side of the connection
+                byte[] frame = handler.flush();
+
+                if (frame != null) {
+                    frames.add(frame);
+                }
+
+                closeRequested = true;
+                key.interestOps(0);
+            } else if (count > 0) {
+                lastActivityTime = System.currentTimeMillis();
+                buffer.flip();
+                frames.addAll(handler.decode(buffer));
+            }
+
+            next();
+        }
+
+        public void write() throws IOException {
+            channel.write(output);
+
+            if (!output.hasRemaining()) {
+                output = null;
+                next();
+            }
+        }
+
+        public boolean isIdle() {
+            return !processing && (output == null) && frames.isEmpty() && !closeRequested;
+        }
+
+        public void idle() {
+            byte[] frame = handler.flush();
+            lastActivityTime = System.currentTimeMillis();
+
+            if (frame != null) {
+                frames.add(frame);
+                next();
+            } else if (closeOnIdle) {
+                close();
+            }
+        }
+
+        /*
+         * Starts processing the next frame once the response of the last one
+         * is sent, or reads more data when there is none.
+         */
+        private void next() {
+            if (closed || processing) {
+                return;
+            }
+
+            if (output != null) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (!frames.isEmpty()) {
+                key.interestOps(0);
+                processing = true;
+
+                try {
+                    workers.execute(new FrameTask(this, frames.removeFirst()));
+                } catch (RejectedExecutionException e) {
+                    // the listener is stopping
+                    close();
+                }
+            } else if (closeRequested) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void frameProcessed(byte[] response, boolean keepOpen) {
+            processing = false;
+            lastActivityTime = System.currentTimeMillis();
+
+            if (!keepOpen) {
+                closeRequested = true;
+                frames.clear();
+            }
+
+            if (closed) {
+                return;
+            }
+
+            if (response.length > 0) {
+                output = ByteBuffer.wrap(response);
+
+                try {
+                    write();
+                    return;
+                } catch (IOException e) {
+                    logger.debug("Could not send response on " + name + ": " + e.getMessage());
+                    close();
+                    return;
+                }
+            }
+
+            next();
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            if (key != null) {
+                key.cancel();
+            }
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Could not close connection on " + name, e);
+            }
+
+            try {
+                handler.closed();
+            } catch (Throwable t) {
+                logger.error("Error closing connection on " + name, t);
+            }
+        }
+    }
+
+    private class FrameTask implements Runnable {
+        private Connection connection;
+        private byte[] frame;
+
+        public FrameTask(Connection connection, byte[] frame) {
+            this.connection = connection;
+            this.frame = frame;
+        }
+
+        public void run() {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            boolean keepOpen = true;
+
+            try {
+                keepOpen = connection.handler.processFrame(frame, response);
+            } catch (Throwable t) {
+                logger.error("Error processing message on " + name, t);
+            }
+
+            final byte[] responseBytes = response.toByteArray();
+            final boolean finalKeepOpen = keepOpen;
+
+            connection.selectorThread.execute(new Runnable() {
+                public void run() {
+                    connection.frameProcessed(responseBytes, finalKeepOpen);
+                }
+            });
+        }
+    }
+}
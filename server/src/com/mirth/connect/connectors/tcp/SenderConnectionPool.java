@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps open connections to the remote endpoints of a sender, so messages
+ * don't wait for a new connection and several queue threads can share a few
+ * connections.
+ *
+ * Each endpoint has up to maxConnections connections. A connection is lent to
+ * one sender at a time, or to up to maxRequestsPerConnection senders at a time
+ * if the connections are pipelined. A connection that has been idle for a
+ * while is checked before it is lent out, and connections that are idle for
+ * longer than the idle timeout are closed.
+ */
+public class SenderConnectionPool {
+    // idle connections are checked before they are lent out again
+    private static final long HEALTH_CHECK_INTERVAL = 5000;
+
+    public interface ConnectionFactory {
+        /**
+         * Opens a new connection to the endpoint.
+         *
+         * @param endpoint
+         * @return
+         * @throws Exception
+         */
+        public StateAwareSocket createConnection(String endpoint) throws Exception;
+
+        /**
+         * Called after a connection was closed by the pool.
+         *
+         * @param socket
+         */
+        public void connectionClosed(StateAwareSocket socket);
+    }
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private String name;
+    private ConnectionFactory factory;
+    private int maxConnections;
+    private int maxRequestsPerConnection;
+    private int idleTimeout;
+
+    private Map<String, List<Connection>> endpoints = new HashMap<String, List<Connection>>();
+    private Map<StateAwareSocket, Connection> borrowed = new HashMap<StateAwareSocket, Connection>();
+    private Timer evictionTimer;
+    private boolean closed = false;
+
+    /**
+     * @param name
+     *            the name of the pool's threads
+     * @param factory
+     * @param maxConnections
+     *            the most connections to one endpoint
+     * @param maxRequestsPerConnection
+     *            how many senders may use a connection at the same time
+     * @param idleTimeout
+     *            the milliseconds after which an unused connection is closed,
+     *            or 0 to keep it open
+     */
+    public SenderConnectionPool(String name, ConnectionFactory factory, int maxConnections, int maxRequestsPerConnection, int idleTimeout) {
+        this.name = name;
+        this.factory = factory;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.maxRequestsPerConnection = Math.max(1, maxRequestsPerConnection);
+        this.idleTimeout = idleTimeout;
+
+        if (idleTimeout > 0) {
+            evictionTimer = new Timer(name + "_connection_pool", true);
+            long interval = Math.max(idleTimeout / 2, 1000);
+            evictionTimer.schedule(new TimerTask() {
+                public void run() {
+                    evictIdleConnections();
+                }
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Returns a connection to the endpoint, opening one if there is room in
+     * the pool, or waiting until another sender releases one.
+     *
+     * @param endpoint
+     * @return
+     * @throws Exception
+     *             if a new connection could not be opened, or the pool was
+     *             closed
+     */
+    public StateAwareSocket borrow(String endpoint) throws Exception {
+        while (true) {
+            Connection connection = null;
+            boolean create = false;
+
+            synchronized (this) {
+                while (connection == null && !create) {
+                    if (closed) {
+                        throw new IOException("The connection pool " + name + " is closed");
+                    }
+
+                    List<Connection> connections = getConnections(endpoint);
+                    connection = selectConnection(connections, 1);
+
+                    if (connection == null && connections.size() < maxConnections) {
+                        // reserve the place of the new connection
+                        connection = new Connection(endpoint);
+                        connections.add(connection);
+                        create = true;
+                    } else if (connection == null) {
+                        connection = selectConnection(connections, maxRequestsPerConnection);
+                    }
+
+                    if (connection != null) {
+                        connection.requests++;
+                    } else {
+                        wait();
+                    }
+                }
+            }
+
+            if (create) {
+                StateAwareSocket socket = null;
+
+                try {
+                    socket = factory.createConnection(endpoint);
+                } catch (Exception e) {
+                    remove(connection);
+                    throw e;
+                }
+
+                synchronized (this) {
+                    connection.socket = socket;
+                    borrowed.put(socket, connection);
+                }
+
+                return socket;
+            }
+
+            if (isHealthy(connection)) {
+                return connection.socket;
+            }
+
+            logger.debug("Closing the broken connection to " + endpoint);
+            remove(connection);
+            close(connection.socket);
+        }
+    }
+
+    /**
+     * Gives a connection back to the pool. A connection that was closed while
+     * it was used is dropped.
+     *
+     * @param socket
+     */
+    public void release(StateAwareSocket socket) {
+        Connection connection = null;
+
+        synchronized (this) {
+            connection = borrowed.get(socket);
+
+            if (connection == null) {
+                return;
+            }
+
+            connection.requests--;
+            connection.lastUsed = System.currentTimeMillis();
+
+            if (connection.requests == 0) {
+                borrowed.remove(socket);
+            }
+
+            if (!closed && !socket.isClosed()) {
+                notifyAll();
+                return;
+            }
+        }
+
+        remove(connection);
+        close(socket);
+    }
+
+    /**
+     * Closes a connection that failed, and drops it from the pool. Other
+     * senders that are still using the connection fail as well.
+     *
+     * @param socket
+     */
+    public void invalidate(StateAwareSocket socket) {
+        Connection connection = null;
+
+        synchronized (this) {
+            connection = borrowed.remove(socket);
+        }
+
+        if (connection != null) {
+            remove(connection);
+        }
+
+        close(socket);
+    }
+
+    /**
+     * Opens connections to the endpoint until the pool is full, so the first
+     * messages don't wait for them.
+     *
+     * @param endpoint
+     */
+    public void warmUp(String endpoint) {
+        while (true) {
+            Connection connection = null;
+
+            synchronized (this) {
+                List<Connection> connections = getConnections(endpoint);
+
+                if (closed || connections.size() >= maxConnections) {
+                    return;
+                }
+
+                connection = new Connection(endpoint);
+                connections.add(connection);
+            }
+
+            StateAwareSocket socket = null;
+
+            try {
+                socket = factory.createConnection(endpoint);
+            } catch (Exception e) {
+                remove(connection);
+                logger.warn("Could not open connections to " + endpoint + " in advance: " + e.getMessage());
+                return;
+            }
+
+            synchronized (this) {
+                if (!closed) {
+                    connection.socket = socket;
+                    notifyAll();
+                    continue;
+                }
+            }
+
+            close(socket);
+            return;
+        }
+    }
+
+    /**
+     * Closes all connections that are not in use. Connections that are in
+     * use are closed when they are released.
+     */
+    public void close() {
+        List<StateAwareSocket> sockets = new ArrayList<StateAwareSocket>();
+
+        synchronized (this) {
+            closed = true;
+
+            for (List<Connection> connections : endpoints.values()) {
+                for (Connection connection : connections) {
+                    if (connection.requests == 0 && connection.socket != null) {
+                        sockets.add(connection.socket);
+                    }
+                }
+            }
+
+            endpoints.clear();
+            notifyAll();
+        }
+
+        if (evictionTimer != null) {
+            evictionTimer.cancel();
+        }
+
+        for (StateAwareSocket socket : sockets) {
+            close(socket);
+        }
+    }
+
+    /*
+     * Picks the open connection with the fewest requests, if it has fewer
+     * than maxRequests. An unused connection is picked before a new one is
+     * opened, and a connection is only shared once the pool is full.
+     */
+    private Connection selectConnection(List<Connection> connections, int maxRequests) {
+        Connection selected = null;
+
+        for (Connection connection : connections) {
+            if (connection.socket == null || connection.requests >= maxRequests) {
+                continue;
+            }
+
+            if (selected == null || connection.requests < selected.requests) {
+                selected = connection;
+            }
+        }
+
+        if (selected != null && selected.requests == 0) {
+            borrowed.put(selected.socket, selected);
+        }
+
+        return selected;
+    }
+
+    /*
+     * A connection that is shared or was used recently is assumed to be
+     * fine. Otherwise, check whether the remote side closed it while it was
+     * idle.
+     */
+    private boolean isHealthy(Connection connection) {
+        if (connection.socket.isClosed()) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (connection.requests > 1 || (System.currentTimeMillis() - connection.lastUsed) < HEALTH_CHECK_INTERVAL) {
+                return true;
+            }
+        }
+
+        try {
+            return !connection.socket.remoteSideHasClosed();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void evictIdleConnections() {
+        List<StateAwareSocket> sockets = new ArrayList<StateAwareSocket>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            for (List<Connection> connections : endpoints.values()) {
+                for (Iterator<Connection> iterator = connections.iterator(); iterator.hasNext();) {
+                    Connection connection = iterator.next();
+
+                    if (connection.requests == 0 && connection.socket != null && (now - connection.lastUsed) >= idleTimeout) {
+                        iterator.remove();
+                        sockets.add(connection.socket);
+                    }
+                }
+            }
+        }
+
+        for (StateAwareSocket socket : sockets) {
+            logger.debug("Closing an idle connection of " + name);
+            close(socket);
+        }
+    }
+
+    private List<Connection> getConnections(String endpoint) {
+        List<Connection> connections = endpoints.get(endpoint);
+
+        if (connections == null) {
+            connections = new ArrayList<Connection>();
+            endpoints.put(endpoint, connections);
+        }
+
+        return connections;
+    }
+
+    private synchronized void remove(Connection connection) {
+        List<Connection> connections = endpoints.get(connection.endpoint);
+
+        if (connections != null) {
+            connections.remove(connection);
+        }
+
+        if (connection.socket != null && borrowed.get(connection.socket) == connection) {
+            borrowed.remove(connection.socket);
+        }
+
+        notifyAll();
+    }
+
+    private void close(StateAwareSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Could not close a connection of " + name + ": " + e.getMessage());
+        }
+
+        factory.connectionClosed(socket);
+    }
+
+    private class Connection {
+        private String endpoint;
+        private StateAwareSocket socket = null;
+        private int requests = 0;
+        private long lastUsed = System.currentTimeMillis();
+
+        public Connection(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+}
@@ -30,6 +30,9 @@ public class TCPListenerProperties implements ComponentProperties {
     public static final String TCP_RESPONSE_VALUE = "responseValue";
     public static final String CONNECTOR_CHARSET_ENCODING = "charsetEncoding";
     public static final String TCP_TYPE = "binary";
+    public static final String TCP_USE_NIO = "useNio";
+    public static final String TCP_SELECTOR_THREADS = "selectorThreads";
+    public static final String TCP_WORKER_THREADS = "workerThreads";
 
     public Properties getDefaults() {
         Properties properties = new Properties();
@@ -45,6 +48,9 @@ public class TCPListenerProperties implements ComponentProperties {
         properties.put(TCP_RESPONSE_VALUE, "None");
         properties.put(CONNECTOR_CHARSET_ENCODING, CharsetUtils.DEFAULT_ENCODING);
         properties.put(TCP_TYPE, "0");
+        properties.put(TCP_USE_NIO, "0");
+        properties.put(TCP_SELECTOR_THREADS, "2");
+        properties.put(TCP_WORKER_THREADS, "16");
         return properties;
     }
 }
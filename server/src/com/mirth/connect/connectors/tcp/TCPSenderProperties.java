@@ -30,6 +30,8 @@ public class TCPSenderProperties extends QueuedSenderProperties {
     public static final String CONNECTOR_CHARSET_ENCODING = "charsetEncoding";
     public static final String CHANNEL_ID = "replyChannelId";
     public static final String TCP_TYPE = "binary";
+    public static final String TCP_CONNECTION_POOL_SIZE = "connectionPoolSize";
+    public static final String TCP_CONNECTION_IDLE_TIMEOUT = "connectionIdleTimeout";
 
     public Properties getDefaults() {
         Properties properties = super.getDefaults();
@@ -46,6 +48,8 @@ public class TCPSenderProperties extends QueuedSenderProperties {
         properties.put(TCP_TEMPLATE, "${message.encodedData}");
         properties.put(CHANNEL_ID, "sink");
         properties.put(TCP_TYPE, "0");
+        properties.put(TCP_CONNECTION_POOL_SIZE, "0");
+        properties.put(TCP_CONNECTION_IDLE_TIMEOUT, "60000");
         return properties;
     }
 }
@@ -9,17 +9,30 @@
 
 package com.mirth.connect.connectors.tcp;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+
 import org.mule.config.i18n.Message;
 import org.mule.impl.model.AbstractComponent;
 import org.mule.management.stats.ComponentStatistics;
 import org.mule.providers.QueueEnabledConnector;
+import org.mule.providers.QueueEnabledMessageDispatcher;
+import org.mule.providers.TemplateValueReplacer;
 import org.mule.umo.UMOComponent;
+import org.mule.umo.UMOException;
 import org.mule.umo.endpoint.UMOEndpoint;
 import org.mule.umo.lifecycle.InitialisationException;
 import org.mule.umo.provider.UMOMessageReceiver;
 
 import com.mirth.connect.connectors.tcp.protocols.DefaultProtocol;
 import com.mirth.connect.server.Constants;
+import com.mirth.connect.server.controllers.ControllerFactory;
+import com.mirth.connect.server.controllers.MonitoringController;
+import com.mirth.connect.server.controllers.MonitoringController.ConnectorType;
+import com.mirth.connect.server.controllers.MonitoringController.Event;
 import com.mirth.connect.util.CharsetUtils;
 
 /**
@@ -31,7 +44,7 @@ import com.mirth.connect.util.CharsetUtils;
  * 
  * @version $Revision: 1.11 $
  */
-public class TcpConnector extends QueueEnabledConnector {
+public class TcpConnector extends QueueEnabledConnector implements SenderConnectionPool.ConnectionFactory {
     public static final String PROPERTY_CHAR_ENCODING = "charEncoding";
     public static final String PROPERTY_START_OF_MESSAGE = "messageStart";
     public static final String PROPERTY_END_OF_MESSAGE = "messageEnd";
@@ -69,6 +82,20 @@ public class TcpConnector extends QueueEnabledConnector {
     private boolean sendACK = false;
     private TcpProtocol tcpProtocol;
 
+    // listen with selector threads instead of a thread per connection
+    public static final int DEFAULT_SELECTOR_THREADS = 2;
+    public static final int DEFAULT_WORKER_THREADS = 16;
+    private boolean useNio = false;
+    private int selectorThreads = DEFAULT_SELECTOR_THREADS;
+    private int workerThreads = DEFAULT_WORKER_THREADS;
+
+    // keep the sender connections in a pool
+    public static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 60000;
+    private int connectionPoolSize = 0;
+    private int connectionIdleTimeout = DEFAULT_CONNECTION_IDLE_TIMEOUT;
+    private SenderConnectionPool connectionPool = null;
+    private MonitoringController monitoringController = ControllerFactory.getFactory().createMonitoringController();
+
     private UMOComponent component = null;
     private int ackTimeout = DEFAULT_ACK_TIMEOUT;
     private String charsetEncoding;
@@ -145,6 +172,84 @@ public class TcpConnector extends QueueEnabledConnector {
         return "TCP";
     }
 
+    @Override
+    protected QueueEnabledMessageDispatcher createQueueDispatcher() {
+        return new TcpMessageDispatcher(this);
+    }
+
+    @Override
+    public void startDispatchers(UMOComponent component, UMOEndpoint endpoint) throws UMOException {
+        super.startDispatchers(component, endpoint);
+
+        // open the pooled connections in advance, unless the address depends
+        // on the message
+        final SenderConnectionPool pool = getConnectionPool();
+        String address = endpoint.getEndpointURI().toString();
+
+        if (pool != null && !TemplateValueReplacer.hasReplaceableValues(address)) {
+            final String host = new TemplateValueReplacer().replaceURLValues(address, null);
+
+            Thread thread = new Thread() {
+                public void run() {
+                    pool.warmUp(host);
+                }
+            };
+
+            thread.setName(getName() + "_connection_warm_up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void stopDispatchers(UMOComponent component, UMOEndpoint endpoint) throws UMOException {
+        super.stopDispatchers(component, endpoint);
+
+        synchronized (this) {
+            if (connectionPool != null) {
+                connectionPool.close();
+                connectionPool = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the pool of sender connections, or null if the connections are
+     * not pooled.
+     * 
+     * @return
+     */
+    public synchronized SenderConnectionPool getConnectionPool() {
+        if (connectionPool == null && connectionPoolSize > 0) {
+            connectionPool = new SenderConnectionPool(getName(), this, connectionPoolSize, 1, connectionIdleTimeout);
+        }
+
+        return connectionPool;
+    }
+
+    /**
+     * Opens a sender connection with the connector's socket settings.
+     */
+    public StateAwareSocket createConnection(String endpoint) throws IOException, URISyntaxException {
+        URI uri = new URI(endpoint);
+        int port = uri.getPort();
+        InetAddress inetAddress = InetAddress.getByName(uri.getHost());
+        InetSocketAddress inetSocketAddress = new InetSocketAddress(inetAddress, port);
+        StateAwareSocket socket = new StateAwareSocket();
+        socket.connect(inetSocketAddress, getReconnectMillisecs());
+        socket.setReuseAddress(true);
+        socket.setReceiveBufferSize(bufferSize);
+        socket.setSendBufferSize(bufferSize);
+        socket.setSoTimeout(sendTimeout);
+        socket.setKeepAlive(keepAlive);
+        monitoringController.updateStatus(this, ConnectorType.SENDER, Event.CONNECTED, socket);
+        return socket;
+    }
+
+    public void connectionClosed(StateAwareSocket socket) {
+        monitoringController.updateStatus(this, ConnectorType.SENDER, Event.DISCONNECTED, socket);
+    }
+
     /**
      * A shorthand property setting timeout for both SEND and RECEIVE sockets.
      */
@@ -403,4 +508,44 @@ public class TcpConnector extends QueueEnabledConnector {
     public void setResponseValue(String responseValue) {
         this.responseValue = responseValue;
     }
+
+    public boolean isUseNio() {
+        return useNio;
+    }
+
+    public void setUseNio(boolean useNio) {
+        this.useNio = useNio;
+    }
+
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    public void setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public int getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public void setConnectionIdleTimeout(int connectionIdleTimeout) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
 }
@@ -13,11 +13,8 @@ import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
@@ -86,19 +83,8 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
         if (connectedSockets.get(endpoint) != null) {
             monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED, connectedSockets.get(endpoint));
         }
-        URI uri = new URI(endpoint);
-        int port = uri.getPort();
-        InetAddress inetAddress = InetAddress.getByName(uri.getHost());
-        InetSocketAddress inetSocketAddress = new InetSocketAddress(inetAddress, port);
-        StateAwareSocket socket = new StateAwareSocket();
-        createSocket(socket, inetSocketAddress);
-        socket.setReuseAddress(true);
-        socket.setReceiveBufferSize(connector.getBufferSize());
-        socket.setSendBufferSize(connector.getBufferSize());
-        socket.setSoTimeout(connector.getSendTimeout());
-        socket.setKeepAlive(connector.isKeepAlive());
+        StateAwareSocket socket = connector.createConnection(endpoint);
         connectedSockets.put(endpoint, socket);
-        monitoringController.updateStatus(connector, connectorType, Event.CONNECTED, socket);
         return socket;
     }
 
@@ -119,6 +105,7 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
         }
 
         String host = replacer.replaceURLValues(endpointUri, messageObject);
+        SenderConnectionPool pool = connector.getConnectionPool();
 
         try {
             if (connector.isUsePersistentQueues()) {
@@ -135,7 +122,10 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
                         retryCount++;
                     }
                     try {
-                        if (!connector.isKeepSendSocketOpen()) {
+                        if (pool != null) {
+                            sendPooled(pool, host, messageObject);
+                            success = true;
+                        } else if (!connector.isKeepSendSocketOpen()) {
                             socket = initSocket(host);
                             writeTemplatedData(socket, messageObject);
                             success = true;
@@ -201,7 +191,8 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
             messageObjectController.setError(messageObject, Constants.ERROR_411, exceptionMessage, exceptionWriting, null);
             alertController.sendAlerts(((TcpConnector) connector).getChannelId(), Constants.ERROR_411, exceptionMessage, exceptionWriting);
         }
-        if (success && (exceptionWriting == null)) {
+        // pooled connections handle the response before they are released
+        if (success && (exceptionWriting == null) && (pool == null)) {
             manageResponseAck(socket, endpointUri, messageObject);
             if (!connector.isKeepSendSocketOpen()) {
                 monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED, socket);
@@ -210,10 +201,6 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
         }
     }
 
-    protected void createSocket(Socket socket, InetSocketAddress inetAddress) throws IOException {
-        socket.connect(inetAddress, connector.getReconnectMillisecs());
-    }
-
     protected void write(Socket socket, String data) throws Exception {
         byte[] buffer = null;
         // When working with binary data the template has to be base64 encoded
@@ -238,6 +225,20 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
         Exception sendException = null;
         StateAwareSocket socket = null;
         String host = replacer.replaceURLValues(thePayload.getEndpointUri().toString(), thePayload.getMessageObject());
+        SenderConnectionPool pool = connector.getConnectionPool();
+
+        if (pool != null) {
+            try {
+                sendPooled(pool, host, thePayload.getMessageObject());
+                return true;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.warn("Write raised exception: '" + e.getMessage() + "'");
+                messageObjectController.setError(thePayload.getMessageObject(), Constants.ERROR_408, "Socket write exception", e, null);
+                throw e;
+            }
+        }
 
         try {
             if (!connector.isKeepSendSocketOpen()) {
@@ -304,6 +305,25 @@ public class TcpMessageDispatcher extends AbstractMessageDispatcher implements Q
         return result;
     }
 
+    /*
+     * Sends the message on a connection from the pool and handles its
+     * response, before the connection is given back. A connection that failed
+     * is closed.
+     */
+    private void sendPooled(SenderConnectionPool pool, String host, MessageObject messageObject) throws Exception {
+        StateAwareSocket socket = pool.borrow(host);
+
+        try {
+            writeTemplatedData(socket, messageObject);
+            manageResponseAck(socket, host, messageObject);
+        } catch (Exception e) {
+            pool.invalidate(socket);
+            throw e;
+        }
+
+        pool.release(socket);
+    }
+
     private void writeTemplatedData(Socket socket, MessageObject data) throws Exception {
         monitoringController.updateStatus(connector, connectorType, Event.BUSY, socket);
         if (!connector.getTemplate().equals("")) {
@@ -11,11 +11,14 @@ package com.mirth.connect.connectors.tcp;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
@@ -23,6 +26,9 @@ import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import javax.resource.spi.work.Work;
@@ -76,6 +82,7 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
     private TemplateValueReplacer replacer = new TemplateValueReplacer();
     private TcpWorker work;
     private ConnectorType connectorType = ConnectorType.LISTENER;
+    private NioSocketListener nioListener = null;
 
     public TcpMessageReceiver(UMOConnector connector, UMOComponent component, UMOEndpoint endpoint) throws InitialisationException {
         super(connector, component, endpoint);
@@ -86,6 +93,18 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
     public void doConnect() throws ConnectException {
         disposing.set(false);
         URI uri = endpoint.getEndpointURI().getUri();
+
+        if (connector.isUseNio()) {
+            try {
+                startNioListener(uri);
+                monitoringController.updateStatus(connector, connectorType, Event.INITIALIZED);
+            } catch (Exception e) {
+                throw new org.mule.providers.ConnectException(new Message("tcp", 1, uri), e, this);
+            }
+
+            return;
+        }
+
         try {
             serverSocket = createSocket(uri);
             monitoringController.updateStatus(connector, connectorType, Event.INITIALIZED);
@@ -107,6 +126,11 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
         // this will cause the server thread to quit
         disposing.set(true);
         try {
+            if (nioListener != null) {
+                nioListener.stop();
+                nioListener = null;
+            }
+
             if (serverSocket != null) {
                 serverSocket.close();
             }
@@ -131,6 +155,33 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
         }
     }
 
+    /*
+     * Starts the NIO listener on the same address that createSocket would bind
+     * to. A message ends when nothing is received for the receive timeout or
+     * the client closes the connection, like with DefaultProtocol.
+     */
+    protected void startNioListener(URI uri) throws IOException {
+        String host = uri.getHost();
+        if (host == null || host.length() == 0) {
+            host = "localhost";
+        }
+        InetAddress inetAddress = InetAddress.getByName(host);
+        InetSocketAddress address = null;
+        if (inetAddress.equals(InetAddress.getLocalHost()) || inetAddress.isLoopbackAddress() || host.trim().equals("localhost")) {
+            address = new InetSocketAddress(uri.getPort());
+        } else {
+            address = new InetSocketAddress(inetAddress, uri.getPort());
+        }
+
+        nioListener = new NioSocketListener(connector.getName(), new NioSocketListener.HandlerFactory() {
+            public NioFrameHandler createHandler(Socket socket) throws Exception {
+                monitoringController.updateStatus(connector, connectorType, Event.CONNECTED, socket);
+                return new NioTcpWorker(socket);
+            }
+        }, connector.getSelectorThreads(), connector.getWorkerThreads(), connector.getBufferSize(), connector.getReceiveTimeout(), !connector.isKeepSendSocketOpen());
+        nioListener.start(address, connector.getBacklog());
+    }
+
     /**
      * Obtain the serverSocket
      */
@@ -178,6 +229,10 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
     public void doDispose() {
         try {
             monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED);
+            if (nioListener != null) {
+                nioListener.stop();
+                nioListener = null;
+            }
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
@@ -328,7 +383,7 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
 
             UMOMessageAdapter adapter = connector.getMessageAdapter(str_data);
             adapter.setProperty("receiverSocket", socket);
-            os = new ResponseOutputStream(socket.getOutputStream(), socket);
+            os = new ResponseOutputStream(getResponseOutputStream(), socket);
             try {
                 returnMessage = routeMessage(new MuleMessage(adapter), endpoint.isSynchronous(), os);
                 // We need to check the message status
@@ -379,6 +434,13 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
             }
         }
 
+        /*
+         * Returns the stream that responses on this connection are written to.
+         */
+        protected OutputStream getResponseOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
         protected Socket initSocket(String endpoint) throws IOException, URISyntaxException {
             URI uri = new URI(endpoint);
             int port = uri.getPort();
@@ -395,4 +457,70 @@ public class TcpMessageReceiver extends AbstractMessageReceiver implements Work
             return new Socket(inetAddress, port);
         }
     }
+
+    /*
+     * A connection of the NIO listener. Responses are buffered and sent by the
+     * listener once the message has been processed. Closing the response
+     * stream closes the connection after the response is sent.
+     */
+    protected class NioTcpWorker extends TcpWorker implements NioFrameHandler {
+        private ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        private OutputStream responseStream = null;
+        private boolean responseClosed = false;
+
+        public NioTcpWorker(Socket socket) {
+            super(socket);
+        }
+
+        public List<byte[]> decode(ByteBuffer data) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            frame.write(bytes, 0, bytes.length);
+            return Collections.emptyList();
+        }
+
+        public byte[] flush() {
+            if (frame.size() == 0) {
+                return null;
+            }
+
+            byte[] data = frame.toByteArray();
+            frame.reset();
+            return data;
+        }
+
+        public boolean processFrame(byte[] data, OutputStream out) throws Exception {
+            responseStream = new FilterOutputStream(out) {
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                public void close() throws IOException {
+                    flush();
+                    responseClosed = true;
+                }
+            };
+
+            try {
+                monitoringController.updateStatus(connector, connectorType, Event.BUSY, socket);
+                processData(data);
+            } catch (Exception e) {
+                handleException(e);
+            } finally {
+                responseStream = null;
+                monitoringController.updateStatus(connector, connectorType, Event.DONE, socket);
+            }
+
+            return !responseClosed && !disposing.get();
+        }
+
+        protected OutputStream getResponseOutputStream() throws IOException {
+            return responseStream;
+        }
+
+        public void closed() {
+            monitoringController.updateStatus(connector, connectorType, Event.DISCONNECTED, socket);
+            dispose();
+        }
+    }
 }
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp.tests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.tcp.NioFrameHandler;
+import com.mirth.connect.connectors.tcp.NioSocketListener;
+
+public class NioSocketListenerTest {
+    private static final String NAME = "test";
+    private static final String QUIT = "quit";
+
+    private NioSocketListener listener;
+    private int port;
+
+    // the frames that were processed, the number of frames completed by each
+    // read, and the names of the threads that processed them
+    private List<String> frames = Collections.synchronizedList(new ArrayList<String>());
+    private List<Integer> framesPerRead = Collections.synchronizedList(new ArrayList<Integer>());
+    private List<String> workerNames = Collections.synchronizedList(new ArrayList<String>());
+
+    // the most frames that were processed at the same time
+    private AtomicInteger processing = new AtomicInteger();
+    private AtomicInteger maxProcessing = new AtomicInteger();
+
+    // the handlers that were told their connection was closed
+    private Semaphore closed = new Semaphore(0);
+
+    // when set, each frame waits here until the other workers got a frame too
+    private CyclicBarrier barrier = null;
+    private long processingTime = 0;
+
+    @After
+    public void tearDown() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        // the selector reads at most 4 bytes at a time
+        start(1, 4, 0);
+        Socket socket = connect();
+
+        send(socket, "hello\nworld\n");
+        BufferedReader reader = reader(socket);
+        Assert.assertEquals("ACK hello", reader.readLine());
+        Assert.assertEquals("ACK world", reader.readLine());
+
+        Assert.assertEquals(Arrays.asList(new String[] { "hello", "world" }), frames);
+        Assert.assertTrue(framesPerRead.size() >= 3);
+        socket.close();
+    }
+
+    @Test
+    public void testSeveralFramesInOneRead() throws Exception {
+        processingTime = 20;
+        start(4, 1024, 0);
+        Socket socket = connect();
+
+        send(socket, "a\nb\nc\n");
+        BufferedReader reader = reader(socket);
+        Assert.assertEquals("ACK a", reader.readLine());
+        Assert.assertEquals("ACK b", reader.readLine());
+        Assert.assertEquals("ACK c", reader.readLine());
+
+        // the frames of one read are processed one at a time and in order
+        Assert.assertEquals(Arrays.asList(new String[] { "a", "b", "c" }), frames);
+        Assert.assertTrue(framesPerRead.contains(3));
+        Assert.assertEquals(1, maxProcessing.get());
+        socket.close();
+    }
+
+    @Test
+    public void testConnectionsProcessedInParallel() throws Exception {
+        // each frame waits until the other connection's frame is processed
+        barrier = new CyclicBarrier(2);
+        start(2, 1024, 0);
+        Socket socket1 = connect();
+        Socket socket2 = connect();
+
+        send(socket1, "1\n");
+        send(socket2, "2\n");
+        Assert.assertEquals("ACK 1", reader(socket1).readLine());
+        Assert.assertEquals("ACK 2", reader(socket2).readLine());
+
+        Assert.assertEquals(2, maxProcessing.get());
+        Assert.assertEquals(2, workerNames.size());
+        Assert.assertFalse(workerNames.get(0).equals(workerNames.get(1)));
+
+        for (String workerName : workerNames) {
+            Assert.assertTrue(workerName.startsWith(NAME + "_worker_"));
+        }
+
+        socket1.close();
+        socket2.close();
+    }
+
+    @Test
+    public void testIdleFrameFlushed() throws Exception {
+        start(1, 1024, 100);
+        Socket socket = connect();
+
+        // the frame is never ended, so it is flushed once the client is idle
+        send(socket, "partial");
+        Assert.assertEquals("ACK partial", reader(socket).readLine());
+        socket.close();
+    }
+
+    @Test
+    public void testCloseAfterResponse() throws Exception {
+        start(1, 1024, 0);
+        Socket socket = connect();
+
+        // the frames after the one that closes the connection are dropped
+        send(socket, QUIT + "\nignored\n");
+        BufferedReader reader = reader(socket);
+        Assert.assertEquals("ACK " + QUIT, reader.readLine());
+        assertClosed(reader);
+
+        Assert.assertTrue(closed.tryAcquire(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(new String[] { QUIT }), frames);
+        socket.close();
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        start(1, 1024, 0);
+        Socket socket = connect();
+
+        send(socket, "a\n");
+        BufferedReader reader = reader(socket);
+        Assert.assertEquals("ACK a", reader.readLine());
+
+        listener.stop();
+        listener = null;
+
+        // open connections are closed and no new ones are accepted
+        assertClosed(reader);
+        Assert.assertTrue(closed.tryAcquire(10, TimeUnit.SECONDS));
+
+        try {
+            connect();
+            Assert.fail("connected to a stopped listener");
+        } catch (ConnectException e) {
+        }
+
+        socket.close();
+    }
+
+    private void start(int workerThreads, int bufferSize, int idleTimeout) throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        port = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        listener = new NioSocketListener(NAME, new NioSocketListener.HandlerFactory() {
+            public NioFrameHandler createHandler(Socket socket) throws Exception {
+                return new LineHandler();
+            }
+        }, 1, workerThreads, bufferSize, idleTimeout, false);
+
+        listener.start(new InetSocketAddress("localhost", port), 10);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private void send(Socket socket, String data) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(data.getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    private BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+    }
+
+    private void assertClosed(BufferedReader reader) throws IOException {
+        try {
+            Assert.assertNull(reader.readLine());
+        } catch (SocketException e) {
+            // the connection was reset
+        }
+    }
+
+    /*
+     * Frames are lines. Each frame is answered with ACK and the frame, and the
+     * quit frame closes the connection after its answer.
+     */
+    private class LineHandler implements NioFrameHandler {
+        private ByteArrayOutputStream frame = new ByteArrayOutputStream();
+
+        public List<byte[]> decode(ByteBuffer data) {
+            List<byte[]> completed = new ArrayList<byte[]>();
+
+            while (data.hasRemaining()) {
+                byte b = data.get();
+
+                if (b == '\n') {
+                    completed.add(frame.toByteArray());
+                    frame.reset();
+                } else {
+                    frame.write(b);
+                }
+            }
+
+            framesPerRead.add(completed.size());
+            return completed;
+        }
+
+        public byte[] flush() {
+            if (frame.size() == 0) {
+                return null;
+            }
+
+            byte[] bytes = frame.toByteArray();
+            frame.reset();
+            return bytes;
+        }
+
+        public boolean processFrame(byte[] data, OutputStream out) throws Exception {
+            int count = processing.incrementAndGet();
+
+            try {
+                synchronized (maxProcessing) {
+                    maxProcessing.set(Math.max(maxProcessing.get(), count));
+                }
+
+                String text = new String(data, "US-ASCII");
+                frames.add(text);
+                workerNames.add(Thread.currentThread().getName());
+
+                if (barrier != null) {
+                    barrier.await(10, TimeUnit.SECONDS);
+                }
+
+                Thread.sleep(processingTime);
+                out.write(("ACK " + text + "\n").getBytes("US-ASCII"));
+                return !text.equals(QUIT);
+            } finally {
+                processing.decrementAndGet();
+            }
+        }
+
+        public void closed() {
+            closed.release();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.tcp.SenderConnectionPool;
+import com.mirth.connect.connectors.tcp.StateAwareSocket;
+
+public class SenderConnectionPoolTest {
+    private static final String ENDPOINT = "tcp://localhost:6661";
+
+    // the connections that were opened and closed by the pool
+    private List<StateAwareSocket> created = Collections.synchronizedList(new ArrayList<StateAwareSocket>());
+    private List<StateAwareSocket> closed = Collections.synchronizedList(new ArrayList<StateAwareSocket>());
+
+    // the number of connections that fail to open before one succeeds
+    private int failures = 0;
+
+    private SenderConnectionPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception {
+        pool = createPool(1, 1, 0);
+
+        StateAwareSocket socket = pool.borrow(ENDPOINT);
+        pool.release(socket);
+
+        Assert.assertSame(socket, pool.borrow(ENDPOINT));
+        Assert.assertEquals(1, created.size());
+        Assert.assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void testEndpointsPooledSeparately() throws Exception {
+        pool = createPool(1, 1, 0);
+
+        StateAwareSocket socket1 = pool.borrow(ENDPOINT);
+        StateAwareSocket socket2 = pool.borrow("tcp://localhost:6662");
+
+        Assert.assertNotSame(socket1, socket2);
+        Assert.assertEquals(2, created.size());
+    }
+
+    @Test
+    public void testBorrowWaitsWhenFull() throws Exception {
+        pool = createPool(2, 1, 0);
+
+        StateAwareSocket socket1 = pool.borrow(ENDPOINT);
+        StateAwareSocket socket2 = pool.borrow(ENDPOINT);
+        Assert.assertNotSame(socket1, socket2);
+
+        // the third sender gets the connection that is released first
+        BorrowThread thread = new BorrowThread();
+        thread.start();
+        assertBlocked(thread);
+
+        pool.release(socket2);
+        thread.join(10000);
+        Assert.assertSame(socket2, thread.socket);
+        Assert.assertEquals(2, created.size());
+    }
+
+    @Test
+    public void testSharedConnections() throws Exception {
+        pool = createPool(2, 2, 0);
+
+        // a connection is only shared once the pool is full
+        StateAwareSocket socket1 = pool.borrow(ENDPOINT);
+        StateAwareSocket socket2 = pool.borrow(ENDPOINT);
+        Assert.assertNotSame(socket1, socket2);
+
+        StateAwareSocket socket3 = pool.borrow(ENDPOINT);
+        StateAwareSocket socket4 = pool.borrow(ENDPOINT);
+        Assert.assertNotSame(socket3, socket4);
+        Assert.assertTrue(socket3 == socket1 || socket3 == socket2);
+        Assert.assertTrue(socket4 == socket1 || socket4 == socket2);
+
+        BorrowThread thread = new BorrowThread();
+        thread.start();
+        assertBlocked(thread);
+
+        pool.release(socket1);
+        thread.join(10000);
+        Assert.assertSame(socket1, thread.socket);
+        Assert.assertEquals(2, created.size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        pool = createPool(1, 1, 0);
+
+        StateAwareSocket socket = pool.borrow(ENDPOINT);
+        pool.invalidate(socket);
+
+        Assert.assertTrue(socket.isClosed());
+        Assert.assertTrue(closed.contains(socket));
+
+        // the failed connection is replaced by a new one
+        StateAwareSocket newSocket = pool.borrow(ENDPOINT);
+        Assert.assertNotSame(socket, newSocket);
+        Assert.assertEquals(2, created.size());
+    }
+
+    @Test
+    public void testClosedWhileInUse() throws Exception {
+        pool = createPool(1, 1, 0);
+
+        StateAwareSocket socket = pool.borrow(ENDPOINT);
+        socket.close();
+        pool.release(socket);
+
+        Assert.assertTrue(closed.contains(socket));
+        Assert.assertNotSame(socket, pool.borrow(ENDPOINT));
+    }
+
+    @Test
+    public void testBrokenConnectionReplaced() throws Exception {
+        pool = createPool(1, 1, 0);
+
+        StateAwareSocket socket = pool.borrow(ENDPOINT);
+        pool.release(socket);
+        socket.close();
+
+        // the closed connection is dropped instead of being lent out
+        StateAwareSocket newSocket = pool.borrow(ENDPOINT);
+        Assert.assertNotSame(socket, newSocket);
+        Assert.assertFalse(newSocket.isClosed());
+        Assert.assertTrue(closed.contains(socket));
+    }
+
+    @Test
+    public void testFailedConnection() throws Exception {
+        pool = createPool(1, 1, 0);
+        failures = 1;
+
+        try {
+            pool.borrow(ENDPOINT);
+            Assert.fail("borrowed a connection that could not be opened");
+        } catch (IOException e) {
+        }
+
+        // the place of the failed connection is free again
+        StateAwareSocket socket = pool.borrow(ENDPOINT);
+        Assert.assertNotNull(socket);
+        Assert.assertEquals(1, created.size());
+    }
+
+    @Test
+    public void testIdleConnectionsClosed() throws Exception {
+        pool = createPool(1, 1, 1000);
+
+        StateAwareSocket socket = pool.borrow(ENDPOINT);
+        pool.release(socket);
+
+        for (int i = 0; i < 100 && !socket.isClosed(); i++) {
+            Thread.sleep(50);
+        }
+
+        Assert.assertTrue(socket.isClosed());
+        Assert.assertTrue(closed.contains(socket));
+        Assert.assertNotSame(socket, pool.borrow(ENDPOINT));
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        pool = createPool(3, 1, 0);
+        pool.warmUp(ENDPOINT);
+        Assert.assertEquals(3, created.size());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(created.contains(pool.borrow(ENDPOINT)));
+        }
+
+        Assert.assertEquals(3, created.size());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        pool = createPool(2, 1, 0);
+
+        StateAwareSocket socket1 = pool.borrow(ENDPOINT);
+        StateAwareSocket socket2 = pool.borrow(ENDPOINT);
+        pool.release(socket1);
+
+        // unused connections are closed right away, and the others when they
+        // are released
+        pool.close();
+        Assert.assertTrue(socket1.isClosed());
+        Assert.assertFalse(socket2.isClosed());
+
+        pool.release(socket2);
+        Assert.assertTrue(socket2.isClosed());
+        Assert.assertEquals(2, closed.size());
+
+        try {
+            pool.borrow(ENDPOINT);
+            Assert.fail("borrowed a connection from a closed pool");
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testCloseWhileWaiting() throws Exception {
+        pool = createPool(1, 1, 0);
+        pool.borrow(ENDPOINT);
+
+        BorrowThread thread = new BorrowThread();
+        thread.start();
+        assertBlocked(thread);
+
+        pool.close();
+        thread.join(10000);
+        Assert.assertNull(thread.socket);
+        Assert.assertTrue(thread.exception instanceof IOException);
+    }
+
+    private SenderConnectionPool createPool(int maxConnections, int maxRequestsPerConnection, int idleTimeout) {
+        return new SenderConnectionPool("test", new SenderConnectionPool.ConnectionFactory() {
+            public StateAwareSocket createConnection(String endpoint) throws Exception {
+                if (failures > 0) {
+                    failures--;
+                    throw new IOException("Connection refused");
+                }
+
+                StateAwareSocket socket = new TestSocket();
+                created.add(socket);
+                return socket;
+            }
+
+            public void connectionClosed(StateAwareSocket socket) {
+                closed.add(socket);
+            }
+        }, maxConnections, maxRequestsPerConnection, idleTimeout);
+    }
+
+    private void assertBlocked(Thread thread) throws InterruptedException {
+        thread.join(200);
+        Assert.assertTrue(thread.isAlive());
+    }
+
+    /*
+     * A socket that is never connected. The remote side is open until the
+     * socket is closed.
+     */
+    private class TestSocket extends StateAwareSocket {
+        public boolean remoteSideHasClosed() {
+            return isClosed();
+        }
+    }
+
+    private class BorrowThread extends Thread {
+        private volatile StateAwareSocket socket;
+        private volatile Exception exception;
+
+        @Override
+        public void run() {
+            try {
+                socket = pool.borrow(ENDPOINT);
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+    }
+}
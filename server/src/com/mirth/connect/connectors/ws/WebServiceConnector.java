@@ -11,10 +11,13 @@ package com.mirth.connect.connectors.ws;
 
 import java.util.List;
 
+import org.apache.commons.httpclient.HttpClient;
 import org.mule.providers.QueueEnabledConnector;
+import org.mule.providers.QueueEnabledMessageDispatcher;
 import org.mule.umo.lifecycle.InitialisationException;
 
 import com.mirth.connect.server.Constants;
+import com.mirth.connect.server.util.HttpConnectionPool;
 
 public class WebServiceConnector extends QueueEnabledConnector {
     private String channelId;
@@ -24,6 +27,9 @@ public class WebServiceConnector extends QueueEnabledConnector {
     private String receiverResponseValue;
     private List<String> receiverUsernames;
     private List<String> receiverPasswords;
+    private int receiverThreads = 10;
+    private int receiverBacklog = 50;
+    private int receiverQueueSize = 100;
 
     private String dispatcherReplyChannelId;
     private String dispatcherWsdlUrl;
@@ -39,6 +45,8 @@ public class WebServiceConnector extends QueueEnabledConnector {
     private List<String> dispatcherAttachmentContents;
     private List<String> dispatcherAttachmentTypes;
     private String dispatcherSoapAction;
+    private HttpConnectionPool wsdlConnectionPool = null;
+    private WebServiceDispatchPool dispatchPool = new WebServiceDispatchPool(this);
 
     @Override
     public void doInitialise() throws InitialisationException {
@@ -50,6 +58,11 @@ public class WebServiceConnector extends QueueEnabledConnector {
         }
     }
 
+    @Override
+    protected QueueEnabledMessageDispatcher createQueueDispatcher() {
+        return new WebServiceMessageDispatcher(this);
+    }
+
     public String getChannelId() {
         return channelId;
     }
@@ -98,6 +111,30 @@ public class WebServiceConnector extends QueueEnabledConnector {
         this.receiverPasswords = receiverPasswords;
     }
 
+    public int getReceiverThreads() {
+        return receiverThreads;
+    }
+
+    public void setReceiverThreads(int receiverThreads) {
+        this.receiverThreads = receiverThreads;
+    }
+
+    public int getReceiverBacklog() {
+        return receiverBacklog;
+    }
+
+    public void setReceiverBacklog(int receiverBacklog) {
+        this.receiverBacklog = receiverBacklog;
+    }
+
+    public int getReceiverQueueSize() {
+        return receiverQueueSize;
+    }
+
+    public void setReceiverQueueSize(int receiverQueueSize) {
+        this.receiverQueueSize = receiverQueueSize;
+    }
+
     public String getDispatcherReplyChannelId() {
         return dispatcherReplyChannelId;
     }
@@ -210,6 +247,38 @@ public class WebServiceConnector extends QueueEnabledConnector {
         this.dispatcherSoapAction = dispatcherSoapAction;
     }
 
+    /**
+     * Returns the client used to download the WSDL. It is shared by the queue
+     * threads, so credentials should be passed with the state of the request.
+     * 
+     * @return
+     */
+    public synchronized HttpClient getWsdlHttpClient() {
+        if (wsdlConnectionPool == null) {
+            // the WSDL is only downloaded when a dispatcher creates its service
+            wsdlConnectionPool = new HttpConnectionPool(getName(), 2, 10, 60000);
+        }
+
+        return wsdlConnectionPool.getClient();
+    }
+
+    public WebServiceDispatchPool getDispatchPool() {
+        return dispatchPool;
+    }
+
+    @Override
+    public void doDisconnect() throws Exception {
+        super.doDisconnect();
+        dispatchPool.clear();
+
+        synchronized (this) {
+            if (wsdlConnectionPool != null) {
+                wsdlConnectionPool.shutdown();
+                wsdlConnectionPool = null;
+            }
+        }
+    }
+
     public String getProtocol() {
         return "WS";
     }
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.ws;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the Dispatch objects of a web service sender, so that its queue
+ * threads share them instead of each one creating its own service from the
+ * WSDL. The dispatches are kept for each WSDL, service, port and credentials,
+ * so a change in a replaced value creates a new one without discarding the
+ * others.
+ *
+ * A dispatch is used by one message at a time, since its request context
+ * holds the values of the message. It is returned to the pool when the
+ * message has been sent.
+ */
+public class WebServiceDispatchPool {
+    private static final int MAX_SERVICES = 50;
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private WebServiceConnector connector;
+
+    // the least recently used service is dropped if the values change often
+    private Map<List<String>, ServicePool> servicePools = new LinkedHashMap<List<String>, ServicePool>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, ServicePool> eldest) {
+            if (size() > MAX_SERVICES) {
+                eldest.getValue().closed = true;
+                eldest.getValue().idle.clear();
+                return true;
+            }
+
+            return false;
+        }
+    };
+    private Map<Dispatch<SOAPMessage>, ServicePool> borrowed = new IdentityHashMap<Dispatch<SOAPMessage>, ServicePool>();
+
+    private class ServicePool {
+        private Service service = null;
+        private LinkedList<Dispatch<SOAPMessage>> idle = new LinkedList<Dispatch<SOAPMessage>>();
+        private boolean closed = false;
+    }
+
+    public WebServiceDispatchPool(WebServiceConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * Returns an unused dispatch for the service, creating the service and
+     * the dispatch if needed. The dispatch must be passed to release or
+     * invalidate when the message has been sent.
+     *
+     * @param wsdlUrl
+     * @param username
+     * @param password
+     * @param serviceName
+     * @param portName
+     * @return
+     * @throws Exception
+     */
+    public Dispatch<SOAPMessage> getDispatch(String wsdlUrl, String username, String password, String serviceName, String portName) throws Exception {
+        List<String> key = Arrays.asList(new String[] { wsdlUrl, username, password, serviceName, portName });
+        ServicePool servicePool = null;
+
+        synchronized (this) {
+            servicePool = servicePools.get(key);
+
+            if (servicePool == null) {
+                servicePool = new ServicePool();
+                servicePools.put(key, servicePool);
+            }
+
+            if (!servicePool.idle.isEmpty()) {
+                Dispatch<SOAPMessage> dispatch = servicePool.idle.removeFirst();
+                borrowed.put(dispatch, servicePool);
+                return dispatch;
+            }
+        }
+
+        Dispatch<SOAPMessage> dispatch = null;
+
+        // only one thread downloads the WSDL of a service
+        synchronized (servicePool) {
+            if (servicePool.service == null) {
+                URL endpointUrl = getWsdlUrl(wsdlUrl, username, password);
+                QName serviceQName = QName.valueOf(serviceName);
+
+                logger.debug("Creating web service: url=" + endpointUrl.toString() + ", service=" + serviceQName);
+                servicePool.service = Service.create(endpointUrl, serviceQName);
+            }
+
+            logger.debug("Creating dispatch: port=" + portName);
+            dispatch = servicePool.service.createDispatch(QName.valueOf(portName), SOAPMessage.class, Service.Mode.MESSAGE);
+        }
+
+        synchronized (this) {
+            borrowed.put(dispatch, servicePool);
+        }
+
+        return dispatch;
+    }
+
+    /**
+     * Returns the dispatch to the pool.
+     *
+     * @param dispatch
+     */
+    public synchronized void release(Dispatch<SOAPMessage> dispatch) {
+        ServicePool servicePool = borrowed.remove(dispatch);
+
+        if ((servicePool != null) && !servicePool.closed) {
+            servicePool.idle.addFirst(dispatch);
+        }
+    }
+
+    /**
+     * Discards a dispatch that failed, so that it is not used again.
+     *
+     * @param dispatch
+     */
+    public synchronized void invalidate(Dispatch<SOAPMessage> dispatch) {
+        borrowed.remove(dispatch);
+    }
+
+    /**
+     * Discards all services and dispatches. The dispatches that are in use
+     * are discarded when they are released.
+     */
+    public synchronized void clear() {
+        for (ServicePool servicePool : new ArrayList<ServicePool>(servicePools.values())) {
+            servicePool.closed = true;
+            servicePool.idle.clear();
+        }
+
+        servicePools.clear();
+    }
+
+    /**
+     * Returns the URL for the passed in String. If the URL requires
+     * authentication, then the WSDL is saved as a temp file and the URL for
+     * that file is returned.
+     *
+     * @param wsdlUrl
+     * @param username
+     * @param password
+     * @return
+     * @throws Exception
+     */
+    private URL getWsdlUrl(String wsdlUrl, String username, String password) throws Exception {
+        URI uri = new URI(wsdlUrl);
+
+        // If the URL points to file, just return it
+        if (!uri.getScheme().equalsIgnoreCase("file")) {
+            HttpClient client = connector.getWsdlHttpClient();
+            HttpMethod method = new GetMethod(wsdlUrl);
+            int status;
+
+            // release the connections so they are returned to the pool
+            try {
+                status = client.executeMethod(method);
+            } finally {
+                method.releaseConnection();
+            }
+
+            if ((status == HttpStatus.SC_UNAUTHORIZED) && (username != null) && (password != null)) {
+                HttpState state = new HttpState();
+                state.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+                method = new GetMethod(wsdlUrl);
+
+                try {
+                    status = client.executeMethod(null, method, state);
+
+                    if (status == HttpStatus.SC_OK) {
+                        String wsdl = method.getResponseBodyAsString();
+                        File tempFile = File.createTempFile("WebServiceSender", ".wsdl");
+                        tempFile.deleteOnExit();
+
+                        FileUtils.writeStringToFile(tempFile, wsdl);
+
+                        return tempFile.toURI().toURL();
+                    }
+                } finally {
+                    method.releaseConnection();
+                }
+            }
+        }
+
+        return uri.toURL();
+    }
+}
@@ -25,6 +25,9 @@ public class WebServiceListenerProperties implements ComponentProperties {
     public static final String WEBSERVICE_RESPONSE_VALUE = "receiverResponseValue";
     public static final String WEBSERVICE_USERNAMES = "receiverUsernames";
     public static final String WEBSERVICE_PASSWORDS = "receiverPasswords";
+    public static final String WEBSERVICE_THREADS = "receiverThreads";
+    public static final String WEBSERVICE_BACKLOG = "receiverBacklog";
+    public static final String WEBSERVICE_QUEUE_SIZE = "receiverQueueSize";
 
     public Properties getDefaults() {
         Properties properties = new Properties();
@@ -37,6 +40,9 @@ public class WebServiceListenerProperties implements ComponentProperties {
         ObjectXMLSerializer serializer = new ObjectXMLSerializer();
         properties.put(WEBSERVICE_USERNAMES, serializer.toXML(new ArrayList<String>()));
         properties.put(WEBSERVICE_PASSWORDS, serializer.toXML(new ArrayList<String>()));
+        properties.put(WEBSERVICE_THREADS, "10");
+        properties.put(WEBSERVICE_BACKLOG, "50");
+        properties.put(WEBSERVICE_QUEUE_SIZE, "100");
         return properties;
     }
 }
@@ -10,16 +10,12 @@
 package com.mirth.connect.connectors.ws;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.ConnectException;
-import java.net.URI;
-import java.net.URL;
 import java.util.List;
 
-import javax.xml.namespace.QName;
 import javax.xml.soap.AttachmentPart;
 import javax.xml.soap.SOAPMessage;
 import javax.xml.transform.OutputKeys;
@@ -32,16 +28,8 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.ws.BindingProvider;
 import javax.xml.ws.Dispatch;
-import javax.xml.ws.Service;
 import javax.xml.ws.soap.SOAPBinding;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.mule.providers.AbstractMessageDispatcher;
@@ -74,17 +62,6 @@ public class WebServiceMessageDispatcher extends AbstractMessageDispatcher imple
     private TemplateValueReplacer replacer = new TemplateValueReplacer();
     private ConnectorType connectorType = ConnectorType.WRITER;
 
-    /*
-     * Dispatch object used for pooling the soap connection, and the current
-     * properties used to create the dispatch object
-     */
-    private Dispatch<SOAPMessage> dispatch = null;
-    private String currentWsdlUrl = null;
-    private String currentUsername = null;
-    private String currentPassword = null;
-    private String currentServiceName = null;
-    private String currentPortName = null;
-
     public WebServiceMessageDispatcher(WebServiceConnector connector) {
         super(connector);
         this.connector = connector;
@@ -115,26 +92,51 @@ public class WebServiceMessageDispatcher extends AbstractMessageDispatcher imple
     }
 
     private void processMessage(MessageObject mo) throws Exception {
+        String wsdlUrl = replacer.replaceValues(connector.getDispatcherWsdlUrl(), mo);
+        String username = replacer.replaceValues(connector.getDispatcherUsername(), mo);
+        String password = replacer.replaceValues(connector.getDispatcherPassword(), mo);
+        String serviceName = replacer.replaceValues(connector.getDispatcherService(), mo);
+        String portName = replacer.replaceValues(connector.getDispatcherPort(), mo);
+
         /*
-         * Initialize the dispatch object if it hasn't been initialized yet, or
-         * create a new one if the connector properties have changed due to
-         * variables.
+         * The dispatch objects are shared by the queue threads of the
+         * connector and created again if the properties have changed due to
+         * variables. The dispatch is only used by this message until it is
+         * released.
          */
-        createDispatch(mo);
+        WebServiceDispatchPool dispatchPool = connector.getDispatchPool();
+        Dispatch<SOAPMessage> dispatch = dispatchPool.getDispatch(wsdlUrl, username, password, serviceName, portName);
+        boolean sent = false;
+
+        try {
+            sendMessage(mo, dispatch, username, password);
+            sent = true;
+        } finally {
+            if (sent) {
+                dispatchPool.release(dispatch);
+            } else {
+                dispatchPool.invalidate(dispatch);
+            }
+        }
+    }
 
+    private void sendMessage(MessageObject mo, Dispatch<SOAPMessage> dispatch, String username, String password) throws Exception {
         SOAPBinding soapBinding = (SOAPBinding) dispatch.getBinding();
 
         if (connector.isDispatcherUseAuthentication()) {
-            dispatch.getRequestContext().put(BindingProvider.USERNAME_PROPERTY, currentUsername);
-            dispatch.getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, currentPassword);
-            logger.debug("Using authentication: username=" + currentUsername + ", password length=" + currentPassword.length());
+            dispatch.getRequestContext().put(BindingProvider.USERNAME_PROPERTY, username);
+            dispatch.getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, password);
+            logger.debug("Using authentication: username=" + username + ", password length=" + password.length());
         }
 
         // See: http://www.w3.org/TR/2000/NOTE-SOAP-20000508/#_Toc478383528
         String soapAction = replacer.replaceValues(connector.getDispatcherSoapAction(), mo);
 
+        // the dispatch may still have the action of a previous message
         if (StringUtils.isNotEmpty(soapAction)) {
             dispatch.getRequestContext().put(BindingProvider.SOAPACTION_URI_PROPERTY, soapAction);
+        } else {
+            dispatch.getRequestContext().remove(BindingProvider.SOAPACTION_URI_PROPERTY);
         }
 
         // build the message
@@ -239,75 +241,4 @@ public class WebServiceMessageDispatcher extends AbstractMessageDispatcher imple
 
         return true;
     }
-
-    private void createDispatch(MessageObject mo) throws Exception {
-        String wsdlUrl = replacer.replaceValues(connector.getDispatcherWsdlUrl(), mo);
-        String username = replacer.replaceValues(connector.getDispatcherUsername(), mo);
-        String password = replacer.replaceValues(connector.getDispatcherPassword(), mo);
-        String serviceName = replacer.replaceValues(connector.getDispatcherService(), mo);
-        String portName = replacer.replaceValues(connector.getDispatcherPort(), mo);
-
-        /*
-         * The dispatch needs to be created if it hasn't been created yet
-         * (null). It needs to be recreated if any of the above variables are
-         * different than what were used to create the current dispatch object.
-         * This could happen if variables are being used for these properties.
-         */
-        if (dispatch == null || !StringUtils.equals(wsdlUrl, currentWsdlUrl) || !StringUtils.equals(username, currentUsername) || !StringUtils.equals(password, currentPassword) || !StringUtils.equals(serviceName, currentServiceName) || !StringUtils.equals(portName, currentPortName)) {
-            currentWsdlUrl = wsdlUrl;
-            currentUsername = username;
-            currentPassword = password;
-            currentServiceName = serviceName;
-            currentPortName = portName;
-
-            URL endpointUrl = getWsdlUrl(wsdlUrl, username, password);
-            QName serviceQName = QName.valueOf(serviceName);
-            QName portQName = QName.valueOf(portName);
-
-            // create the service and dispatch
-            logger.debug("Creating web service: url=" + endpointUrl.toString() + ", service=" + serviceQName + ", port=" + portQName);
-            Service service = Service.create(endpointUrl, serviceQName);
-
-            dispatch = service.createDispatch(portQName, SOAPMessage.class, Service.Mode.MESSAGE);
-        }
-    }
-
-    /**
-     * Returns the URL for the passed in String. If the URL requires
-     * authentication, then the WSDL is saved as a temp file and the URL for
-     * that file is returned.
-     * 
-     * @param wsdlUrl
-     * @param username
-     * @param password
-     * @return
-     * @throws Exception
-     */
-    private URL getWsdlUrl(String wsdlUrl, String username, String password) throws Exception {
-        URI uri = new URI(wsdlUrl);
-
-        // If the URL points to file, just return it
-        if (!uri.getScheme().equalsIgnoreCase("file")) {
-            HttpClient client = new HttpClient();
-            HttpMethod method = new GetMethod(wsdlUrl);
-
-            int status = client.executeMethod(method);
-            if ((status == HttpStatus.SC_UNAUTHORIZED) && (username != null) && (password != null)) {
-                client.getState().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
-                status = client.executeMethod(method);
-
-                if (status == HttpStatus.SC_OK) {
-                    String wsdl = method.getResponseBodyAsString();
-                    File tempFile = File.createTempFile("WebServiceSender", ".wsdl");
-                    tempFile.deleteOnExit();
-
-                    FileUtils.writeStringToFile(tempFile, wsdl);
-
-                    return tempFile.toURI().toURL();
-                }
-            }
-        }
-
-        return uri.toURL();
-    }
 }
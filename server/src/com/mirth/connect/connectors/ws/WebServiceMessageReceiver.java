@@ -9,12 +9,18 @@
 
 package com.mirth.connect.connectors.ws;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.InetSocketAddress;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.ws.Binding;
 import javax.xml.ws.Endpoint;
@@ -35,7 +41,9 @@ import org.mule.umo.provider.UMOConnector;
 import org.mule.umo.provider.UMOMessageAdapter;
 
 import com.sun.net.httpserver.BasicAuthenticator;
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import com.mirth.connect.model.MessageObject;
 import com.mirth.connect.model.Response;
@@ -46,15 +54,77 @@ import com.mirth.connect.server.controllers.MonitoringController.Event;
 import com.mirth.connect.server.mule.transformers.JavaScriptPostprocessor;
 
 public class WebServiceMessageReceiver extends AbstractMessageReceiver {
+    private static final int REJECTED_QUEUE_SIZE = 100;
+
     private Logger logger = Logger.getLogger(this.getClass());
     protected WebServiceConnector connector;
     private JavaScriptPostprocessor postProcessor = new JavaScriptPostprocessor();
     private MonitoringController monitoringController = ControllerFactory.getFactory().createMonitoringController();
     private ConnectorType connectorType = ConnectorType.LISTENER;
     private HttpServer server;
-    private ExecutorService threads;
+    private ThreadPoolExecutor threads;
+    private ThreadPoolExecutor rejectedThreads;
     private Endpoint webServiceEndpoint;
 
+    /*
+     * Set while a request that could not be queued runs on the rejection
+     * thread, so that the filter only answers it with a 503.
+     */
+    private ThreadLocal<Boolean> rejecting = new ThreadLocal<Boolean>();
+    private AtomicLong rejected = new AtomicLong();
+
+    /*
+     * Hands the requests that could not be queued to a separate thread, since
+     * the thread of the HTTP server accepts the connections of all requests
+     * and must not write the responses. If the rejected requests are also
+     * queued up, the thread of the HTTP server waits, and the new connections
+     * wait in the backlog or are refused until the rejections catch up.
+     */
+    private class RejectRequestPolicy implements RejectedExecutionHandler {
+        public void rejectedExecution(final Runnable request, ThreadPoolExecutor executor) {
+            if (executor.isShutdown() || rejectedThreads.isShutdown()) {
+                return;
+            }
+
+            Runnable rejection = new Runnable() {
+                public void run() {
+                    rejecting.set(Boolean.TRUE);
+
+                    try {
+                        request.run();
+                    } finally {
+                        rejecting.remove();
+                    }
+                }
+            };
+
+            try {
+                rejectedThreads.getQueue().put(rejection);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class RejectRequestFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (Boolean.TRUE.equals(rejecting.get())) {
+                logger.warn("Web service listener is busy, rejected request " + rejected.incrementAndGet() + " from " + exchange.getRemoteAddress() + ". Channel: " + connector.getChannelId());
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            } else {
+                chain.doFilter(exchange);
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Rejects the requests that could not be queued";
+        }
+    }
+
     public WebServiceMessageReceiver(UMOConnector connector, UMOComponent component, UMOEndpoint endpoint) throws InitialisationException {
         super(connector, component, endpoint);
         this.connector = (WebServiceConnector) connector;
@@ -65,9 +135,30 @@ public class WebServiceMessageReceiver extends AbstractMessageReceiver {
 
         java.util.logging.Logger.getLogger("javax.enterprise.resource.webservices.jaxws.server").setLevel(java.util.logging.Level.OFF);
 
-        server = HttpServer.create(new InetSocketAddress(endpoint.getEndpointURI().getUri().getHost(), endpoint.getEndpointURI().getUri().getPort()), 5);
+        server = HttpServer.create(new InetSocketAddress(endpoint.getEndpointURI().getUri().getHost(), endpoint.getEndpointURI().getUri().getPort()), Math.max(connector.getReceiverBacklog(), 1));
+
+        /*
+         * Requests wait in the queue while all threads are busy. When the
+         * queue is full they are answered with a 503 so that the client can
+         * retry, instead of waiting for a connection without a limit.
+         */
+        int threadCount = Math.max(connector.getReceiverThreads(), 1);
+        BlockingQueue<Runnable> queue = null;
+
+        if (connector.getReceiverQueueSize() > 0) {
+            queue = new ArrayBlockingQueue<Runnable>(connector.getReceiverQueueSize());
+        } else {
+            queue = new SynchronousQueue<Runnable>();
+        }
+
+        threads = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS, queue, new RejectRequestPolicy());
+        threads.allowCoreThreadTimeOut(true);
+
+        // the rejections are put directly on the queue, so its thread is always running
+        rejectedThreads = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(REJECTED_QUEUE_SIZE));
+        rejectedThreads.prestartCoreThread();
+        logger.debug("Web Service HTTP server threads: " + threadCount + ", backlog: " + connector.getReceiverBacklog() + ", queue size: " + connector.getReceiverQueueSize());
 
-        threads = Executors.newFixedThreadPool(5);
         server.setExecutor(threads);
         server.start();
 
@@ -106,6 +197,7 @@ public class WebServiceMessageReceiver extends AbstractMessageReceiver {
         handlerChain.add(new LoggingSOAPHandler(this));
         binding.setHandlerChain(handlerChain);
         HttpContext context = server.createContext("/services/" + connector.getReceiverServiceName());
+        context.getFilters().add(new RejectRequestFilter());
 
         if (connector.getReceiverUsernames().size() > 0) {
             context.setAuthenticator(new BasicAuthenticator("/services/" + connector.getReceiverServiceName()) {
@@ -139,6 +231,7 @@ public class WebServiceMessageReceiver extends AbstractMessageReceiver {
             webServiceEndpoint.stop();
             server.stop(1);
             threads.shutdown();
+            rejectedThreads.shutdown();
         } catch (Exception e) {
             throw new MuleException(new Message(Messages.FAILED_TO_STOP_X, "Web Service Listener"), e.getCause());
         }
@@ -16,6 +16,8 @@ public class QueuedSenderProperties implements ComponentProperties {
     public static final String RECONNECT_INTERVAL = "reconnectMillisecs";
     public static final String ROTATE_QUEUE = "rotateQueue";
     public static final String QUEUE_POLL_INTERVAL = "queuePollInterval";
+    public static final String QUEUE_THREADS = "queueThreads";
+    public static final String QUEUE_PARTITION_KEY = "queuePartitionKey";
 
     public Properties getDefaults() {
         Properties properties = new Properties();
@@ -23,6 +25,8 @@ public class QueuedSenderProperties implements ComponentProperties {
         properties.put(RECONNECT_INTERVAL, "10000");
         properties.put(ROTATE_QUEUE, "0");
         properties.put(QUEUE_POLL_INTERVAL, "200");
+        properties.put(QUEUE_THREADS, "1");
+        properties.put(QUEUE_PARTITION_KEY, "");
         return properties;
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * A handle to a large received file that was copied to a spool file instead
+ * of being read into the message. Scripts get it from the channel map and
+ * read the data only when they need it, preferably as a stream. The spool
+ * file is deleted once the message has been routed, so it can't be read
+ * after that.
+ */
+@XStreamAlias("spooledFile")
+public class SpooledFile implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int BUFFER_SIZE = 65536;
+
+    private String name;
+    private String path;
+    private long size;
+    private String charsetEncoding;
+
+    public SpooledFile() {
+    }
+
+    public SpooledFile(String name, String path, long size, String charsetEncoding) {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+        this.charsetEncoding = charsetEncoding;
+    }
+
+    /**
+     * Returns the name of the received file.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the path of the spool file.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getCharsetEncoding() {
+        return charsetEncoding;
+    }
+
+    public void setCharsetEncoding(String charsetEncoding) {
+        this.charsetEncoding = charsetEncoding;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE);
+    }
+
+    public Reader getReader() throws IOException {
+        return new InputStreamReader(getInputStream(), charsetEncoding);
+    }
+
+    /**
+     * Reads the whole file into memory. Use getInputStream or getReader for
+     * files that are too large for that.
+     */
+    public byte[] getBytes() throws IOException {
+        InputStream is = getInputStream();
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(size, Integer.MAX_VALUE));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read = 0;
+
+            while ((read = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+
+            return bytes.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads the whole file into a string. Use getReader for files that are
+     * too large for that.
+     */
+    public String getContent() throws IOException {
+        return new String(getBytes(), charsetEncoding);
+    }
+
+    public boolean exists() {
+        return new File(path).exists();
+    }
+
+    /**
+     * Deletes the spool file once it is no longer needed.
+     */
+    public boolean delete() {
+        return new File(path).delete();
+    }
+
+    public String toString() {
+        return path;
+    }
+}
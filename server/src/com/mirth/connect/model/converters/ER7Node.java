@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.model.converters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * A node in an ER7-encoded HL7 message tree. The tree has the same shape and
+ * element names as the XML created by ER7Reader (HL7Message, MSH, MSH.3,
+ * MSH.3.1, ...), but each node keeps its original encoded text and is only
+ * split into its children when they are accessed. Nodes that were never
+ * accessed are encoded back to ER7 by copying their original text.
+ */
+public class ER7Node {
+    public static final int MESSAGE = 0;
+    public static final int SEGMENT = 1;
+    public static final int FIELD = 2;
+    public static final int COMPONENT = 3;
+    public static final int SUBCOMPONENT = 4;
+
+    private static final String SEGMENT_SEPARATOR = "\r";
+
+    private Encoding encoding;
+    private ER7Node parent;
+    private String name;
+    private int level;
+
+    // the encoded text of the node until its children are parsed
+    private String encoded;
+    private List<ER7Node> children = null;
+    private String text = null;
+
+    private ER7Node(Encoding encoding, String name, int level, String encoded) {
+        this.encoding = encoding;
+        this.name = name;
+        this.level = level;
+        this.encoded = encoded;
+    }
+
+    /**
+     * Creates the message tree for an ER7-encoded message. Only the segment
+     * boundaries are found here, everything else is parsed on demand.
+     *
+     * @param message
+     *            the ER7-encoded message
+     * @param properties
+     *            the HL7v2 data type properties
+     * @return the root (HL7Message) node
+     */
+    public static ER7Node parse(String message, Map properties) throws SerializerException {
+        boolean handleRepetitions = false;
+        boolean handleSubcomponents = false;
+        boolean convertLFtoCR = true;
+
+        if (properties != null) {
+            if (properties.get("handleRepetitions") != null) {
+                handleRepetitions = Boolean.parseBoolean((String) properties.get("handleRepetitions"));
+            }
+
+            if (properties.get("handleSubcomponents") != null) {
+                handleSubcomponents = Boolean.parseBoolean((String) properties.get("handleSubcomponents"));
+            }
+
+            if (properties.get("convertLFtoCR") != null) {
+                convertLFtoCR = Boolean.parseBoolean((String) properties.get("convertLFtoCR"));
+            }
+        }
+
+        if (message == null) {
+            throw new SerializerException("Unable to parse message. It is NULL or too short. " + message);
+        }
+
+        if (convertLFtoCR) {
+            message = message.replace("\r\n", SEGMENT_SEPARATOR).replace('\n', '\r');
+        }
+
+        message = message.trim();
+
+        if (message.length() < 3) {
+            throw new SerializerException("Unable to parse message. It is NULL or too short. " + message);
+        }
+
+        Encoding encoding = new Encoding(message, handleRepetitions, handleSubcomponents);
+        ER7Node root = new ER7Node(encoding, ER7Reader.MESSAGE_ROOT_ID, MESSAGE, message);
+        root.getChildren();
+        return root;
+    }
+
+    public ER7Node getParent() {
+        return parent;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the child elements of this node, parsing them first if needed.
+     */
+    public List<ER7Node> getChildren() {
+        if (children == null) {
+            children = new ArrayList<ER7Node>();
+
+            switch (level) {
+                case MESSAGE:
+                    parseSegments();
+                    break;
+                case SEGMENT:
+                    parseFields();
+                    break;
+                case FIELD:
+                    parseComponents();
+                    break;
+                case COMPONENT:
+                    parseSubcomponents();
+                    break;
+                default:
+                    text = encoded;
+                    break;
+            }
+
+            encoded = null;
+        }
+
+        return children;
+    }
+
+    public List<ER7Node> getChildren(String childName) {
+        List<ER7Node> matches = new ArrayList<ER7Node>();
+
+        for (ER7Node child : getChildren()) {
+            if (child.name.equals(childName)) {
+                matches.add(child);
+            }
+        }
+
+        return matches;
+    }
+
+    public int getChildIndex() {
+        if (parent == null) {
+            return -1;
+        }
+
+        return parent.getChildren().indexOf(this);
+    }
+
+    /**
+     * Returns true if this node has no child elements, in which case its
+     * string value is its text.
+     */
+    public boolean hasSimpleContent() {
+        return getChildren().isEmpty();
+    }
+
+    public String getText() {
+        getChildren();
+        return (text == null) ? "" : text;
+    }
+
+    /**
+     * Replaces the contents of this node with the given text. Like E4X, the
+     * text is not split into child elements.
+     */
+    public void setText(String text) {
+        this.children = new ArrayList<ER7Node>();
+        this.text = text;
+        this.encoded = null;
+    }
+
+    /**
+     * Replaces the contents of this node with the given ER7-encoded value,
+     * which is parsed into child elements when they are accessed.
+     */
+    public void setEncoded(String encoded) {
+        this.children = null;
+        this.text = null;
+        this.encoded = encoded;
+    }
+
+    /**
+     * Creates a new, empty child with the given name. Fields, components, and
+     * subcomponents are inserted in the order of their numbers, segments are
+     * added at the end of the message.
+     */
+    public ER7Node createChild(String childName) {
+        ER7Node child = new ER7Node(encoding, childName, level + 1, (level + 1 == SEGMENT) ? childName : "");
+        List<ER7Node> siblings = getChildren();
+        int position = siblings.size();
+
+        if (child.level > SEGMENT) {
+            int number = getNumber(childName);
+
+            for (int i = 0; i < siblings.size(); i++) {
+                if (getNumber(siblings.get(i).name) > number) {
+                    position = i;
+                    break;
+                }
+            }
+        }
+
+        addChild(position, child);
+        return child;
+    }
+
+    /**
+     * Creates a detached, empty segment that can be added to a message with
+     * addChild.
+     */
+    public ER7Node createSegment(String segmentName) {
+        return new ER7Node(encoding, segmentName, SEGMENT, segmentName);
+    }
+
+    public void addChild(int position, ER7Node child) {
+        if (child.parent != null) {
+            child.parent.getChildren().remove(child);
+        }
+
+        getChildren().add(Math.min(position, children.size()), child);
+        text = null;
+        child.parent = this;
+    }
+
+    public void removeChild(ER7Node child) {
+        getChildren().remove(child);
+        child.parent = null;
+    }
+
+    /**
+     * Returns a detached copy of this node with the given name.
+     */
+    public ER7Node copy(String copyName) {
+        return new ER7Node(encoding, copyName, level, toER7());
+    }
+
+    /**
+     * Returns the ER7 encoding of this node. Children that were never parsed
+     * are copied from the original message.
+     */
+    public String toER7() {
+        if (encoded != null) {
+            return encoded;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        appendER7(builder);
+        return builder.toString();
+    }
+
+    private void appendER7(StringBuilder builder) {
+        if (encoded != null) {
+            builder.append(encoded);
+        } else if (level == MESSAGE) {
+            for (ER7Node segment : children) {
+                segment.appendER7(builder);
+                builder.append(SEGMENT_SEPARATOR);
+            }
+        } else if (level == SEGMENT) {
+            appendSegment(builder);
+        } else if (children.isEmpty()) {
+            builder.append(getText());
+        } else {
+            char separator = (level == FIELD) ? encoding.componentSeparator : encoding.subcomponentSeparator;
+            int previous = 1;
+
+            for (ER7Node child : children) {
+                int number = getNumber(child.name);
+
+                for (int i = previous; i < number; i++) {
+                    builder.append(separator);
+                }
+
+                child.appendER7(builder);
+                previous = Math.max(previous, number);
+            }
+        }
+    }
+
+    private void appendSegment(StringBuilder builder) {
+        builder.append(name);
+
+        if (children.isEmpty()) {
+            if (getText().length() > 0) {
+                builder.append(encoding.fieldSeparator);
+                builder.append(getText());
+            }
+
+            return;
+        }
+
+        boolean header = isHeaderSegment(name);
+        String previousName = null;
+        int previous = 0;
+
+        for (ER7Node field : children) {
+            int number = getNumber(field.name);
+
+            if (header && (number == 1)) {
+                builder.append(encoding.fieldSeparator);
+            } else if (header && (number == 2)) {
+                field.appendER7(builder);
+            } else {
+                if (field.name.equals(previousName)) {
+                    builder.append(encoding.repetitionSeparator);
+                } else {
+                    for (int i = previous; i < number; i++) {
+                        builder.append(encoding.fieldSeparator);
+                    }
+                }
+
+                field.appendER7(builder);
+            }
+
+            previousName = field.name;
+            previous = Math.max(previous, number);
+        }
+    }
+
+    /**
+     * Returns the XML encoding of this node, in the same form as E4X with
+     * pretty printing turned off.
+     */
+    public String toXML() {
+        StringBuilder builder = new StringBuilder();
+        appendXML(builder);
+        return builder.toString();
+    }
+
+    private void appendXML(StringBuilder builder) {
+        List<ER7Node> elements = getChildren();
+
+        if (elements.isEmpty() && (getText().length() == 0)) {
+            builder.append('<').append(name).append("/>");
+            return;
+        }
+
+        builder.append('<').append(name).append('>');
+
+        if (elements.isEmpty()) {
+            appendEscaped(builder, getText());
+        } else {
+            for (ER7Node element : elements) {
+                element.appendXML(builder);
+            }
+        }
+
+        builder.append("</").append(name).append('>');
+    }
+
+    private void parseSegments() {
+        int start = 0;
+        String message = encoded;
+
+        while (start < message.length()) {
+            int end = message.indexOf(SEGMENT_SEPARATOR, start);
+
+            if (end == -1) {
+                end = message.length();
+            }
+
+            if (end > start) {
+                String segment = message.substring(start, end);
+                int nameEnd = segment.indexOf(encoding.fieldSeparator);
+                String segmentName = ((nameEnd == -1) ? segment : segment.substring(0, nameEnd)).trim();
+                addParsedChild(new ER7Node(encoding, segmentName, SEGMENT, segment));
+            }
+
+            start = end + SEGMENT_SEPARATOR.length();
+        }
+    }
+
+    private void parseFields() {
+        String segment = encoded;
+        int start = segment.indexOf(encoding.fieldSeparator);
+
+        if (start == -1) {
+            return;
+        }
+
+        boolean header = isHeaderSegment(name);
+        List<String> fields = split(segment.substring(start + 1), encoding.fieldSeparator);
+
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+
+            if (header && (i == 0)) {
+                // the field separator is MSH.1, and the encoding characters MSH.2
+                addParsedChild(createLeaf(name + ".1", FIELD, String.valueOf(encoding.fieldSeparator)));
+                addParsedChild(createLeaf(name + ".2", FIELD, encoding.getEncodingCharacters()));
+            } else {
+                int fieldId = header ? i + 2 : i + 1;
+
+                if (field.length() == 0) {
+                    addParsedChild(createLeaf(name + "." + fieldId, FIELD, ""));
+                } else if (encoding.handleRepetitions) {
+                    for (String repetition : split(field, encoding.repetitionSeparator)) {
+                        addParsedChild(new ER7Node(encoding, name + "." + fieldId, FIELD, repetition));
+                    }
+                } else {
+                    addParsedChild(new ER7Node(encoding, name + "." + fieldId, FIELD, field));
+                }
+            }
+        }
+    }
+
+    private void parseComponents() {
+        String field = encoded;
+
+        if (field.length() == 0) {
+            text = "";
+        } else if ((field.indexOf(encoding.componentSeparator) > -1) || (encoding.handleSubcomponents && (field.indexOf(encoding.subcomponentSeparator) > -1))) {
+            List<String> components = split(field, encoding.componentSeparator);
+
+            for (int i = 0; i < components.size(); i++) {
+                addParsedChild(new ER7Node(encoding, name + "." + (i + 1), COMPONENT, components.get(i)));
+            }
+        } else {
+            addParsedChild(createLeaf(name + ".1", COMPONENT, field));
+        }
+    }
+
+    private void parseSubcomponents() {
+        String component = encoded;
+
+        if (encoding.handleSubcomponents && (component.indexOf(encoding.subcomponentSeparator) > -1)) {
+            List<String> subcomponents = split(component, encoding.subcomponentSeparator);
+
+            for (int i = 0; i < subcomponents.size(); i++) {
+                addParsedChild(createLeaf(name + "." + (i + 1), SUBCOMPONENT, subcomponents.get(i)));
+            }
+        } else {
+            text = component;
+        }
+    }
+
+    private ER7Node createLeaf(String leafName, int leafLevel, String leafText) {
+        ER7Node leaf = new ER7Node(encoding, leafName, leafLevel, null);
+        leaf.children = new ArrayList<ER7Node>();
+        leaf.text = leafText;
+        return leaf;
+    }
+
+    private void addParsedChild(ER7Node child) {
+        child.parent = this;
+        children.add(child);
+    }
+
+    private static List<String> split(String value, char separator) {
+        List<String> tokens = new ArrayList<String>();
+        int start = 0;
+        int end;
+
+        while ((end = value.indexOf(separator, start)) != -1) {
+            tokens.add(value.substring(start, end));
+            start = end + 1;
+        }
+
+        tokens.add(value.substring(start));
+        return tokens;
+    }
+
+    private static int getNumber(String elementName) {
+        return NumberUtils.toInt(elementName.substring(elementName.lastIndexOf('.') + 1));
+    }
+
+    private static boolean isHeaderSegment(String segmentName) {
+        return segmentName.equals("MSH") || segmentName.equals("FHS") || segmentName.equals("BHS");
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '&') {
+                builder.append("&amp;");
+            } else if (c == '<') {
+                builder.append("&lt;");
+            } else if (c == '>') {
+                builder.append("&gt;");
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    /*
+     * The delimiters of a message, read from its MSH segment the same way as
+     * ER7Reader.
+     */
+    private static class Encoding {
+        private char fieldSeparator = '|';
+        private char componentSeparator = '^';
+        private char repetitionSeparator = '~';
+        private char escapeCharacter = '\\';
+        private char subcomponentSeparator = '&';
+        private boolean handleRepetitions;
+        private boolean handleSubcomponents;
+
+        public Encoding(String message, boolean handleRepetitions, boolean handleSubcomponents) {
+            this.handleRepetitions = handleRepetitions;
+            this.handleSubcomponents = handleSubcomponents;
+
+            if (message.substring(0, 3).equalsIgnoreCase("MSH") && (message.length() > 3)) {
+                fieldSeparator = message.charAt(3);
+                int nextDelimeter = message.indexOf(fieldSeparator, 4);
+
+                if (nextDelimeter > 4) {
+                    componentSeparator = message.charAt(4);
+                }
+
+                if (nextDelimeter > 5) {
+                    repetitionSeparator = message.charAt(5);
+                }
+
+                if (nextDelimeter > 6) {
+                    escapeCharacter = message.charAt(6);
+                }
+
+                if (nextDelimeter > 7) {
+                    subcomponentSeparator = message.charAt(7);
+                }
+
+                // replace the special case of ^~& with ^~\& (MIRTH-1544)
+                if (message.startsWith("^~&|", 4)) {
+                    escapeCharacter = '\\';
+                    subcomponentSeparator = '&';
+                    repetitionSeparator = '~';
+                    componentSeparator = '^';
+                }
+            }
+        }
+
+        public String getEncodingCharacters() {
+            return new String(new char[] { componentSeparator, repetitionSeparator, escapeCharacter, subcomponentSeparator });
+        }
+    }
+}
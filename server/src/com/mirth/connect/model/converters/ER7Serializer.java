@@ -85,6 +85,7 @@ public class ER7Serializer implements IXMLSerializer<String> {
         properties.put("handleRepetitions", "false");
         properties.put("convertLFtoCR", "true");
         properties.put("handleSubcomponents", "false");
+        properties.put("useNativeModel", "false");
         return properties;
     }
 
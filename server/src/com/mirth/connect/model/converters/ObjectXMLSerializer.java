@@ -38,6 +38,7 @@ import com.mirth.connect.model.Rule;
 import com.mirth.connect.model.ServerConfiguration;
 import com.mirth.connect.model.ServerInfo;
 import com.mirth.connect.model.ServerSettings;
+import com.mirth.connect.model.SpooledFile;
 import com.mirth.connect.model.Step;
 import com.mirth.connect.model.Transformer;
 import com.mirth.connect.model.UpdateInfo;
@@ -85,6 +86,7 @@ public class ObjectXMLSerializer {
         ServerConfiguration.class,
         ServerInfo.class,
         ServerSettings.class,
+        SpooledFile.class,
         Step.class,
         Transformer.class,
         UpdateInfo.class,
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.model.converters.tests;
+
+import java.io.File;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.model.converters.ER7Node;
+import com.mirth.connect.model.converters.ER7Serializer;
+
+public class ER7NodeTest {
+    private Properties defaultProperties;
+
+    @Before
+    public void setUp() throws Exception {
+        defaultProperties = new Properties();
+        defaultProperties.put("useStrictParser", "false");
+        defaultProperties.put("handleRepetitions", "false");
+        defaultProperties.put("handleSubcomponents", "false");
+        defaultProperties.put("convertLFtoCR", "true");
+    }
+
+    @Test
+    public void testToXmlMatchesSerializer() throws Exception {
+        String input = FileUtils.readFileToString(new File("tests/test-hl7-input.txt"));
+        ER7Serializer serializer = new ER7Serializer(defaultProperties);
+        ER7Node message = ER7Node.parse(input, defaultProperties);
+        Assert.assertEquals(TestUtil.prettyPrintXml(serializer.toXML(input)), TestUtil.prettyPrintXml(message.toXML()));
+    }
+
+    @Test
+    public void testToER7MatchesSerializer() throws Exception {
+        String input = FileUtils.readFileToString(new File("tests/test-hl7-input.txt"));
+        ER7Serializer serializer = new ER7Serializer(defaultProperties);
+        ER7Node message = ER7Node.parse(input, defaultProperties);
+        Assert.assertEquals(serializer.fromXML(serializer.toXML(input)), message.toER7());
+    }
+
+    @Test
+    public void testUnparsedSegmentsAreCopied() throws Exception {
+        ER7Node message = ER7Node.parse("MSH|^~\\&|A|B\rPID|1||123^^^X||Doe^John\r", defaultProperties);
+        Assert.assertEquals("MSH|^~\\&|A|B\rPID|1||123^^^X||Doe^John\r", message.toER7());
+
+        message.getChildren("PID").get(0).getChildren("PID.5").get(0).getChildren("PID.5.2").get(0).setText("Jane");
+        Assert.assertEquals("MSH|^~\\&|A|B\rPID|1||123^^^X||Doe^Jane\r", message.toER7());
+    }
+
+    @Test
+    public void testCreateChild() throws Exception {
+        ER7Node message = ER7Node.parse("MSH|^~\\&|A|B\rPID|1\r", defaultProperties);
+        ER7Node pid = message.getChildren("PID").get(0);
+        pid.createChild("PID.5").createChild("PID.5.2").setText("John");
+        pid.createChild("PID.3").createChild("PID.3.1").setText("123");
+        message.createChild("ZZZ").createChild("ZZZ.2").setText("X");
+
+        Assert.assertEquals("MSH|^~\\&|A|B\rPID|1||123||^John\rZZZ||X\r", message.toER7());
+    }
+
+    @Test
+    public void testRepetitionsAndSubcomponents() throws Exception {
+        Properties properties = new Properties();
+        properties.putAll(defaultProperties);
+        properties.put("handleRepetitions", "true");
+        properties.put("handleSubcomponents", "true");
+
+        ER7Node message = ER7Node.parse("MSH|^~\\&|A|B\rPID|1||1~2^A&B\r", properties);
+        ER7Node pid = message.getChildren("PID").get(0);
+        Assert.assertEquals(2, pid.getChildren("PID.3").size());
+        Assert.assertEquals("B", pid.getChildren("PID.3").get(1).getChildren("PID.3.2").get(0).getChildren("PID.3.2.2").get(0).getText());
+        Assert.assertEquals("MSH|^~\\&|A|B\rPID|1||1~2^A&B\r", message.toER7());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.plugins.httppools;
+
+import java.util.LinkedList;
+import java.util.Properties;
+
+import com.mirth.connect.model.ExtensionPermission;
+import com.mirth.connect.plugins.ServicePlugin;
+import com.mirth.connect.server.util.HttpConnectionPool;
+
+public class HttpPoolsProvider implements ServicePlugin {
+    public static final String PLUGINPOINT = "HTTP Pools";
+    private static final String GET_POOL_STATISTICS = "getPoolStatistics";
+
+    @Override
+    public String getPluginPointName() {
+        return PLUGINPOINT;
+    }
+
+    public void init(Properties properties) {
+
+    }
+
+    public Object invoke(String method, Object object, String sessionId) {
+        if (method.equals(GET_POOL_STATISTICS)) {
+            return new LinkedList<String[]>(HttpConnectionPool.getPoolStatistics());
+        }
+
+        return null;
+    }
+
+    public void start() {
+
+    }
+
+    public void update(Properties properties) {
+
+    }
+
+    public void onDeploy() {
+
+    }
+
+    public void stop() {
+
+    }
+
+    public Properties getDefaultProperties() {
+        return new Properties();
+    }
+
+    @Override
+    public ExtensionPermission[] getExtensionPermissions() {
+        ExtensionPermission viewPermission = new ExtensionPermission(PLUGINPOINT, "View HTTP Pools", "Displays the connection pools of the HTTP and Web Service senders on the Dashboard.", new String[] { GET_POOL_STATISTICS }, new String[] {});
+        return new ExtensionPermission[] { viewPermission };
+    }
+}
@@ -223,6 +223,7 @@ public class Mirth extends Thread {
         extensionController.initPlugins();
         channelStatisticsController.loadCache();
         channelStatisticsController.startUpdaterThread();
+        messageObjectController.startMessageStoreWriter();
         channelController.loadCache();
         migrationController.migrateChannels();
         userController.resetUserStatus();
@@ -261,6 +262,8 @@ public class Mirth extends Thread {
         
         stopWebServer();
         extensionController.stopPlugins();
+        // Write any messages that are still waiting in the message store
+        messageObjectController.stopMessageStoreWriter();
         // Stats updater thread will update the stats one more time before
         // stopping
         channelStatisticsController.stopUpdaterThread();
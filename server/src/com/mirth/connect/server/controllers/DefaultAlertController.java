@@ -10,12 +10,22 @@
 package com.mirth.connect.server.controllers;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.mail.EmailException;
 import org.apache.log4j.Logger;
 import org.apache.velocity.tools.generic.DateTool;
@@ -27,16 +37,50 @@ import com.mirth.connect.server.builders.ErrorMessageBuilder;
 import com.mirth.connect.server.util.DatabaseUtil;
 import com.mirth.connect.server.util.SMTPConnectionFactory;
 import com.mirth.connect.server.util.SqlConfig;
+import com.mirth.connect.util.PropertyLoader;
 
+/**
+ * Alerts are matched against errors with an in-memory index of the enabled
+ * alerts of each channel, so sending alerts does not query the database. The
+ * index is loaded on the first error and rebuilt whenever the alerts are
+ * updated.
+ *
+ * Alert emails are sent by a single dispatcher thread from a bounded queue.
+ * Each alert sends at most one email per "alert.interval" seconds (set in
+ * mirth.properties). Errors that match the alert during that time are
+ * suppressed, and the last of them is sent with the number of suppressed
+ * errors when the interval ends.
+ */
 public class DefaultAlertController extends AlertController {
+    private static final int MAX_PENDING_EMAILS = 1000;
+
     private Logger logger = Logger.getLogger(this.getClass());
     private ChannelStatisticsController statisticsController = ControllerFactory.getFactory().createChannelStatisticsController();
     private ErrorMessageBuilder errorBuilder = new ErrorMessageBuilder();
 
+    // the enabled alerts of each channel, or null if they need to be loaded
+    private volatile Map<String, List<AlertRule>> alertRules = null;
+    private Object alertRulesLock = new Object();
+
+    private long alertInterval = 60 * 1000;
+
+    // the current interval of each alert and channel
+    private Map<List<String>, AlertWindow> alertWindows = new HashMap<List<String>, AlertWindow>();
+    private BlockingQueue<AlertEvent> pendingEmails = new LinkedBlockingQueue<AlertEvent>(MAX_PENDING_EMAILS);
+
     private static DefaultAlertController instance = null;
 
     private DefaultAlertController() {
+        Properties properties = PropertyLoader.loadProperties("mirth");
+
+        if (properties != null) {
+            alertInterval = Math.max(0, NumberUtils.toLong(properties.getProperty("alert.interval"), alertInterval / 1000)) * 1000;
+        }
 
+        Thread dispatcherThread = new Thread(new AlertDispatcher());
+        dispatcherThread.setName("Alert Dispatcher Thread");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
     }
 
     public static AlertController create() {
@@ -98,6 +142,8 @@ public class DefaultAlertController extends AlertController {
         for (Alert alert : alerts) {
             insertAlert(alert);
         }
+
+        loadAlertRules();
     }
 
     private void insertAlert(Alert alert) throws ControllerException {
@@ -150,6 +196,10 @@ public class DefaultAlertController extends AlertController {
 
         } catch (SQLException e) {
             throw new ControllerException(e);
+        } finally {
+            synchronized (alertRulesLock) {
+                alertRules = null;
+            }
         }
     }
 
@@ -158,10 +208,10 @@ public class DefaultAlertController extends AlertController {
         String shortErrorMessage = (e == null) ? "No exception message." : e.getMessage();
 
         try {
-            for (Alert alert : getAlertByChannelId(channelId)) {
-                if (alert.isEnabled() && isAlertableError(alert.getExpression(), fullErrorMessage)) {
+            for (AlertRule rule : getAlertRules(channelId)) {
+                if (rule.isAlertableError(fullErrorMessage)) {
                     statisticsController.incrementAlertedCount(channelId);
-                    sendAlertEmails(alert.getSubject(), alert.getEmails(), alert.getTemplate(), fullErrorMessage, shortErrorMessage, channelId);
+                    dispatchAlert(new AlertEvent(rule.alert, channelId, fullErrorMessage, shortErrorMessage));
                 }
             }
         } catch (ControllerException ce) {
@@ -169,22 +219,121 @@ public class DefaultAlertController extends AlertController {
         }
     }
 
-    private boolean isAlertableError(String expression, String errorMessage) {
-        if ((expression != null) && (expression.length() > 0)) {
-            return Pattern.compile(expression).matcher(errorMessage).find();
-        } else {
-            return false;
+    private List<AlertRule> getAlertRules(String channelId) throws ControllerException {
+        Map<String, List<AlertRule>> rules = alertRules;
+
+        if (rules == null) {
+            rules = loadAlertRules();
+        }
+
+        List<AlertRule> channelRules = rules.get(channelId);
+        return (channelRules == null) ? Collections.<AlertRule> emptyList() : channelRules;
+    }
+
+    /*
+     * Loads all alerts and builds the index of enabled alerts by channel. The
+     * lock is held while loading so that an index loaded before the alerts
+     * were removed can't replace a newer one.
+     */
+    private Map<String, List<AlertRule>> loadAlertRules() throws ControllerException {
+        synchronized (alertRulesLock) {
+            Map<String, List<AlertRule>> rules = new HashMap<String, List<AlertRule>>();
+
+            for (Alert alert : getAlert(null)) {
+                if (alert.isEnabled() && (alert.getChannels() != null)) {
+                    AlertRule rule = new AlertRule(alert);
+
+                    for (String channelId : alert.getChannels()) {
+                        List<AlertRule> channelRules = rules.get(channelId);
+
+                        if (channelRules == null) {
+                            channelRules = new ArrayList<AlertRule>();
+                            rules.put(channelId, channelRules);
+                        }
+
+                        channelRules.add(rule);
+                    }
+                }
+            }
+
+            alertRules = rules;
+            return rules;
+        }
+    }
+
+    /*
+     * Queues an email for the alert, unless the alert already sent one for
+     * the same channel in the current interval, in which case the error is
+     * counted as suppressed. Errors of other channels are still sent, so one
+     * failing channel does not hide the others.
+     */
+    private void dispatchAlert(AlertEvent event) {
+        if (alertInterval > 0) {
+            List<String> key = Arrays.asList(new String[] { event.alert.getId(), event.channelId });
+
+            synchronized (alertWindows) {
+                AlertWindow window = alertWindows.get(key);
+
+                if (window != null) {
+                    window.suppressed++;
+                    window.lastEvent = event;
+                    return;
+                }
+
+                alertWindows.put(key, new AlertWindow(System.currentTimeMillis() + alertInterval));
+            }
         }
+
+        queueEmail(event);
     }
 
-    private void sendAlertEmails(String subject, final List<String> emails, String template, String fullErrorMessage, String shortErrorMessage, String channelId) throws ControllerException {
+    private void queueEmail(AlertEvent event) {
+        if (!pendingEmails.offer(event)) {
+            logger.warn("Alert email queue is full, dropping email for alert: " + event.alert.getName());
+        }
+    }
+
+    /*
+     * Ends the intervals that are over. If errors were suppressed during an
+     * interval, the last one is sent with the suppressed count and a new
+     * interval is started.
+     */
+    private void flushAlertWindows() {
+        long now = System.currentTimeMillis();
+        List<AlertEvent> events = new ArrayList<AlertEvent>();
+
+        synchronized (alertWindows) {
+            for (Iterator<AlertWindow> iterator = alertWindows.values().iterator(); iterator.hasNext();) {
+                AlertWindow window = iterator.next();
+
+                if (window.endTime <= now) {
+                    if (window.suppressed > 0) {
+                        window.lastEvent.suppressed = window.suppressed;
+                        events.add(window.lastEvent);
+                        window.endTime = now + alertInterval;
+                        window.suppressed = 0;
+                        window.lastEvent = null;
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+
+        for (AlertEvent event : events) {
+            queueEmail(event);
+        }
+    }
+
+    private void sendAlertEmails(AlertEvent event) throws ControllerException {
+        Alert alert = event.alert;
         TemplateValueReplacer replacer = new TemplateValueReplacer();
         Map<String, Object> context = new HashMap<String, Object>();
         
         String channelName = "";
         
-        if (channelId != null) {
-            Channel channel = ControllerFactory.getFactory().createChannelController().getDeployedChannelById(channelId);
+        if (event.channelId != null) {
+            Channel channel = ControllerFactory.getFactory().createChannelController().getDeployedChannelById(event.channelId);
             
             if (channel != null) {
                 channelName = channel.getName();
@@ -192,15 +341,18 @@ public class DefaultAlertController extends AlertController {
         }
         
         context.put("channelName", channelName);
-        context.put("error", fullErrorMessage);
-        context.put("errorMessage", shortErrorMessage);
-        context.put("systemTime", String.valueOf(System.currentTimeMillis()));
+        context.put("error", event.fullErrorMessage);
+        context.put("errorMessage", event.shortErrorMessage);
+        context.put("systemTime", String.valueOf(event.time));
         context.put("date", new DateTool());
+        context.put("suppressedCount", String.valueOf(event.suppressed));
         
         // no longer shown on UI
-        context.put("ERROR", fullErrorMessage);
-        context.put("SYSTIME", String.valueOf(System.currentTimeMillis()));
+        context.put("ERROR", event.fullErrorMessage);
+        context.put("SYSTIME", String.valueOf(event.time));
         
+        String subject = alert.getSubject();
+
         if (subject != null) {
             subject = replacer.replaceValues(subject, context);
         }
@@ -210,25 +362,91 @@ public class DefaultAlertController extends AlertController {
             subject = "Mirth Connect Alert";
         }
 
-        String body = fullErrorMessage;
+        String body = event.fullErrorMessage;
 
-        if (template != null) {
-            body = replacer.replaceValues(template, context);
+        if (alert.getTemplate() != null) {
+            body = replacer.replaceValues(alert.getTemplate(), context);
         }
 
-        final String finalSubject = subject;
-        final String finalBody = body;
+        if (event.suppressed > 0) {
+            body += "\n\n" + event.suppressed + " more error(s) matching this alert on this channel were suppressed in the last " + (alertInterval / 1000) + " seconds.";
+        }
 
-        new Thread(new Runnable() {
-            public void run() {
+        try {
+            SMTPConnectionFactory.createSMTPConnection().send(StringUtils.join(alert.getEmails(), ","), null, subject, body);
+        } catch (EmailException e) {
+            logger.error("Error sending alert email.", e);
+        }
+    }
+
+    private class AlertDispatcher implements Runnable {
+        public void run() {
+            while (true) {
                 try {
-                    SMTPConnectionFactory.createSMTPConnection().send(StringUtils.join(emails, ","), null, finalSubject, finalBody);
-                } catch (ControllerException e) {
-                    logger.error("Could not load default SMTP settings.", e);
-                } catch (EmailException e) {
-                    logger.error("Error sending alert email.", e);
+                    AlertEvent event = pendingEmails.poll(1, TimeUnit.SECONDS);
+
+                    if (event != null) {
+                        try {
+                            sendAlertEmails(event);
+                        } catch (ControllerException e) {
+                            logger.error("Could not load default SMTP settings.", e);
+                        }
+                    }
+
+                    flushAlertWindows();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable t) {
+                    logger.error("Error dispatching alert email.", t);
                 }
             }
-        }).start();
+        }
+    }
+
+    private class AlertRule {
+        private Alert alert;
+        private Pattern pattern;
+
+        public AlertRule(Alert alert) {
+            this.alert = alert;
+
+            if (StringUtils.isNotEmpty(alert.getExpression())) {
+                try {
+                    pattern = Pattern.compile(alert.getExpression());
+                } catch (PatternSyntaxException e) {
+                    logger.error("Invalid expression for alert: " + alert.getName(), e);
+                }
+            }
+        }
+
+        public boolean isAlertableError(String errorMessage) {
+            return (pattern != null) && pattern.matcher(errorMessage).find();
+        }
+    }
+
+    private class AlertWindow {
+        private long endTime;
+        private int suppressed = 0;
+        private AlertEvent lastEvent;
+
+        public AlertWindow(long endTime) {
+            this.endTime = endTime;
+        }
+    }
+
+    private class AlertEvent {
+        private Alert alert;
+        private String channelId;
+        private String fullErrorMessage;
+        private String shortErrorMessage;
+        private long time = System.currentTimeMillis();
+        private int suppressed = 0;
+
+        public AlertEvent(Alert alert, String channelId, String fullErrorMessage, String shortErrorMessage) {
+            this.alert = alert;
+            this.channelId = channelId;
+            this.fullErrorMessage = fullErrorMessage;
+            this.shortErrorMessage = shortErrorMessage;
+        }
     }
 }
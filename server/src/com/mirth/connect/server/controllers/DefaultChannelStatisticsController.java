@@ -10,20 +10,25 @@
 package com.mirth.connect.server.controllers;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
+import com.ibatis.sqlmap.client.SqlMapSession;
 import com.mirth.connect.model.ChannelStatistics;
 import com.mirth.connect.server.util.SqlConfig;
+import com.mirth.connect.server.util.StripedCounter;
 
 public class DefaultChannelStatisticsController extends ChannelStatisticsController {
     private Logger logger = Logger.getLogger(this.getClass());
-    private Map<String, ChannelStatistics> cache = null;
+    private Map<String, ChannelCounters> cache = new ConcurrentHashMap<String, ChannelCounters>();
     private StatisticsUpdater statsUpdater = null;
     private Thread updaterThread = null;
-    private boolean statsChanged = false;
     private ConfigurationController configurationController = ControllerFactory.getFactory().createConfigurationController();
     private static boolean running = true;
 
@@ -58,6 +63,60 @@ public class DefaultChannelStatisticsController extends ChannelStatisticsControl
         }
     }
 
+    /**
+     * The counters for a single channel. Each count is striped so that
+     * concurrent messages on the same channel do not contend, and the dirty
+     * flag lets the updater skip channels that have not changed since the last
+     * flush.
+     */
+    private class ChannelCounters {
+        private String channelId;
+        private StripedCounter received;
+        private StripedCounter sent;
+        private StripedCounter error;
+        private StripedCounter filtered;
+        private StripedCounter queued;
+        private StripedCounter alerted;
+        private AtomicBoolean dirty = new AtomicBoolean(false);
+
+        public ChannelCounters(ChannelStatistics statistics) {
+            this.channelId = statistics.getChannelId();
+            this.received = new StripedCounter(statistics.getReceived());
+            this.sent = new StripedCounter(statistics.getSent());
+            this.error = new StripedCounter(statistics.getError());
+            this.filtered = new StripedCounter(statistics.getFiltered());
+            this.queued = new StripedCounter(statistics.getQueued());
+            this.alerted = new StripedCounter(statistics.getAlerted());
+        }
+
+        public void increment(StripedCounter counter) {
+            counter.increment();
+            dirty.set(true);
+        }
+
+        public void decrement(StripedCounter counter) {
+            counter.decrementIfPositive();
+            dirty.set(true);
+        }
+
+        public ChannelStatistics getStatistics() {
+            ChannelStatistics statistics = new ChannelStatistics();
+            statistics.setServerId(configurationController.getServerId());
+            statistics.setChannelId(channelId);
+            statistics.setReceived(getCount(received));
+            statistics.setSent(getCount(sent));
+            statistics.setError(getCount(error));
+            statistics.setFiltered(getCount(filtered));
+            statistics.setQueued(getCount(queued));
+            statistics.setAlerted(getCount(alerted));
+            return statistics;
+        }
+
+        private int getCount(StripedCounter counter) {
+            return (int) Math.max(0, counter.sum());
+        }
+    }
+
     public void startUpdaterThread() {
         statsUpdater = new StatisticsUpdater();
         updaterThread = new Thread(statsUpdater);
@@ -72,7 +131,13 @@ public class DefaultChannelStatisticsController extends ChannelStatisticsControl
         try {
             Map<String, Object> parameterMap = new HashMap<String, Object>();
             parameterMap.put("serverId", configurationController.getServerId());
-            cache = SqlConfig.getSqlMapClient().queryForMap("Statistic.getStatistics", parameterMap, "channelId");
+            Map<String, ChannelStatistics> statistics = SqlConfig.getSqlMapClient().queryForMap("Statistic.getStatistics", parameterMap, "channelId");
+
+            cache.clear();
+
+            for (ChannelStatistics channelStatistics : statistics.values()) {
+                cache.put(channelStatistics.getChannelId(), new ChannelCounters(channelStatistics));
+            }
         } catch (SQLException e) {
             logger.error("Could not initialize channel statistics.", e);
         }
@@ -93,11 +158,7 @@ public class DefaultChannelStatisticsController extends ChannelStatisticsControl
         ChannelStatistics channelStatistics = new ChannelStatistics();
         channelStatistics.setServerId(configurationController.getServerId());
         channelStatistics.setChannelId(channelId);
-        
-        // synchronized with updateAllStatistics because it iterates through the cache map
-        synchronized (cache) {
-            cache.put(channelId, channelStatistics);
-        }
+        cache.put(channelId, new ChannelCounters(channelStatistics));
     }
 
     public boolean checkIfStatisticsExist(String channelId) {
@@ -119,108 +180,138 @@ public class DefaultChannelStatisticsController extends ChannelStatisticsControl
     }
 
     public ChannelStatistics getStatistics(String channelId) {
-        return cache.get(channelId);
+        ChannelCounters counters = cache.get(channelId);
+
+        if (counters == null) {
+            return null;
+        }
+
+        return counters.getStatistics();
     }
 
-    public synchronized void incrementReceivedCount(String channelId) {
-        cache.get(channelId).setReceived(cache.get(channelId).getReceived() + 1);
-        statsChanged = true;
+    public void incrementReceivedCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.increment(counters.received);
     }
 
-    public synchronized void incrementSentCount(String channelId) {
-        cache.get(channelId).setSent(cache.get(channelId).getSent() + 1);
-        statsChanged = true;
+    public void incrementSentCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.increment(counters.sent);
     }
 
-    public synchronized void incrementFilteredCount(String channelId) {
-        cache.get(channelId).setFiltered(cache.get(channelId).getFiltered() + 1);
-        statsChanged = true;
+    public void incrementFilteredCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.increment(counters.filtered);
     }
 
-    public synchronized void incrementErrorCount(String channelId) {
-        cache.get(channelId).setError(cache.get(channelId).getError() + 1);
-        statsChanged = true;
+    public void incrementErrorCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.increment(counters.error);
     }
 
-    public synchronized void incrementQueuedCount(String channelId) {
-        cache.get(channelId).setQueued(cache.get(channelId).getQueued() + 1);
-        statsChanged = true;
+    public void incrementQueuedCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.increment(counters.queued);
     }
 
-    public synchronized void incrementAlertedCount(String channelId) {
-        cache.get(channelId).setAlerted(cache.get(channelId).getAlerted() + 1);
-        statsChanged = true;
+    public void incrementAlertedCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.increment(counters.alerted);
     }
 
-    public synchronized void decrementQueuedCount(String channelId) {
-        if (cache.get(channelId).getQueued() > 0) {
-            cache.get(channelId).setQueued(cache.get(channelId).getQueued() - 1);
-            statsChanged = true;
-        }
+    public void decrementQueuedCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.decrement(counters.queued);
     }
 
-    public synchronized void decrementErrorCount(String channelId) {
-        if (cache.get(channelId).getError() > 0) {
-            cache.get(channelId).setError(cache.get(channelId).getError() - 1);
-            statsChanged = true;
-        }
+    public void decrementErrorCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.decrement(counters.error);
     }
 
-    public synchronized void decrementFilteredCount(String channelId) {
-        if (cache.get(channelId).getFiltered() > 0) {
-            cache.get(channelId).setFiltered(cache.get(channelId).getFiltered() - 1);
-            statsChanged = true;
-        }
+    public void decrementFilteredCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.decrement(counters.filtered);
     }
 
-    public synchronized void decrementSentCount(String channelId) {
-        if (cache.get(channelId).getSent() > 0) {
-            cache.get(channelId).setSent(cache.get(channelId).getSent() - 1);
-            statsChanged = true;
-        }
+    public void decrementSentCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.decrement(counters.sent);
     }
 
-    public synchronized void decrementReceivedCount(String channelId) {
-        if (cache.get(channelId).getReceived() > 0) {
-            cache.get(channelId).setReceived(cache.get(channelId).getReceived() - 1);
-            statsChanged = true;
-        }
+    public void decrementReceivedCount(String channelId) {
+        ChannelCounters counters = cache.get(channelId);
+        counters.decrement(counters.received);
     }
 
     private void updateStatistics(String channelId) {
         try {
-            SqlConfig.getSqlMapClient().update("Statistic.updateStatistics", cache.get(channelId));
+            SqlConfig.getSqlMapClient().update("Statistic.updateStatistics", cache.get(channelId).getStatistics());
         } catch (SQLException e) {
             logger.warn("could not update statistics");
         }
     }
 
+    /**
+     * Writes the statistics of every channel that changed since the last
+     * update in a single JDBC batch. If the batch fails, the channels are
+     * marked as changed again so they are retried on the next update.
+     */
     public void updateAllStatistics() {
-        if (statsChanged) {
-            
-            // synchronized with createStatistics because it adds to the hash map
-            synchronized (cache) {
-                for (ChannelStatistics stats : cache.values()) {
-                    updateStatistics(stats.getChannelId());
+        List<ChannelCounters> changedCounters = new ArrayList<ChannelCounters>();
+
+        for (ChannelCounters counters : cache.values()) {
+            if (counters.dirty.compareAndSet(true, false)) {
+                changedCounters.add(counters);
+            }
+        }
+
+        if (changedCounters.isEmpty()) {
+            return;
+        }
+
+        SqlMapSession session = SqlConfig.getSqlMapClient().openSession();
+
+        try {
+            try {
+                session.startTransaction();
+                session.startBatch();
+
+                for (ChannelCounters counters : changedCounters) {
+                    session.update("Statistic.updateStatistics", counters.getStatistics());
                 }
+
+                session.executeBatch();
+                session.commitTransaction();
+            } finally {
+                session.endTransaction();
             }
-            statsChanged = false;
+        } catch (SQLException e) {
+            logger.warn("could not update statistics", e);
+
+            for (ChannelCounters counters : changedCounters) {
+                counters.dirty.set(true);
+            }
+        } finally {
+            session.close();
         }
     }
 
-    public synchronized void clearStatistics(String channelId, boolean received, boolean filtered, boolean queued, boolean sent, boolean errored, boolean alerted) throws ControllerException {
+    public void clearStatistics(String channelId, boolean received, boolean filtered, boolean queued, boolean sent, boolean errored, boolean alerted) throws ControllerException {
+        ChannelCounters counters = cache.get(channelId);
+
         if (received)
-            cache.get(channelId).setReceived(0);
+            counters.received.reset();
         if (filtered)
-            cache.get(channelId).setFiltered(0);
+            counters.filtered.reset();
         if (queued)
-            cache.get(channelId).setQueued(0);
+            counters.queued.reset();
         if (sent)
-            cache.get(channelId).setSent(0);
+            counters.sent.reset();
         if (errored)
-            cache.get(channelId).setError(0);
+            counters.error.reset();
         if (alerted)
-            cache.get(channelId).setAlerted(0);
+            counters.alerted.reset();
 
         updateStatistics(channelId);
     }
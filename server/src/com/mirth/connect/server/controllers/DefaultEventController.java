@@ -20,6 +20,7 @@ import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.io.IOUtils;
@@ -27,11 +28,13 @@ import org.apache.log4j.Logger;
 
 import com.mirth.connect.model.Event;
 import com.mirth.connect.model.filters.EventFilter;
+import com.mirth.connect.server.util.BackgroundCounter;
 import com.mirth.connect.server.util.DatabaseUtil;
 import com.mirth.connect.server.util.SqlConfig;
 
 public class DefaultEventController extends EventController {
     private Logger logger = Logger.getLogger(this.getClass());
+    private BackgroundCounter eventCounter = new BackgroundCounter("Event Count Thread");
     private static DefaultEventController instance = null;
 
     private DefaultEventController() {
@@ -274,4 +277,44 @@ public class DefaultEventController extends EventController {
             throw new ControllerException(e);
         }
     }
+
+    /**
+     * Returns the page of events that come after the key, newest first. The
+     * key is the id of the last event of the previous page, or null for the
+     * first page. Event ids are given out in the order the events are
+     * created, and unlike the dates the database sets, they can be compared
+     * exactly.
+     */
+    public List<Event> getEventsByKey(EventFilter filter, Integer keyId, int pageSize) throws ControllerException {
+        logger.debug("retrieving events by key: id=" + keyId);
+        Map<String, Object> parameterMap = getEventFilterMap(filter, null);
+
+        if (keyId != null) {
+            parameterMap.put("keyId", keyId);
+        }
+
+        if (pageSize > 0) {
+            parameterMap.put("limit", pageSize);
+        }
+
+        try {
+            return SqlConfig.getSqlMapClient().queryForList("Event.getEventsByKey", parameterMap);
+        } catch (Exception e) {
+            throw new ControllerException(e);
+        }
+    }
+
+    public void startEventCount(EventFilter filter, String uid) {
+        final Map<String, Object> parameterMap = getEventFilterMap(filter, null);
+
+        eventCounter.start(uid, new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return (Integer) SqlConfig.getSqlMapClient().queryForObject("Event.getFilteredEventCount", parameterMap);
+            }
+        });
+    }
+
+    public int getEventCount(String uid) {
+        return eventCounter.get(uid);
+    }
 }
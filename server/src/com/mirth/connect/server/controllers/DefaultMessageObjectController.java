@@ -14,11 +14,13 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.activation.UnsupportedDataTypeException;
 
@@ -40,6 +42,7 @@ import com.mirth.connect.model.Response;
 import com.mirth.connect.model.filters.MessageObjectFilter;
 import com.mirth.connect.server.builders.ErrorMessageBuilder;
 import com.mirth.connect.server.util.AttachmentUtil;
+import com.mirth.connect.server.util.BackgroundCounter;
 import com.mirth.connect.server.util.DICOMUtil;
 import com.mirth.connect.server.util.DatabaseUtil;
 import com.mirth.connect.server.util.SqlConfig;
@@ -50,9 +53,14 @@ import com.mirth.connect.util.QueueUtil;
 public class DefaultMessageObjectController extends MessageObjectController {
     private static final String RECEIVE_SOCKET = "receiverSocket";
     private Logger logger = Logger.getLogger(this.getClass());
+    private static final int RECENT_MESSAGE_CACHE_SIZE = 10000;
+
     private ConfigurationController configurationController = ControllerFactory.getFactory().createConfigurationController();
     private ChannelStatisticsController statisticsController = ControllerFactory.getFactory().createChannelStatisticsController();
     private ErrorMessageBuilder errorBuilder = new ErrorMessageBuilder();
+    private MessageStoreWriter messageStoreWriter = MessageStoreWriter.getInstance();
+    private RecentMessageCache recentMessages = new RecentMessageCache(RECENT_MESSAGE_CACHE_SIZE);
+    private BackgroundCounter messageCounter = new BackgroundCounter("Message Count Thread");
 
     private static DefaultMessageObjectController instance = null;
 
@@ -70,6 +78,15 @@ public class DefaultMessageObjectController extends MessageObjectController {
         }
     }
 
+    public void startMessageStoreWriter() {
+        MessageContentIndex.getInstance().start();
+        messageStoreWriter.start();
+    }
+
+    public void stopMessageStoreWriter() {
+        messageStoreWriter.stop();
+    }
+
     public void removeAllFilterTables() {
         Connection conn = null;
         ResultSet resultSet = null;
@@ -190,8 +207,12 @@ public class DefaultMessageObjectController extends MessageObjectController {
 
         writeMessageToDatabase(messageObject, checkIfMessageExists);
 
+        /*
+         * The writer may have copied the maps of the clone, so the socket is
+         * put back into the map of the caller instead of the written copy.
+         */
         if (socket != null) {
-            messageObject.getChannelMap().put(RECEIVE_SOCKET, socket);
+            incomingMessageObject.getChannelMap().put(RECEIVE_SOCKET, socket);
         }
     }
 
@@ -220,11 +241,18 @@ public class DefaultMessageObjectController extends MessageObjectController {
             }
         }
 
+        // the message has not been written yet, so just change its status
+        if (messageStoreWriter.updatePendingStatus(messageId, newStatus)) {
+            recentMessages.putStatus(messageId, newStatus);
+            return;
+        }
+
         try {
             HashMap<String, String> params = new HashMap<String, String>();
             params.put("status", newStatus.toString());
             params.put("id", messageId);
             SqlConfig.getSqlMapClient().update("Message.updateMessageStatus", params);
+            recentMessages.putStatus(messageId, newStatus);
         } catch (SQLException e) {
             logger.error("Error updating message " + messageId + " status due to a database problem", e);
         }
@@ -235,24 +263,8 @@ public class DefaultMessageObjectController extends MessageObjectController {
     }
 
     private void writeMessageToDatabase(MessageObject messageObject, boolean checkIfMessageExists) {
-        try {
-            if (checkIfMessageExists) {
-                int count = (Integer) SqlConfig.getSqlMapClient().queryForObject("Message.getMessageCount", messageObject.getId());
-
-                if (count == 0) {
-                    logger.debug("adding message: id=" + messageObject.getId());
-                    SqlConfig.getSqlMapClient().insert("Message.insertMessage", messageObject);
-                } else {
-                    logger.debug("updating message: id=" + messageObject.getId());
-                    SqlConfig.getSqlMapClient().update("Message.updateMessage", messageObject);
-                }
-            } else {
-                logger.debug("adding message (not checking for message): id=" + messageObject.getId());
-                SqlConfig.getSqlMapClient().insert("Message.insertMessage", messageObject);
-            }
-        } catch (SQLException e) {
-            logger.error("could not log message: id=" + messageObject.getId(), e);
-        }
+        messageStoreWriter.write(messageObject, checkIfMessageExists);
+        recentMessages.put(messageObject);
     }
 
     private void encryptMessageData(MessageObject messageObject) {
@@ -389,9 +401,66 @@ public class DefaultMessageObjectController extends MessageObjectController {
         }
     }
 
+    /**
+     * Returns the page of messages that come after the key, newest first. The
+     * key is the date and id of the last message of the previous page, or null
+     * for the first page. Unlike the temp table paging, this doesn't create
+     * any tables, and messages that arrive while paging don't shift the pages.
+     * The page size is a limit in the query, so the database can stop after
+     * reading one page from the date index.
+     */
+    public List<MessageObject> getMessagesByKey(MessageObjectFilter filter, Calendar keyDateCreated, String keyId, int pageSize) throws ControllerException {
+        logger.debug("retrieving messages by key: id=" + keyId);
+
+        try {
+            Map<String, Object> parameterMap = getFilterMap(filter, null);
+
+            if (keyDateCreated != null) {
+                parameterMap.put("keyDateCreated", new Timestamp(keyDateCreated.getTimeInMillis()));
+                parameterMap.put("keyId", keyId);
+            }
+
+            if (pageSize > 0) {
+                parameterMap.put("limit", pageSize);
+            }
+
+            List<MessageObject> messages = SqlConfig.getSqlMapClient().queryForList("Message.getMessagesByKey", parameterMap);
+
+            for (MessageObject messageObject : messages) {
+                decryptMessageData(messageObject);
+            }
+
+            return messages;
+        } catch (Exception e) {
+            throw new ControllerException(e);
+        }
+    }
+
+    public void startMessageCount(MessageObjectFilter filter, String uid) {
+        final Map<String, Object> parameterMap = getFilterMap(filter, null);
+
+        messageCounter.start(uid, new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return (Integer) SqlConfig.getSqlMapClient().queryForObject("Message.getFilteredMessageCount", parameterMap);
+            }
+        });
+    }
+
+    /**
+     * Returns the count started by startMessageCount, or -1 if it is not done
+     * yet.
+     */
+    public int getMessageCount(String uid) {
+        return messageCounter.get(uid);
+    }
+
     public void removeMessage(MessageObject messageObject) throws ControllerException {
         logger.debug("removing message: id=" + messageObject.getId());
 
+        // don't let a message that is still waiting to be written come back
+        messageStoreWriter.discard(messageObject.getId());
+        recentMessages.remove(messageObject.getId());
+
         try {
             MessageObjectFilter filter = new MessageObjectFilter();
             filter.setId(messageObject.getId());
@@ -407,6 +476,7 @@ public class DefaultMessageObjectController extends MessageObjectController {
 
         try {
             removeMessagesFromQueue(filter);
+            recentMessages.clear();
             int rowCount = SqlConfig.getSqlMapClient().delete("Message.deleteMessage", getFilterMap(filter, null));
             SqlConfig.getSqlMapClient().delete("Message.deleteUnusedAttachments");
             return rowCount;
@@ -427,6 +497,7 @@ public class DefaultMessageObjectController extends MessageObjectController {
 
     public int pruneMessages(MessageObjectFilter filter, int limit) throws ControllerException {
         logger.debug("pruning messages: filter=" + filter.toString());
+        recentMessages.clear();
 
         try {
             int totalRowCount = 0;
@@ -604,6 +675,7 @@ public class DefaultMessageObjectController extends MessageObjectController {
         try {
             Map<String, Object> parameterMap = new HashMap<String, Object>();
             parameterMap.put("channelId", channelId);
+            recentMessages.clear();
             SqlConfig.getSqlMapClient().delete("Message.deleteMessage", parameterMap);
             SqlConfig.getSqlMapClient().delete("Message.deleteUnusedAttachments");
 
@@ -728,6 +800,10 @@ public class DefaultMessageObjectController extends MessageObjectController {
         parameterMap.put("ignoreQueued", filter.isIgnoreQueued());
         parameterMap.put("channelIdList", filter.getChannelIdList());
 
+        MessageContentIndex contentIndex = MessageContentIndex.getInstance();
+        contentIndex.addSearchParameters(parameterMap, "quickSearch", filter.getQuickSearch());
+        contentIndex.addSearchParameters(parameterMap, "searchCriteria", filter.getSearchCriteria());
+
         if (filter.getStartDate() != null) {
             parameterMap.put("startDate", String.format("%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS", filter.getStartDate()));
         }
@@ -775,6 +851,12 @@ public class DefaultMessageObjectController extends MessageObjectController {
     }
 
     private String lookupMessageId(String correlationId, String destinationId) throws SQLException {
+        String messageId = recentMessages.getMessageId(correlationId, destinationId);
+
+        if (messageId != null) {
+            return messageId;
+        }
+
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("correlationId", correlationId);
         params.put("connectorName", destinationId);
@@ -782,6 +864,12 @@ public class DefaultMessageObjectController extends MessageObjectController {
     }
 
     private String lookupMessageStatus(String messageId) throws SQLException {
+        MessageObject.Status status = recentMessages.getStatus(messageId);
+
+        if (status != null) {
+            return status.toString();
+        }
+
         return (String) SqlConfig.getSqlMapClient().queryForObject("Message.lookupMessageStatus", messageId);
     }
 
@@ -48,6 +48,12 @@ public abstract class EventController extends Controller {
 
     public abstract List<Event> getEventsByPageLimit(int page, int pageSize, int max, String uid, EventFilter filter) throws ControllerException;
 
+    public abstract List<Event> getEventsByKey(EventFilter filter, Integer keyId, int pageSize) throws ControllerException;
+
+    public abstract void startEventCount(EventFilter filter, String uid);
+
+    public abstract int getEventCount(String uid);
+
     public abstract int createTempTable(EventFilter filter, String uid, boolean forceTemp) throws ControllerException;
 
     public abstract void removeFilterTable(String uid);
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.controllers;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+
+import com.ibatis.sqlmap.client.SqlMapExecutor;
+import com.mirth.connect.model.MessageObject;
+import com.mirth.connect.server.util.DatabaseUtil;
+import com.mirth.connect.server.util.SqlConfig;
+import com.mirth.connect.util.PropertyLoader;
+
+/**
+ * Indexes the words in the message content so that message searches don't
+ * have to scan every message. The index is only used when the
+ * "messagestore.contentindex" property in mirth.properties is true.
+ *
+ * Postgres, MySQL and SQL Server use their own full-text indexes, which are
+ * created from the [database]-contentindex.sql script the first time the
+ * server starts with the index enabled. Derby has no full-text search, so the
+ * words of each message are written to the MESSAGE_TERM table when the
+ * message is written, and the messages that were written before the index was
+ * created are indexed in the background.
+ *
+ * The index only finds whole words, so it is only used when the search text
+ * is a single word. The original search condition is still applied to the
+ * messages that the index finds. A word that the database leaves out of its
+ * index, such as a MySQL or SQL Server stopword or a word shorter than the
+ * MySQL minimum token size, is searched without the index.
+ *
+ * Postgres only indexes the first 262144 characters of each column, since
+ * longer values can exceed the maximum size of a text search vector. A word
+ * that only appears after that in a message is not found when the index is
+ * used.
+ */
+public class MessageContentIndex {
+    private static final int MIN_TERM_LENGTH = 3;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int TERMS_PER_INSERT = 500;
+    private static final int BACKFILL_PAGE_SIZE = 500;
+
+    // the last sequence id that the background indexing got to
+    private static final String PROPERTY_CATEGORY = "contentindex";
+    private static final String BACKFILLED_SEQUENCE_ID = "backfilledSequenceId";
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private volatile boolean enabled = false;
+    private volatile boolean searchable = false;
+    private boolean started = false;
+    private volatile Boolean termsEnabled = null;
+
+    private static MessageContentIndex instance = null;
+
+    private MessageContentIndex() {
+
+    }
+
+    public static MessageContentIndex getInstance() {
+        synchronized (MessageContentIndex.class) {
+            if (instance == null) {
+                instance = new MessageContentIndex();
+                instance.initialize();
+            }
+
+            return instance;
+        }
+    }
+
+    private void initialize() {
+        Properties properties = PropertyLoader.loadProperties("mirth");
+
+        if (properties != null) {
+            enabled = Boolean.valueOf(StringUtils.trim(properties.getProperty("messagestore.contentindex")));
+        }
+
+        logger.debug("message content index enabled: " + enabled);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the index if it doesn't exist yet. If the database does not
+     * support the index or it could not be created, the index is disabled and
+     * searches work as before.
+     */
+    public synchronized void start() {
+        if (!enabled || started) {
+            return;
+        }
+
+        started = true;
+
+        if (!DatabaseUtil.statementExists("Message.contentIndexExists")) {
+            logger.info("The message content index is not supported for this database");
+            enabled = false;
+            return;
+        }
+
+        try {
+            if (((Integer) SqlConfig.getSqlMapClient().queryForObject("Message.contentIndexExists")) == 0) {
+                logger.info("Creating the message content index, this may take a while");
+                createIndex();
+                ControllerFactory.getFactory().createConfigurationController().removeProperty(PROPERTY_CATEGORY, BACKFILLED_SEQUENCE_ID);
+            }
+        } catch (Exception e) {
+            logger.warn("Could not create the message content index, searching messages without it", e);
+            enabled = false;
+            return;
+        }
+
+        if (!isTermsEnabled()) {
+            searchable = true;
+        } else {
+            // searches only use the index once every message is in it
+            Thread backfillThread = new Thread("Message Content Indexer") {
+                public void run() {
+                    indexExistingMessages();
+                }
+            };
+
+            backfillThread.setDaemon(true);
+            backfillThread.start();
+        }
+    }
+
+    /*
+     * Runs the creation script with auto commit on, since some of the
+     * full-text statements can't be run in a transaction.
+     */
+    private void createIndex() throws Exception {
+        String databaseType = ControllerFactory.getFactory().createConfigurationController().getDatabaseType();
+        InputStream is = getClass().getResourceAsStream("/" + databaseType + "/" + databaseType + "-contentindex.sql");
+
+        if (is == null) {
+            throw new Exception("Could not find the content index script for " + databaseType);
+        }
+
+        List<String> script = null;
+
+        try {
+            script = DatabaseUtil.joinSqlStatements(Collections.singletonList(IOUtils.toString(is)));
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+
+        Connection connection = null;
+        Statement statement = null;
+
+        try {
+            connection = SqlConfig.getSqlMapClient().getDataSource().getConnection();
+            connection.setAutoCommit(true);
+            statement = connection.createStatement();
+
+            for (String statementString : script) {
+                statementString = StringUtils.removeEnd(statementString.trim(), ";");
+
+                if (statementString.length() > 0) {
+                    statement.execute(statementString);
+                }
+            }
+        } finally {
+            DbUtils.closeQuietly(statement);
+            DbUtils.closeQuietly(connection);
+        }
+    }
+
+    /*
+     * Indexes the messages that are not in the index yet, one range of
+     * sequence ids at a time. These were written before the index was created
+     * or while it was disabled. Messages written in the meantime are indexed
+     * by the message store writer.
+     *
+     * The last sequence id that was indexed is stored after each range, so a
+     * restart only goes through the messages written since then instead of
+     * the whole table.
+     */
+    private void indexExistingMessages() {
+        try {
+            ConfigurationController configurationController = ControllerFactory.getFactory().createConfigurationController();
+            Integer maxSequenceId = (Integer) SqlConfig.getSqlMapClient().queryForObject("Message.getMaxMessageSequenceId");
+            int backfilled = NumberUtils.toInt(configurationController.getProperty(PROPERTY_CATEGORY, BACKFILLED_SEQUENCE_ID), 0);
+            int count = 0;
+
+            if ((maxSequenceId == null) || (maxSequenceId <= backfilled)) {
+                searchable = true;
+                return;
+            }
+
+            for (int first = backfilled + 1; enabled && (first <= maxSequenceId); first += BACKFILL_PAGE_SIZE) {
+                int last = Math.min(first + BACKFILL_PAGE_SIZE - 1, maxSequenceId);
+                Map<String, Object> parameterMap = new HashMap<String, Object>();
+                parameterMap.put("first", first);
+                parameterMap.put("last", last);
+                List<MessageObject> messages = SqlConfig.getSqlMapClient().queryForList("Message.getUnindexedMessages", parameterMap);
+
+                for (MessageObject messageObject : messages) {
+                    updateTerms(SqlConfig.getSqlMapClient(), messageObject);
+                }
+
+                count += messages.size();
+                configurationController.saveProperty(PROPERTY_CATEGORY, BACKFILLED_SEQUENCE_ID, String.valueOf(last));
+            }
+
+            searchable = true;
+
+            if (count > 0) {
+                logger.info("Finished indexing " + count + " existing messages");
+            }
+        } catch (SQLException e) {
+            logger.error("Could not index the existing messages", e);
+        }
+    }
+
+    /**
+     * Updates the words of a message that was just written, if the database
+     * keeps them in the MESSAGE_TERM table. Databases with full-text indexes
+     * update the index themselves.
+     *
+     * @param executor
+     *            the executor that wrote the message
+     * @param messageObject
+     * @throws SQLException
+     */
+    public void update(SqlMapExecutor executor, MessageObject messageObject) throws SQLException {
+        if (enabled && isTermsEnabled()) {
+            updateTerms(executor, messageObject);
+        }
+    }
+
+    private void updateTerms(SqlMapExecutor executor, MessageObject messageObject) throws SQLException {
+        executor.delete("Message.deleteMessageTerms", messageObject.getId());
+
+        // encrypted content can't be searched
+        if (messageObject.isEncrypted()) {
+            return;
+        }
+
+        Set<String> terms = new LinkedHashSet<String>();
+        addTerms(terms, messageObject.getRawData());
+        addTerms(terms, messageObject.getTransformedData());
+        addTerms(terms, messageObject.getEncodedData());
+        addTerms(terms, messageObject.getErrors());
+
+        List<String> termList = new ArrayList<String>(terms);
+
+        for (int i = 0; i < termList.size(); i += TERMS_PER_INSERT) {
+            Map<String, Object> parameterMap = new HashMap<String, Object>();
+            parameterMap.put("messageId", messageObject.getId());
+            parameterMap.put("terms", termList.subList(i, Math.min(i + TERMS_PER_INSERT, termList.size())));
+            executor.insert("Message.insertMessageTerms", parameterMap);
+        }
+    }
+
+    private boolean isTermsEnabled() {
+        if (termsEnabled == null) {
+            termsEnabled = DatabaseUtil.statementExists("Message.insertMessageTerms");
+        }
+
+        return termsEnabled;
+    }
+
+    /**
+     * Adds the parameters that let the message filter use the index, if the
+     * search text is a single word. The word is put in [key]Term, and as a
+     * quoted phrase in [key]Phrase for the databases that need one.
+     *
+     * @param parameterMap
+     *            the parameters of the message filter
+     * @param key
+     *            the name of the search parameter
+     * @param search
+     *            the search text
+     */
+    public void addSearchParameters(Map<String, Object> parameterMap, String key, String search) {
+        if (!enabled || !searchable || (search == null)) {
+            return;
+        }
+
+        String term = search.trim().toLowerCase();
+
+        if ((term.length() < MIN_TERM_LENGTH) || (term.length() > MAX_TERM_LENGTH)) {
+            return;
+        }
+
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isLetterOrDigit(term.charAt(i))) {
+                return;
+            }
+        }
+
+        if (!isIndexedTerm(term)) {
+            return;
+        }
+
+        parameterMap.put(key + "Term", term);
+        parameterMap.put(key + "Phrase", "\"" + term + "\"");
+    }
+
+    /*
+     * Asks the database whether its index contains the word, for the
+     * databases that leave out stopwords or short words. If that can't be
+     * determined, the word is searched without the index.
+     */
+    private boolean isIndexedTerm(String term) {
+        if (!DatabaseUtil.statementExists("Message.isContentIndexTerm")) {
+            return true;
+        }
+
+        try {
+            Integer indexed = (Integer) SqlConfig.getSqlMapClient().queryForObject("Message.isContentIndexTerm", term);
+            return (indexed != null) && (indexed > 0);
+        } catch (SQLException e) {
+            logger.debug("Could not check whether the term is in the message content index: " + term, e);
+            return false;
+        }
+    }
+
+    /*
+     * A term is a run of letters and digits, in lower case.
+     */
+    private void addTerms(Set<String> terms, String content) {
+        if (content == null) {
+            return;
+        }
+
+        int start = -1;
+
+        for (int i = 0; i <= content.length(); i++) {
+            if ((i < content.length()) && Character.isLetterOrDigit(content.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                int length = i - start;
+
+                if ((length >= MIN_TERM_LENGTH) && (length <= MAX_TERM_LENGTH)) {
+                    terms.add(content.substring(start, i).toLowerCase());
+                }
+
+                start = -1;
+            }
+        }
+    }
+}
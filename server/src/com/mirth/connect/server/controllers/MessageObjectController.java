@@ -9,6 +9,7 @@
 
 package com.mirth.connect.server.controllers;
 
+import java.util.Calendar;
 import java.util.List;
 
 import javax.activation.UnsupportedDataTypeException;
@@ -24,6 +25,10 @@ public abstract class MessageObjectController extends Controller {
         return ControllerFactory.getFactory().createMessageObjectController();
     }
 
+    public abstract void startMessageStoreWriter();
+
+    public abstract void stopMessageStoreWriter();
+
     public abstract void removeAllFilterTables();
 
     public abstract void updateMessage(MessageObject incomingMessageObject, boolean checkIfMessageExists);
@@ -38,6 +43,12 @@ public abstract class MessageObjectController extends Controller {
 
     public abstract List<MessageObject> getMessagesByPage(int page, int pageSize, int maxMessages, String uid, boolean descending) throws ControllerException;
 
+    public abstract List<MessageObject> getMessagesByKey(MessageObjectFilter filter, Calendar keyDateCreated, String keyId, int pageSize) throws ControllerException;
+
+    public abstract void startMessageCount(MessageObjectFilter filter, String uid);
+
+    public abstract int getMessageCount(String uid);
+
     public abstract int removeMessages(MessageObjectFilter filter) throws ControllerException;
 
     public abstract int pruneMessages(MessageObjectFilter filter, int limit) throws ControllerException;
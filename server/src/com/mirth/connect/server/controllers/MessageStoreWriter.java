@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.controllers;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+
+import com.ibatis.sqlmap.client.SqlMapExecutor;
+import com.ibatis.sqlmap.client.SqlMapSession;
+import com.mirth.connect.model.MessageObject;
+import com.mirth.connect.server.controllers.MessageWriteQueue.PendingWrite;
+import com.mirth.connect.server.util.DatabaseUtil;
+import com.mirth.connect.server.util.SqlConfig;
+import com.mirth.connect.util.PropertyLoader;
+
+/**
+ * Writes messages to the MESSAGE table. Depending on the
+ * "messagestore.durability" property in mirth.properties, messages are either
+ * written on the calling thread (sync), or handed to a small pool of writer
+ * threads that group them into JDBC batches. In "groupcommit" mode the caller
+ * waits until the batch holding its message is committed. In "async" mode the
+ * caller returns immediately.
+ *
+ * While a message is waiting to be written, later writes for the same message
+ * id replace it, so only the last state of the message is written. Status
+ * changes and discards of a message whose batch is being written wait until
+ * the batch is committed.
+ * 
+ * If the database has a Message.upsertMessage statement, messages that may
+ * already exist are written with it instead of looking them up first.
+ */
+public class MessageStoreWriter {
+    public enum Durability {
+        SYNC, GROUPCOMMIT, ASYNC
+    }
+
+    private Logger logger = Logger.getLogger(this.getClass());
+
+    private Durability durability = Durability.SYNC;
+    private int writerCount = 2;
+    private int batchSize = 100;
+    private int groupCommitInterval = 10;
+    private int queueSize = 10000;
+    private volatile WriterThread[] writers = null;
+    private volatile Boolean upsertEnabled = null;
+    private MessageContentIndex contentIndex = MessageContentIndex.getInstance();
+
+    private static MessageStoreWriter instance = null;
+
+    private MessageStoreWriter() {
+
+    }
+
+    public static MessageStoreWriter getInstance() {
+        synchronized (MessageStoreWriter.class) {
+            if (instance == null) {
+                instance = new MessageStoreWriter();
+                instance.initialize();
+            }
+
+            return instance;
+        }
+    }
+
+    private void initialize() {
+        Properties properties = PropertyLoader.loadProperties("mirth");
+
+        if (properties != null) {
+            String durabilityProperty = properties.getProperty("messagestore.durability");
+
+            if (durabilityProperty != null) {
+                try {
+                    durability = Durability.valueOf(durabilityProperty.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Invalid messagestore.durability value \"" + durabilityProperty + "\", using sync");
+                }
+            }
+
+            writerCount = Math.max(1, NumberUtils.toInt(properties.getProperty("messagestore.writers"), writerCount));
+            batchSize = Math.max(1, NumberUtils.toInt(properties.getProperty("messagestore.batchsize"), batchSize));
+            groupCommitInterval = Math.max(1, NumberUtils.toInt(properties.getProperty("messagestore.groupcommit.interval"), groupCommitInterval));
+            queueSize = Math.max(batchSize, NumberUtils.toInt(properties.getProperty("messagestore.queuesize"), queueSize));
+        }
+
+        logger.debug("message store durability: " + durability);
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public synchronized void start() {
+        if ((durability == Durability.SYNC) || (writers != null)) {
+            return;
+        }
+
+        writers = new WriterThread[writerCount];
+
+        for (int i = 0; i < writerCount; i++) {
+            writers[i] = new WriterThread("Message Store Writer " + (i + 1));
+            writers[i].start();
+        }
+    }
+
+    /**
+     * Stops the writer threads after every pending message has been written.
+     */
+    public synchronized void stop() {
+        if (writers == null) {
+            return;
+        }
+
+        for (WriterThread writer : writers) {
+            writer.shutdown();
+        }
+
+        for (WriterThread writer : writers) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        writers = null;
+    }
+
+    /**
+     * Writes the message, or queues it to be written if a writer thread is
+     * running.
+     *
+     * @param messageObject
+     *            a copy of the message that is not modified by the caller
+     *            afterwards
+     * @param checkIfMessageExists
+     *            update the message if it has already been written
+     */
+    public void write(MessageObject messageObject, boolean checkIfMessageExists) {
+        WriterThread writer = getWriter(messageObject.getId());
+
+        if (writer == null) {
+            writeMessage(SqlConfig.getSqlMapClient(), messageObject, checkIfMessageExists);
+            return;
+        }
+
+        // copy the maps so later changes by other connectors are not written
+        messageObject.setConnectorMap(copyMap(messageObject.getConnectorMap()));
+        messageObject.setChannelMap(copyMap(messageObject.getChannelMap()));
+        messageObject.setResponseMap(copyMap(messageObject.getResponseMap()));
+
+        PendingWrite pendingWrite = writer.queue.enqueue(messageObject, checkIfMessageExists);
+
+        if (pendingWrite == null) {
+            // the writer has stopped, so write the message right away
+            writeMessage(SqlConfig.getSqlMapClient(), messageObject, checkIfMessageExists);
+        } else if (durability == Durability.GROUPCOMMIT) {
+            try {
+                pendingWrite.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Applies a status change to a message that is still waiting to be
+     * written.
+     *
+     * @return true if the message was waiting and its status was changed,
+     *         false if the status must be updated in the database
+     */
+    public boolean updatePendingStatus(String messageId, MessageObject.Status status) {
+        WriterThread writer = getWriter(messageId);
+        return (writer != null) && writer.queue.updateStatus(messageId, status);
+    }
+
+    /**
+     * Drops a message that is still waiting to be written, so that a message
+     * removed from the database is not written again afterwards.
+     */
+    public void discard(String messageId) {
+        WriterThread writer = getWriter(messageId);
+
+        if (writer != null) {
+            writer.queue.discard(messageId);
+        }
+    }
+
+    private Map copyMap(Map map) {
+        if (map == null) {
+            return null;
+        }
+
+        return new HashMap(map);
+    }
+
+    private WriterThread getWriter(String messageId) {
+        WriterThread[] currentWriters = writers;
+
+        if (currentWriters == null) {
+            return null;
+        }
+
+        // all writes for a message go to the same writer to keep them in order
+        return currentWriters[(messageId.hashCode() & Integer.MAX_VALUE) % currentWriters.length];
+    }
+
+    private void writeMessage(SqlMapExecutor executor, MessageObject messageObject, boolean checkIfMessageExists) {
+        try {
+            if (checkIfMessageExists && upsertMessage(executor, messageObject)) {
+                logger.debug("upserting message: id=" + messageObject.getId());
+            } else if (checkIfMessageExists && !messageExists(executor, messageObject.getId())) {
+                logger.debug("adding message: id=" + messageObject.getId());
+                executor.insert("Message.insertMessage", messageObject);
+            } else if (checkIfMessageExists) {
+                logger.debug("updating message: id=" + messageObject.getId());
+                executor.update("Message.updateMessage", messageObject);
+            } else {
+                logger.debug("adding message (not checking for message): id=" + messageObject.getId());
+                executor.insert("Message.insertMessage", messageObject);
+            }
+
+            contentIndex.update(executor, messageObject);
+        } catch (SQLException e) {
+            logger.error("could not log message: id=" + messageObject.getId(), e);
+        }
+    }
+
+    /**
+     * Inserts or updates the message in one statement.
+     * 
+     * @return false if the database does not support upserts, in which case
+     *         nothing was written
+     * @throws SQLException
+     *             if the upsert failed for any other reason
+     */
+    private boolean upsertMessage(SqlMapExecutor executor, MessageObject messageObject) throws SQLException {
+        if (!isUpsertEnabled()) {
+            return false;
+        }
+
+        try {
+            executor.update("Message.upsertMessage", messageObject);
+            return true;
+        } catch (SQLException e) {
+            // older database versions don't support the upsert syntax
+            if (isUnsupportedStatement(e)) {
+                logger.warn("Could not upsert message, looking up existing messages instead", e);
+                upsertEnabled = false;
+                return false;
+            }
+
+            throw e;
+        }
+    }
+
+    /*
+     * Syntax errors and unsupported features are in SQLState class 42 and
+     * 0A000. Deadlocks, timeouts and lost connections are not.
+     */
+    private boolean isUnsupportedStatement(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+
+                if ((sqlState != null) && (sqlState.startsWith("42") || sqlState.equals("0A000"))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isUpsertEnabled() {
+        if (upsertEnabled == null) {
+            upsertEnabled = DatabaseUtil.statementExists("Message.upsertMessage");
+        }
+
+        return upsertEnabled;
+    }
+
+    private boolean messageExists(SqlMapExecutor executor, String messageId) throws SQLException {
+        return ((Integer) executor.queryForObject("Message.getMessageCount", messageId)) > 0;
+    }
+
+    /**
+     * Writes a batch of messages in a single transaction. If the batch fails,
+     * each message is written on its own so that one bad message does not
+     * lose the others.
+     */
+    private void writeBatch(List<PendingWrite> batch) {
+        SqlMapSession session = SqlConfig.getSqlMapClient().openSession();
+
+        try {
+            try {
+                session.startTransaction();
+
+                boolean upsert = isUpsertEnabled();
+
+                // look up existing messages before starting the batch
+                List<Boolean> inserts = new ArrayList<Boolean>();
+
+                for (PendingWrite pendingWrite : batch) {
+                    inserts.add(!pendingWrite.isCheckIfMessageExists() || (!upsert && !messageExists(session, pendingWrite.getMessageObject().getId())));
+                }
+
+                session.startBatch();
+
+                for (int i = 0; i < batch.size(); i++) {
+                    if (upsert && batch.get(i).isCheckIfMessageExists()) {
+                        session.update("Message.upsertMessage", batch.get(i).getMessageObject());
+                    } else if (inserts.get(i)) {
+                        session.insert("Message.insertMessage", batch.get(i).getMessageObject());
+                    } else {
+                        session.update("Message.updateMessage", batch.get(i).getMessageObject());
+                    }
+                }
+
+                session.executeBatch();
+
+                for (PendingWrite pendingWrite : batch) {
+                    contentIndex.update(session, pendingWrite.getMessageObject());
+                }
+
+                session.commitTransaction();
+            } finally {
+                session.endTransaction();
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not write batch of " + batch.size() + " messages, writing them individually", e);
+
+            for (PendingWrite pendingWrite : batch) {
+                writeMessage(SqlConfig.getSqlMapClient(), pendingWrite.getMessageObject(), pendingWrite.isCheckIfMessageExists());
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private class WriterThread extends Thread {
+        private MessageWriteQueue queue = new MessageWriteQueue(batchSize, groupCommitInterval, queueSize);
+
+        public WriterThread(String name) {
+            super(name);
+        }
+
+        public void shutdown() {
+            queue.shutdown();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    List<PendingWrite> batch = queue.takeBatch();
+
+                    if (batch.isEmpty()) {
+                        // only empty once stopped and drained
+                        return;
+                    }
+
+                    try {
+                        writeBatch(batch);
+                    } finally {
+                        queue.finishBatch(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.warn(getName() + " was interrupted with messages still waiting to be written");
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.controllers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.mirth.connect.model.MessageObject;
+
+/**
+ * The messages waiting for one writer thread of the MessageStoreWriter.
+ *
+ * A message is tracked from the time it is queued until the batch holding it
+ * has been committed. While it is waiting, a status change or discard is
+ * applied to the waiting message. While its batch is being written, they wait
+ * for the batch to be committed, so that the status update or delete that
+ * follows finds the row.
+ */
+public class MessageWriteQueue {
+    private int batchSize;
+    private int groupCommitInterval;
+    private int queueSize;
+    private Map<String, PendingWrite> queue = new LinkedHashMap<String, PendingWrite>();
+    private Map<String, PendingWrite> inFlight = new HashMap<String, PendingWrite>();
+    private boolean running = true;
+
+    public static class PendingWrite {
+        private MessageObject messageObject;
+        private boolean checkIfMessageExists;
+        private CountDownLatch done = new CountDownLatch(1);
+
+        public PendingWrite(MessageObject messageObject, boolean checkIfMessageExists) {
+            this.messageObject = messageObject;
+            this.checkIfMessageExists = checkIfMessageExists;
+        }
+
+        public MessageObject getMessageObject() {
+            return messageObject;
+        }
+
+        public boolean isCheckIfMessageExists() {
+            return checkIfMessageExists;
+        }
+
+        public void await() throws InterruptedException {
+            done.await();
+        }
+    }
+
+    public MessageWriteQueue(int batchSize, int groupCommitInterval, int queueSize) {
+        this.batchSize = batchSize;
+        this.groupCommitInterval = groupCommitInterval;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Queues the message, replacing the state of the message if it is already
+     * waiting. Blocks while the queue is full.
+     *
+     * @return the pending write, or null if the queue has been shut down and
+     *         the message must be written by the caller
+     */
+    public synchronized PendingWrite enqueue(MessageObject messageObject, boolean checkIfMessageExists) {
+        PendingWrite pendingWrite = queue.get(messageObject.getId());
+
+        if (pendingWrite != null) {
+            // replace the waiting state of this message with the new one
+            pendingWrite.messageObject = messageObject;
+            pendingWrite.checkIfMessageExists |= checkIfMessageExists;
+            return pendingWrite;
+        }
+
+        // block the caller while the queue is full
+        while (running && (queue.size() >= queueSize)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!running) {
+            return null;
+        }
+
+        pendingWrite = new PendingWrite(messageObject, checkIfMessageExists);
+        queue.put(messageObject.getId(), pendingWrite);
+
+        // wake the writer for the first message and for a full batch
+        if ((queue.size() == 1) || (queue.size() >= batchSize)) {
+            notifyAll();
+        }
+
+        return pendingWrite;
+    }
+
+    /**
+     * Changes the status of a waiting message. If the message is being
+     * written, waits until its batch has been committed.
+     *
+     * @return true if the status of the waiting message was changed, false if
+     *         the status must be updated in the database
+     */
+    public synchronized boolean updateStatus(String messageId, MessageObject.Status status) {
+        PendingWrite pendingWrite = queue.get(messageId);
+
+        if (pendingWrite != null) {
+            pendingWrite.messageObject.setStatus(status);
+            return true;
+        }
+
+        awaitWritten(messageId);
+        return false;
+    }
+
+    /**
+     * Drops a waiting message. If the message is being written, waits until
+     * its batch has been committed, so that it can be deleted afterwards.
+     */
+    public synchronized void discard(String messageId) {
+        PendingWrite pendingWrite = queue.remove(messageId);
+
+        if (pendingWrite != null) {
+            pendingWrite.done.countDown();
+            notifyAll();
+        }
+
+        awaitWritten(messageId);
+    }
+
+    private void awaitWritten(String messageId) {
+        while (inFlight.containsKey(messageId)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        notifyAll();
+    }
+
+    /**
+     * Takes the next batch, waiting for a full batch or the group commit
+     * interval. The batch must be passed to finishBatch once it has been
+     * written.
+     *
+     * @return the batch, which is only empty once the queue has been shut
+     *         down and drained
+     * @throws InterruptedException
+     */
+    public synchronized List<PendingWrite> takeBatch() throws InterruptedException {
+        while (running && queue.isEmpty()) {
+            wait();
+        }
+
+        // wait for a full batch or the group commit interval
+        if (running && (queue.size() < batchSize)) {
+            wait(groupCommitInterval);
+        }
+
+        List<PendingWrite> batch = new ArrayList<PendingWrite>();
+
+        for (Iterator<PendingWrite> iterator = queue.values().iterator(); iterator.hasNext() && (batch.size() < batchSize);) {
+            PendingWrite pendingWrite = iterator.next();
+            iterator.remove();
+            batch.add(pendingWrite);
+            inFlight.put(pendingWrite.messageObject.getId(), pendingWrite);
+        }
+
+        // wake up callers waiting for room in the queue
+        notifyAll();
+        return batch;
+    }
+
+    /**
+     * Marks the batch as written, releasing the callers that wait for it.
+     */
+    public synchronized void finishBatch(List<PendingWrite> batch) {
+        for (PendingWrite pendingWrite : batch) {
+            inFlight.remove(pendingWrite.messageObject.getId());
+            pendingWrite.done.countDown();
+        }
+
+        notifyAll();
+    }
+}
@@ -20,6 +20,13 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.InstanceNotFoundException;
 
@@ -28,6 +35,7 @@ import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 import org.mule.MuleManager;
 import org.mule.components.simple.PassThroughComponent;
@@ -54,10 +62,15 @@ import org.mule.umo.model.UMOModel;
 import org.mule.umo.provider.UMOConnector;
 import org.mule.umo.routing.UMOOutboundRouter;
 import org.mule.umo.transformer.UMOTransformer;
+import org.mule.util.queue.CachingPersistenceStrategy;
 import org.mule.util.queue.FilePersistenceStrategy;
+import org.mule.util.queue.QueuePersistenceStrategy;
+import org.mule.util.queue.SegmentFilePersistenceStrategy;
 
 import com.mirth.connect.connectors.jdbc.JdbcTransactionFactory;
 import com.mirth.connect.model.Channel;
+import com.mirth.connect.model.CodeTemplate;
+import com.mirth.connect.model.CodeTemplate.CodeSnippetType;
 import com.mirth.connect.model.Connector;
 import com.mirth.connect.model.ConnectorMetaData;
 import com.mirth.connect.model.Event;
@@ -72,10 +85,12 @@ import com.mirth.connect.server.builders.JavaScriptBuilder;
 import com.mirth.connect.server.mule.ExceptionStrategy;
 import com.mirth.connect.server.mule.adaptors.AdaptorFactory;
 import com.mirth.connect.server.mule.filters.ValidMessageFilter;
+import com.mirth.connect.server.util.DatabaseConnectionPools;
 import com.mirth.connect.server.util.GlobalChannelVariableStoreFactory;
 import com.mirth.connect.server.util.GlobalVariableStore;
 import com.mirth.connect.server.util.UUIDGenerator;
 import com.mirth.connect.server.util.VMRegistry;
+import com.mirth.connect.server.util.XsltTemplateCache;
 import com.mirth.connect.util.PropertyLoader;
 
 public class MuleEngineController implements EngineController {
@@ -195,6 +210,9 @@ public class MuleEngineController implements EngineController {
             }
 
             undeployChannels(registeredChannelIds, context);
+
+            // compile the stylesheets of the XSLT steps again
+            XsltTemplateCache.getInstance().clear();
             
             // invoke the channel plugins
             for (ChannelPlugin channelPlugin : extensionController.getChannelPlugins().values()) {
@@ -319,6 +337,9 @@ public class MuleEngineController implements EngineController {
                     channelPlugin.undeploy(registeredChannelId, context);
                 }
             }
+
+            // close the connections that the scripts of the channels opened
+            DatabaseConnectionPools.getInstance().closeAll();
         } catch (Exception e) {
             logger.error("Error undeploying channels.", e);
         }
@@ -521,8 +542,12 @@ public class MuleEngineController implements EngineController {
         logger.debug("configuring outbound router for channel: " + channel.getId() + " (" + channel.getName() + ")");
         FilteringMulticastingRouter fmr = new FilteringMulticastingRouter();
         boolean enableTransactions = false;
+        int enabledDestinations = 0;
         Exception exceptionRegisteringOutboundRouter = null;
 
+        // the function templates are part of every script, so they make every destination dependent
+        boolean templatesUseResponseMap = codeTemplatesUseResponseMap();
+
         // If there was an exception registering a connector, break the loop.
         for (ListIterator<Connector> iterator = channel.getDestinationConnectors().listIterator(); iterator.hasNext() && (exceptionRegisteringOutboundRouter == null);) {
             Connector connector = iterator.next();
@@ -547,6 +572,14 @@ public class MuleEngineController implements EngineController {
                     // "true");
                 }
 
+                /*
+                 * Destinations that read the responses of earlier destinations
+                 * must wait for them when destinations are sent in parallel.
+                 */
+                if (templatesUseResponseMap || isResponseMapConsumer(connector)) {
+                    endpoint.getProperties().put(FilteringMulticastingRouter.DEPENDENT_PROPERTY, "true");
+                }
+
                 String connectorReference = getConnectorReferenceForOutboundRouter(channel, iterator.nextIndex());
 
                 // add the destination connector
@@ -589,6 +622,7 @@ public class MuleEngineController implements EngineController {
 
                 endpoint.setTransformer(javascriptTransformer);
                 fmr.addEndpoint(endpoint);
+                enabledDestinations++;
             }
         }
 
@@ -602,6 +636,17 @@ public class MuleEngineController implements EngineController {
             fmr.setTransactionConfig(mtc);
         }
 
+        /*
+         * Send independent destinations concurrently if the channel has more
+         * than one destination. Transactions are bound to the routing thread,
+         * so transactional channels always send destinations in order.
+         */
+        boolean parallelDestinations = ((channel.getProperties().get("parallelDestinations") != null) && channel.getProperties().get("parallelDestinations").toString().equalsIgnoreCase("true"));
+
+        if (parallelDestinations && (enabledDestinations > 1) && !(enableTransactions && transactional)) {
+            fmr.setDestinationExecutor(createDestinationExecutor(channel, enabledDestinations));
+        }
+
         OutboundMessageRouter outboundRouter = new OutboundMessageRouter();
         outboundRouter.addRouter(fmr);
         descriptor.setOutboundRouter(outboundRouter);
@@ -618,6 +663,103 @@ public class MuleEngineController implements EngineController {
         }
     }
 
+    /**
+     * Creates the bounded executor used to send destinations in parallel. The
+     * pool size defaults to the number of enabled destinations and can be set
+     * with the "parallelDestinationThreads" channel property. When the queue
+     * is full the routing thread sends the destination itself, which throttles
+     * the source connector.
+     * 
+     * @param channel
+     * @param enabledDestinations
+     * @return
+     */
+    private ThreadPoolExecutor createDestinationExecutor(final Channel channel, int enabledDestinations) {
+        int threads = NumberUtils.toInt(channel.getProperties().getProperty("parallelDestinationThreads"), enabledDestinations);
+
+        if (threads < 1) {
+            threads = enabledDestinations;
+        }
+
+        logger.debug("sending destinations in parallel for channel: " + channel.getId() + " (" + threads + " threads)");
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private AtomicInteger threadCount = new AtomicInteger(0);
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, channel.getName() + " Destination Thread " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        /*
+         * When the queue is full the destination is sent on the routing
+         * thread. Once the channel is undeployed the destination is refused,
+         * instead of being dropped with a result that never completes.
+         */
+        RejectedExecutionHandler rejectedExecutionHandler = new RejectedExecutionHandler() {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("The destination threads of channel " + channel.getName() + " have been stopped");
+                }
+
+                runnable.run();
+            }
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads * 4), threadFactory, rejectedExecutionHandler);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns true if the destination's filter, transformer, or connector
+     * properties reference the response map.
+     * 
+     * @param connector
+     * @return
+     * @throws Exception
+     */
+    private boolean isResponseMapConsumer(Connector connector) throws Exception {
+        if (usesResponseMap(scriptBuilder.generateTransformerScript(connector.getFilter(), connector.getTransformer()))) {
+            return true;
+        }
+
+        for (Object value : connector.getProperties().values()) {
+            if ((value != null) && usesResponseMap(value.toString())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if a function code template references the response map,
+     * or if the code templates could not be read.
+     * 
+     * @return
+     */
+    private boolean codeTemplatesUseResponseMap() {
+        try {
+            for (CodeTemplate template : ControllerFactory.getFactory().createCodeTemplateController().getCodeTemplate(null)) {
+                if ((template.getType() == CodeSnippetType.FUNCTION) && usesResponseMap(template.getCode())) {
+                    return true;
+                }
+            }
+
+            return false;
+        } catch (ControllerException e) {
+            logger.warn("Could not get the code templates, sending destinations in order", e);
+            return true;
+        }
+    }
+
+    private boolean usesResponseMap(String script) {
+        return StringUtils.contains(script, "responseMap") || StringUtils.contains(script, "$r(");
+    }
+
     /**
      * Add "_connector" to the connector id
      * 
@@ -835,6 +977,12 @@ public class MuleEngineController implements EngineController {
 
         unregisterConnectors(descriptor.getInboundRouter().getEndpoints());
         UMOOutboundRouter outboundRouter = (UMOOutboundRouter) descriptor.getOutboundRouter().getRouters().iterator().next();
+
+        // stop the parallel destination threads, letting in-flight sends finish
+        if ((outboundRouter instanceof FilteringMulticastingRouter) && ((FilteringMulticastingRouter) outboundRouter).isParallelDestinations()) {
+            ((FilteringMulticastingRouter) outboundRouter).getDestinationExecutor().shutdown();
+        }
+
         unregisterConnectors(outboundRouter.getEndpoints());
 
         // Remove the associated VMMessageReceiver from the registry
@@ -951,7 +1099,25 @@ public class MuleEngineController implements EngineController {
         Integer maxQueueSize = configurationController.getServerSettings().getMaxQueueSize();
         // If the maxQueueSize is null, use 0
         MuleManager.getConfiguration().setQueueProfile(new QueueProfile((maxQueueSize == null) ? 0 : maxQueueSize, true));
-        MuleManager.getConfiguration().setPersistenceStrategy(new FilePersistenceStrategy());
+
+        QueuePersistenceStrategy persistenceStrategy = null;
+
+        if (PropertyLoader.getProperty(properties, "queuestore.type", "file").equals("segments")) {
+            persistenceStrategy = new SegmentFilePersistenceStrategy();
+        } else {
+            persistenceStrategy = new FilePersistenceStrategy();
+        }
+
+        // the size of the cache of each queue in KB
+        long queueCacheSize = CachingPersistenceStrategy.DEFAULT_MAX_QUEUE_BYTES / 1024;
+
+        try {
+            queueCacheSize = Long.parseLong(PropertyLoader.getProperty(properties, "queuestore.cachesize", String.valueOf(queueCacheSize)));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid queuestore.cachesize, using " + queueCacheSize + " KB");
+        }
+
+        MuleManager.getConfiguration().setPersistenceStrategy(new CachingPersistenceStrategy(persistenceStrategy, queueCacheSize * 1024));
         
         // add interceptor stack
         InterceptorStack stack = new InterceptorStack();
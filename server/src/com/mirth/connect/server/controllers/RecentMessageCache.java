@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.controllers;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.mirth.connect.model.MessageObject;
+
+/**
+ * Remembers the id and status of recently written messages so that replacing
+ * a message does not need to look them up in the database. Only messages that
+ * were actually stored are added. The least recently used entries are dropped
+ * once the cache is full.
+ */
+public class RecentMessageCache {
+    private int maxSize;
+    private Map<String, MessageObject.Status> statusById;
+    private Map<String, String> idByConnector;
+
+    // the key of each message in idByConnector, so it can be removed by id
+    private Map<String, String> connectorKeyById = new HashMap<String, String>();
+
+    public RecentMessageCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.statusById = new LruMap<String, MessageObject.Status>();
+        this.idByConnector = new LruMap<String, String>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (super.removeEldestEntry(eldest)) {
+                    connectorKeyById.remove(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public synchronized void put(MessageObject messageObject) {
+        statusById.put(messageObject.getId(), messageObject.getStatus());
+
+        if (messageObject.getCorrelationId() != null) {
+            String connectorKey = getConnectorKey(messageObject.getCorrelationId(), messageObject.getConnectorName());
+            String oldId = idByConnector.put(connectorKey, messageObject.getId());
+
+            if ((oldId != null) && !oldId.equals(messageObject.getId())) {
+                connectorKeyById.remove(oldId);
+            }
+
+            String oldConnectorKey = connectorKeyById.put(messageObject.getId(), connectorKey);
+
+            if ((oldConnectorKey != null) && !oldConnectorKey.equals(connectorKey)) {
+                idByConnector.remove(oldConnectorKey);
+            }
+        }
+    }
+
+    public synchronized void putStatus(String messageId, MessageObject.Status status) {
+        statusById.put(messageId, status);
+    }
+
+    /**
+     * Returns the status of the message, or null if it is not cached.
+     */
+    public synchronized MessageObject.Status getStatus(String messageId) {
+        return statusById.get(messageId);
+    }
+
+    /**
+     * Returns the id of the message sent by the connector for the given source
+     * message, or null if it is not cached.
+     */
+    public synchronized String getMessageId(String correlationId, String connectorName) {
+        return idByConnector.get(getConnectorKey(correlationId, connectorName));
+    }
+
+    public synchronized void remove(String messageId) {
+        statusById.remove(messageId);
+        String connectorKey = connectorKeyById.remove(messageId);
+
+        if (connectorKey != null) {
+            idByConnector.remove(connectorKey);
+        }
+    }
+
+    public synchronized void clear() {
+        statusById.clear();
+        idByConnector.clear();
+        connectorKeyById.clear();
+    }
+
+    private String getConnectorKey(String correlationId, String connectorName) {
+        return correlationId + "/" + connectorName;
+    }
+
+    private class LruMap<K, V> extends LinkedHashMap<K, V> {
+        public LruMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
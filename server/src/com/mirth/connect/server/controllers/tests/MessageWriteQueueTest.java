@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.controllers.tests;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mirth.connect.model.MessageObject;
+import com.mirth.connect.server.controllers.MessageWriteQueue;
+import com.mirth.connect.server.controllers.MessageWriteQueue.PendingWrite;
+
+public class MessageWriteQueueTest {
+    private MessageWriteQueue queue = new MessageWriteQueue(10, 1, 100);
+
+    // set right before the batch is finished, as if it had been committed
+    private volatile boolean committed = false;
+
+    @Test
+    public void testUpdateStatusWaiting() throws Exception {
+        queue.enqueue(createMessageObject("1", MessageObject.Status.RECEIVED), false);
+
+        Assert.assertTrue(queue.updateStatus("1", MessageObject.Status.SENT));
+        Assert.assertFalse(queue.updateStatus("2", MessageObject.Status.SENT));
+
+        List<PendingWrite> batch = queue.takeBatch();
+        Assert.assertEquals(1, batch.size());
+        Assert.assertEquals(MessageObject.Status.SENT, batch.get(0).getMessageObject().getStatus());
+    }
+
+    @Test
+    public void testUpdateStatusInFlight() throws Exception {
+        queue.enqueue(createMessageObject("1", MessageObject.Status.RECEIVED), false);
+        List<PendingWrite> batch = queue.takeBatch();
+
+        final Object[] result = new Object[2];
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                result[0] = queue.updateStatus("1", MessageObject.Status.SENT);
+                result[1] = committed;
+            }
+        };
+
+        thread.start();
+        assertBlocked(thread);
+        finish(batch);
+        thread.join(10000);
+
+        // the status is updated in the database once the row was written
+        Assert.assertEquals(Boolean.FALSE, result[0]);
+        Assert.assertEquals(Boolean.TRUE, result[1]);
+        Assert.assertEquals(MessageObject.Status.RECEIVED, batch.get(0).getMessageObject().getStatus());
+    }
+
+    @Test
+    public void testDiscardWaiting() throws Exception {
+        PendingWrite pendingWrite = queue.enqueue(createMessageObject("1", MessageObject.Status.RECEIVED), false);
+        queue.enqueue(createMessageObject("2", MessageObject.Status.RECEIVED), false);
+        queue.discard("1");
+
+        // the caller waiting for the discarded message is released
+        pendingWrite.await();
+
+        List<PendingWrite> batch = queue.takeBatch();
+        Assert.assertEquals(1, batch.size());
+        Assert.assertEquals("2", batch.get(0).getMessageObject().getId());
+    }
+
+    @Test
+    public void testDiscardInFlight() throws Exception {
+        queue.enqueue(createMessageObject("1", MessageObject.Status.RECEIVED), false);
+        List<PendingWrite> batch = queue.takeBatch();
+
+        // a later write of the same message is waiting behind the batch
+        queue.enqueue(createMessageObject("1", MessageObject.Status.SENT), true);
+
+        final Object[] result = new Object[1];
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                queue.discard("1");
+                result[0] = committed;
+            }
+        };
+
+        thread.start();
+        assertBlocked(thread);
+        finish(batch);
+        thread.join(10000);
+
+        // the message can only be deleted after its row was written
+        Assert.assertEquals(Boolean.TRUE, result[0]);
+
+        queue.shutdown();
+        Assert.assertTrue(queue.takeBatch().isEmpty());
+    }
+
+    @Test
+    public void testWriteInFlight() throws Exception {
+        queue.enqueue(createMessageObject("1", MessageObject.Status.RECEIVED), false);
+        List<PendingWrite> batch = queue.takeBatch();
+
+        // the new state is written after the batch instead of replacing it
+        queue.enqueue(createMessageObject("1", MessageObject.Status.SENT), true);
+        Assert.assertEquals(MessageObject.Status.RECEIVED, batch.get(0).getMessageObject().getStatus());
+        finish(batch);
+
+        List<PendingWrite> nextBatch = queue.takeBatch();
+        Assert.assertEquals(1, nextBatch.size());
+        Assert.assertEquals(MessageObject.Status.SENT, nextBatch.get(0).getMessageObject().getStatus());
+        Assert.assertTrue(nextBatch.get(0).isCheckIfMessageExists());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        PendingWrite pendingWrite = queue.enqueue(createMessageObject("1", MessageObject.Status.RECEIVED), false);
+        queue.shutdown();
+
+        // waiting messages are still written, new ones are left to the caller
+        Assert.assertNull(queue.enqueue(createMessageObject("2", MessageObject.Status.RECEIVED), false));
+        List<PendingWrite> batch = queue.takeBatch();
+        Assert.assertEquals(1, batch.size());
+        finish(batch);
+        pendingWrite.await();
+        Assert.assertTrue(queue.takeBatch().isEmpty());
+    }
+
+    private void assertBlocked(Thread thread) throws InterruptedException {
+        thread.join(200);
+        Assert.assertTrue(thread.isAlive());
+    }
+
+    private void finish(List<PendingWrite> batch) {
+        committed = true;
+        queue.finishBatch(batch);
+    }
+
+    private MessageObject createMessageObject(String id, MessageObject.Status status) {
+        MessageObject messageObject = new MessageObject();
+        messageObject.setId(id);
+        messageObject.setStatus(status);
+        return messageObject;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import com.mirth.connect.connectors.file.FileConnector;
 import com.mirth.connect.model.MessageObject;
 import com.mirth.connect.model.converters.DefaultXMLSerializer;
 import com.mirth.connect.model.converters.IXMLSerializer;
@@ -51,6 +52,11 @@ public abstract class Adaptor {
             messageObject.setId(UUIDGenerator.getUUID());
         }
 
+        // large files are received as a handle to a spooled copy
+        if (context.get(FileConnector.PROPERTY_SPOOLED_FILE) != null) {
+            messageObject.getChannelMap().put(FileConnector.PROPERTY_SPOOLED_FILE, context.get(FileConnector.PROPERTY_SPOOLED_FILE));
+        }
+
         messageObject.setServerId(configurationController.getServerId());
         messageObject.setChannelId(channelId);
         messageObject.setDateCreated(Calendar.getInstance());
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.mule.adaptors;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.mule.MuleException;
+import org.mule.config.i18n.Message;
+import org.mule.config.i18n.Messages;
+import org.mule.impl.MuleMessage;
+import org.mule.routing.outbound.FilteringMulticastingRouter.RoutingTurn;
+import org.mule.umo.MessagingException;
+import org.mule.umo.UMOException;
+import org.mule.umo.endpoint.UMOEndpoint;
+import org.mule.umo.routing.RoutingException;
+
+/**
+ * Hands the messages of a batch to a pool of worker threads, while the batch
+ * adaptor keeps reading the file. Only a few messages are queued ahead of the
+ * workers, so a large file is never held in memory.
+ *
+ * In ordered mode, the filters and transformers of several messages run at
+ * the same time, but the outbound router sends each message to the
+ * destinations only after the messages before it in the batch are done. Each
+ * message is passed a RoutingTurn, which the processor sets as the
+ * FilteringMulticastingRouter.ROUTING_TURN_PROPERTY of the message. The
+ * messages are routed on the worker threads, so this only holds for
+ * synchronous channels, and the readers of asynchronous channels process an
+ * ordered batch without workers. In unordered mode the messages are routed as
+ * soon as they are transformed.
+ */
+public class BatchMessagePipeline implements BatchMessageProcessor {
+    /**
+     * Processes the messages of the batch on the worker threads.
+     */
+    public interface Processor {
+        /**
+         * @param message
+         * @param turn
+         *            the turn of the message in an ordered batch, or null if
+         *            the messages are not ordered
+         */
+        public void processBatchMessage(String message, RoutingTurn turn) throws MessagingException, UMOException;
+    }
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private Processor processor;
+    private boolean ordered;
+    private ExecutorService workers;
+    private Semaphore capacity;
+
+    private long nextSequence = 0;
+    private long turn = 0;
+    private Set<Long> completed = new HashSet<Long>();
+    private volatile boolean errored = false;
+
+    /**
+     * @param name
+     *            the name of the worker threads
+     * @param processor
+     *            processes each message on a worker thread
+     * @param threads
+     *            the number of worker threads
+     * @param ordered
+     *            whether the messages are routed in the order of the batch
+     */
+    public BatchMessagePipeline(final String name, Processor processor, int threads, boolean ordered) {
+        this.processor = processor;
+        this.ordered = ordered;
+        threads = Math.max(1, threads);
+        capacity = new Semaphore(threads * 2);
+
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "_batch_worker_" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues the message for the workers. Waits while the workers are behind
+     * the reader.
+     */
+    public void processBatchMessage(String message) throws MessagingException, UMOException {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MuleException(new Message(Messages.INTERRUPTED_QUEUING_EVENT_FOR_X, "batch worker"), e);
+        }
+
+        Ticket ticket = new Ticket(nextSequence++);
+
+        try {
+            workers.execute(new Worker(message, ticket));
+        } catch (RuntimeException e) {
+            capacity.release();
+            ticket.complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the queued messages to be processed and stops the workers.
+     *
+     * @param endpoint
+     * @throws RoutingException
+     *             if any message of the batch could not be processed
+     */
+    public void finish(UMOEndpoint endpoint) throws RoutingException {
+        workers.shutdown();
+
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.debug("Waiting for the batch workers to finish");
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            errored = true;
+        }
+
+        if (errored) {
+            throw new RoutingException(new Message(Messages.ROUTING_ERROR), new MuleMessage(null), endpoint);
+        }
+    }
+
+    /*
+     * Marks the position of a message in the batch. The outbound router waits
+     * for the turn before the message is sent to the destinations, until the
+     * messages before it in the batch have been processed. A message is done
+     * once its destinations and postprocessor have run, so routing it to
+     * other channels on the same thread doesn't let the next message pass.
+     */
+    private class Ticket implements RoutingTurn {
+        private long sequence;
+        private boolean done = false;
+
+        private Ticket(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public void await() throws InterruptedException {
+            synchronized (BatchMessagePipeline.this) {
+                while (turn < sequence) {
+                    BatchMessagePipeline.this.wait();
+                }
+            }
+        }
+
+        public void complete() {
+            synchronized (BatchMessagePipeline.this) {
+                if (done) {
+                    return;
+                }
+
+                done = true;
+                completed.add(sequence);
+
+                while (completed.remove(turn)) {
+                    turn++;
+                }
+
+                BatchMessagePipeline.this.notifyAll();
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        private String message;
+        private Ticket ticket;
+
+        public Worker(String message, Ticket ticket) {
+            this.message = message;
+            this.ticket = ticket;
+        }
+
+        public void run() {
+            try {
+                processor.processBatchMessage(message, ordered ? ticket : null);
+            } catch (Throwable t) {
+                errored = true;
+                logger.error("Error processing message in batch.", t);
+            } finally {
+                ticket.complete();
+                capacity.release();
+            }
+        }
+    }
+}
@@ -9,10 +9,10 @@
 
 package com.mirth.connect.server.mule.adaptors;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.Reader;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.mule.config.i18n.Message;
@@ -29,6 +29,15 @@ import com.mirth.connect.model.converters.SerializerFactory;
 
 public class HL7v2Adaptor extends Adaptor implements BatchAdaptor {
     private Logger logger = Logger.getLogger(this.getClass());
+    private boolean useNativeModel = false;
+
+    /**
+     * When set, the message is not serialized to XML because the transformer
+     * works on the ER7 message directly.
+     */
+    public void setUseNativeModel(boolean useNativeModel) {
+        this.useNativeModel = useNativeModel;
+    }
 
     protected void populateMessage(boolean emptyFilterAndTransformer) throws AdaptorException {
         messageObject.setRawDataProtocol(com.mirth.connect.model.MessageObject.Protocol.HL7V2);
@@ -39,6 +48,8 @@ public class HL7v2Adaptor extends Adaptor implements BatchAdaptor {
             if (emptyFilterAndTransformer) {
                 populateMetadataFromEncoded(source);
                 messageObject.setEncodedData(source);
+            } else if (useNativeModel) {
+                populateMetadataFromEncoded(source);
             } else {
                 String xmlMessage = serializer.toXML(source);
                 populateMetadataFromXML(xmlMessage);
@@ -54,7 +65,7 @@ public class HL7v2Adaptor extends Adaptor implements BatchAdaptor {
         return SerializerFactory.getSerializer(Protocol.HL7V2, properties);
     }
 
-    public void processBatch(Reader src, Map properties, BatchMessageProcessor dest, UMOEndpoint endpoint) throws MessagingException, UMOException {
+    public void processBatch(Reader src, Map properties, BatchMessageProcessor dest, UMOEndpoint endpoint) throws MessagingException, UMOException, IOException {
         // TODO: The values of these parameters should come from the protocol
         // properties passed to processBatch
         // TODO: src is a character stream, not a byte stream
@@ -62,14 +73,15 @@ public class HL7v2Adaptor extends Adaptor implements BatchAdaptor {
         byte endOfMessage = (byte) 0x1C;
         byte endOfRecord = (byte) 0x0D;
 
-        Scanner scanner = new Scanner(src);
-        scanner.useDelimiter(Pattern.compile("\r\n|\r|\n"));
+        // the file is read one line at a time, so only the current message is
+        // held in memory
+        BufferedReader reader = new BufferedReader(src);
         StringBuilder message = new StringBuilder();
-        char data[] = { (char) startOfMessage, (char) endOfMessage };
         boolean errored = false;
+        String line = null;
 
-        while (scanner.hasNext()) {
-            String line = scanner.next().replaceAll(new String(data, 0, 1), "").replaceAll(new String(data, 1, 1), "").trim();
+        while ((line = reader.readLine()) != null) {
+            line = removeCharacters(line, (char) startOfMessage, (char) endOfMessage).trim();
 
             if ((line.length() == 0) || line.equals((char) endOfMessage) || line.startsWith("MSH")) {
                 if (message.length() > 0) {
@@ -83,11 +95,11 @@ public class HL7v2Adaptor extends Adaptor implements BatchAdaptor {
                     message = new StringBuilder();
                 }
 
-                while ((line.length() == 0) && scanner.hasNext()) {
-                    line = scanner.next();
+                while (line != null && line.length() == 0) {
+                    line = reader.readLine();
                 }
 
-                if (line.length() > 0) {
+                if (line != null) {
                     message.append(line);
                     message.append((char) endOfRecord);
                 }
@@ -113,10 +125,30 @@ public class HL7v2Adaptor extends Adaptor implements BatchAdaptor {
             }
         }
 
-        scanner.close();
-
         if (errored) {
             throw new RoutingException(new Message(Messages.ROUTING_ERROR), new MuleMessage(null), endpoint);
         }
     }
+
+    /*
+     * Removes the LLP frame characters from a line. Most lines have none, so
+     * they are returned as they are.
+     */
+    private String removeCharacters(String line, char first, char second) {
+        if (line.indexOf(first) == -1 && line.indexOf(second) == -1) {
+            return line;
+        }
+
+        StringBuilder builder = new StringBuilder(line.length());
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c != first && c != second) {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
 }
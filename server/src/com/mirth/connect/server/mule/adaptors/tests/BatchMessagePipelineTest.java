@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.mule.adaptors.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mule.routing.outbound.FilteringMulticastingRouter.RoutingTurn;
+import org.mule.umo.MessagingException;
+import org.mule.umo.UMOException;
+import org.mule.umo.routing.RoutingException;
+
+import com.mirth.connect.server.mule.adaptors.BatchMessagePipeline;
+
+public class BatchMessagePipelineTest {
+    private static final String BAD_MESSAGE = "bad";
+
+    // the messages in the order they were routed, and the turns they got
+    private List<String> routed = Collections.synchronizedList(new ArrayList<String>());
+    private List<RoutingTurn> turns = Collections.synchronizedList(new ArrayList<RoutingTurn>());
+
+    // the most messages that were transformed at the same time
+    private AtomicInteger transforming = new AtomicInteger();
+    private AtomicInteger maxTransforming = new AtomicInteger();
+
+    // when set, the messages wait here before they are transformed
+    private CountDownLatch release = null;
+
+    private BatchMessagePipeline.Processor processor = new BatchMessagePipeline.Processor() {
+        public void processBatchMessage(String message, RoutingTurn turn) throws MessagingException, UMOException {
+            turns.add(turn);
+
+            try {
+                if (release != null) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+
+                int count = transforming.incrementAndGet();
+
+                synchronized (maxTransforming) {
+                    maxTransforming.set(Math.max(maxTransforming.get(), count));
+                }
+
+                // the later messages of the batch are transformed faster
+                Thread.sleep(message.equals(BAD_MESSAGE) ? 0 : Math.max(0, 100 - Integer.parseInt(message) * 10));
+                transforming.decrementAndGet();
+
+                if (turn != null) {
+                    turn.await();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            if (message.equals(BAD_MESSAGE)) {
+                throw new RuntimeException("bad message");
+            }
+
+            routed.add(message);
+        }
+    };
+
+    @Test
+    public void testOrdered() throws Exception {
+        BatchMessagePipeline pipeline = new BatchMessagePipeline("test", processor, 4, true);
+        List<String> messages = process(pipeline, 10);
+        pipeline.finish(null);
+
+        // the messages are transformed at the same time, but routed in order
+        Assert.assertEquals(messages, routed);
+        Assert.assertTrue(maxTransforming.get() > 1);
+        Assert.assertFalse(turns.contains(null));
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        BatchMessagePipeline pipeline = new BatchMessagePipeline("test", processor, 4, false);
+        List<String> messages = process(pipeline, 10);
+        pipeline.finish(null);
+
+        // the later messages are faster, so they are routed first
+        Assert.assertEquals(messages.size(), routed.size());
+        Assert.assertTrue(routed.containsAll(messages));
+        Assert.assertFalse(messages.equals(routed));
+
+        for (RoutingTurn turn : turns) {
+            Assert.assertNull(turn);
+        }
+    }
+
+    @Test
+    public void testFailedMessage() throws Exception {
+        BatchMessagePipeline pipeline = new BatchMessagePipeline("test", processor, 4, true);
+        pipeline.processBatchMessage("1");
+        pipeline.processBatchMessage(BAD_MESSAGE);
+        pipeline.processBatchMessage("3");
+
+        try {
+            pipeline.finish(null);
+            Assert.fail("the batch did not fail");
+        } catch (RoutingException e) {
+        }
+
+        // the messages after the failed one still get their turn
+        Assert.assertEquals(2, routed.size());
+        Assert.assertEquals("1", routed.get(0));
+        Assert.assertEquals("3", routed.get(1));
+    }
+
+    @Test
+    public void testReaderWaitsForWorkers() throws Exception {
+        release = new CountDownLatch(1);
+        final BatchMessagePipeline pipeline = new BatchMessagePipeline("test", processor, 2, false);
+        final AtomicInteger queued = new AtomicInteger();
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        pipeline.processBatchMessage(String.valueOf(i));
+                        queued.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        reader.start();
+        reader.join(200);
+
+        // only twice as many messages as workers are queued ahead of them
+        Assert.assertTrue(reader.isAlive());
+        Assert.assertEquals(4, queued.get());
+
+        release.countDown();
+        reader.join(10000);
+        pipeline.finish(null);
+        Assert.assertEquals(10, routed.size());
+    }
+
+    private List<String> process(BatchMessagePipeline pipeline, int count) throws Exception {
+        List<String> messages = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            messages.add(String.valueOf(i));
+            pipeline.processBatchMessage(String.valueOf(i));
+        }
+
+        return messages;
+    }
+}
@@ -29,6 +29,7 @@ import com.mirth.connect.model.Connector.Mode;
 import com.mirth.connect.model.MessageObject;
 import com.mirth.connect.model.MessageObject.Protocol;
 import com.mirth.connect.model.converters.DefaultSerializerPropertiesFactory;
+import com.mirth.connect.model.converters.ER7Node;
 import com.mirth.connect.model.converters.IXMLSerializer;
 import com.mirth.connect.server.Constants;
 import com.mirth.connect.server.MirthJavascriptTransformerException;
@@ -42,7 +43,10 @@ import com.mirth.connect.server.controllers.ScriptController;
 import com.mirth.connect.server.controllers.TemplateController;
 import com.mirth.connect.server.mule.adaptors.Adaptor;
 import com.mirth.connect.server.mule.adaptors.AdaptorFactory;
+import com.mirth.connect.server.mule.adaptors.HL7v2Adaptor;
 import com.mirth.connect.server.util.CompiledScriptCache;
+import com.mirth.connect.server.util.ER7NodeList;
+import com.mirth.connect.server.util.JavaScriptScopePool;
 import com.mirth.connect.server.util.JavaScriptScopeUtil;
 import com.mirth.connect.server.util.JavaScriptUtil;
 import com.mirth.connect.util.StringUtil;
@@ -68,7 +72,8 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
     private String templateId;
     private String mode;
     private String template;
-    private boolean emptyFilterAndTransformer;
+    private boolean useNativeModel = false;
+    private JavaScriptScopePool scopePool = null;
 
     public String getChannelId() {
         return this.channelId;
@@ -160,6 +165,15 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
                 template = templateController.getTemplate(channelId, templateId);
             }
 
+            useNativeModel = isNativeModel();
+
+            try {
+                scopePool = new JavaScriptScopePool(context, generateSharedScript(), scriptId + "_shared");
+            } catch (RhinoException e) {
+                logger.warn("Could not build the shared scope for the filter and transformer functions, declaring them in every script instead", e);
+                scopePool = null;
+            }
+
             // Scripts are not compiled if they are blank or do not exist in the
             // database. Note that in Oracle, a blank script is the same as a
             // NULL script.
@@ -185,12 +199,16 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
     public Object transform(Object source, UMOEventContext context) throws TransformerException {
         MessageObject messageObject = null;
 
+        /*
+         * By setting emptyFilterAndTransformer we skip a lot of unneeded
+         * conversions and gain 10x speed. This is local since the same
+         * transformer can be called by several threads at once.
+         */
+        boolean emptyFilterAndTransformer = true;
+
         // ---- Begin MO checks -----
         try {
             Script script = compiledScriptCache.getCompiledScript(scriptId);
-            // By setting emptyFilterAndTransformer we skip a lot of unneeded
-            // conversions and gain 10x speed
-            emptyFilterAndTransformer = true;
 
             // Check the conditions for skipping transformation
             // 1. Script is not empty
@@ -252,6 +270,7 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
                     source = StringUtil.convertLFtoCR((String) source);
                 }
 
+                setNativeModel(adaptor, emptyFilterAndTransformer);
                 messageObject = adaptor.getMessage((String) source, channelId, encryptData, inboundProperties, emptyFilterAndTransformer, context.getMessage().getProperties());
 
                 // Grab and process our attachments
@@ -276,6 +295,7 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
                 }
 
                 Adaptor adaptor = AdaptorFactory.getAdaptor(Protocol.valueOf(inboundProtocol));
+                setNativeModel(adaptor, emptyFilterAndTransformer);
                 messageObject = adaptor.convertMessage(incomingMessageObject, getConnectorName(), channelId, encryptData, inboundProperties, emptyFilterAndTransformer);
                 messageObject.setEncodedDataProtocol(Protocol.valueOf(outboundProtocol));
             }
@@ -321,9 +341,16 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
         Logger scriptLogger = Logger.getLogger("filter");
         String phase = new String();
 
+        Scriptable scope = null;
+
         try {
             Context context = JavaScriptUtil.getInstance().getContext();
-            Scriptable scope = JavaScriptUtil.getInstance().getScope();
+
+            if (scopePool != null) {
+                scope = scopePool.getScope(context);
+            } else {
+                scope = JavaScriptUtil.getInstance().getScope();
+            }
 
             // load variables in JavaScript scope
             JavaScriptScopeUtil.addMessageObject(scope, messageObject);
@@ -333,6 +360,12 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
             scope.put("template", scope, template);
             scope.put("phase", scope, phase);
 
+            if (useNativeModel) {
+                // the message was not converted to XML, so msg wraps the ER7
+                scope.put("message", scope, messageObject.getRawData());
+                scope.put("msg", scope, new ER7NodeList(scope, ER7Node.parse(messageObject.getRawData(), inboundProperties)));
+            }
+
             // get the script from the cache and execute it
             Script compiledScript = compiledScriptCache.getCompiledScript(scriptId);
 
@@ -374,12 +407,19 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
                     }
                 }
 
-                if (transformedData != Scriptable.NOT_FOUND) {
+                if (transformedData instanceof ER7NodeList) {
+                    // encode the native message directly instead of
+                    // serializing it from XML
+                    ER7NodeList nativeMessage = (ER7NodeList) transformedData;
+                    messageObject.setTransformedData(nativeMessage.toXMLString());
+                    messageObject.setEncodedData(nativeMessage.toER7());
+                    messageObject.setEncodedDataProtocol(encodedDataProtocol);
+                } else if (transformedData != Scriptable.NOT_FOUND) {
                     // set the transformedData to the template
                     messageObject.setTransformedData(Context.toString(transformedData));
                 }
 
-                if (messageObject.getTransformedData() != null) {
+                if (!(transformedData instanceof ER7NodeList) && (messageObject.getTransformedData() != null)) {
                     IXMLSerializer<String> serializer = AdaptorFactory.getAdaptor(encodedDataProtocol).getSerializer(encodedDataProperties);
                     messageObject.setEncodedData(serializer.fromXML(messageObject.getTransformedData()));
                     messageObject.setEncodedDataProtocol(encodedDataProtocol);
@@ -409,13 +449,47 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
 
             throw new TransformerException(this, t);
         } finally {
+            if ((scope != null) && (scopePool != null)) {
+                scopePool.releaseScope(scope);
+            }
+
             Context.exit();
         }
     }
 
-    private String generateScript(String oldScript) {
-        logger.debug("generating script");
+    /*
+     * The native model skips the conversion to XML and gives the scripts an
+     * ER7NodeList for msg. It is used when it is turned on for the inbound
+     * data type, both data types are HL7v2 with the non-strict parser, and
+     * there is no outbound template.
+     */
+    private boolean isNativeModel() {
+        if (!Protocol.valueOf(inboundProtocol).equals(Protocol.HL7V2) || !Protocol.valueOf(outboundProtocol).equals(Protocol.HL7V2)) {
+            return false;
+        }
+
+        if ((template != null) && (template.length() > 0)) {
+            return false;
+        }
+
+        if ((inboundProperties == null) || !Boolean.parseBoolean(inboundProperties.get("useNativeModel")) || Boolean.parseBoolean(inboundProperties.get("useStrictParser"))) {
+            return false;
+        }
+
+        return (outboundProperties == null) || !Boolean.parseBoolean(outboundProperties.get("useStrictParser"));
+    }
 
+    private void setNativeModel(Adaptor adaptor, boolean emptyFilterAndTransformer) {
+        if (useNativeModel && !emptyFilterAndTransformer && (adaptor instanceof HL7v2Adaptor)) {
+            ((HL7v2Adaptor) adaptor).setUseNativeModel(true);
+        }
+    }
+
+    /*
+     * Returns the helper functions and the code template functions, which are
+     * the same for every message.
+     */
+    private String generateSharedScript() {
         StringBuilder newScript = new StringBuilder();
 
         // script used to check for existence of segment
@@ -465,11 +539,13 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
         newScript.append("else if (arguments.length == 2) { responseMap.put(key, value); }");
         newScript.append("}");
 
-        // Helper function to create segments
+        // Helper function to create segments (the native model creates them
+        // from msg instead of parsing XML)
+        String newSegment = useNativeModel ? "msg.createSegment(name)" : "new XML('<' + name + '></' + name + '>')";
         newScript.append("function createSegment(name, msgObj, index) {");
-        newScript.append("if (arguments.length == 1) { return new XML('<' + name + '></' + name + '>'); };");
+        newScript.append("if (arguments.length == 1) { return " + newSegment + "; };");
         newScript.append("if (arguments.length == 2) { index = 0; };");
-        newScript.append("msgObj[name][index] = new XML('<' + name + '></' + name + '>');");
+        newScript.append("msgObj[name][index] = " + newSegment + ";");
         newScript.append("return msgObj[name][index];");
         newScript.append("}");
 
@@ -477,7 +553,7 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
         newScript.append("function createSegmentAfter(name, segment) {");
         newScript.append("var msgObj = segment;");
         newScript.append("while (msgObj.parent() != undefined) { msgObj = msgObj.parent(); }");
-        newScript.append("msgObj.insertChildAfter(segment[0], new XML('<' + name + '></' + name + '>'));");
+        newScript.append("msgObj.insertChildAfter(segment[0], " + newSegment + ");");
         newScript.append("return msgObj.child(segment[0].childIndex() + 1);");
         newScript.append("}");
 
@@ -493,6 +569,31 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
         newScript.append("return attachment;\n");
         newScript.append("}\n");
 
+        try {
+            List<CodeTemplate> templates = codeTemplateController.getCodeTemplate(null);
+            for (CodeTemplate template : templates) {
+                if (template.getType() == CodeSnippetType.FUNCTION) {
+                    newScript.append(template.getCode());
+                }
+            }
+        } catch (ControllerException e) {
+            logger.error("Could not get user functions.", e);
+        }
+
+        return newScript.toString();
+    }
+
+    private String generateScript(String oldScript) {
+        logger.debug("generating script");
+
+        StringBuilder newScript = new StringBuilder();
+
+        // the shared functions are only declared here if they could not be
+        // added to the sealed parent scope
+        if (scopePool == null) {
+            newScript.append(generateSharedScript());
+        }
+
         /*
          * Ignore whitespace so blank lines are removed when deleting elements.
          * This also involves changing XmlProcessor.java in Rhino to account for
@@ -527,17 +628,20 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
             }
         }
 
-        if (stripIncomingNamespaces) {
-            newScript.append("var newMessage = message.replace(/xmlns:?[^=]*=[\"\"][^\"\"]*[\"\"]/g, '');\n");
-        } else {
-            newScript.append("var newMessage = message;\n");
-        }
+        // The native model puts msg in the scope in evaluateScript
+        if (!useNativeModel) {
+            if (stripIncomingNamespaces) {
+                newScript.append("var newMessage = message.replace(/xmlns:?[^=]*=[\"\"][^\"\"]*[\"\"]/g, '');\n");
+            } else {
+                newScript.append("var newMessage = message;\n");
+            }
 
-        newScript.append("msg = new XML(newMessage);\n");
+            newScript.append("msg = new XML(newMessage);\n");
 
-        // Set the default namespace if there is one left on the root node,
-        // otherwise set it to ''.
-        newScript.append("if (msg.namespace(\"\") != undefined) { default xml namespace = msg.namespace(\"\"); } else { default xml namespace = ''; }\n");
+            // Set the default namespace if there is one left on the root node,
+            // otherwise set it to ''.
+            newScript.append("if (msg.namespace(\"\") != undefined) { default xml namespace = msg.namespace(\"\"); } else { default xml namespace = ''; }\n");
+        }
 
         // turn the template into an E4X XML object
         if (template != null && template.length() > 0) {
@@ -577,17 +681,6 @@ public class JavaScriptTransformer extends AbstractEventAwareTransformer {
             newScript.append("tmp = new XML(newTemplate);\n");
         }
 
-        try {
-            List<CodeTemplate> templates = codeTemplateController.getCodeTemplate(null);
-            for (CodeTemplate template : templates) {
-                if (template.getType() == CodeSnippetType.FUNCTION) {
-                    newScript.append(template.getCode());
-                }
-            }
-        } catch (ControllerException e) {
-            logger.error("Could not get user functions.", e);
-        }
-
         newScript.append(oldScript); // has doFilter() and doTransform()
         newScript.append("if (doFilter() == true) { doTransform(); } else { messageObject.setStatus(Packages.com.mirth.connect.model.MessageObject.Status.FILTERED); };");
         return newScript.toString();
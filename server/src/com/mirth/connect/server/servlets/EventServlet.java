@@ -95,6 +95,35 @@ public class EventServlet extends MirthServlet {
                         response.setContentType(APPLICATION_XML);
                         serializer.toXML(eventController.getEventsByPageLimit(page, pageSize, max, uid, eventFilter), out);
                     }
+                } else if (operation.equals(Operations.EVENT_GET_BY_KEY)) {
+                    EventFilter eventFilter = (EventFilter) serializer.fromXML(request.getParameter("filter"));
+                    parameterMap.put("filter", eventFilter);
+
+                    if (!isUserAuthorized(request, parameterMap)) {
+                        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                    } else {
+                        Integer keyId = null;
+
+                        if (StringUtils.isNotBlank(request.getParameter("keyId"))) {
+                            keyId = Integer.parseInt(request.getParameter("keyId"));
+                        }
+
+                        int pageSize = Integer.parseInt(request.getParameter("pageSize"));
+                        response.setContentType(APPLICATION_XML);
+                        serializer.toXML(eventController.getEventsByKey(eventFilter, keyId, pageSize), out);
+                    }
+                } else if (operation.equals(Operations.EVENT_GET_COUNT)) {
+                    if (!isUserAuthorized(request, null)) {
+                        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                    } else {
+                        // a filter starts a new count, without one the last count is returned
+                        if (StringUtils.isNotBlank(request.getParameter("filter"))) {
+                            eventController.startEventCount((EventFilter) serializer.fromXML(request.getParameter("filter")), uid);
+                        }
+
+                        response.setContentType(TEXT_PLAIN);
+                        out.println(eventController.getEventCount(uid));
+                    }
                 } else if (operation.equals(Operations.EVENT_REMOVE_ALL)) {
                     if (!isUserAuthorized(request, null)) {
                         response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
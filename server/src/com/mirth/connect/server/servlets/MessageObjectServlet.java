@@ -11,6 +11,7 @@ package com.mirth.connect.server.servlets;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -101,6 +102,39 @@ public class MessageObjectServlet extends MirthServlet {
                         response.setContentType(APPLICATION_XML);
                         serializer.toXML(messageObjectController.getMessagesByPageLimit(page, pageSize, max, uid, filter), out);
                     }
+                } else if (operation.equals(Operations.MESSAGE_GET_BY_KEY)) {
+                    MessageObjectFilter filter = (MessageObjectFilter) serializer.fromXML(request.getParameter("filter"));
+                    redactMessageObjectFilter(request, filter);
+                    parameterMap.put("filter", filter);
+
+                    if (!isUserAuthorized(request, parameterMap)) {
+                        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                    } else {
+                        Calendar keyDateCreated = null;
+
+                        if (request.getParameter("keyDateCreated") != null && !request.getParameter("keyDateCreated").equals("")) {
+                            keyDateCreated = Calendar.getInstance();
+                            keyDateCreated.setTimeInMillis(Long.parseLong(request.getParameter("keyDateCreated")));
+                        }
+
+                        int pageSize = Integer.parseInt(request.getParameter("pageSize"));
+                        response.setContentType(APPLICATION_XML);
+                        serializer.toXML(messageObjectController.getMessagesByKey(filter, keyDateCreated, request.getParameter("keyId"), pageSize), out);
+                    }
+                } else if (operation.equals(Operations.MESSAGE_GET_COUNT)) {
+                    if (!isUserAuthorized(request, null)) {
+                        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                    } else {
+                        // a filter starts a new count, without one the last count is returned
+                        if (request.getParameter("filter") != null && !request.getParameter("filter").equals("")) {
+                            MessageObjectFilter filter = (MessageObjectFilter) serializer.fromXML(request.getParameter("filter"));
+                            redactMessageObjectFilter(request, filter);
+                            messageObjectController.startMessageCount(filter, uid);
+                        }
+
+                        response.setContentType(TEXT_PLAIN);
+                        out.println(messageObjectController.getMessageCount(uid));
+                    }
                 } else if (operation.equals(Operations.MESSAGE_REMOVE)) {
                     MessageObjectFilter filter = (MessageObjectFilter) serializer.fromXML(request.getParameter("filter"));
                     redactMessageObjectFilter(request, filter);
@@ -15,43 +15,120 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.apache.commons.lang.math.NumberUtils;
+
 import com.ibatis.sqlmap.client.extensions.ParameterSetter;
 import com.ibatis.sqlmap.client.extensions.ResultGetter;
 import com.ibatis.sqlmap.client.extensions.TypeHandlerCallback;
 import com.mirth.connect.model.converters.ObjectXMLSerializer;
 
+/**
+ * Stores maps of strings, like the attributes of an event. The maps are
+ * written as XML. Subclasses can write them in a compact length-prefixed
+ * format instead:
+ *
+ * <pre>
+ * #MAP1 [key length]:[key][value length]:[value] ...
+ * </pre>
+ *
+ * where the lengths are the number of characters. Both formats are always
+ * read.
+ */
 public class MapTypeHandler implements TypeHandlerCallback {
+    public static final String COMPACT_HEADER = "#MAP1 ";
+
     private ObjectXMLSerializer serializer = new ObjectXMLSerializer();
+    private boolean compact;
+
+    public MapTypeHandler() {
+        this(false);
+    }
+
+    protected MapTypeHandler(boolean compact) {
+        this.compact = compact;
+    }
 
     public void setParameter(ParameterSetter setter, Object parameter) throws SQLException {
         Map parameterMap = (Map) parameter;
-        Map map = new HashMap();
-        
+        Map<String, String> map = new HashMap<String, String>();
+
         // convert the values in the variable map to strings
         for (Iterator iter = parameterMap.entrySet().iterator(); iter.hasNext();) {
             Entry entry = (Entry) iter.next();
-            String keyName = new String();
-            if (entry.getKey() != null){
-                keyName = entry.getKey().toString();
-                String keyValue = new String();
-                if (entry.getValue() == null) {
-                    keyValue = "";
-                }
-                else {
-                    keyValue = entry.getValue().toString();
-                }
-                map.put(keyName, keyValue);
+
+            if (entry.getKey() != null) {
+                map.put(entry.getKey().toString(), (entry.getValue() == null) ? "" : entry.getValue().toString());
             }
         }
 
-        setter.setString(serializer.toXML(map));
+        if (compact) {
+            setter.setString(encode(map));
+        } else {
+            setter.setString(serializer.toXML(map));
+        }
     }
 
     public Object getResult(ResultGetter getter) throws SQLException {
-        return (Map) serializer.fromXML(getter.getString());
+        String source = getter.getString();
+
+        if ((source != null) && source.startsWith(COMPACT_HEADER)) {
+            return decode(source);
+        }
+
+        return (Map) serializer.fromXML(source);
     }
 
     public Object valueOf(String source) {
         return source;
     }
-}
\ No newline at end of file
+
+    public static String encode(Map<String, String> map) {
+        int length = COMPACT_HEADER.length();
+
+        for (Entry<String, String> entry : map.entrySet()) {
+            length += entry.getKey().length() + entry.getValue().length() + 16;
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(COMPACT_HEADER);
+
+        for (Entry<String, String> entry : map.entrySet()) {
+            builder.append(entry.getKey().length()).append(':').append(entry.getKey());
+            builder.append(entry.getValue().length()).append(':').append(entry.getValue());
+        }
+
+        return builder.toString();
+    }
+
+    public static Map<String, String> decode(String source) throws SQLException {
+        Map<String, String> map = new HashMap<String, String>();
+        int position = COMPACT_HEADER.length();
+        String key = null;
+
+        // keys and values alternate
+        while (position < source.length()) {
+            int separator = source.indexOf(':', position);
+            int length = (separator > position) ? NumberUtils.toInt(source.substring(position, separator), -1) : -1;
+
+            if ((length < 0) || (length > source.length() - separator - 1)) {
+                throw new SQLException("Invalid map value at position " + position);
+            }
+
+            position = separator + 1 + length;
+            String string = source.substring(separator + 1, position);
+
+            if (key == null) {
+                key = string;
+            } else {
+                map.put(key, string);
+                key = null;
+            }
+        }
+
+        if (key != null) {
+            throw new SQLException("Invalid map value, missing the value of " + key);
+        }
+
+        return map;
+    }
+}
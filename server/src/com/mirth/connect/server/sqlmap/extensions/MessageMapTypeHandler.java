@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.sqlmap.extensions;
+
+import java.util.Properties;
+
+import com.mirth.connect.util.PropertyLoader;
+
+/**
+ * Stores the connector, channel and response maps of a message. They are
+ * written in the compact format, unless "messagestore.mapformat" in
+ * mirth.properties is set to "xml", for example if other tools read these
+ * columns. Rows that were written as XML by earlier versions are rewritten in
+ * the compact format the next time they are updated.
+ *
+ * This handler is set on the message map columns in the sql maps, so other
+ * maps, like the event attributes, are still written as XML.
+ */
+public class MessageMapTypeHandler extends MapTypeHandler {
+    public MessageMapTypeHandler() {
+        super(isCompact());
+    }
+
+    private static boolean isCompact() {
+        Properties properties = PropertyLoader.loadProperties("mirth");
+        return (properties == null) || !"xml".equalsIgnoreCase(properties.getProperty("messagestore.mapformat", "").trim());
+    }
+}
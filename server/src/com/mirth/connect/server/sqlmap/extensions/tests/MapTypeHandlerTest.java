@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.sqlmap.extensions.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ibatis.sqlmap.client.extensions.ParameterSetter;
+import com.ibatis.sqlmap.client.extensions.ResultGetter;
+import com.mirth.connect.server.sqlmap.extensions.MapTypeHandler;
+import com.mirth.connect.server.sqlmap.extensions.MessageMapTypeHandler;
+
+public class MapTypeHandlerTest {
+    @Test
+    public void testEmptyMap() throws Exception {
+        String encoded = MapTypeHandler.encode(new HashMap<String, String>());
+        Assert.assertEquals(MapTypeHandler.COMPACT_HEADER, encoded);
+        Assert.assertTrue(MapTypeHandler.decode(encoded).isEmpty());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        map.put("key", "value");
+        map.put("", "");
+        map.put("empty", "");
+
+        // values that look like the length headers
+        map.put("3:abc", "12:");
+        map.put("time", "10:15:30");
+        map.put("1", "2:ab3:");
+        map.put("multiline", "MSH|^~\\&|\r\nPID|1||\n");
+
+        // lengths are counted in chars, so a surrogate pair counts as two
+        map.put("\ud83d\ude00", "\u65e5\u672c\ud834\udd1e");
+
+        String encoded = MapTypeHandler.encode(map);
+        Assert.assertTrue(encoded.startsWith(MapTypeHandler.COMPACT_HEADER));
+        Assert.assertEquals(map, MapTypeHandler.decode(encoded));
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("ab", "c:d");
+        Assert.assertEquals(MapTypeHandler.COMPACT_HEADER + "2:ab3:c:d", MapTypeHandler.encode(map));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        String[] sources = new String[] {
+            // the length is longer than the rest of the value
+            MapTypeHandler.COMPACT_HEADER + "3:key10:value",
+            // the length is not a number
+            MapTypeHandler.COMPACT_HEADER + "x:key5:value",
+            MapTypeHandler.COMPACT_HEADER + "-1:key5:value",
+            // there is no length
+            MapTypeHandler.COMPACT_HEADER + ":key5:value",
+            MapTypeHandler.COMPACT_HEADER + "key",
+            // a key without a value
+            MapTypeHandler.COMPACT_HEADER + "3:key",
+            MapTypeHandler.COMPACT_HEADER + "3:key5:value4:last"
+        };
+
+        for (String source : sources) {
+            try {
+                MapTypeHandler.decode(source);
+                Assert.fail("Decoded an invalid map: " + source);
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSetParameter() throws Exception {
+        Map<Object, Object> parameter = new HashMap<Object, Object>();
+        parameter.put("string", "value");
+        parameter.put("number", Integer.valueOf(42));
+        parameter.put("null", null);
+        parameter.put(null, "dropped");
+
+        String[] written = new String[1];
+        new MessageMapTypeHandler().setParameter(createSetter(written), parameter);
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("string", "value");
+        expected.put("number", "42");
+        expected.put("null", "");
+        Assert.assertEquals(expected, MapTypeHandler.decode(written[0]));
+    }
+
+    @Test
+    public void testSetParameterXml() throws Exception {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        attributes.put("channel", "ADT");
+        attributes.put("number", "42");
+
+        // other maps, like the event attributes, are still written as XML
+        String[] written = new String[1];
+        MapTypeHandler handler = new MapTypeHandler();
+        handler.setParameter(createSetter(written), attributes);
+
+        Assert.assertTrue(written[0].startsWith("<map>"));
+        Assert.assertEquals(attributes, handler.getResult(createGetter(written[0])));
+    }
+
+    @Test
+    public void testGetResult() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("key", "value");
+
+        // both handlers read both formats
+        Assert.assertEquals(map, new MessageMapTypeHandler().getResult(createGetter(MapTypeHandler.encode(map))));
+        Assert.assertEquals(map, new MapTypeHandler().getResult(createGetter(MapTypeHandler.encode(map))));
+    }
+
+    @Test
+    public void testGetResultXml() throws Exception {
+        // a row written by an earlier version
+        String xml = "<map>\n" +
+            "  <entry>\n" +
+            "    <string>MSH.9</string>\n" +
+            "    <string>ADT^A01</string>\n" +
+            "  </entry>\n" +
+            "  <entry>\n" +
+            "    <string>empty</string>\n" +
+            "    <string></string>\n" +
+            "  </entry>\n" +
+            "  <entry>\n" +
+            "    <string>#MAP1 </string>\n" +
+            "    <string>3:abc</string>\n" +
+            "  </entry>\n" +
+            "</map>";
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("MSH.9", "ADT^A01");
+        expected.put("empty", "");
+        expected.put("#MAP1 ", "3:abc");
+        Assert.assertEquals(expected, new MessageMapTypeHandler().getResult(createGetter(xml)));
+        Assert.assertEquals(expected, new MapTypeHandler().getResult(createGetter(xml)));
+    }
+
+    private ParameterSetter createSetter(final String[] written) {
+        return (ParameterSetter) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ParameterSetter.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("setString")) {
+                    written[0] = (String) args[0];
+                    return null;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private ResultGetter createGetter(final String value) {
+        return (ResultGetter) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultGetter.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getString")) {
+                    return value;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
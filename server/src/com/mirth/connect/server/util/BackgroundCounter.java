@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Counts the results of browser searches in the background, so the first page
+ * can be shown before the count is known. The count of the last search of
+ * each client (identified by a uid) is kept until the client polls for it.
+ */
+public class BackgroundCounter {
+    private static final int MAX_COUNTS = 100;
+    private static final int THREADS = 2;
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private ExecutorService executor;
+    private Map<String, Future<Integer>> counts = new LinkedHashMap<String, Future<Integer>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Future<Integer>> eldest) {
+            if (size() > MAX_COUNTS) {
+                eldest.getValue().cancel(false);
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    /**
+     * @param name
+     *            the name of the counting threads
+     */
+    public BackgroundCounter(final String name) {
+        executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts a count for the client, replacing the count of its previous
+     * search.
+     *
+     * @param uid
+     * @param count
+     */
+    public void start(String uid, Callable<Integer> count) {
+        Future<Integer> previous = null;
+
+        synchronized (counts) {
+            previous = counts.put(uid, executor.submit(count));
+        }
+
+        if (previous != null) {
+            // let a running query finish rather than interrupt the connection
+            previous.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the count of the last search of the client, or -1 if it is not
+     * done yet or failed.
+     *
+     * @param uid
+     * @return
+     */
+    public int get(String uid) {
+        Future<Integer> future = null;
+
+        synchronized (counts) {
+            future = counts.get(uid);
+        }
+
+        if ((future == null) || !future.isDone() || future.isCancelled()) {
+            return -1;
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            logger.warn("Could not count the search results", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return -1;
+    }
+}
@@ -54,6 +54,19 @@ public class DatabaseConnection {
         connection = DriverManager.getConnection(address, info);
     }
 
+    /**
+     * Initiliazes a database connection with a connection that was already
+     * opened, for example one from a connection pool.
+     * 
+     * @param address
+     * @param connection
+     */
+    public DatabaseConnection(String address, Connection connection) {
+        logger.debug("using existing database connection: address=" + address);
+        this.address = address;
+        this.connection = connection;
+    }
+
     /**
      * Returns the server address.
      * 
@@ -183,7 +196,7 @@ public class DatabaseConnection {
     }
 
     /**
-     * Closes the database connection.
+     * Closes the database connection, or returns it to its pool.
      * 
      */
     public void close() {
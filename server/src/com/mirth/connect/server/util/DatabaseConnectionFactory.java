@@ -14,8 +14,19 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
+/**
+ * Creates the database connections used by scripts. If the connection pools
+ * are enabled, the connections come from a pool for each driver, address and
+ * user, and closing them returns them to the pool.
+ */
 public class DatabaseConnectionFactory {
     public static DatabaseConnection createDatabaseConnection(String driver, String address, String username, String password) throws SQLException {
+        DatabaseConnectionPools pools = DatabaseConnectionPools.getInstance();
+
+        if (pools.isEnabled()) {
+            return new DatabaseConnection(address, pools.getConnection(driver, address, username, password));
+        }
+
         try {
             Class.forName(driver);
         } catch (Exception e) {
@@ -29,6 +40,12 @@ public class DatabaseConnectionFactory {
     }
 
     public static DatabaseConnection createDatabaseConnection(String driver, String address) throws SQLException {
+        DatabaseConnectionPools pools = DatabaseConnectionPools.getInstance();
+
+        if (pools.isEnabled()) {
+            return new DatabaseConnection(address, pools.getConnection(driver, address, null, null));
+        }
+
         try {
             Class.forName(driver);
         } catch (Exception e) {
@@ -39,6 +56,12 @@ public class DatabaseConnectionFactory {
     }
 
     public static Connection createConnection(String driver, String address, String username, String password) throws SQLException {
+        DatabaseConnectionPools pools = DatabaseConnectionPools.getInstance();
+
+        if (pools.isEnabled()) {
+            return pools.getConnection(driver, address, username, password);
+        }
+
         try {
             Class.forName(driver);
         } catch (Exception e) {
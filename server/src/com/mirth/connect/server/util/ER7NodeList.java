@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import com.mirth.connect.model.converters.ER7Node;
+
+/**
+ * Exposes an ER7Node tree to JavaScript with the subset of E4X XMLList
+ * behavior used by filters and transformers: msg['PID']['PID.5']['PID.5.1']
+ * reads and assignments, indexed access to repetitions, delete, for each, and
+ * the common XML methods (length, toString, toXMLString, text, children, name,
+ * parent, childIndex, appendChild, insertChildAfter, insertChildBefore, copy).
+ * Like E4X, accessing a missing element returns an empty list, and assigning
+ * to it creates the element.
+ */
+public class ER7NodeList extends ScriptableObject {
+    private static final Set<String> FUNCTIONS = new HashSet<String>(Arrays.asList(new String[] { "length", "toString", "toXMLString", "valueOf", "text", "children", "child", "name", "parent", "childIndex", "hasSimpleContent", "appendChild", "insertChildAfter", "insertChildBefore", "copy", "createSegment" }));
+
+    private List<ER7Node> nodes;
+
+    // the list and element name this list was selected from, used to create
+    // the element when a missing element is assigned
+    private ER7NodeList target;
+    private String targetName;
+
+    public ER7NodeList(Scriptable scope, ER7Node node) {
+        this(scope, new ArrayList<ER7Node>(), null, null);
+        nodes.add(node);
+    }
+
+    private ER7NodeList(Scriptable scope, List<ER7Node> nodes, ER7NodeList target, String targetName) {
+        this.nodes = nodes;
+        this.target = target;
+        this.targetName = targetName;
+        setParentScope(scope);
+    }
+
+    @Override
+    public String getClassName() {
+        return "XMLList";
+    }
+
+    /**
+     * Returns the single node in this list, or null if the list is empty or
+     * has more than one node.
+     */
+    public ER7Node getNode() {
+        return (nodes.size() == 1) ? nodes.get(0) : null;
+    }
+
+    public int length() {
+        return nodes.size();
+    }
+
+    @Override
+    public Object get(String name, Scriptable start) {
+        if (FUNCTIONS.contains(name)) {
+            return new ListFunction(name);
+        }
+
+        List<ER7Node> matches = new ArrayList<ER7Node>();
+
+        for (ER7Node node : nodes) {
+            matches.addAll(node.getChildren(name));
+        }
+
+        return new ER7NodeList(getParentScope(), matches, this, name);
+    }
+
+    @Override
+    public Object get(int index, Scriptable start) {
+        if ((index >= 0) && (index < nodes.size())) {
+            List<ER7Node> match = new ArrayList<ER7Node>();
+            match.add(nodes.get(index));
+            return new ER7NodeList(getParentScope(), match, null, null);
+        }
+
+        return NOT_FOUND;
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start) {
+        for (ER7Node node : nodes) {
+            if (!node.getChildren(name).isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean has(int index, Scriptable start) {
+        return (index >= 0) && (index < nodes.size());
+    }
+
+    /**
+     * Replaces the elements with the given name under the single node in this
+     * list. The first matching element is replaced and any others are
+     * removed, or a new element is created if there are none.
+     */
+    @Override
+    public void put(String name, Scriptable start, Object value) {
+        ER7Node node = resolve();
+        List<ER7Node> existing = node.getChildren(name);
+        ER7Node child = null;
+
+        if (existing.isEmpty()) {
+            child = node.createChild(name);
+        } else {
+            child = existing.get(0);
+
+            for (int i = 1; i < existing.size(); i++) {
+                node.removeChild(existing.get(i));
+            }
+        }
+
+        setValue(child, value);
+    }
+
+    /**
+     * Replaces the element at the given index. If the index is past the end
+     * of the list, a new element is added after the last one.
+     */
+    @Override
+    public void put(int index, Scriptable start, Object value) {
+        if ((index >= 0) && (index < nodes.size())) {
+            setValue(nodes.get(index), value);
+        } else if (targetName != null) {
+            ER7Node parent = target.resolve();
+            ER7Node child = parent.createChild(targetName);
+
+            if (!nodes.isEmpty()) {
+                parent.addChild(nodes.get(nodes.size() - 1).getChildIndex() + 1, child);
+            }
+
+            nodes.add(child);
+            setValue(child, value);
+        } else {
+            throw Context.reportRuntimeError("Cannot assign to index " + index + " of a list with " + nodes.size() + " elements");
+        }
+    }
+
+    @Override
+    public void delete(String name) {
+        for (ER7Node node : nodes) {
+            for (ER7Node child : node.getChildren(name)) {
+                node.removeChild(child);
+            }
+        }
+    }
+
+    @Override
+    public void delete(int index) {
+        if ((index >= 0) && (index < nodes.size())) {
+            ER7Node node = nodes.remove(index);
+
+            if (node.getParent() != null) {
+                node.getParent().removeChild(node);
+            }
+        }
+    }
+
+    @Override
+    public Object[] getIds() {
+        Object[] ids = new Object[nodes.size()];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Integer.valueOf(i);
+        }
+
+        return ids;
+    }
+
+    @Override
+    public Object getDefaultValue(Class typeHint) {
+        return toString();
+    }
+
+    /*
+     * Like E4X, an empty list is equal to undefined.
+     */
+    protected Object equivalentValues(Object value) {
+        if (value == Undefined.instance) {
+            return Boolean.valueOf(nodes.isEmpty());
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the text of a single element with simple content, or the XML of
+     * the list otherwise, as E4X does.
+     */
+    @Override
+    public String toString() {
+        if (nodes.size() == 1) {
+            ER7Node node = nodes.get(0);
+            return node.hasSimpleContent() ? node.getText() : node.toXML();
+        }
+
+        return toXMLString();
+    }
+
+    public String toXMLString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (ER7Node node : nodes) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+
+            builder.append(node.toXML());
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the ER7 encoding of the single node in this list.
+     */
+    public String toER7() {
+        ER7Node node = getNode();
+        return (node == null) ? "" : node.toER7();
+    }
+
+    /*
+     * Returns the single node in this list, creating it in the target list
+     * first if it doesn't exist yet.
+     */
+    private ER7Node resolve() {
+        if (nodes.isEmpty() && (target != null)) {
+            nodes.add(target.resolve().createChild(targetName));
+        }
+
+        if (nodes.size() != 1) {
+            throw Context.reportRuntimeError("Cannot assign to a list with " + nodes.size() + " elements");
+        }
+
+        return nodes.get(0);
+    }
+
+    private void setValue(ER7Node node, Object value) {
+        if (value instanceof ER7NodeList) {
+            node.setEncoded(((ER7NodeList) value).toER7());
+        } else {
+            node.setText(Context.toString(value));
+        }
+    }
+
+    private ER7NodeList wrap(List<ER7Node> list) {
+        return new ER7NodeList(getParentScope(), list, null, null);
+    }
+
+    private ER7NodeList wrap(ER7Node node) {
+        List<ER7Node> list = new ArrayList<ER7Node>();
+
+        if (node != null) {
+            list.add(node);
+        }
+
+        return wrap(list);
+    }
+
+    private Object callFunction(String name, Object[] args) {
+        if (name.equals("length")) {
+            return Integer.valueOf(nodes.size());
+        } else if (name.equals("toString") || name.equals("valueOf")) {
+            return toString();
+        } else if (name.equals("toXMLString")) {
+            return toXMLString();
+        } else if (name.equals("hasSimpleContent")) {
+            return Boolean.valueOf((nodes.size() == 1) && nodes.get(0).hasSimpleContent());
+        } else if (name.equals("text")) {
+            StringBuilder builder = new StringBuilder();
+
+            for (ER7Node node : nodes) {
+                builder.append(node.getText());
+            }
+
+            return builder.toString();
+        } else if (name.equals("children")) {
+            List<ER7Node> children = new ArrayList<ER7Node>();
+
+            for (ER7Node node : nodes) {
+                children.addAll(node.getChildren());
+            }
+
+            return wrap(children);
+        } else if (name.equals("child")) {
+            Object selector = (args.length > 0) ? args[0] : Undefined.instance;
+
+            if (selector instanceof Number) {
+                int index = ((Number) selector).intValue();
+                List<ER7Node> children = ((ER7NodeList) callFunction("children", args)).nodes;
+                return wrap(((index >= 0) && (index < children.size())) ? children.get(index) : null);
+            }
+
+            return get(Context.toString(selector), this);
+        }
+
+        // the remaining functions only apply to a single element
+        ER7Node node = getNode();
+
+        if (node == null) {
+            if (name.equals("parent")) {
+                return Undefined.instance;
+            }
+
+            throw Context.reportRuntimeError("The " + name + " method works only on lists containing one item");
+        }
+
+        if (name.equals("name")) {
+            return node.getName();
+        } else if (name.equals("parent")) {
+            return (node.getParent() == null) ? Undefined.instance : wrap(node.getParent());
+        } else if (name.equals("childIndex")) {
+            return Integer.valueOf(node.getChildIndex());
+        } else if (name.equals("copy")) {
+            return wrap(node.copy(node.getName()));
+        } else if (name.equals("createSegment")) {
+            return wrap(node.createSegment(Context.toString(args[0])));
+        } else if (name.equals("appendChild")) {
+            for (ER7Node child : getArgumentNodes(args, 0)) {
+                node.addChild(node.getChildren().size(), child.copy(child.getName()));
+            }
+
+            return this;
+        } else if (name.equals("insertChildAfter") || name.equals("insertChildBefore")) {
+            int position = 0;
+
+            if ((args.length > 0) && (args[0] instanceof ER7NodeList) && (((ER7NodeList) args[0]).getNode() != null)) {
+                position = ((ER7NodeList) args[0]).getNode().getChildIndex();
+
+                if (name.equals("insertChildAfter")) {
+                    position++;
+                }
+            } else if (name.equals("insertChildBefore")) {
+                position = node.getChildren().size();
+            }
+
+            for (ER7Node child : getArgumentNodes(args, 1)) {
+                node.addChild(position++, child.copy(child.getName()));
+            }
+
+            return this;
+        }
+
+        throw Context.reportRuntimeError("Unsupported method: " + name);
+    }
+
+    private List<ER7Node> getArgumentNodes(Object[] args, int index) {
+        if ((args.length <= index) || !(args[index] instanceof ER7NodeList)) {
+            throw Context.reportRuntimeError("Only HL7 elements can be added to an HL7 message");
+        }
+
+        return ((ER7NodeList) args[index]).nodes;
+    }
+
+    /*
+     * A method of the list it was read from, like msg['PID'].length
+     */
+    private class ListFunction extends BaseFunction {
+        private String name;
+
+        public ListFunction(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object call(Context context, Scriptable scope, Scriptable thisObj, Object[] args) {
+            return callFunction(name, args);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.log4j.Logger;
+
+/**
+ * An HttpClient that keeps its connections open between requests, so that the
+ * messages of a connector reuse them instead of connecting to the server for
+ * every message. The connections are shared by all threads of the connector.
+ *
+ * The time that requests wait for a connection from the pool is recorded, so
+ * that a limit that is too low for the number of threads can be found. The
+ * statistics of the open pools are shown on the Dashboard.
+ */
+public class HttpConnectionPool {
+    // the pools that have not been shut down
+    private static Set<HttpConnectionPool> pools = new LinkedHashSet<HttpConnectionPool>();
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private String name;
+    private HttpClient client;
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private IdleConnectionTimeoutThread idleConnectionTimeoutThread;
+
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong waits = new AtomicLong();
+    private AtomicLong timeouts = new AtomicLong();
+    private AtomicLong waitTime = new AtomicLong();
+    private AtomicLong maxWaitTime = new AtomicLong();
+
+    private class MeteredConnectionManager extends MultiThreadedHttpConnectionManager {
+        @Override
+        public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) throws ConnectionPoolTimeoutException {
+            long start = System.currentTimeMillis();
+
+            try {
+                HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+                recordWait(hostConfiguration, System.currentTimeMillis() - start);
+                return connection;
+            } catch (ConnectionPoolTimeoutException e) {
+                timeouts.incrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Creates the pool.
+     *
+     * @param name
+     *            the name used when logging the statistics of the pool
+     * @param maxConnectionsPerHost
+     * @param maxConnections
+     *            the maximum number of connections to all hosts
+     * @param idleTimeout
+     *            the time in milliseconds after which an unused connection is
+     *            closed, or 0 to keep it open
+     */
+    public HttpConnectionPool(String name, int maxConnectionsPerHost, int maxConnections, int idleTimeout) {
+        this.name = name;
+
+        connectionManager = new MeteredConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(Math.max(maxConnectionsPerHost, 1));
+        connectionManager.getParams().setMaxTotalConnections(Math.max(maxConnections, 1));
+
+        // a connection that was closed by the server is not reused
+        connectionManager.getParams().setStaleCheckingEnabled(true);
+
+        client = new HttpClient(connectionManager);
+
+        if (idleTimeout > 0) {
+            idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+            idleConnectionTimeoutThread.addConnectionManager(connectionManager);
+            idleConnectionTimeoutThread.setTimeoutInterval(Math.min(idleTimeout, 5000));
+            idleConnectionTimeoutThread.setConnectionTimeout(idleTimeout);
+            idleConnectionTimeoutThread.start();
+        }
+
+        synchronized (pools) {
+            pools.add(this);
+        }
+
+        logger.debug("created HTTP connection pool for " + name + ": max connections per host=" + maxConnectionsPerHost + ", max connections=" + maxConnections + ", idle timeout=" + idleTimeout);
+    }
+
+    /**
+     * Returns the client that uses the pool. Since the client is shared,
+     * credentials should be passed with the HttpState of each request instead
+     * of being set on the client.
+     *
+     * @return
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+
+    private void recordWait(HostConfiguration hostConfiguration, long time) {
+        requests.incrementAndGet();
+
+        if (time > 0) {
+            waits.incrementAndGet();
+            waitTime.addAndGet(time);
+
+            long max = maxWaitTime.get();
+
+            while ((time > max) && !maxWaitTime.compareAndSet(max, time)) {
+                max = maxWaitTime.get();
+            }
+
+            logger.debug("waited " + time + " ms for a connection to " + hostConfiguration.getHostURL() + " (" + name + ")");
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getWaitTime() {
+        return waitTime.get();
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    public String getStatistics() {
+        long waitCount = waits.get();
+        return "requests=" + requests.get() + ", waits=" + waitCount + ", average wait=" + (waitCount > 0 ? waitTime.get() / waitCount : 0) + " ms, max wait=" + maxWaitTime.get() + " ms, timeouts=" + timeouts.get();
+    }
+
+    /**
+     * Returns a row with the name, limits and wait statistics of each open
+     * pool.
+     *
+     * @return
+     */
+    public static List<String[]> getPoolStatistics() {
+        List<String[]> statistics = new ArrayList<String[]>();
+
+        synchronized (pools) {
+            for (HttpConnectionPool pool : pools) {
+                long waitCount = pool.getWaits();
+                long averageWaitTime = (waitCount > 0 ? pool.getWaitTime() / waitCount : 0);
+                statistics.add(new String[] { pool.name, String.valueOf(pool.connectionManager.getParams().getDefaultMaxConnectionsPerHost()), String.valueOf(pool.connectionManager.getParams().getMaxTotalConnections()), String.valueOf(pool.connectionManager.getConnectionsInPool()), String.valueOf(pool.getRequests()), String.valueOf(waitCount), String.valueOf(averageWaitTime), String.valueOf(pool.getMaxWaitTime()), String.valueOf(pool.getTimeouts()) });
+            }
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Closes all connections of the pool. The client can not be used
+     * afterwards.
+     */
+    public void shutdown() {
+        synchronized (pools) {
+            pools.remove(this);
+        }
+
+        if (idleConnectionTimeoutThread != null) {
+            idleConnectionTimeoutThread.shutdown();
+        }
+
+        connectionManager.shutdown();
+        logger.debug("closed HTTP connection pool for " + name + ": " + getStatistics());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util;
+
+import org.apache.log4j.Logger;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+/**
+ * Keeps the functions that every run of a script needs (helper functions and
+ * code templates) in a sealed parent scope that is built once, and hands out
+ * child scopes for running the script. Each thread reuses its child scope,
+ * which is cleared when it is released instead of being rebuilt.
+ *
+ * The shared functions find the variables of the current message through
+ * Rhino's dynamic scope (see JavaScriptUtil). If the current context does not
+ * have dynamic scope, the functions are declared in a new scope for every run
+ * instead.
+ */
+public class JavaScriptScopePool {
+    private Logger logger = Logger.getLogger(this.getClass());
+    private Script sharedScript;
+    private ScriptableObject sealedParentScope;
+    private ThreadLocal<Scriptable> idleScopes = new ThreadLocal<Scriptable>();
+
+    /**
+     * Compiles the shared script and runs it once to build the sealed parent
+     * scope. The context must already be entered.
+     *
+     * @param context
+     * @param sharedSource
+     *            the script that declares the shared functions
+     * @param sourceName
+     */
+    public JavaScriptScopePool(Context context, String sharedSource, String sourceName) {
+        sharedScript = context.compileString(sharedSource, sourceName, 1, null);
+        sealedParentScope = (ScriptableObject) JavaScriptUtil.getInstance().createScope(context, null);
+        sharedScript.exec(context, sealedParentScope);
+        sealedParentScope.sealObject();
+    }
+
+    /**
+     * Returns a scope for the current thread. The scope must be given back
+     * with releaseScope once the script has run.
+     *
+     * @param context
+     *            the entered context
+     * @return
+     */
+    public Scriptable getScope(Context context) {
+        if (!context.hasFeature(Context.FEATURE_DYNAMIC_SCOPE)) {
+            Scriptable scope = JavaScriptUtil.getInstance().createScope(context, null);
+            sharedScript.exec(context, scope);
+            return scope;
+        }
+
+        Scriptable scope = idleScopes.get();
+
+        if (scope == null) {
+            scope = JavaScriptUtil.getInstance().createScope(context, sealedParentScope);
+        } else {
+            // the scope is in use until it is released
+            idleScopes.set(null);
+        }
+
+        return scope;
+    }
+
+    /**
+     * Clears the variables of the last run from the scope and keeps it for the
+     * next run on this thread.
+     *
+     * @param scope
+     */
+    public void releaseScope(Scriptable scope) {
+        if (scope.getPrototype() != sealedParentScope) {
+            return;
+        }
+
+        try {
+            for (Object id : ((ScriptableObject) scope).getAllIds()) {
+                if (id instanceof String) {
+                    String name = (String) id;
+                    scope.delete(name);
+
+                    // variables declared with var can't be deleted
+                    if (scope.has(name, scope)) {
+                        scope.put(name, scope, Undefined.instance);
+                    }
+                } else if (id instanceof Number) {
+                    scope.delete(((Number) id).intValue());
+                }
+            }
+
+            idleScopes.set(scope);
+        } catch (Exception e) {
+            // the scope is dropped and a new one is created for the next run
+            logger.warn("Could not reset script scope", e);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.EvaluatorException;
 import org.mozilla.javascript.ImporterTopLevel;
 import org.mozilla.javascript.RhinoException;
@@ -45,6 +46,19 @@ public class JavaScriptUtil {
     // singleton pattern
     private static JavaScriptUtil instance = null;
 
+    static {
+        /*
+         * Dynamic scope lets functions that are compiled once into a sealed
+         * parent scope (see JavaScriptScopePool) find the variables of the
+         * script that calls them.
+         */
+        try {
+            ContextFactory.initGlobal(new DynamicScopeContextFactory());
+        } catch (IllegalStateException e) {
+            Logger.getLogger(JavaScriptUtil.class).warn("Could not enable dynamic scope for JavaScript contexts", e);
+        }
+    }
+
     private JavaScriptUtil() {
 
     }
@@ -121,8 +135,25 @@ public class JavaScriptUtil {
     }
 
     public Scriptable getScope() {
-        Scriptable scope = getContext().newObject(sealedSharedScope);
-        scope.setPrototype(sealedSharedScope);
+        return createScope(getContext(), null);
+    }
+
+    /**
+     * Creates a new top-level scope that inherits from the given scope, or
+     * from the shared scope if it is null. The context must already be
+     * entered.
+     * 
+     * @param context
+     * @param parentScope
+     * @return
+     */
+    public Scriptable createScope(Context context, Scriptable parentScope) {
+        if (parentScope == null) {
+            parentScope = sealedSharedScope;
+        }
+
+        Scriptable scope = context.newObject(parentScope);
+        scope.setPrototype(parentScope);
         scope.setParentScope(null);
         return scope;
     }
@@ -454,4 +485,14 @@ public class JavaScriptUtil {
         return source.toString();
     }
 
+    private static class DynamicScopeContextFactory extends ContextFactory {
+        @Override
+        protected boolean hasFeature(Context context, int featureIndex) {
+            if (featureIndex == Context.FEATURE_DYNAMIC_SCOPE) {
+                return true;
+            }
+
+            return super.hasFeature(context, featureIndex);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads updates across several cells so that threads
+ * incrementing it at the same time do not contend on a single value. Reading
+ * the counter sums the cells, so updates are cheap and reads are not.
+ */
+public class StripedCounter {
+    // cells are spaced apart so that each one sits on its own cache line
+    private static final int PADDING = 8;
+    private static final int STRIPES = nextPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+    private AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public StripedCounter() {
+
+    }
+
+    public StripedCounter(long initialValue) {
+        cells.set(0, initialValue);
+    }
+
+    public void add(long delta) {
+        cells.addAndGet(getCellIndex(), delta);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Decrements the counter unless it is already zero. Concurrent decrements
+     * may still take the counter below zero, so readers should clamp the sum.
+     */
+    public void decrementIfPositive() {
+        if (sum() > 0) {
+            add(-1);
+        }
+    }
+
+    public long sum() {
+        long sum = 0;
+
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    private int getCellIndex() {
+        long threadId = Thread.currentThread().getId();
+        int hash = (int) (threadId ^ (threadId >>> 32));
+        hash ^= (hash >>> 16);
+        return (hash & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int result = 1;
+
+        while (result < value) {
+            result <<= 1;
+        }
+
+        return result;
+    }
+}
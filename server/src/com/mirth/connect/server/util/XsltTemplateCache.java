@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps compiled XSLT stylesheets, so the XSLT transformer step compiles a
+ * stylesheet once instead of for every message. The stylesheets are shared by
+ * all channels and looked up by a hash of their text. The cache is cleared
+ * when channels are deployed, so stylesheets that include other files are
+ * compiled again.
+ */
+public class XsltTemplateCache {
+    private static final int MAX_TEMPLATES = 500;
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private Map<String, Templates> templates = new LinkedHashMap<String, Templates>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    // singleton pattern
+    private static XsltTemplateCache instance = null;
+
+    private XsltTemplateCache() {
+
+    }
+
+    public static XsltTemplateCache getInstance() {
+        synchronized (XsltTemplateCache.class) {
+            if (instance == null)
+                instance = new XsltTemplateCache();
+
+            return instance;
+        }
+    }
+
+    /**
+     * Returns a new transformer for the stylesheet. A transformer must only
+     * be used by one thread.
+     *
+     * @param stylesheet
+     *            the text of the stylesheet
+     * @return
+     * @throws TransformerConfigurationException
+     *             if the stylesheet could not be compiled
+     */
+    public Transformer newTransformer(String stylesheet) throws TransformerConfigurationException {
+        return getTemplates(stylesheet).newTransformer();
+    }
+
+    /**
+     * Returns the compiled stylesheet, compiling it if it is not cached.
+     *
+     * @param stylesheet
+     * @return
+     * @throws TransformerConfigurationException
+     */
+    public Templates getTemplates(String stylesheet) throws TransformerConfigurationException {
+        String key = DigestUtils.sha256Hex(stylesheet);
+        Templates compiled = null;
+
+        synchronized (templates) {
+            compiled = templates.get(key);
+        }
+
+        if (compiled == null) {
+            logger.debug("compiling stylesheet " + key);
+
+            // factories are not thread safe, and this only happens on a miss
+            compiled = TransformerFactory.newInstance().newTemplates(new StreamSource(new StringReader(stylesheet)));
+
+            synchronized (templates) {
+                templates.put(key, compiled);
+            }
+        }
+
+        return compiled;
+    }
+
+    public void clear() {
+        logger.debug("clearing compiled stylesheets");
+
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util.test;
+
+import junit.framework.TestCase;
+
+import com.mirth.connect.server.util.StripedCounter;
+
+public class StripedCounterTest extends TestCase {
+
+    public void testIncrementAndDecrement() {
+        StripedCounter counter = new StripedCounter(5);
+        counter.increment();
+        counter.add(3);
+        assertEquals(9, counter.sum());
+
+        counter.decrementIfPositive();
+        assertEquals(8, counter.sum());
+    }
+
+    public void testDecrementStopsAtZero() {
+        StripedCounter counter = new StripedCounter();
+        counter.decrementIfPositive();
+        assertEquals(0, counter.sum());
+    }
+
+    public void testReset() {
+        StripedCounter counter = new StripedCounter(10);
+        counter.increment();
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    public void testConcurrentIncrements() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        assertEquals(80000, counter.sum());
+    }
+}
@@ -643,7 +643,10 @@ public class MuleManager implements UMOManager
                 if (queueManager == null) {
                     try {
                         TransactionalQueueManager queueMgr = new TransactionalQueueManager();
-                        QueuePersistenceStrategy ps = new CachingPersistenceStrategy(getConfiguration().getPersistenceStrategy());
+                        QueuePersistenceStrategy ps = getConfiguration().getPersistenceStrategy();
+                        if (!(ps instanceof CachingPersistenceStrategy)) {
+                            ps = new CachingPersistenceStrategy(ps);
+                        }
                         queueMgr.setPersistenceStrategy(ps);
                         queueManager = queueMgr;
                     } catch (Exception e) {
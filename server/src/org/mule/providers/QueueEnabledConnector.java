@@ -14,6 +14,7 @@ import java.util.List;
 
 import javax.resource.spi.work.Work;
 
+import org.apache.commons.lang.StringUtils;
 import org.mule.MuleManager;
 import org.mule.config.QueueProfile;
 import org.mule.umo.UMOComponent;
@@ -49,10 +50,14 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
 	private int maxQueues = 16;
 	private int reconnectMillisecs = 10000;
 	private int queuePollInterval = 200;
+	private int queueThreads = 1;
+	private String queuePartitionKey = null;
 	private QueueProfile queueProfile;
 
 	private Thread queueThread = null;
 	private QueueWorker work = null;
+	private QueueWorkerPool workerPool = null;
+	private Object queueSignal = new Object();
 
     private boolean killQueueThread = false;
     private boolean queueThreadStarted = false;
@@ -64,6 +69,18 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
                 return;
             }
 
+            // several workers or ordering by partition need the worker pool
+            if ((queueThreads > 1) || StringUtils.isNotBlank(queuePartitionKey)) {
+                if (queue == null) {
+                    setQueues();
+                }
+
+                workerPool = new QueueWorkerPool(this, queue);
+                workerPool.start();
+                queueThreadStarted = true;
+                return;
+            }
+
 			work = (QueueWorker) createWork(queue);
 			queueThread = new Thread(work);
 			queueThread.setName(getName() + "_queue_thread");
@@ -75,6 +92,16 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
 	}
 
 	public synchronized void stopQueueThread() {
+		if (workerPool != null) {
+			try {
+				workerPool.stop();
+				workerPool = null;
+				queueThreadStarted = false;
+			} catch (Exception e) {
+				logger.error("Could not stop queue threads", e);
+			}
+		}
+
 		if (queueThread != null) {
 			try {
 				killQueueThread = true;
@@ -125,6 +152,7 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
 			queuedMessage.setMessageObject(messageObject);
 	
 			queue.put(queuedMessage);
+			signalQueue();
 		} catch (Exception e) {
 			String exceptionMessage = "Can't save payload to queue";
 			logger.error(exceptionMessage, e);
@@ -134,6 +162,29 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
 		}
 	}
 
+	/*
+	 * Wakes up the queue threads waiting for messages.
+	 */
+	private void signalQueue() {
+		synchronized (queueSignal) {
+			queueSignal.notifyAll();
+		}
+
+		if (workerPool != null) {
+			workerPool.signal();
+		}
+	}
+
+	/**
+	 * Creates another dispatcher for an additional queue thread. Returns null
+	 * if the connector only supports a single queue thread.
+	 * 
+	 * @return
+	 */
+	protected QueueEnabledMessageDispatcher createQueueDispatcher() {
+		return null;
+	}
+
 	protected Work createWork(Queue queue) throws SocketException {
 		return new QueueWorker();
 	}
@@ -179,7 +230,13 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
 						logger.debug("queue size = " + queue.size());
 						
 						if(queue.size() == 0) {
-							Thread.sleep(queuePollInterval);
+							// wait until a message is queued, but still check the
+							// queue every poll interval
+							synchronized (queueSignal) {
+								if (queue.size() == 0) {
+									queueSignal.wait(queuePollInterval);
+								}
+							}
 						} else {
 							// If the endpoint is active, try to send without
 							// waiting
@@ -397,6 +454,22 @@ public class QueueEnabledConnector extends AbstractServiceEnabledConnector {
         this.queuePollInterval = queuePollInterval;
     }
 
+    public int getQueueThreads() {
+        return queueThreads;
+    }
+
+    public void setQueueThreads(int queueThreads) {
+        this.queueThreads = Math.max(1, queueThreads);
+    }
+
+    public String getQueuePartitionKey() {
+        return queuePartitionKey;
+    }
+
+    public void setQueuePartitionKey(String queuePartitionKey) {
+        this.queuePartitionKey = queuePartitionKey;
+    }
+
     public QueueEnabledMessageDispatcher getDispatcher() {
 		return dispatcher;
 	}
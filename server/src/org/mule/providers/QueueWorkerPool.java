@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package org.mule.providers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.mule.util.queue.Queue;
+
+import com.mirth.connect.model.MessageObject;
+import com.mirth.connect.model.QueuedMessage;
+import com.mirth.connect.server.Constants;
+import com.mirth.connect.server.controllers.AlertController;
+import com.mirth.connect.server.controllers.ControllerFactory;
+import com.mirth.connect.server.controllers.MessageObjectController;
+
+/**
+ * Sends the messages in a connector queue with several worker threads.
+ *
+ * Messages are grouped into partitions by the connector's partition key (a
+ * template such as ${pid}). Messages in the same partition are sent one at a
+ * time in queue order, while different partitions are sent in parallel. If no
+ * partition key is set, every message is its own partition and no order is
+ * kept. When a send fails, only the partition of that message is retried
+ * later, with an exponential backoff starting at the reconnect interval.
+ *
+ * Messages stay in the queue until they have been sent, so nothing is lost if
+ * the server stops while they are being sent.
+ */
+public class QueueWorkerPool {
+    // the number of messages at the head of the queue that are read into
+    // partitions at a time
+    private static final int MAX_PENDING_MESSAGES = 1000;
+
+    // the reconnect interval is doubled up to 2^5 times
+    private static final int MAX_BACKOFF_EXPONENT = 5;
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private MessageObjectController messageObjectController = ControllerFactory.getFactory().createMessageObjectController();
+    private AlertController alertController = ControllerFactory.getFactory().createAlertController();
+    private TemplateValueReplacer replacer = new TemplateValueReplacer();
+
+    private QueueEnabledConnector connector;
+    private Queue queue;
+    private String partitionKey;
+
+    private Map<String, Partition> partitions = new LinkedHashMap<String, Partition>();
+    private Set<Object> pendingIds = new HashSet<Object>();
+    private List<Thread> workerThreads = new ArrayList<Thread>();
+    private List<QueueEnabledMessageDispatcher> dispatchers = new ArrayList<QueueEnabledMessageDispatcher>();
+
+    private boolean running = false;
+    private boolean refreshNeeded = true;
+    private long nextRefreshTime = 0;
+
+    public QueueWorkerPool(QueueEnabledConnector connector, Queue queue) {
+        this.connector = connector;
+        this.queue = queue;
+        this.partitionKey = StringUtils.trimToNull(connector.getQueuePartitionKey());
+    }
+
+    /**
+     * Starts the worker threads. The first worker uses the connector's
+     * dispatcher, and the others use a dispatcher of their own. If the
+     * connector can't create more dispatchers, a single worker is started.
+     */
+    public synchronized void start() {
+        running = true;
+        dispatchers.add(connector.getDispatcher());
+
+        for (int i = 1; i < connector.getQueueThreads(); i++) {
+            QueueEnabledMessageDispatcher dispatcher = connector.createQueueDispatcher();
+
+            if (dispatcher == null) {
+                logger.warn("Connector " + connector.getName() + " only supports one queue thread");
+                break;
+            }
+
+            dispatchers.add(dispatcher);
+        }
+
+        for (int i = 0; i < dispatchers.size(); i++) {
+            Thread thread = new Thread(new Worker(dispatchers.get(i)));
+            thread.setName(connector.getName() + "_queue_thread_" + (i + 1));
+            workerThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the worker threads and waits for them to finish.
+     */
+    public synchronized void stop() throws InterruptedException {
+        synchronized (partitions) {
+            running = false;
+            partitions.notifyAll();
+        }
+
+        for (QueueEnabledMessageDispatcher dispatcher : dispatchers) {
+            dispatcher.doDispose();
+        }
+
+        for (Thread thread : workerThreads) {
+            thread.interrupt();
+        }
+
+        for (Thread thread : workerThreads) {
+            thread.join();
+        }
+
+        workerThreads.clear();
+        dispatchers.clear();
+    }
+
+    /**
+     * Wakes up an idle worker after a message has been added to the queue.
+     */
+    public void signal() {
+        synchronized (partitions) {
+            refreshNeeded = true;
+            partitions.notifyAll();
+        }
+    }
+
+    /*
+     * Waits until a partition is ready to be sent and marks it busy. Returns
+     * null once the pool is stopped.
+     */
+    private Partition takePartition() throws InterruptedException {
+        synchronized (partitions) {
+            while (running) {
+                long now = System.currentTimeMillis();
+
+                if (refreshNeeded || (now >= nextRefreshTime)) {
+                    refreshPartitions();
+                }
+
+                long waitTime = Math.max(1, nextRefreshTime - now);
+
+                for (Partition partition : partitions.values()) {
+                    if (!partition.busy) {
+                        if (partition.retryTime <= now) {
+                            partition.busy = true;
+                            return partition;
+                        }
+
+                        waitTime = Math.min(waitTime, partition.retryTime - now);
+                    }
+                }
+
+                partitions.wait(waitTime);
+            }
+
+            return null;
+        }
+    }
+
+    /*
+     * Reads the messages at the head of the queue that aren't in a partition
+     * yet, and drops the ones that were removed from the queue.
+     */
+    private void refreshPartitions() {
+        refreshNeeded = false;
+        nextRefreshTime = System.currentTimeMillis() + connector.getQueuePollInterval();
+
+        List<Object> ids = queue.getIds(MAX_PENDING_MESSAGES);
+        Set<Object> queuedIds = new HashSet<Object>(ids);
+
+        for (Iterator<Partition> iterator = partitions.values().iterator(); iterator.hasNext();) {
+            Partition partition = iterator.next();
+
+            for (Iterator<Entry> entries = partition.entries.iterator(); entries.hasNext();) {
+                Entry entry = entries.next();
+
+                // the message being sent stays at the head until it is done
+                if (!queuedIds.contains(entry.id) && !(partition.busy && (entry == partition.entries.getFirst()))) {
+                    entries.remove();
+                    pendingIds.remove(entry.id);
+                }
+            }
+
+            if (partition.entries.isEmpty() && !partition.busy) {
+                iterator.remove();
+            }
+        }
+
+        for (Object id : ids) {
+            if (!pendingIds.contains(id)) {
+                QueuedMessage message = loadMessage(id);
+
+                if (message != null) {
+                    String key = getPartitionKey(id, message);
+                    Partition partition = partitions.get(key);
+
+                    if (partition == null) {
+                        partition = new Partition(key);
+                        partitions.put(key, partition);
+                    }
+
+                    partition.entries.add(new Entry(id, message));
+                    pendingIds.add(id);
+                }
+            }
+        }
+    }
+
+    private String getPartitionKey(Object id, QueuedMessage message) {
+        if (partitionKey == null) {
+            return id.toString();
+        }
+
+        return replacer.replaceValues(partitionKey, message.getMessageObject());
+    }
+
+    /*
+     * Loads a queued message, or removes it from the queue if it can't be
+     * sent.
+     */
+    private QueuedMessage loadMessage(Object id) {
+        Object payload = null;
+
+        try {
+            payload = queue.load(id);
+        } catch (Exception e) {
+            logger.warn("Could not load queued message " + id + " from queue " + connector.getQueueName(), e);
+        }
+
+        if ((payload instanceof QueuedMessage) && (((QueuedMessage) payload).getMessageObject() != null)) {
+            return (QueuedMessage) payload;
+        }
+
+        logger.error("Encountered invalid queued message.  Message removed from queue: queueId=" + connector.getQueueName());
+        removeMessage(id);
+
+        if (payload instanceof MessageObject) {
+            MessageObject messageObject = (MessageObject) payload;
+            Exception exception = new Exception("Unsupported message format in queue.  Removing message from the queue.  Reprocessing this message will fix this problem.");
+            alertController.sendAlerts(messageObject.getChannelId(), connector.getConnectorErrorCode(), "Unsupported message format in queue.", exception);
+            messageObjectController.setError(messageObject, connector.getConnectorErrorCode(), "Unsupported message format in queue.", exception, null);
+        }
+
+        return null;
+    }
+
+    private void removeMessage(Object id) {
+        try {
+            queue.remove(id);
+        } catch (Exception e) {
+            // the message was already removed from the queue
+            logger.debug("Could not remove message " + id + " from queue " + connector.getQueueName(), e);
+        }
+    }
+
+    /*
+     * Sends the message at the head of the partition and then makes the
+     * partition available again.
+     */
+    private void sendMessage(Partition partition, QueueEnabledMessageDispatcher dispatcher) throws InterruptedException {
+        Entry entry = null;
+
+        synchronized (partitions) {
+            entry = partition.entries.getFirst();
+        }
+
+        QueuedMessage message = entry.message;
+        boolean sent = false;
+        boolean remove = false;
+
+        try {
+            logger.debug("sending queued message: id = " + message.getMessageObject().getId() + ", endpointUri = " + message.getEndpointUri().toString());
+            sent = dispatcher.sendPayload(message);
+            remove = sent;
+
+            if (!sent) {
+                messageObjectController.resetQueuedStatus(message.getMessageObject());
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable t) {
+            if (message.getMessageObject().getStatus().equals(MessageObject.Status.ERROR)) {
+                // normal failure to connect to destination, reset the queued
+                // status
+                logger.debug("Connection error [" + t + "] at " + message.getEndpointUri().toString() + " queue size " + queue.size());
+                messageObjectController.resetQueuedStatus(message.getMessageObject());
+            } else {
+                String errorMessage = "Encountered invalid queued message.  Message removed from queue: queueId=" + connector.getQueueName();
+                logger.error(errorMessage, t);
+                alertController.sendAlerts(message.getMessageObject().getChannelId(), Constants.ERROR_400, errorMessage, t);
+                messageObjectController.setError(message.getMessageObject(), Constants.ERROR_400, errorMessage, t, null);
+                remove = true;
+            }
+        } finally {
+            if (remove) {
+                removeMessage(entry.id);
+            }
+
+            synchronized (partitions) {
+                if (remove) {
+                    partition.entries.remove(entry);
+                    pendingIds.remove(entry.id);
+                }
+
+                if (sent || remove) {
+                    partition.failures = 0;
+                    partition.retryTime = 0;
+                } else {
+                    partition.failures++;
+                    partition.retryTime = System.currentTimeMillis() + ((long) connector.getReconnectMillisecs() << Math.min(partition.failures - 1, MAX_BACKOFF_EXPONENT));
+                }
+
+                partition.busy = false;
+
+                if (partition.entries.isEmpty()) {
+                    partitions.remove(partition.key);
+                }
+
+                partitions.notifyAll();
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        private QueueEnabledMessageDispatcher dispatcher;
+
+        public Worker(QueueEnabledMessageDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        public void run() {
+            logger.debug("queuing thread started on connector: " + connector.getName());
+
+            try {
+                Partition partition = null;
+
+                while ((partition = takePartition()) != null) {
+                    sendMessage(partition, dispatcher);
+                }
+            } catch (InterruptedException e) {
+            } catch (Throwable t) {
+                logger.error("Queue thread failed on connector: " + connector.getName(), t);
+            }
+
+            logger.debug("queuing thread ended on connector: " + connector.getName());
+        }
+    }
+
+    private class Partition {
+        private String key;
+        private LinkedList<Entry> entries = new LinkedList<Entry>();
+        private boolean busy = false;
+        private int failures = 0;
+        private long retryTime = 0;
+
+        public Partition(String key) {
+            this.key = key;
+        }
+    }
+
+    private class Entry {
+        private Object id;
+        private QueuedMessage message;
+
+        public Entry(Object id, QueuedMessage message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+}
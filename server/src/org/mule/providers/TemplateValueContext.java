@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package org.mule.providers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.velocity.context.AbstractContext;
+
+/**
+ * A Velocity context that looks up variables in the maps it was given when a
+ * template uses them, instead of copying every map into the context first.
+ *
+ * A variable is taken from the values put into the context, then from the
+ * maps in the order they were added, then from the lazy values, which are
+ * only computed the first time they are used. Changes made by the template
+ * are kept in the context and never written to the maps.
+ */
+public class TemplateValueContext extends AbstractContext {
+    public interface LazyValue {
+        public Object getValue();
+    }
+
+    private Map<String, Object> values = new HashMap<String, Object>();
+    private List<Map<String, ?>> maps = new ArrayList<Map<String, ?>>();
+    private Map<String, LazyValue> lazyValues = new LinkedHashMap<String, LazyValue>();
+
+    /**
+     * Adds a map to look up variables in. Maps that are added earlier take
+     * precedence.
+     *
+     * @param map
+     */
+    public void addMap(Map<String, ?> map) {
+        if (map != null) {
+            maps.add(map);
+        }
+    }
+
+    /**
+     * Adds a value that is computed the first time a template uses it, if
+     * no map has a value with the same key.
+     *
+     * @param key
+     * @param value
+     */
+    public void addLazyValue(String key, LazyValue value) {
+        lazyValues.put(key, value);
+    }
+
+    public Object internalGet(String key) {
+        if (values.containsKey(key)) {
+            return values.get(key);
+        }
+
+        for (Map<String, ?> map : maps) {
+            Object value = map.get(key);
+
+            if (value != null) {
+                return value;
+            }
+        }
+
+        LazyValue lazyValue = lazyValues.remove(key);
+
+        if (lazyValue != null) {
+            Object value = lazyValue.getValue();
+            values.put(key, value);
+            return value;
+        }
+
+        return null;
+    }
+
+    public Object internalPut(String key, Object value) {
+        return values.put(key, value);
+    }
+
+    public boolean internalContainsKey(Object key) {
+        if (values.containsKey(key) || lazyValues.containsKey(key)) {
+            return true;
+        }
+
+        for (Map<String, ?> map : maps) {
+            if (map.containsKey(key)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public Object[] internalGetKeys() {
+        Set<Object> keys = new HashSet<Object>(values.keySet());
+
+        for (Map<String, ?> map : maps) {
+            keys.addAll(map.keySet());
+        }
+
+        keys.addAll(lazyValues.keySet());
+        return keys.toArray();
+    }
+
+    public Object internalRemove(Object key) {
+        lazyValues.remove(key);
+        return values.remove(key);
+    }
+}
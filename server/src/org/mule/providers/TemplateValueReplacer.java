@@ -9,11 +9,12 @@
 
 package org.mule.providers;
 
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -21,6 +22,10 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.context.InternalContextAdapterImpl;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
 import org.apache.velocity.tools.generic.DateTool;
 import org.mule.util.UUID;
 import org.mule.util.Utility;
@@ -33,6 +38,18 @@ import com.mirth.connect.util.Entities;
 import com.mirth.connect.util.XmlUtil;
 
 public class TemplateValueReplacer {
+    private static final int MAX_CACHED_TEMPLATES = 1000;
+    private static final String TEMPLATE_NAME = "LOG";
+
+    // parsed templates by template text, shared by all connectors
+    private static Map<String, SimpleNode> templateCache = new LinkedHashMap<String, SimpleNode>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SimpleNode> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    };
+    private static boolean initialized = false;
+
     private Logger logger = Logger.getLogger(this.getClass());
     private long count = 1;
 
@@ -66,9 +83,9 @@ public class TemplateValueReplacer {
      */
     public String replaceValues(String template, Map<String, Object> map) {
         if (hasReplaceableValues(template)) {
-            VelocityContext context = new VelocityContext();
-            loadContextFromMap(context, map);
-            loadContextFromMap(context, GlobalVariableStore.getInstance().getVariables());
+            TemplateValueContext context = new TemplateValueContext();
+            context.addMap(GlobalVariableStore.getInstance().getVariables());
+            context.addMap(map);
             return evaluate(context, template);
         } else {
             return template;
@@ -81,7 +98,7 @@ public class TemplateValueReplacer {
 
     public String replaceValues(String template, MessageObject messageObject, String channelId, String originalFilename) {
         if (hasReplaceableValues(template)) {
-            VelocityContext context = new VelocityContext();
+            TemplateValueContext context = new TemplateValueContext();
             loadContextFromMessageObject(context, messageObject, channelId, originalFilename);
             return evaluate(context, template);
         } else {
@@ -91,9 +108,9 @@ public class TemplateValueReplacer {
 
     public String replaceValues(String template, String channelId) {
         if (hasReplaceableValues(template)) {
-            VelocityContext context = new VelocityContext();
-            loadContextFromMap(context, GlobalChannelVariableStoreFactory.getInstance().get(channelId).getVariables());
-            loadContextFromMap(context, GlobalVariableStore.getInstance().getVariables());
+            TemplateValueContext context = new TemplateValueContext();
+            context.addMap(GlobalVariableStore.getInstance().getVariables());
+            context.addMap(GlobalChannelVariableStoreFactory.getInstance().get(channelId).getVariables());
             return evaluate(context, template);
         } else {
             return template;
@@ -102,20 +119,32 @@ public class TemplateValueReplacer {
 
     public String replaceValues(String template) {
         if (hasReplaceableValues(template)) {
-            VelocityContext context = new VelocityContext();
-            loadContextFromMap(context, GlobalVariableStore.getInstance().getVariables());
+            TemplateValueContext context = new TemplateValueContext();
+            context.addMap(GlobalVariableStore.getInstance().getVariables());
             return evaluate(context, template);
         } else {
             return template;
         }
     }
 
-    private String evaluate(VelocityContext context, String template) {
+    /*
+     * Renders the template with its cached parse tree. Velocity's own
+     * templates are rendered the same way: the tree is initialized once and
+     * can then be rendered by several threads at the same time.
+     */
+    private String evaluate(Context context, String template) {
         StringWriter writer = new StringWriter();
 
         try {
-            Velocity.init();
-            Velocity.evaluate(context, writer, "LOG", template);
+            SimpleNode node = getTemplate(template);
+            InternalContextAdapterImpl ica = new InternalContextAdapterImpl(context);
+
+            try {
+                ica.pushCurrentTemplateName(TEMPLATE_NAME);
+                node.render(ica, writer);
+            } finally {
+                ica.popCurrentTemplateName();
+            }
         } catch (Exception e) {
             logger.warn("Could not replace template values", e);
             return template;
@@ -124,6 +153,37 @@ public class TemplateValueReplacer {
         return writer.toString();
     }
 
+    private static SimpleNode getTemplate(String template) throws Exception {
+        synchronized (templateCache) {
+            if (!initialized) {
+                Velocity.init();
+                initialized = true;
+            }
+
+            SimpleNode node = templateCache.get(template);
+
+            if (node != null) {
+                return node;
+            }
+        }
+
+        SimpleNode node = RuntimeSingleton.parse(new StringReader(template), TEMPLATE_NAME);
+        InternalContextAdapterImpl ica = new InternalContextAdapterImpl(new VelocityContext());
+
+        try {
+            ica.pushCurrentTemplateName(TEMPLATE_NAME);
+            node.init(ica, RuntimeSingleton.getRuntimeServices());
+        } finally {
+            ica.popCurrentTemplateName();
+        }
+
+        synchronized (templateCache) {
+            templateCache.put(template, node);
+        }
+
+        return node;
+    }
+
     public String replaceURLValues(String url, MessageObject messageObject) {
         String host = new String();
 
@@ -146,33 +206,46 @@ public class TemplateValueReplacer {
         return host;
     }
 
-    private void loadContextFromMap(VelocityContext context, Map<String, Object> map) {
-        for (Iterator<Entry<String, Object>> iter = map.entrySet().iterator(); iter.hasNext();) {
-            Entry<String, Object> entry = iter.next();
-            context.put(entry.getKey().toString(), entry.getValue());
-        }
-    }
+    /*
+     * The maps are looked up when the template uses a variable. A variable in
+     * the global map hides one in the global channel map, which hides one in
+     * the channel map, which hides one in the connector map.
+     */
+    private void loadContextFromMessageObject(TemplateValueContext context, final MessageObject messageObject, String channelId, String originalFilename) {
+        // load global map variables
+        context.addMap(GlobalVariableStore.getInstance().getVariables());
 
-    private void loadContextFromMessageObject(VelocityContext context, MessageObject messageObject, String channelId, String originalFilename) {
-        // message variables
+        // if the messageObject was passed in, use its channelId
         if (messageObject != null) {
-            context.put("message", messageObject);
-            context.put("DICOMMESSAGE", DICOMUtil.getDICOMRawData(messageObject));
-            context.put("MESSAGEATTACH", DICOMUtil.reAttachMessage(messageObject));
-            loadContextFromMap(context, messageObject.getConnectorMap());
-            loadContextFromMap(context, messageObject.getChannelMap());
-
-            // if the messageObject was passed in, use its channelId
             channelId = messageObject.getChannelId();
         }
 
         if (channelId != null) {
             // load global channel map variables
-            loadContextFromMap(context, GlobalChannelVariableStoreFactory.getInstance().get(channelId).getVariables());
+            context.addMap(GlobalChannelVariableStoreFactory.getInstance().get(channelId).getVariables());
         }
 
-        // load global map variables
-        loadContextFromMap(context, GlobalVariableStore.getInstance().getVariables());
+        // message variables
+        if (messageObject != null) {
+            context.addMap(messageObject.getChannelMap());
+            context.addMap(messageObject.getConnectorMap());
+
+            Map<String, Object> messageValues = new HashMap<String, Object>();
+            messageValues.put("message", messageObject);
+            context.addMap(messageValues);
+
+            // these rebuild the whole message, so only when they are used
+            context.addLazyValue("DICOMMESSAGE", new TemplateValueContext.LazyValue() {
+                public Object getValue() {
+                    return DICOMUtil.getDICOMRawData(messageObject);
+                }
+            });
+            context.addLazyValue("MESSAGEATTACH", new TemplateValueContext.LazyValue() {
+                public Object getValue() {
+                    return DICOMUtil.reAttachMessage(messageObject);
+                }
+            });
+        }
 
         // we might have the originalfilename in the context
         if (context.get("originalFilename") != null) {
@@ -9,7 +9,14 @@
 
 package org.mule.routing.outbound;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.mule.config.i18n.Message;
 import org.mule.config.i18n.Messages;
@@ -22,8 +29,50 @@ import org.mule.umo.routing.RoutePathNotFoundException;
 import org.mule.umo.routing.RoutingException;
 
 public class FilteringMulticastingRouter extends FilteringOutboundRouter {
+    /*
+     * Endpoint property set on destinations that read the responses of earlier
+     * destinations. In parallel mode these destinations wait for every
+     * destination before them to finish.
+     */
+    public static final String DEPENDENT_PROPERTY = "dependent";
+
+    /*
+     * Message property holding a RoutingTurn. The message is only sent to
+     * the destinations once it is its turn.
+     */
+    public static final String ROUTING_TURN_PROPERTY = "routingTurn";
+
+    /**
+     * Holds back the routing of a message until the messages before it have
+     * been routed, e.g. for the messages of an ordered batch.
+     */
+    public interface RoutingTurn {
+        public void await() throws InterruptedException;
+    }
+
+    private ExecutorService destinationExecutor = null;
+
+    public ExecutorService getDestinationExecutor() {
+        return destinationExecutor;
+    }
+
+    /**
+     * Sets the executor used to dispatch the independent destinations of a
+     * message concurrently. Messages are still routed one at a time under the
+     * channel-wide lock. If no executor is set, destinations are also routed
+     * one at a time.
+     *
+     * @param destinationExecutor
+     */
+    public void setDestinationExecutor(ExecutorService destinationExecutor) {
+        this.destinationExecutor = destinationExecutor;
+    }
+
+    public boolean isParallelDestinations() {
+        return destinationExecutor != null;
+    }
+
     public UMOMessage route(UMOMessage message, UMOSession session, boolean synchronous) throws RoutingException {
-        UMOMessage result = null;
         List<String> destinations = (List<String>) message.getProperty("destinations");
 
         if (endpoints == null || endpoints.size() == 0) {
@@ -41,6 +90,21 @@ public class FilteringMulticastingRouter extends FilteringOutboundRouter {
             }
         }
 
+        awaitTurn(message);
+
+        if (synchronous && isParallelDestinations()) {
+            /*
+             * The dispatchers of the endpoints are not thread-safe, so only
+             * one message is routed at a time like the sequential loop. Its
+             * destinations still run in parallel, each on one thread.
+             */
+            synchronized (endpoints) {
+                return routeParallel(message, session, destinations);
+            }
+        }
+
+        UMOMessage result = null;
+
         try {
         	synchronized (endpoints) {
                 for (int i = 0; i < endpoints.size(); i++) {
@@ -74,4 +138,156 @@ public class FilteringMulticastingRouter extends FilteringOutboundRouter {
 
         return result;
     }
+
+    /*
+     * Waits until it is the turn of the message, if it has one. The turn is
+     * removed so it isn't passed on to the destinations.
+     */
+    private void awaitTurn(UMOMessage message) throws RoutingException {
+        Object turn = message.getProperty(ROUTING_TURN_PROPERTY);
+
+        if (turn instanceof RoutingTurn) {
+            message.removeProperty(ROUTING_TURN_PROPERTY);
+
+            try {
+                ((RoutingTurn) turn).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CouldNotRouteOutboundMessageException(message, (UMOEndpoint) endpoints.get(0), e);
+            }
+        }
+    }
+
+    /*
+     * Sends the message to every routable endpoint on the destination
+     * executor. Endpoints marked as dependent are sent on the calling thread
+     * once all of the endpoints before them have completed, so they can see
+     * their responses. The result is chosen the same way as the sequential
+     * loop: the first endpoint's response, unless a later endpoint is marked
+     * as the default.
+     */
+    private UMOMessage routeParallel(final UMOMessage message, final UMOSession session, List<String> destinations) throws RoutingException {
+        List<UMOEndpoint> routedEndpoints = new ArrayList<UMOEndpoint>();
+        List<Future<UMOMessage>> results = new ArrayList<Future<UMOMessage>>();
+
+        try {
+            for (int i = 0; i < endpoints.size(); i++) {
+                final UMOEndpoint endpoint = (UMOEndpoint) endpoints.get(i);
+
+                if (isRoutable(message, endpoint, destinations)) {
+                    if (isDependent(endpoint)) {
+                        // wait for every destination before this one
+                        for (int j = 0; j < results.size(); j++) {
+                            waitForResult(message, routedEndpoints.get(j), results.get(j));
+                        }
+
+                        results.add(new CompletedResult(send(session, message, endpoint)));
+                    } else {
+                        try {
+                            results.add(destinationExecutor.submit(new Callable<UMOMessage>() {
+                                public UMOMessage call() throws Exception {
+                                    return send(session, message, endpoint);
+                                }
+                            }));
+                        } catch (RejectedExecutionException e) {
+                            // the channel is being undeployed
+                            throw new CouldNotRouteOutboundMessageException(message, endpoint, e);
+                        }
+                    }
+
+                    routedEndpoints.add(endpoint);
+                }
+            }
+
+            UMOMessage result = null;
+
+            for (int i = 0; i < results.size(); i++) {
+                UMOEndpoint endpoint = routedEndpoints.get(i);
+                UMOMessage endpointResult = waitForResult(message, endpoint, results.get(i));
+
+                if ((i == 0) || (endpoint.getProperties().get("default") != null)) {
+                    result = endpointResult;
+                }
+            }
+
+            return result;
+        } catch (RoutingException e) {
+            throw e;
+        } catch (UMOException e) {
+            throw new CouldNotRouteOutboundMessageException(message, (UMOEndpoint) endpoints.get(0), e);
+        } finally {
+            // never leave destinations running for a message that failed
+            for (Future<UMOMessage> future : results) {
+                if (!future.isDone()) {
+                    try {
+                        future.get();
+                    } catch (Exception e) {
+                        logger.debug("Destination failed after routing was aborted", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private UMOMessage waitForResult(UMOMessage message, UMOEndpoint endpoint, Future<UMOMessage> future) throws RoutingException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CouldNotRouteOutboundMessageException(message, endpoint, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RoutingException) {
+                throw (RoutingException) cause;
+            }
+
+            throw new CouldNotRouteOutboundMessageException(message, endpoint, cause);
+        }
+    }
+
+    private boolean isRoutable(UMOMessage message, UMOEndpoint endpoint, List<String> destinations) {
+        if (destinations == null || destinations.contains(endpoint.getConnector().getName())) {
+            return (endpoint.getFilter() == null) || endpoint.getFilter().accept(message);
+        }
+
+        return false;
+    }
+
+    private boolean isDependent(UMOEndpoint endpoint) {
+        Object dependent = endpoint.getProperties().get(DEPENDENT_PROPERTY);
+        return (dependent != null) && dependent.toString().equalsIgnoreCase("true");
+    }
+
+    /*
+     * Wraps the result of a destination that was sent on the calling thread so
+     * it can be collected with the results of the other destinations.
+     */
+    private class CompletedResult implements Future<UMOMessage> {
+        private UMOMessage result;
+
+        public CompletedResult(UMOMessage result) {
+            this.result = result;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public boolean isDone() {
+            return true;
+        }
+
+        public UMOMessage get() {
+            return result;
+        }
+
+        public UMOMessage get(long timeout, TimeUnit unit) {
+            return result;
+        }
+    }
 }
@@ -10,22 +10,62 @@
 package org.mule.util.queue;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.collections.map.ReferenceMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
+/**
+ * Keeps recently stored and loaded objects of each queue in memory, so a
+ * queued message that is peeked and then polled is only read from the store
+ * once. Each queue has its own cache, bounded by the size of the objects in
+ * it, and the least recently used objects are evicted first.
+ *
+ * The objects are cached in their encoded form and every load returns a new
+ * copy, since the caller may change the object it gets, e.g. by adding an
+ * error before the message is queued again.
+ */
 public class CachingPersistenceStrategy implements QueuePersistenceStrategy
 {
+    public static final long DEFAULT_MAX_QUEUE_BYTES = 4L * 1024 * 1024;
+
+    private static final Log logger = LogFactory.getLog(CachingPersistenceStrategy.class);
 
     private QueuePersistenceStrategy ps;
-    private Map objects;
+    private long maxQueueBytes;
+    private QueuedMessageCodec codec = new QueuedMessageCodec();
+    private Map<String, QueueCache> caches = new ConcurrentHashMap<String, QueueCache>();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
 
     public CachingPersistenceStrategy(QueuePersistenceStrategy ps)
+    {
+        this(ps, DEFAULT_MAX_QUEUE_BYTES);
+    }
+
+    /**
+     * @param ps
+     *            the store to cache
+     * @param maxQueueBytes
+     *            the number of bytes cached for each queue, or 0 to
+     *            not cache anything
+     */
+    public CachingPersistenceStrategy(QueuePersistenceStrategy ps, long maxQueueBytes)
     {
         this.ps = ps;
-        this.objects = Collections.synchronizedMap(new ReferenceMap());
+        this.maxQueueBytes = maxQueueBytes;
+    }
+
+    public QueuePersistenceStrategy getPersistenceStrategy()
+    {
+        return ps;
     }
 
     public void open() throws IOException
@@ -35,27 +75,43 @@ public class CachingPersistenceStrategy implements QueuePersistenceStrategy
 
     public void close() throws IOException
     {
-        objects.clear();
+        logger.info("Queue cache statistics: " + getStatistics());
+        caches.clear();
         ps.close();
     }
 
     public Object load(String queue, Object id) throws IOException
     {
-        Object obj = objects.get(id);
-        return ps.load(queue, id);
+        QueueCache cache = getCache(queue);
+        byte[] data = cache.get(id);
+
+        if (data != null) {
+            hits.incrementAndGet();
+            return codec.decode(data);
+        }
+
+        misses.incrementAndGet();
+        Object obj = ps.load(queue, id);
+
+        if ((obj != null) && (maxQueueBytes > 0)) {
+            cache.put(id, codec.encode(obj));
+        }
+
+        return obj;
     }
 
     public void remove(String queue, Object id) throws IOException
     {
-        objects.remove(id);
+        getCache(queue).remove(id);
         ps.remove(queue, id);
     }
 
-	public void removeQueue(String queue) throws IOException {
-		objects.clear();
-		ps.removeQueue(queue);
-	}
-    
+    public void removeQueue(String queue) throws IOException
+    {
+        caches.remove(queue);
+        ps.removeQueue(queue);
+    }
+
     public List restore() throws IOException
     {
         return ps.restore();
@@ -64,8 +120,111 @@ public class CachingPersistenceStrategy implements QueuePersistenceStrategy
     public Object store(String queue, Object obj) throws IOException
     {
         Object id = ps.store(queue, obj);
-        objects.put(id, obj);
+
+        // the object is encoded now, so later changes to it are not cached
+        if (maxQueueBytes > 0) {
+            getCache(queue).put(id, codec.encode(obj));
+        }
+
         return id;
     }
 
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of bytes cached over all queues.
+     */
+    public long getCachedBytes()
+    {
+        long bytes = 0;
+
+        for (QueueCache cache : caches.values()) {
+            bytes += cache.getBytes();
+        }
+
+        return bytes;
+    }
+
+    public String getStatistics()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return "hits=" + hitCount + ", misses=" + misses.get() + ", hitRatio=" + ((total == 0) ? 0 : (hitCount * 100 / total)) + "%, evictions=" + evictions.get() + ", cachedBytes=" + getCachedBytes();
+    }
+
+    private QueueCache getCache(String queue)
+    {
+        QueueCache cache = caches.get(queue);
+
+        if (cache == null) {
+            synchronized (caches) {
+                cache = caches.get(queue);
+
+                if (cache == null) {
+                    cache = new QueueCache();
+                    caches.put(queue, cache);
+                }
+            }
+        }
+
+        return cache;
+    }
+
+    private class QueueCache
+    {
+        // in access order, so the first entry is the least recently used
+        private LinkedHashMap<Object, byte[]> objects = new LinkedHashMap<Object, byte[]>(16, 0.75f, true);
+        private long bytes = 0;
+
+        public synchronized byte[] get(Object id)
+        {
+            return objects.get(id);
+        }
+
+        public synchronized void put(Object id, byte[] data)
+        {
+            remove(id);
+
+            // objects larger than the whole cache are not cached
+            if (data.length > maxQueueBytes) {
+                return;
+            }
+
+            objects.put(id, data);
+            bytes += data.length;
+
+            for (Iterator<byte[]> iterator = objects.values().iterator(); (bytes > maxQueueBytes) && iterator.hasNext();) {
+                bytes -= iterator.next().length;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        public synchronized void remove(Object id)
+        {
+            byte[] data = objects.remove(id);
+
+            if (data != null) {
+                bytes -= data.length;
+            }
+        }
+
+        public synchronized long getBytes()
+        {
+            return bytes;
+        }
+    }
 }
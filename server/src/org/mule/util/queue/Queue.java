@@ -9,6 +9,8 @@
 
 package org.mule.util.queue;
 
+import java.util.List;
+
 /**
  * <code>Queue</code> TODO
  * 
@@ -50,4 +52,21 @@ public interface Queue
     void delete() throws Exception;
     
     public Object removeTop() throws Exception;
+
+    /**
+     * Returns the ids of up to maxIds objects at the head of this queue,
+     * without removing them.
+     * 
+     * @param maxIds
+     * @return the ids in queue order
+     */
+    List<Object> getIds(int maxIds);
+
+    /**
+     * Loads the object with the given id without removing it from this queue.
+     * 
+     * @param id
+     * @return
+     */
+    Object load(Object id) throws Exception;
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package org.mule.util.queue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mule.impl.endpoint.MuleEndpointURI;
+import org.mule.umo.endpoint.UMOEndpointURI;
+
+import com.mirth.connect.model.MessageObject;
+import com.mirth.connect.model.QueuedMessage;
+
+/**
+ * Encodes queued objects for SegmentFilePersistenceStrategy. QueuedMessages
+ * are written field by field, which is much smaller and faster than Java
+ * serialization (a serialized Calendar alone is over a kilobyte). Maps with
+ * values other than strings and any other objects are still written with
+ * Java serialization.
+ */
+public class QueuedMessageCodec {
+    private static final byte SERIALIZED = 0;
+    private static final byte QUEUED_MESSAGE = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING_MAP = 1;
+    private static final byte SERIALIZED_MAP = 2;
+
+    private static final byte ENDPOINT_ADDRESS = 1;
+    private static final byte SERIALIZED_ENDPOINT = 2;
+
+    // whether each endpoint can be rebuilt from its address
+    private Map<UMOEndpointURI, Boolean> parsableEndpoints = new WeakHashMap<UMOEndpointURI, Boolean>();
+
+    public byte[] encode(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        if ((object instanceof QueuedMessage) && (((QueuedMessage) object).getMessageObject() != null)) {
+            QueuedMessage queuedMessage = (QueuedMessage) object;
+            out.writeByte(QUEUED_MESSAGE);
+            writeEndpoint(out, queuedMessage.getEndpointUri());
+            writeMessageObject(out, queuedMessage.getMessageObject());
+        } else {
+            out.writeByte(SERIALIZED);
+            out.write(serialize(object));
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public Object decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        if (in.readByte() == QUEUED_MESSAGE) {
+            QueuedMessage queuedMessage = new QueuedMessage();
+            queuedMessage.setEndpointUri(readEndpoint(in));
+            queuedMessage.setMessageObject(readMessageObject(in));
+            return queuedMessage;
+        }
+
+        return deserialize(data, 1, data.length - 1);
+    }
+
+    private void writeMessageObject(DataOutputStream out, MessageObject messageObject) throws IOException {
+        writeString(out, messageObject.getId());
+        writeString(out, messageObject.getServerId());
+        writeString(out, messageObject.getChannelId());
+        writeString(out, messageObject.getSource());
+        writeString(out, messageObject.getType());
+        writeString(out, (messageObject.getStatus() == null) ? null : messageObject.getStatus().name());
+        writeCalendar(out, messageObject.getDateCreated());
+        writeString(out, messageObject.getRawData());
+        writeString(out, (messageObject.getRawDataProtocol() == null) ? null : messageObject.getRawDataProtocol().name());
+        writeString(out, messageObject.getTransformedData());
+        writeString(out, (messageObject.getTransformedDataProtocol() == null) ? null : messageObject.getTransformedDataProtocol().name());
+        writeString(out, messageObject.getEncodedData());
+        writeString(out, (messageObject.getEncodedDataProtocol() == null) ? null : messageObject.getEncodedDataProtocol().name());
+        writeString(out, messageObject.getConnectorName());
+        out.writeBoolean(messageObject.isEncrypted());
+        writeString(out, messageObject.getErrors());
+        writeString(out, messageObject.getVersion());
+        writeString(out, messageObject.getCorrelationId());
+        out.writeBoolean(messageObject.isAttachment());
+        writeMap(out, messageObject.getConnectorMap());
+        writeMap(out, messageObject.getResponseMap());
+        writeMap(out, messageObject.getChannelMap());
+        writeMap(out, messageObject.getContext());
+    }
+
+    private MessageObject readMessageObject(DataInputStream in) throws IOException {
+        MessageObject messageObject = new MessageObject();
+        messageObject.setId(readString(in));
+        messageObject.setServerId(readString(in));
+        messageObject.setChannelId(readString(in));
+        messageObject.setSource(readString(in));
+        messageObject.setType(readString(in));
+        String status = readString(in);
+        messageObject.setStatus((status == null) ? null : MessageObject.Status.valueOf(status));
+        messageObject.setDateCreated(readCalendar(in));
+        messageObject.setRawData(readString(in));
+        messageObject.setRawDataProtocol(readProtocol(in));
+        messageObject.setTransformedData(readString(in));
+        messageObject.setTransformedDataProtocol(readProtocol(in));
+        messageObject.setEncodedData(readString(in));
+        messageObject.setEncodedDataProtocol(readProtocol(in));
+        messageObject.setConnectorName(readString(in));
+        messageObject.setEncrypted(in.readBoolean());
+        messageObject.setErrors(readString(in));
+        messageObject.setVersion(readString(in));
+        messageObject.setCorrelationId(readString(in));
+        messageObject.setAttachment(in.readBoolean());
+        messageObject.setConnectorMap(readMap(in));
+        messageObject.setResponseMap(readMap(in));
+        messageObject.setChannelMap(readMap(in));
+        messageObject.setContext(readMap(in));
+        return messageObject;
+    }
+
+    /*
+     * Endpoints are written as their address if parsing the address gives
+     * the same endpoint back, which is checked once per endpoint.
+     */
+    private void writeEndpoint(DataOutputStream out, UMOEndpointURI endpointUri) throws IOException {
+        if (endpointUri == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        Boolean parsable = null;
+
+        synchronized (parsableEndpoints) {
+            parsable = parsableEndpoints.get(endpointUri);
+        }
+
+        if (parsable == null) {
+            try {
+                UMOEndpointURI parsed = new MuleEndpointURI(endpointUri.toString());
+                parsable = Boolean.valueOf(endpointUri.toString().equals(parsed.toString()) && equals(endpointUri.getConnectorName(), parsed.getConnectorName()) && equals(endpointUri.getEndpointName(), parsed.getEndpointName()));
+            } catch (Exception e) {
+                parsable = Boolean.FALSE;
+            }
+
+            synchronized (parsableEndpoints) {
+                parsableEndpoints.put(endpointUri, parsable);
+            }
+        }
+
+        if (parsable.booleanValue()) {
+            out.writeByte(ENDPOINT_ADDRESS);
+            writeString(out, endpointUri.toString());
+        } else {
+            out.writeByte(SERIALIZED_ENDPOINT);
+            writeBytes(out, serialize(endpointUri));
+        }
+    }
+
+    private UMOEndpointURI readEndpoint(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+
+        if (type == ENDPOINT_ADDRESS) {
+            try {
+                return new MuleEndpointURI(readString(in));
+            } catch (Exception e) {
+                throw (IOException) new IOException("Could not read queued endpoint").initCause(e);
+            }
+        } else if (type == SERIALIZED_ENDPOINT) {
+            byte[] data = readBytes(in);
+            return (UMOEndpointURI) deserialize(data, 0, data.length);
+        }
+
+        return null;
+    }
+
+    /*
+     * Maps of strings are written directly, anything else is serialized. The
+     * map can still be changed by other destinations while it is written, so
+     * the entries are copied once and checked and written from the copy.
+     */
+    private void writeMap(DataOutputStream out, Map map) throws IOException {
+        List<Entry> entries = null;
+
+        if (map instanceof ConcurrentHashMap) {
+            entries = new ArrayList<Entry>(map.entrySet());
+        }
+
+        if (map == null) {
+            out.writeByte(NULL);
+        } else if ((entries != null) && isStringMap(entries)) {
+            out.writeByte(STRING_MAP);
+            out.writeInt(entries.size());
+
+            for (Entry entry : entries) {
+                writeString(out, (String) entry.getKey());
+                writeString(out, (String) entry.getValue());
+            }
+        } else {
+            out.writeByte(SERIALIZED_MAP);
+            writeBytes(out, serialize(map));
+        }
+    }
+
+    private Map readMap(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+
+        if (type == STRING_MAP) {
+            int size = in.readInt();
+            Map<String, String> map = new ConcurrentHashMap<String, String>();
+
+            for (int i = 0; i < size; i++) {
+                map.put(readString(in), readString(in));
+            }
+
+            return map;
+        } else if (type == SERIALIZED_MAP) {
+            byte[] data = readBytes(in);
+            return (Map) deserialize(data, 0, data.length);
+        }
+
+        return null;
+    }
+
+    private boolean isStringMap(List<Entry> entries) {
+        for (Entry entry : entries) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void writeCalendar(DataOutputStream out, Calendar calendar) throws IOException {
+        if (calendar == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeLong(calendar.getTimeInMillis());
+            writeString(out, calendar.getTimeZone().getID());
+        }
+    }
+
+    private Calendar readCalendar(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        long time = in.readLong();
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(readString(in)));
+        calendar.setTimeInMillis(time);
+        return calendar;
+    }
+
+    private MessageObject.Protocol readProtocol(DataInputStream in) throws IOException {
+        String protocol = readString(in);
+        return (protocol == null) ? null : MessageObject.Protocol.valueOf(protocol);
+    }
+
+    /*
+     * Strings can be longer than the 64k supported by writeUTF, so they are
+     * written as UTF-8 bytes with their length.
+     */
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            writeBytes(out, value.getBytes("UTF-8"));
+        }
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return (bytes == null) ? null : new String(bytes, "UTF-8");
+    }
+
+    private void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(byte[] data, int offset, int length) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw (IOException) new IOException("Could not read queued object").initCause(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean equals(String value1, String value2) {
+        return (value1 == null) ? (value2 == null) : value1.equals(value2);
+    }
+}
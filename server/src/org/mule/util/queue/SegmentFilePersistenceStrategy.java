@@ -0,0 +1,731 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package org.mule.util.queue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.doomdark.uuid.UUIDGenerator;
+import org.mule.MuleManager;
+import org.mule.config.MuleConfiguration;
+import org.mule.umo.UMOEvent;
+
+import com.mirth.connect.model.QueuedMessage;
+
+/**
+ * Stores queued objects by appending them to large segment files instead of
+ * writing a file per object. Removing an object appends a small remove
+ * record. An in-memory index maps each queue and id to the location of its
+ * record, and is rebuilt on startup by reading only the record headers.
+ *
+ * A background thread compacts old segments: once most of the records in a
+ * segment have been removed, the remaining ones are copied to the current
+ * segment and the old segment file is deleted.
+ *
+ * Each record is laid out as:
+ *
+ * <pre>
+ * int    record length (including this header)
+ * byte   type (PUT, REMOVE or REMOVE_QUEUE)
+ * long   sequence number
+ * long   sequence number of the removed record (REMOVE only)
+ * utf    queue name
+ * utf    id
+ * bytes  data (PUT only)
+ * int    CRC32 of everything before it
+ * </pre>
+ */
+public class SegmentFilePersistenceStrategy implements QueuePersistenceStrategy {
+    public static final String STORE_DIRECTORY = "queuesegments";
+    public static final String SEGMENT_PREFIX = "segment-";
+    public static final String SEGMENT_EXTENSION = ".dat";
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte REMOVE_QUEUE = 3;
+
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long COMPACTION_INTERVAL = 30000;
+    private static final int HEADER_READ_SIZE = 256;
+    private static final int MAX_HEADER_SIZE = 4 + 1 + 8 + 8 + 2 * (2 + 65535);
+
+    // segments with less than this part of their bytes still queued are
+    // compacted
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private static final Log logger = LogFactory.getLog(SegmentFilePersistenceStrategy.class);
+
+    private File store;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private QueuedMessageCodec codec = new QueuedMessageCodec();
+    private UUIDGenerator gen = UUIDGenerator.getInstance();
+
+    private TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+    private Segment currentSegment;
+    private long sequence = 0;
+
+    // queue name -> id -> location of the stored record
+    private Map<String, Map<String, Location>> index = new ConcurrentHashMap<String, Map<String, Location>>();
+
+    private Thread compactionThread;
+    private volatile boolean running = false;
+
+    public SegmentFilePersistenceStrategy() {
+
+    }
+
+    public SegmentFilePersistenceStrategy(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void open() throws IOException {
+        String path = MuleManager.getConfiguration().getWorkingDirectory() + File.separator + STORE_DIRECTORY;
+        open(new File(path).getCanonicalFile());
+
+        // move any messages left in the file store over to this store
+        File fileStore = new File(MuleManager.getConfiguration().getWorkingDirectory(), MuleConfiguration.DEFAULT_QUEUE_STORE);
+
+        if (fileStore.isDirectory()) {
+            FilePersistenceStrategy fileStrategy = new FilePersistenceStrategy();
+            fileStrategy.open();
+            int count = importFrom(fileStrategy);
+
+            if (count > 0) {
+                logger.info("Imported " + count + " queued messages from " + fileStore.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Opens the store in the given directory.
+     *
+     * @param directory
+     * @throws IOException
+     */
+    public synchronized void open(File directory) throws IOException {
+        store = directory;
+        store.mkdirs();
+        segments.clear();
+        index.clear();
+        sequence = 0;
+
+        File[] files = store.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_EXTENSION)) {
+                    try {
+                        long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length()));
+                        segments.put(number, new Segment(number, file));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring unknown file in queue store: " + file.getAbsolutePath());
+                    }
+                }
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            scanSegment(segment);
+        }
+
+        if (segments.isEmpty()) {
+            rollSegment();
+        } else {
+            currentSegment = segments.lastEntry().getValue();
+        }
+
+        running = true;
+        compactionThread = new Thread(new Runnable() {
+            public void run() {
+                while (running) {
+                    try {
+                        Thread.sleep(COMPACTION_INTERVAL);
+                        compact();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Throwable t) {
+                        logger.error("Could not compact queue store", t);
+                    }
+                }
+            }
+        });
+        compactionThread.setName("QueueStoreCompaction");
+        compactionThread.setDaemon(true);
+        compactionThread.start();
+    }
+
+    public void close() throws IOException {
+        running = false;
+
+        if (compactionThread != null) {
+            compactionThread.interrupt();
+
+            try {
+                compactionThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            compactionThread = null;
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+
+            segments.clear();
+            index.clear();
+            currentSegment = null;
+        }
+    }
+
+    public Object store(String queue, Object obj) throws IOException {
+        String id = null;
+
+        if (obj instanceof QueuedMessage) {
+            id = ((QueuedMessage) obj).getMessageObject().getId();
+        } else if (obj instanceof UMOEvent) {
+            id = ((UMOEvent) obj).getId();
+        } else {
+            id = gen.generateRandomBasedUUID().toString();
+        }
+
+        byte[] data = codec.encode(obj);
+
+        synchronized (this) {
+            Location location = append(PUT, sequence++, 0, queue, id, data);
+            Location previous = getQueueIndex(queue).put(id, location);
+
+            if (previous != null) {
+                previous.segment.removeLive(previous.length);
+            }
+        }
+
+        return id;
+    }
+
+    public Object load(String queue, Object id) throws IOException {
+        Map<String, Location> queueIndex = getQueueIndex(queue);
+        Location location = queueIndex.get(id.toString());
+
+        while (true) {
+            if (location == null) {
+                throw new FileNotFoundException("Queued object " + id + " was not found in queue " + queue);
+            }
+
+            try {
+                return codec.decode(location.segment.readData(location));
+            } catch (IOException e) {
+                // the record may have been moved by a compaction while it was
+                // being read
+                Location current = queueIndex.get(id.toString());
+
+                if (current == location) {
+                    throw e;
+                }
+
+                location = current;
+            }
+        }
+    }
+
+    public synchronized void remove(String queue, Object id) throws IOException {
+        Location location = getQueueIndex(queue).remove(id.toString());
+
+        if (location == null) {
+            throw new FileNotFoundException("Queued object " + id + " was not found in queue " + queue);
+        }
+
+        location.segment.removeLive(location.length);
+        Location removeRecord = append(REMOVE, sequence++, location.sequence, queue, id.toString(), null);
+        removeRecord.segment.addRemoveTarget(location.segment.number);
+    }
+
+    public synchronized void removeQueue(String queue) throws IOException {
+        Map<String, Location> queueIndex = index.remove(queue);
+        Set<Long> targets = new HashSet<Long>();
+
+        if (queueIndex != null) {
+            for (Location location : queueIndex.values()) {
+                location.segment.removeLive(location.length);
+                targets.add(location.segment.number);
+            }
+        }
+
+        Location removeRecord = append(REMOVE_QUEUE, sequence++, 0, queue, "", null);
+
+        for (Long target : targets) {
+            removeRecord.segment.addRemoveTarget(target);
+        }
+    }
+
+    /**
+     * Returns the stored objects of all queues in the order they were stored.
+     */
+    public synchronized List<Holder> restore() throws IOException {
+        List<Location> locations = new ArrayList<Location>();
+
+        for (Map<String, Location> queueIndex : index.values()) {
+            locations.addAll(queueIndex.values());
+        }
+
+        Collections.sort(locations, new Comparator<Location>() {
+            public int compare(Location location1, Location location2) {
+                return (location1.sequence < location2.sequence) ? -1 : ((location1.sequence == location2.sequence) ? 0 : 1);
+            }
+        });
+
+        List<Holder> holders = new ArrayList<Holder>(locations.size());
+
+        for (Location location : locations) {
+            holders.add(new FilePersistenceStrategy.HolderImpl(location.queue, location.id));
+        }
+
+        logger.debug("Restore retrieved " + holders.size() + " objects");
+        return holders;
+    }
+
+    /**
+     * Moves the objects in a store created by FilePersistenceStrategy into
+     * this store and deletes their files.
+     *
+     * @param fileStrategy
+     *            the opened file store
+     * @return the number of objects moved
+     */
+    public int importFrom(FilePersistenceStrategy fileStrategy) throws IOException {
+        int count = 0;
+
+        for (Holder holder : fileStrategy.restore()) {
+            try {
+                Object obj = fileStrategy.load(holder.getQueue(), holder.getId());
+                Object id = store(holder.getQueue(), obj);
+
+                if (!id.equals(holder.getId())) {
+                    // objects other than messages and events get a new id
+                    logger.debug("Queued object " + holder.getId() + " was imported as " + id);
+                }
+
+                fileStrategy.remove(holder.getQueue(), holder.getId());
+                count++;
+            } catch (IOException e) {
+                logger.warn("Could not import queued object " + holder.getId() + " from queue " + holder.getQueue(), e);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Compacts the segments that have mostly been removed. The live records of
+     * a segment are copied to the current segment, along with the remove
+     * records that still refer to other segments, and the segment is deleted.
+     */
+    public void compact() throws IOException {
+        List<Segment> candidates = new ArrayList<Segment>();
+
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                if ((segment != currentSegment) && (segment.getLiveRatio() < COMPACTION_THRESHOLD)) {
+                    candidates.add(segment);
+                }
+            }
+        }
+
+        for (Segment segment : candidates) {
+            compactSegment(segment);
+        }
+    }
+
+    private synchronized void compactSegment(Segment segment) throws IOException {
+        if (!segments.containsKey(segment.number) || (segment == currentSegment)) {
+            return;
+        }
+
+        int moved = 0;
+
+        // copy the records that are still queued
+        for (Map<String, Location> queueIndex : index.values()) {
+            for (Location location : queueIndex.values()) {
+                if (location.segment == segment) {
+                    byte[] data = segment.readData(location);
+                    Location copy = append(PUT, location.sequence, 0, location.queue, location.id, data);
+                    segment.removeLive(location.length);
+                    queueIndex.put(location.id, copy);
+                    moved++;
+                }
+            }
+        }
+
+        // remove records only need to be kept while the records they remove
+        // may still be in another segment
+        for (RecordHeader header : segment.readHeaders()) {
+            if ((header.type == REMOVE) || (header.type == REMOVE_QUEUE)) {
+                boolean needed = false;
+
+                for (Long target : segment.removeTargets) {
+                    if ((target.longValue() != segment.number) && segments.containsKey(target)) {
+                        needed = true;
+                        break;
+                    }
+                }
+
+                if (needed) {
+                    Location copy = append(header.type, header.sequence, header.removedSequence, header.queue, header.id, null);
+
+                    for (Long target : segment.removeTargets) {
+                        if (target.longValue() != segment.number) {
+                            copy.segment.addRemoveTarget(target);
+                        }
+                    }
+                }
+            }
+        }
+
+        currentSegment.force();
+        segments.remove(segment.number);
+        segment.close();
+
+        if (!segment.file.delete()) {
+            logger.warn("Could not delete compacted queue segment " + segment.file.getAbsolutePath());
+        }
+
+        logger.debug("Compacted queue segment " + segment.number + ", moved " + moved + " records");
+    }
+
+    private Map<String, Location> getQueueIndex(String queue) {
+        Map<String, Location> queueIndex = index.get(queue);
+
+        if (queueIndex == null) {
+            synchronized (index) {
+                queueIndex = index.get(queue);
+
+                if (queueIndex == null) {
+                    queueIndex = new ConcurrentHashMap<String, Location>();
+                    index.put(queue, queueIndex);
+                }
+            }
+        }
+
+        return queueIndex;
+    }
+
+    /*
+     * Appends a record to the current segment, starting a new segment when
+     * it is full. Must be called while holding the lock on this object.
+     */
+    private Location append(byte type, long recordSequence, long removedSequence, String queue, String id, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + ((data == null) ? 0 : data.length));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeLong(recordSequence);
+
+        if (type == REMOVE) {
+            out.writeLong(removedSequence);
+        }
+
+        out.writeUTF(queue);
+        out.writeUTF(id);
+        int dataOffset = out.size();
+
+        if (data != null) {
+            out.write(data);
+        }
+
+        out.writeInt(0);
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, record.length);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - 4);
+        buffer.putInt(record.length - 4, (int) crc.getValue());
+
+        if ((currentSegment.size > 0) && (currentSegment.size + record.length > segmentSize)) {
+            rollSegment();
+        }
+
+        long position = currentSegment.write(buffer);
+        Location location = new Location(currentSegment, position, record.length, dataOffset, recordSequence, queue, id);
+
+        if (type == PUT) {
+            currentSegment.addLive(record.length);
+        }
+
+        return location;
+    }
+
+    private void rollSegment() throws IOException {
+        long number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+
+        if (currentSegment != null) {
+            currentSegment.force();
+        }
+
+        File file = new File(store, SEGMENT_PREFIX + String.format("%012d", number) + SEGMENT_EXTENSION);
+        currentSegment = new Segment(number, file);
+        segments.put(number, currentSegment);
+    }
+
+    /*
+     * Rebuilds the index from the record headers of a segment.
+     */
+    private void scanSegment(Segment segment) throws IOException {
+        for (RecordHeader header : segment.readHeaders()) {
+            sequence = Math.max(sequence, header.sequence + 1);
+
+            if (header.type == PUT) {
+                Location location = new Location(segment, header.position, header.length, header.dataOffset, header.sequence, header.queue, header.id);
+                Location previous = getQueueIndex(header.queue).put(header.id, location);
+                segment.addLive(header.length);
+
+                if (previous != null) {
+                    previous.segment.removeLive(previous.length);
+                }
+            } else if (header.type == REMOVE) {
+                Map<String, Location> queueIndex = getQueueIndex(header.queue);
+                Location location = queueIndex.get(header.id);
+
+                // a message that was queued again after being removed has a
+                // newer sequence number and is kept
+                if ((location != null) && (location.sequence == header.removedSequence)) {
+                    queueIndex.remove(header.id);
+                    location.segment.removeLive(location.length);
+                    segment.addRemoveTarget(location.segment.number);
+                }
+            } else if (header.type == REMOVE_QUEUE) {
+                // records queued after the queue was removed are kept
+                for (Iterator<Location> iterator = getQueueIndex(header.queue).values().iterator(); iterator.hasNext();) {
+                    Location location = iterator.next();
+
+                    if (location.sequence < header.sequence) {
+                        iterator.remove();
+                        location.segment.removeLive(location.length);
+                        segment.addRemoveTarget(location.segment.number);
+                    }
+                }
+            }
+        }
+    }
+
+    private class Segment {
+        private long number;
+        private File file;
+        private RandomAccessFile randomAccessFile;
+        private FileChannel channel;
+        private long size;
+        private long liveBytes = 0;
+
+        // the segments that remove records in this segment refer to
+        private Set<Long> removeTargets = new HashSet<Long>();
+
+        public Segment(long number, File file) throws IOException {
+            this.number = number;
+            this.file = file;
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            size = channel.size();
+        }
+
+        public long write(ByteBuffer buffer) throws IOException {
+            long position = size;
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, size + buffer.position());
+            }
+
+            size += buffer.limit();
+            return position;
+        }
+
+        public byte[] readData(Location location) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length);
+            read(buffer, location.position);
+
+            byte[] record = buffer.array();
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, record.length - 4);
+
+            if (buffer.getInt(record.length - 4) != (int) crc.getValue()) {
+                throw new IOException("Queued object " + location.id + " in " + file.getAbsolutePath() + " is corrupt");
+            }
+
+            return Arrays.copyOfRange(record, location.dataOffset, record.length - 4);
+        }
+
+        /*
+         * Reads the header of every record. A partly written record at the
+         * end of the segment is cut off.
+         */
+        public List<RecordHeader> readHeaders() throws IOException {
+            List<RecordHeader> headers = new ArrayList<RecordHeader>();
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            long position = 0;
+
+            while (position < size) {
+                int length = 0;
+
+                // less than the length itself may have been written
+                if (position + 4 <= size) {
+                    lengthBuffer.clear();
+                    read(lengthBuffer, position);
+                    length = lengthBuffer.getInt(0);
+                }
+
+                if ((length < 4) || (position + length > size)) {
+                    logger.warn("Truncating incomplete record at " + position + " in queue segment " + file.getAbsolutePath());
+                    channel.truncate(position);
+                    size = position;
+                    break;
+                }
+
+                RecordHeader header = null;
+
+                try {
+                    // queue names and ids are short, so the header nearly
+                    // always fits in the first bytes of the record
+                    header = readHeader(position, Math.min(length, HEADER_READ_SIZE));
+                } catch (BufferUnderflowException e) {
+                    header = readHeader(position, Math.min(length, MAX_HEADER_SIZE));
+                }
+
+                headers.add(header);
+                position += length;
+            }
+
+            return headers;
+        }
+
+        private RecordHeader readHeader(long position, int size) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            read(buffer, position);
+            buffer.flip();
+
+            RecordHeader header = new RecordHeader();
+            header.position = position;
+            header.length = buffer.getInt();
+            header.type = buffer.get();
+            header.sequence = buffer.getLong();
+
+            if (header.type == REMOVE) {
+                header.removedSequence = buffer.getLong();
+            }
+
+            header.queue = readUTF(buffer);
+            header.id = readUTF(buffer);
+            header.dataOffset = buffer.position();
+            return header;
+        }
+
+        public void addLive(long bytes) {
+            liveBytes += bytes;
+        }
+
+        public void removeLive(long bytes) {
+            liveBytes -= bytes;
+        }
+
+        public void addRemoveTarget(long target) {
+            removeTargets.add(target);
+        }
+
+        public double getLiveRatio() {
+            return (size == 0) ? 1 : ((double) liveBytes / size);
+        }
+
+        public void force() throws IOException {
+            channel.force(false);
+        }
+
+        public void close() throws IOException {
+            try {
+                channel.force(false);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        private void read(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+
+        private String readUTF(ByteBuffer buffer) throws IOException {
+            int length = buffer.getShort() & 0xFFFF;
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+
+            // the modified UTF-8 of writeUTF only differs for null and
+            // supplementary characters, which don't appear in queue names and
+            // ids
+            return new String(bytes, "UTF-8");
+        }
+    }
+
+    private static class RecordHeader {
+        private long position;
+        private int length;
+        private byte type;
+        private long sequence;
+        private long removedSequence;
+        private String queue;
+        private String id;
+        private int dataOffset;
+    }
+
+    private static class Location {
+        private Segment segment;
+        private long position;
+        private int length;
+        private int dataOffset;
+        private long sequence;
+        private String queue;
+        private String id;
+
+        public Location(Segment segment, long position, int length, int dataOffset, long sequence, String queue, String id) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.sequence = sequence;
+            this.queue = queue;
+            this.id = id;
+        }
+    }
+}
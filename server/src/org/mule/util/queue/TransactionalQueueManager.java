@@ -298,6 +298,16 @@ public class TransactionalQueueManager extends AbstractXAResourceManager impleme
 			}
 		}
 
+		public List<Object> getIds(int maxIds) {
+			synchronized (list) {
+				List<Object> ids = new ArrayList<Object>(Math.min(maxIds, list.size()));
+				for (Iterator it = list.iterator(); it.hasNext() && (ids.size() < maxIds);) {
+					ids.add(it.next());
+				}
+				return ids;
+			}
+		}
+
 		public boolean offer(Object o, int room, long timeout) throws InterruptedException {
 			// we don't want to lose messages, so wait for the method to
 			// complete
@@ -534,6 +544,14 @@ public class TransactionalQueueManager extends AbstractXAResourceManager impleme
 				return id;
 			}
 			
+			public List<Object> getIds(int maxIds) {
+				return queue.getIds(maxIds);
+			}
+
+			public Object load(Object id) throws Exception {
+				return doLoad(queue, id);
+			}
+
 			public Object take() throws InterruptedException {
 				return poll(Long.MAX_VALUE);
 			}
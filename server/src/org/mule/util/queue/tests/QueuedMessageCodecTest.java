@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package org.mule.util.queue.tests;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mule.util.queue.QueuedMessageCodec;
+
+import com.mirth.connect.model.MessageObject;
+import com.mirth.connect.model.QueuedMessage;
+
+public class QueuedMessageCodecTest {
+    private static final String NON_ASCII = "MSH|^~\\&|\u00c4rzte|Stra\u00dfe|\u65e5\u672c|\ud83d\ude00\r";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        MessageObject messageObject = createMessageObject();
+        messageObject.setTransformedData("<HL7Message>" + NON_ASCII + "</HL7Message>");
+        messageObject.setTransformedDataProtocol(MessageObject.Protocol.XML);
+        messageObject.setErrors("error");
+        messageObject.setEncrypted(true);
+        messageObject.setAttachment(true);
+
+        MessageObject decoded = roundTrip(messageObject);
+        Assert.assertEquals(messageObject, decoded);
+        Assert.assertEquals(NON_ASCII, decoded.getRawData());
+        Assert.assertEquals(messageObject.getDateCreated().getTimeInMillis(), decoded.getDateCreated().getTimeInMillis());
+        Assert.assertEquals("America/Los_Angeles", decoded.getDateCreated().getTimeZone().getID());
+    }
+
+    @Test
+    public void testNullFields() throws Exception {
+        MessageObject messageObject = new MessageObject();
+        messageObject.setId("1");
+        messageObject.setStatus(null);
+        messageObject.setConnectorMap(null);
+        messageObject.setResponseMap(null);
+        messageObject.setChannelMap(null);
+        messageObject.setContext(null);
+
+        MessageObject decoded = roundTrip(messageObject);
+        Assert.assertEquals("1", decoded.getId());
+        Assert.assertNull(decoded.getChannelId());
+        Assert.assertNull(decoded.getStatus());
+        Assert.assertNull(decoded.getDateCreated());
+        Assert.assertNull(decoded.getRawData());
+        Assert.assertNull(decoded.getRawDataProtocol());
+        Assert.assertNull(decoded.getConnectorMap());
+        Assert.assertNull(decoded.getContext());
+        Assert.assertEquals(messageObject, decoded);
+    }
+
+    @Test
+    public void testMaps() throws Exception {
+        MessageObject messageObject = createMessageObject();
+
+        Map<String, String> connectorMap = new ConcurrentHashMap<String, String>();
+        connectorMap.put("key", NON_ASCII);
+        connectorMap.put("", "");
+        messageObject.setConnectorMap(connectorMap);
+
+        // not a map of strings, so it is serialized
+        Map<String, Object> channelMap = new HashMap<String, Object>();
+        channelMap.put("count", Integer.valueOf(3));
+        channelMap.put("null", null);
+        List<String> list = new ArrayList<String>();
+        list.add(NON_ASCII);
+        channelMap.put("list", list);
+        messageObject.setChannelMap(channelMap);
+
+        messageObject.setResponseMap(new ConcurrentHashMap<String, String>());
+        messageObject.setContext(new HashMap<String, Object>());
+
+        MessageObject decoded = roundTrip(messageObject);
+        Assert.assertEquals(connectorMap, decoded.getConnectorMap());
+        Assert.assertTrue(decoded.getConnectorMap() instanceof ConcurrentHashMap);
+        Assert.assertEquals(channelMap, decoded.getChannelMap());
+        Assert.assertTrue(decoded.getChannelMap() instanceof HashMap);
+        Assert.assertTrue(decoded.getResponseMap().isEmpty());
+        Assert.assertTrue(decoded.getContext().isEmpty());
+        Assert.assertEquals(messageObject, decoded);
+    }
+
+    @Test
+    public void testMapChangedWhileWriting() throws Exception {
+        MessageObject messageObject = createMessageObject();
+
+        // another destination puts a value that is not a string right after
+        // the entries of the map were read
+        Map<String, Object> connectorMap = new ConcurrentHashMap<String, Object>() {
+            @Override
+            public Set<Map.Entry<String, Object>> entrySet() {
+                Set<Map.Entry<String, Object>> entries = new HashSet<Map.Entry<String, Object>>(super.entrySet());
+                put("count", Integer.valueOf(entries.size()));
+                return entries;
+            }
+        };
+
+        connectorMap.put("key", "value");
+        messageObject.setConnectorMap(connectorMap);
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("key", "value");
+        Assert.assertEquals(expected, roundTrip(messageObject).getConnectorMap());
+    }
+
+    @Test
+    public void testSerializedObjects() throws Exception {
+        QueuedMessageCodec codec = new QueuedMessageCodec();
+        Assert.assertEquals(NON_ASCII, codec.decode(codec.encode(NON_ASCII)));
+
+        // a queued message without a message object is serialized as a whole
+        QueuedMessage queuedMessage = new QueuedMessage();
+        Object decoded = codec.decode(codec.encode(queuedMessage));
+        Assert.assertTrue(decoded instanceof QueuedMessage);
+        Assert.assertNull(((QueuedMessage) decoded).getMessageObject());
+    }
+
+    private MessageObject roundTrip(MessageObject messageObject) throws Exception {
+        QueuedMessageCodec codec = new QueuedMessageCodec();
+        QueuedMessage queuedMessage = new QueuedMessage();
+        queuedMessage.setMessageObject(messageObject);
+
+        QueuedMessage decoded = (QueuedMessage) codec.decode(codec.encode(queuedMessage));
+        Assert.assertNull(decoded.getEndpointUri());
+        return decoded.getMessageObject();
+    }
+
+    private MessageObject createMessageObject() {
+        Calendar dateCreated = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+        dateCreated.setTimeInMillis(1262304000123L);
+
+        MessageObject messageObject = new MessageObject();
+        messageObject.setId("b9ae57d4-4b2d-4b8a-9a44-d9c5bde5c8a1");
+        messageObject.setServerId("server");
+        messageObject.setChannelId("channel");
+        messageObject.setSource("source");
+        messageObject.setType("ADT-A01");
+        messageObject.setStatus(MessageObject.Status.QUEUED);
+        messageObject.setDateCreated(dateCreated);
+        messageObject.setRawData(NON_ASCII);
+        messageObject.setRawDataProtocol(MessageObject.Protocol.HL7V2);
+        messageObject.setConnectorName("Destination 1");
+        messageObject.setVersion("2.0.0");
+        messageObject.setCorrelationId("correlation");
+        return messageObject;
+    }
+}
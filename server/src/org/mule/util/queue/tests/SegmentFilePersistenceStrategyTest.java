@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL
+ * license a copy of which has been included with this distribution in
+ * the LICENSE.txt file.
+ */
+
+package org.mule.util.queue.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.util.queue.QueuePersistenceStrategy.Holder;
+import org.mule.util.queue.SegmentFilePersistenceStrategy;
+
+public class SegmentFilePersistenceStrategyTest {
+    private static final String QUEUE = "queue";
+
+    private File directory;
+    private SegmentFilePersistenceStrategy store;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("queuesegments", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) {
+            store.close();
+        }
+
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testStoreAndRestore() throws Exception {
+        store = open(1024 * 1024);
+        Object id1 = store.store(QUEUE, "message 1");
+        Object id2 = store.store(QUEUE, "message 2");
+        Object id3 = store.store("other", "message 3");
+        store.remove(QUEUE, id2);
+        store.close();
+
+        store = open(1024 * 1024);
+        List<Holder> holders = store.restore();
+        Assert.assertEquals(Arrays.asList(new Object[] { id1, id3 }), getIds(holders));
+        Assert.assertEquals("other", holders.get(1).getQueue());
+        Assert.assertEquals("message 1", store.load(QUEUE, id1));
+        Assert.assertEquals("message 3", store.load("other", id3));
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Exception {
+        store = open(1024 * 1024);
+        Object id1 = store.store(QUEUE, "message 1");
+        Object id2 = store.store(QUEUE, "message 2");
+        store.close();
+
+        File segment = getSegments().get(0);
+        long complete = segment.length();
+
+        store = open(1024 * 1024);
+        store.store(QUEUE, "message 3");
+        store.close();
+
+        // cut the last record in half, as if the server stopped while writing it
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+
+        try {
+            file.setLength(complete + (file.length() - complete) / 2);
+        } finally {
+            file.close();
+        }
+
+        store = open(1024 * 1024);
+        Assert.assertEquals(Arrays.asList(new Object[] { id1, id2 }), getIds(store.restore()));
+        Assert.assertEquals(complete, segment.length());
+        Assert.assertEquals("message 1", store.load(QUEUE, id1));
+        Assert.assertEquals("message 2", store.load(QUEUE, id2));
+
+        // records written after the cut are read again
+        Object id4 = store.store(QUEUE, "message 4");
+        store.close();
+
+        store = open(1024 * 1024);
+        Assert.assertEquals(Arrays.asList(new Object[] { id1, id2, id4 }), getIds(store.restore()));
+        Assert.assertEquals("message 4", store.load(QUEUE, id4));
+    }
+
+    @Test
+    public void testTruncatedLength() throws Exception {
+        store = open(1024 * 1024);
+        Object id1 = store.store(QUEUE, "message 1");
+        store.close();
+
+        File segment = getSegments().get(0);
+        long complete = segment.length();
+
+        // only part of the length of the next record was written
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+
+        try {
+            file.seek(complete);
+            file.write(new byte[] { 0, 0 });
+        } finally {
+            file.close();
+        }
+
+        store = open(1024 * 1024);
+        Assert.assertEquals(complete, segment.length());
+        Object id2 = store.store(QUEUE, "message 2");
+        store.close();
+
+        store = open(1024 * 1024);
+        Assert.assertEquals(Arrays.asList(new Object[] { id1, id2 }), getIds(store.restore()));
+        Assert.assertEquals("message 2", store.load(QUEUE, id2));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        store = open(512);
+        List<Object> ids = new ArrayList<Object>();
+
+        for (int i = 0; i < 20; i++) {
+            ids.add(store.store(QUEUE, "message " + i));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            if ((i != 3) && (i != 15)) {
+                store.remove(QUEUE, ids.get(i));
+            }
+        }
+
+        int segments = getSegments().size();
+        Assert.assertTrue(segments > 2);
+
+        store.compact();
+
+        Assert.assertTrue(getSegments().size() < segments);
+        Assert.assertEquals(Arrays.asList(new Object[] { ids.get(3), ids.get(15) }), getIds(store.restore()));
+        Assert.assertEquals("message 3", store.load(QUEUE, ids.get(3)));
+        Assert.assertEquals("message 15", store.load(QUEUE, ids.get(15)));
+        store.close();
+
+        // removed records must not come back from the remaining segments
+        store = open(512);
+        Assert.assertEquals(Arrays.asList(new Object[] { ids.get(3), ids.get(15) }), getIds(store.restore()));
+        Assert.assertEquals("message 3", store.load(QUEUE, ids.get(3)));
+        Assert.assertEquals("message 15", store.load(QUEUE, ids.get(15)));
+    }
+
+    private SegmentFilePersistenceStrategy open(long segmentSize) throws IOException {
+        SegmentFilePersistenceStrategy strategy = new SegmentFilePersistenceStrategy(segmentSize);
+        strategy.open(directory);
+        return strategy;
+    }
+
+    private List<File> getSegments() {
+        List<File> segments = new ArrayList<File>();
+
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith(SegmentFilePersistenceStrategy.SEGMENT_PREFIX)) {
+                segments.add(file);
+            }
+        }
+
+        return segments;
+    }
+
+    private List<Object> getIds(List<Holder> holders) {
+        List<Object> ids = new ArrayList<Object>();
+
+        for (Holder holder : holders) {
+            ids.add(holder.getId());
+        }
+
+        return ids;
+    }
+}